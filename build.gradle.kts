@@ -177,6 +177,34 @@ tasks.withType<Copy>().configureEach {
     duplicatesStrategy = DuplicatesStrategy.EXCLUDE
 }
 
+// runs the headless analyzer: ./gradlew runAnalyzer -DprojectPath=<project> -DresultPath=<file>
+tasks {
+
+    register<org.jetbrains.intellij.platform.gradle.tasks.RunIdeTask>("runAnalyzer") {
+        val projectPath = System.getProperty("projectPath") ?: "."
+        val resultPath = System.getProperty("resultPath") ?: "full_analysis.json"
+
+        args = listOf("dataclumps", "analyze", projectPath, "--out", resultPath)
+        jvmArgs = listOf("-Djava.awt.headless=true")
+
+        splitMode.set(false)
+    }
+}
+
+// runs the headless analyzer for all projects of a manifest: ./gradlew runBatchAnalyzer -Dmanifest=<file> -DresultPath=<directory>
+tasks {
+
+    register<org.jetbrains.intellij.platform.gradle.tasks.RunIdeTask>("runBatchAnalyzer") {
+        val manifest = System.getProperty("manifest") ?: "projects.txt"
+        val resultPath = System.getProperty("resultPath") ?: "."
+
+        args = listOf("dataclumps", "batch", manifest, "--out", resultPath)
+        jvmArgs = listOf("-Djava.awt.headless=true")
+
+        splitMode.set(false)
+    }
+}
+
 // only works on 2024.2 not 2024.3
 tasks {
 
@@ -34,6 +34,7 @@ public final class DataClumpSettings implements PersistentStateComponent<DataClu
         public int minNumberOfProperties = 3;
         public Modifier includeModifiersInDetection = Modifier.ALL;
         public Modifier includeModifiersInExtractedClass = Modifier.ALL;
+        public boolean useMappedIndex = false;
     }
 
     /**
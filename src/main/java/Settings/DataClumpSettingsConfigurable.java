@@ -41,7 +41,8 @@ final class DataClumpSettingsConfigurable implements Configurable {
                 Objects.requireNonNull(DataClumpSettings.getInstance().getState());
         return mySettingsComponent.getNumberOfProperties() != state.minNumberOfProperties
                 || mySettingsComponent.getIncludeModifiersInDetection() != state.includeModifiersInDetection
-                || mySettingsComponent.getIncludeModifiersInExtractedClass() != state.includeModifiersInExtractedClass;
+                || mySettingsComponent.getIncludeModifiersInExtractedClass() != state.includeModifiersInExtractedClass
+                || mySettingsComponent.getUseMappedIndex() != state.useMappedIndex;
     }
 
     @Override
@@ -50,6 +51,7 @@ final class DataClumpSettingsConfigurable implements Configurable {
         state.minNumberOfProperties = mySettingsComponent.getNumberOfProperties();
         state.includeModifiersInDetection = mySettingsComponent.getIncludeModifiersInDetection();
         state.includeModifiersInExtractedClass = mySettingsComponent.getIncludeModifiersInExtractedClass();
+        state.useMappedIndex = mySettingsComponent.getUseMappedIndex();
     }
 
     @Override
@@ -59,6 +61,7 @@ final class DataClumpSettingsConfigurable implements Configurable {
         mySettingsComponent.setNumberOfProperties(state.minNumberOfProperties);
         mySettingsComponent.setIncludeModifiersInDetection(state.includeModifiersInDetection);
         mySettingsComponent.setIncludeModifiersInExtractedClass(state.includeModifiersInExtractedClass);
+        mySettingsComponent.setUseMappedIndex(state.useMappedIndex);
     }
 
     @Override
@@ -3,6 +3,7 @@ package Settings;
 import com.intellij.ide.HelpTooltip;
 import com.intellij.openapi.ui.ComboBox;
 import com.intellij.openapi.util.IconLoader;
+import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.util.ui.FormBuilder;
 
@@ -31,6 +32,10 @@ public class DataClumpSettingsUI {
      * The combo box for selecting the modifier types that should be included in the extracted class
      */
     private final ComboBox<DataClumpSettings.Modifier> includeModifiersInExtractedClass = new ComboBox<>();
+    /**
+     * The check box for storing the postings of the index in a memory-mapped file
+     */
+    private final JBCheckBox useMappedIndex = new JBCheckBox("Use memory-mapped index");
 
     /**
      * Creates a new instance of the settings UI
@@ -52,12 +57,14 @@ public class DataClumpSettingsUI {
             includeModifiersInExtractedClass.addItem(DataClumpSettings.Modifier.ALL);
         }
         includeModifiersInExtractedClass.setSelectedItem(DataClumpSettings.getInstance().getState().includeModifiersInExtractedClass);
+        useMappedIndex.setSelected(DataClumpSettings.getInstance().getState().useMappedIndex);
 
         String TOOLTIP_NUMBER_OF_PROPERTIES = "The minimal number of fields or parameters that should be equal in order to be considered a data clump.";
         String TOOLTIP_INCLUDE_MODIFIERS_IN_DETECTION = "Select the modifier types that should be considered when detecting data clumps. " + "In case of ALL the fields must have the same modifiers to be considered equal. " + "In case of VISIBILITY, only the visibility of the fields will be considered. " + "In case of NONE, the modifiers of the fields will not be considered.";
         String TOOLTIP_INCLUDE_MODIFIERS_IN_EXTRACTED_CLASS = "Select the modifier types that should be included in the extracted class. " + "In case the class is newly created. " + "In case of ALL all modifiers will be included in the extracted class. " + "In case of VISIBILITY only the visibility modifiers will be included in the extracted class. " + "In case of NONE no modifiers will be included in the extracted class." + "The selected modifier must be included in the detected data clumps.";
+        String TOOLTIP_USE_MAPPED_INDEX = "Stores the fields and parameters of the index in a memory-mapped file instead of the heap. " + "Recommended for very large projects. " + "The fields and parameters of each class and function stay on the heap. " + "Every lookup resolves each posting by finding its file and the element at its offset, which makes the detection slower. " + "Takes effect the next time the index is built.";
 
-        mainPanel = FormBuilder.createFormBuilder().addComponent(new JBLabel("Settings for data clump detection: ")).addLabeledComponent(new JBLabel("Number of Fields or Parameters: "), addHelpToolTip(numberOfProperties, TOOLTIP_NUMBER_OF_PROPERTIES), 1, false).addLabeledComponent(new JBLabel("Include modifiers in detection: "), addHelpToolTip(includeModifiersInDetection, TOOLTIP_INCLUDE_MODIFIERS_IN_DETECTION), 1).addComponent(new JBLabel("Settings for extracting class: ")).addLabeledComponent(new JBLabel("Include modifiers in the extracted class: "), addHelpToolTip(includeModifiersInExtractedClass, TOOLTIP_INCLUDE_MODIFIERS_IN_EXTRACTED_CLASS), 1).addComponentFillVertically(new JPanel(), 0).getPanel();
+        mainPanel = FormBuilder.createFormBuilder().addComponent(new JBLabel("Settings for data clump detection: ")).addLabeledComponent(new JBLabel("Number of Fields or Parameters: "), addHelpToolTip(numberOfProperties, TOOLTIP_NUMBER_OF_PROPERTIES), 1, false).addLabeledComponent(new JBLabel("Include modifiers in detection: "), addHelpToolTip(includeModifiersInDetection, TOOLTIP_INCLUDE_MODIFIERS_IN_DETECTION), 1).addComponent(new JBLabel("Settings for extracting class: ")).addLabeledComponent(new JBLabel("Include modifiers in the extracted class: "), addHelpToolTip(includeModifiersInExtractedClass, TOOLTIP_INCLUDE_MODIFIERS_IN_EXTRACTED_CLASS), 1).addComponent(new JBLabel("Settings for the index: ")).addComponent(addHelpToolTip(useMappedIndex, TOOLTIP_USE_MAPPED_INDEX), 1).addComponentFillVertically(new JPanel(), 0).getPanel();
 
 
         // only the detected modifier can be selected in the extracted class
@@ -134,6 +141,14 @@ public class DataClumpSettingsUI {
         return (DataClumpSettings.Modifier) includeModifiersInExtractedClass.getSelectedItem();
     }
 
+    public void setUseMappedIndex(boolean value) {
+        useMappedIndex.setSelected(value);
+    }
+
+    public boolean getUseMappedIndex() {
+        return useMappedIndex.isSelected();
+    }
+
     public JPanel getPanel() {
         return mainPanel;
     }
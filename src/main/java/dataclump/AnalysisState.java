@@ -0,0 +1,242 @@
+package dataclump;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
+import util.CodeSmellLogger;
+import util.FileStamp;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * The per-file results of the last full analysis of a project, stored in the system directory of the IDE.
+ * For every analyzed TypeScript file the state contains the time stamp and length of the file and the numbers of
+ * elements it contributed to the report. The next full analysis uses the state to find the files that changed since
+ * the last report and only analyzes these files and their partners again.
+ */
+public class AnalysisState {
+
+    /**
+     * The magic number at the start of a state file
+     */
+    private static final int MAGIC = 0x44434653;
+
+    /**
+     * The version of the format, states of another version are ignored
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Represents the result of the analysis of a file
+     *
+     * @param stamp                       the stamp of the file when it was analyzed
+     * @param numberOfClassesOrInterfaces the number of classes and interfaces in the file
+     * @param numberOfMethods             the number of functions in the file
+     * @param numberOfDataFields          the number of fields of the classes and interfaces in the file
+     * @param numberOfMethodParameters    the number of parameters of the functions in the file
+     */
+    public record FileResult(FileStamp stamp, int numberOfClassesOrInterfaces, int numberOfMethods,
+                             int numberOfDataFields, int numberOfMethodParameters) {
+    }
+
+    /**
+     * The path of the report the state belongs to
+     */
+    private final String reportPath;
+
+    /**
+     * The detector options the report was created with
+     */
+    private final String options;
+
+    /**
+     * The analyzed files mapped to their path
+     */
+    private final HashMap<String, FileResult> files = new HashMap<>();
+
+    /**
+     * Creates an empty state for a report
+     *
+     * @param reportPath the path of the report
+     * @param options    the detector options the report is created with
+     */
+    public AnalysisState(String reportPath, Map<String, String> options) {
+        this(reportPath, new TreeMap<>(options).toString());
+    }
+
+    /**
+     * Creates an empty state for a report
+     *
+     * @param reportPath the path of the report
+     * @param options    the detector options in their stored form
+     */
+    private AnalysisState(String reportPath, String options) {
+        this.reportPath = reportPath;
+        this.options = options;
+    }
+
+    /**
+     * Returns the stored result of the given file if the file did not change since it was analyzed, see
+     * {@link FileStamp#isUpToDate(VirtualFile)}
+     *
+     * @param file the file
+     * @return the stored result or null if the file was not analyzed, changed or has unsaved changes
+     */
+    public @Nullable FileResult getUpToDate(VirtualFile file) {
+        FileResult result = files.get(file.getPath());
+        return result != null && result.stamp().isUpToDate(file) ? result : null;
+    }
+
+    /**
+     * Stores the result of the given file unless the file changed since its stamp was taken or has unsaved changes,
+     * so that such files are analyzed again by the next run
+     *
+     * @param file   the file
+     * @param result the result of the analysis of the file
+     */
+    public void put(VirtualFile file, FileResult result) {
+        if (result.stamp().isUpToDate(file)) files.put(file.getPath(), result);
+    }
+
+    /**
+     * Stores the result of the file with the given path without checking its stamp
+     *
+     * @param path   the path of the file
+     * @param result the result of the analysis of the file
+     */
+    void put(String path, FileResult result) {
+        files.put(path, result);
+    }
+
+    /**
+     * Returns the stored result of the file with the given path without checking if it is up to date
+     *
+     * @param path the path of the file
+     * @return the stored result or null if the file was not analyzed
+     */
+    @Nullable FileResult get(String path) {
+        return files.get(path);
+    }
+
+    /**
+     * Returns the paths of all files in the state
+     *
+     * @return the paths of the analyzed files
+     */
+    public Set<String> getPaths() {
+        return files.keySet();
+    }
+
+    /**
+     * Returns the path of the state of the given project
+     *
+     * @param project the project
+     * @return the path of the state file
+     */
+    private static Path getStatePath(Project project) {
+        return Path.of(PathManager.getSystemPath(), "dataclump", "analysis", project.getLocationHash() + ".bin");
+    }
+
+    /**
+     * Loads the state of the last full analysis of the given project
+     *
+     * @param project    the project
+     * @param reportPath the path of the report that is written next
+     * @param options    the detector options the next report is created with
+     * @return the state or null if there is none, it was written with another version or it belongs to another report
+     * or other options
+     */
+    public static @Nullable AnalysisState load(Project project, String reportPath, Map<String, String> options) {
+        Path path = getStatePath(project);
+        if (!Files.exists(path)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return read(in, reportPath, options);
+        } catch (IOException e) {
+            CodeSmellLogger.error("Could not read analysis state: " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a state written by {@link #write(DataOutputStream)}
+     *
+     * @param in         the input stream
+     * @param reportPath the path of the report that is written next
+     * @param options    the detector options the next report is created with
+     * @return the state or null if it was written with another version or it belongs to another report or other options
+     * @throws IOException if the state could not be read
+     */
+    static @Nullable AnalysisState read(DataInputStream in, String reportPath, Map<String, String> options) throws IOException {
+        if (!FileStamp.readHeader(in, MAGIC, VERSION)) {
+            CodeSmellLogger.info("Ignoring analysis state of another version.");
+            return null;
+        }
+
+        AnalysisState state = new AnalysisState(in.readUTF(), in.readUTF());
+        if (!state.reportPath.equals(reportPath) || !state.options.equals(new TreeMap<>(options).toString())) {
+            CodeSmellLogger.info("Ignoring analysis state of another report or other options.");
+            return null;
+        }
+
+        int fileCount = in.readInt();
+        for (int i = 0; i < fileCount; i++) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            state.files.put(new String(bytes, StandardCharsets.UTF_8), new FileResult(FileStamp.read(in),
+                    in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+        }
+        return state;
+    }
+
+    /**
+     * Writes the state of the given project. The state is written to a temporary file first, so that a crash while
+     * writing does not leave a broken state.
+     *
+     * @param project the project
+     */
+    public void save(Project project) {
+        Path path = getStatePath(project);
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+                write(out);
+            }
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            CodeSmellLogger.error("Could not write analysis state: " + path, e);
+        }
+    }
+
+    /**
+     * Writes the state with its version, report and options to the given stream
+     *
+     * @param out the output stream
+     * @throws IOException if the state could not be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        FileStamp.writeHeader(out, MAGIC, VERSION);
+        out.writeUTF(reportPath);
+        out.writeUTF(options);
+        out.writeInt(files.size());
+        for (Map.Entry<String, FileResult> file : files.entrySet()) {
+            byte[] bytes = file.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+
+            FileResult result = file.getValue();
+            result.stamp().write(out);
+            out.writeInt(result.numberOfClassesOrInterfaces());
+            out.writeInt(result.numberOfMethods());
+            out.writeInt(result.numberOfDataFields());
+            out.writeInt(result.numberOfMethodParameters());
+        }
+    }
+}
@@ -0,0 +1,533 @@
+package dataclump;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
+import com.intellij.lang.javascript.psi.ecmal4.JSClass;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptor;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import dataclump.listener.FileChangeQueue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * This class is an action that refactors all data clumps of a full analysis report at once.
+ * Data clumps that share the same properties, with the same names and types, are grouped, so that one class is
+ * extracted per group and used by all elements of the group. The groups are refactored in a fixed order in a
+ * cancellable background task, each group as its own command on the EDT. A group that fails is rolled back, so that
+ * its changes are not left half applied. The changed files are inspected again once the whole batch is done.
+ */
+public class BatchRefactoring extends AnAction {
+
+    /**
+     * Represents a data clump of the report
+     *
+     * @param fromFilePath  the path of the file containing the first element
+     * @param fromKey       the qualified name of the first element
+     * @param toFilePath    the path of the file containing the second element
+     * @param toKey         the qualified name of the second element
+     * @param properties    the types of the properties that form the data clump, mapped to the property names
+     */
+    public record ReportedDataClump(String fromFilePath, String fromKey, String toFilePath, String toKey,
+                                    SortedMap<String, Set<String>> properties) {
+    }
+
+    /**
+     * Represents the data clumps that share the same properties and are refactored into one class.
+     * Properties are the same if they have the same name and the same types.
+     *
+     * @param properties the types of the shared properties, mapped to the property names
+     * @param elements   the elements that contain the properties
+     */
+    private record DataClumpGroup(SortedMap<String, Set<String>> properties,
+                                  LinkedHashSet<SmartPsiElementPointer<PsiElement>> elements) {
+
+        /**
+         * Returns the names of the shared properties
+         *
+         * @return the sorted names of the properties
+         */
+        SortedSet<String> propertyNames() {
+            return new TreeSet<>(properties.keySet());
+        }
+
+        /**
+         * Returns the shared properties with their types, used to order groups with the same property names
+         *
+         * @return the properties and their types
+         */
+        String signature() {
+            StringBuilder signature = new StringBuilder();
+            properties.forEach((name, types) -> signature.append(name).append(':').append(String.join("|", new TreeSet<>(types))).append(','));
+            return signature.toString();
+        }
+    }
+
+    /**
+     * Called when the action is performed. It refactors the data clumps of the last full analysis or opens a file
+     * chooser dialog and lets the user choose the report of a full analysis, then refactors all data clumps of the report.
+     *
+     * @param event the action event
+     */
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+
+        Project project = event.getProject();
+        if (project == null) return;
+
+        List<ReportedDataClump> dataClumps;
+        if (!FullAnalysis.getDataClumps().isEmpty() && Messages.showYesNoDialog(project, "Refactor the data clumps of the last full analysis?", "Batch Refactoring", null) == Messages.YES) {
+            dataClumps = fromAnalysis(FullAnalysis.getDataClumps().values());
+        } else {
+            // open file chooser dialog and let the user choose a report
+            FileChooserDescriptor descriptor = FileChooserDescriptorFactory.createSingleFileDescriptor("json");
+            descriptor.setTitle("Choose a Full Analysis Report");
+            descriptor.setDescription("All data clumps of the report will be refactored");
+            VirtualFile report = FileChooser.chooseFile(descriptor, project, null);
+
+            // if no report was selected, show an info message and cancel the operation
+            if (report == null) {
+                Messages.showInfoMessage("No report selected", "Info");
+                return;
+            }
+
+            dataClumps = readReport(report.getPath());
+            if (dataClumps == null) {
+                Messages.showErrorDialog(project, "The report could not be read", "Error");
+                return;
+            }
+        }
+
+        // ensure that the Index is built before the elements of the report are resolved
+        List<ReportedDataClump> finalDataClumps = dataClumps;
+        Index.getInstance(project).whenBuilt().thenAccept(index -> ApplicationManager.getApplication().invokeLater(() -> run(project, finalDataClumps), project.getDisposed()));
+    }
+
+    /**
+     * Returns the data clumps of the last full analysis, so that they can be refactored without reading the report
+     *
+     * @param dataClumps the data clumps of the full analysis
+     * @return the data clumps to refactor
+     */
+    public static List<ReportedDataClump> fromAnalysis(Collection<ReportFormat.DataClumpTypeContext> dataClumps) {
+        List<ReportedDataClump> result = new ArrayList<>();
+        for (ReportFormat.DataClumpTypeContext context : dataClumps) {
+            result.add(new ReportedDataClump(
+                    context.fromFilePath(),
+                    context.fromMethodKey() != null ? context.fromMethodKey() : context.fromClassOrInterfaceKey(),
+                    context.toFilePath(),
+                    context.toMethodKey() != null ? context.toMethodKey() : context.toClassOrInterfaceKey(),
+                    getTypes(context.dataClumpData())
+            ));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the types of the properties of a data clump of the full analysis
+     *
+     * @param dataClumpData the properties of the data clump mapped to their names
+     * @return the types of the properties mapped to their names
+     */
+    private static SortedMap<String, Set<String>> getTypes(Map<String, ReportFormat.DataClumpsVariableFromContext> dataClumpData) {
+        SortedMap<String, Set<String>> properties = new TreeMap<>();
+        dataClumpData.forEach((name, variable) -> properties.put(name, splitTypes(variable.type())));
+        return properties;
+    }
+
+    /**
+     * Splits the types of a property as written to the report, the inverse of {@link Property#getTypesAsString()}
+     *
+     * @param types the types separated by '|', may be null
+     * @return the types
+     */
+    private static Set<String> splitTypes(@Nullable String types) {
+        if (types == null || types.isEmpty()) return Set.of();
+        return new HashSet<>(Arrays.asList(types.split("\\|")));
+    }
+
+    /**
+     * Reads the data clumps from the JSON report written by the full analysis
+     *
+     * @param reportPath the path of the report
+     * @return the data clumps of the report or null if the report could not be read
+     */
+    static @Nullable List<ReportedDataClump> readReport(String reportPath) {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode root;
+        try {
+            root = mapper.readTree(new File(reportPath));
+        } catch (IOException e) {
+            CodeSmellLogger.error("Error reading report " + reportPath, e);
+            return null;
+        }
+
+        JsonNode dataClumps = root.get("dataClumps");
+        if (dataClumps == null) dataClumps = root.get("data_clumps");
+        if (dataClumps == null || !dataClumps.isObject()) return null;
+
+        List<ReportedDataClump> result = new ArrayList<>();
+        for (JsonNode dataClump : dataClumps) {
+            JsonNode data = getField(dataClump, "dataClumpData", "data_clump_data");
+            if (data == null) continue;
+
+            SortedMap<String, Set<String>> properties = new TreeMap<>();
+            data.fields().forEachRemaining(field -> properties.put(field.getKey(), splitTypes(getText(field.getValue(), "type"))));
+
+            String fromKey = getText(dataClump, "fromMethodKey", "from_method_key");
+            if (fromKey == null) fromKey = getText(dataClump, "fromClassOrInterfaceKey", "from_class_or_interface_key");
+            String toKey = getText(dataClump, "toMethodKey", "to_method_key");
+            if (toKey == null) toKey = getText(dataClump, "toClassOrInterfaceKey", "to_class_or_interface_key");
+
+            result.add(new ReportedDataClump(
+                    getText(dataClump, "fromFilePath", "from_file_path"),
+                    fromKey,
+                    getText(dataClump, "toFilePath", "to_file_path"),
+                    toKey,
+                    properties
+            ));
+        }
+        return result;
+    }
+
+    /**
+     * Refactors the given data clumps in a cancellable background task. The data clumps are grouped by their
+     * properties and each group is refactored into one new class in its own transaction. Larger groups are refactored
+     * first. Elements that were changed by an earlier group and no longer contain all properties of their group are
+     * skipped. If a group fails or one of its edits fails, the files it changed are restored from its journal and the
+     * group is reported as failed. Must be called on the EDT.
+     *
+     * @param project    the project
+     * @param dataClumps the data clumps to refactor
+     */
+    public static void run(Project project, List<ReportedDataClump> dataClumps) {
+
+        if (!Index.getInstance(project).isIndexBuilt()) {
+            CodeSmellLogger.error("Index not built", new IllegalStateException());
+            return;
+        }
+
+        // the failed groups are rolled back from their journal, which cannot be written while another one exists
+        if (!RefactoringRecovery.recover(project, "An interrupted refactoring must be recovered before the batch refactoring starts.")) {
+            return;
+        }
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Batch Refactoring", true) {
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                refactorGroups(project, dataClumps, indicator);
+            }
+        });
+    }
+
+    /**
+     * Refactors the groups of the given data clumps one after another. The groups are prepared in the calling thread,
+     * only the transaction of each group runs on the EDT, since its modifications form one command. A cancellation
+     * takes effect between two groups, so that no group is left half applied, and the remaining groups are skipped.
+     * Must not be called on the EDT.
+     *
+     * @param project    the project
+     * @param dataClumps the data clumps to refactor
+     * @param indicator  the indicator showing the progress of the batch
+     */
+    private static void refactorGroups(Project project, List<ReportedDataClump> dataClumps, ProgressIndicator indicator) {
+
+        indicator.setIndeterminate(false);
+        indicator.setText("Grouping data clumps...");
+        List<DataClumpGroup> groups = groupDataClumps(project, dataClumps);
+        CodeSmellLogger.info("Refactoring " + dataClumps.size() + " data clumps in " + groups.size() + " groups...");
+
+        int refactoredGroups = 0;
+        int skippedGroups = 0;
+        List<SortedSet<String>> failedGroups = new ArrayList<>();
+
+        // the changed files are inspected again after the whole batch is done
+        FileChangeQueue.getInstance(project).suspend();
+        try {
+            for (int i = 0; i < groups.size(); i++) {
+                DataClumpGroup group = groups.get(i);
+
+                if (indicator.isCanceled()) {
+                    CodeSmellLogger.info("Batch refactoring canceled, skipping " + (groups.size() - i) + " data clumps.");
+                    skippedGroups += groups.size() - i;
+                    break;
+                }
+                indicator.setFraction((double) i / groups.size());
+                indicator.setText("Refactoring data clump " + (i + 1) + " of " + groups.size());
+                indicator.setText2(String.join(", ", group.propertyNames()));
+
+                // earlier groups may have changed the elements of this group
+                List<PsiElement> elements = getRefactorableElements(group);
+                if (elements.size() < 2) {
+                    CodeSmellLogger.info("Skipping data clump " + group.propertyNames() + ", less than two elements remain.");
+                    skippedGroups++;
+                    continue;
+                }
+
+                List<Property> properties = PsiUtil.runReadActionWithResult(() -> getProperties(elements.get(0), group.properties()));
+                PsiDirectory directory = PsiUtil.runReadActionWithResult(() -> elements.get(0).getContainingFile().getContainingDirectory());
+                String className = createClassName(directory, group.propertyNames());
+
+                if (Boolean.TRUE.equals(PsiUtil.executeInEDTAndWait(() -> refactorGroup(project, group, elements, properties, className, directory)))) {
+                    refactoredGroups++;
+                } else {
+                    failedGroups.add(group.propertyNames());
+                }
+            }
+        } finally {
+            FileChangeQueue.getInstance(project).resume();
+        }
+
+        CodeSmellLogger.info("Batch refactoring done.");
+        StringBuilder message = new StringBuilder("Refactored " + refactoredGroups + " data clumps, skipped " + skippedGroups + ".");
+        if (!failedGroups.isEmpty()) {
+            message.append("\n").append(failedGroups.size()).append(" data clumps failed and were rolled back:");
+            for (SortedSet<String> propertyNames : failedGroups) {
+                message.append("\n").append(String.join(", ", propertyNames));
+            }
+        }
+        ApplicationManager.getApplication().invokeLater(() -> Messages.showInfoMessage(project, message.toString(), "Batch Refactoring"), project.getDisposed());
+    }
+
+    /**
+     * Refactors one group in its own transaction. If the group fails or one of its edits fails, the group is rolled
+     * back. Must be called on the EDT.
+     *
+     * @param project    the project
+     * @param group      the group
+     * @param elements   the elements of the group that can still be refactored
+     * @param properties the properties of the first element that are extracted
+     * @param className  the name of the extracted class
+     * @param directory  the directory the class is created in
+     * @return true if the group was refactored, false if it failed and was rolled back
+     */
+    private static boolean refactorGroup(Project project, DataClumpGroup group, List<PsiElement> elements, List<Property> properties, String className, PsiDirectory directory) {
+
+        // each group has its own transaction, so that the pending edits of a failed group are dropped with it
+        RefactoringTransaction transaction = new RefactoringTransaction(project, "Refactor Data Clump " + className);
+        int failedEdits;
+        try {
+            failedEdits = transaction.run(() -> {
+                DataClumpRefactoring refactoring = new DataClumpRefactoring(elements.get(0), elements.get(1), properties);
+                refactoring.refactorWithoutDialog(transaction, elements, properties, className, directory);
+            });
+        } catch (Exception e) {
+            CodeSmellLogger.warn("Data clump " + group.propertyNames() + " could not be refactored, rolling back. \n" + e.getMessage() + "\n Continuing...");
+            // the journal of an earlier interrupted refactoring is not rolled back by this group
+            if (transaction.hasCreatedJournal()) rollBack(project);
+            return false;
+        }
+
+        // a group with failed edits keeps its journal, it is rolled back so that the next group can start
+        if (failedEdits > 0) {
+            CodeSmellLogger.warn("Data clump " + group.propertyNames() + " could not be refactored, " + failedEdits + " edits failed, rolling back. \n Continuing...");
+            rollBack(project);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Restores the files changed by the failed transaction of a group from its journal, so that the group does not
+     * leave half applied changes behind and the next group can start a new journal.
+     * Must only be called if the journal was created by the failed transaction.
+     *
+     * @param project the project
+     */
+    private static void rollBack(Project project) {
+        RefactoringJournal.Recovery recovery = RefactoringJournal.loadInterrupted(project);
+        if (recovery != null) recovery.rollBack();
+    }
+
+    /**
+     * Groups the data clumps by their properties and orders the groups. Larger groups come first, since they
+     * remove the most duplication. Groups of the same size are ordered by their properties.
+     *
+     * @param project    the project
+     * @param dataClumps the data clumps of the report
+     * @return the ordered groups
+     */
+    private static List<DataClumpGroup> groupDataClumps(Project project, List<ReportedDataClump> dataClumps) {
+
+        HashMap<String, PsiElement> elementsByKey = getElementsByKey(project);
+        SmartPointerManager pointerManager = SmartPointerManager.getInstance(project);
+
+        // sort the data clumps, so that the order of the elements in a group does not depend on the report
+        List<ReportedDataClump> sortedDataClumps = new ArrayList<>(dataClumps);
+        sortedDataClumps.sort(Comparator.comparing((ReportedDataClump dataClump) -> String.valueOf(dataClump.fromKey()))
+                .thenComparing(dataClump -> String.valueOf(dataClump.toKey())));
+
+        // properties with the same name but different types are not the same data clump
+        HashMap<SortedMap<String, Set<String>>, DataClumpGroup> groups = new HashMap<>();
+        for (ReportedDataClump dataClump : sortedDataClumps) {
+            PsiElement fromElement = elementsByKey.get(dataClump.fromFilePath() + "#" + dataClump.fromKey());
+            PsiElement toElement = elementsByKey.get(dataClump.toFilePath() + "#" + dataClump.toKey());
+            if (fromElement == null || toElement == null) {
+                CodeSmellLogger.warn("Elements of data clump " + dataClump.fromKey() + "-" + dataClump.toKey() + " not found.");
+                continue;
+            }
+
+            DataClumpGroup group = groups.computeIfAbsent(dataClump.properties(), properties -> new DataClumpGroup(properties, new LinkedHashSet<>()));
+            PsiUtil.runReadActionWithResult(() -> {
+                group.elements().add(pointerManager.createSmartPsiElementPointer(fromElement));
+                group.elements().add(pointerManager.createSmartPsiElementPointer(toElement));
+                return null;
+            });
+        }
+
+        List<DataClumpGroup> orderedGroups = new ArrayList<>(groups.values());
+        orderedGroups.sort(Comparator.comparingInt((DataClumpGroup group) -> -group.elements().size())
+                .thenComparing(group -> -group.propertyNames().size())
+                .thenComparing(DataClumpGroup::signature));
+        return orderedGroups;
+    }
+
+    /**
+     * Maps the classes, interfaces and functions of the index to the path of their file and their qualified name,
+     * which are the keys used by the report
+     *
+     * @param project the project
+     * @return the elements mapped to their key
+     */
+    private static HashMap<String, PsiElement> getElementsByKey(Project project) {
+        Index index = Index.getInstance(project);
+        List<PsiElement> elements = index.getElements();
+
+        HashMap<String, PsiElement> elementsByKey = new HashMap<>();
+        ApplicationManager.getApplication().runReadAction(() -> {
+            for (PsiElement element : elements) {
+                if (!element.isValid()) continue;
+                PsiFile file = element.getContainingFile();
+                if (file == null || file.getVirtualFile() == null) continue;
+                elementsByKey.put(file.getVirtualFile().getPath() + "#" + PsiUtil.getQualifiedName(element), element);
+            }
+        });
+        return elementsByKey;
+    }
+
+    /**
+     * Returns the elements of the group that still contain all properties of the group and can be refactored
+     *
+     * @param group the group
+     * @return the elements that can be refactored
+     */
+    private static List<PsiElement> getRefactorableElements(DataClumpGroup group) {
+        List<PsiElement> elements = new ArrayList<>();
+        for (SmartPsiElementPointer<PsiElement> pointer : group.elements()) {
+            PsiElement element = PsiUtil.runReadActionWithResult(pointer::getElement);
+            if (element == null || !(element instanceof JSClass || element instanceof TypeScriptFunction)) continue;
+            if (!PsiUtil.runReadActionWithResult(() -> element.isValid() && DetectionSnapshot.canRefactor(element)))
+                continue;
+            if (getProperties(element, group.properties()).size() != group.properties().size()) continue;
+            elements.add(element);
+        }
+        return elements;
+    }
+
+    /**
+     * Returns the properties of the element with the given names and types in the order they are declared in the element
+     *
+     * @param element         the element
+     * @param groupProperties the types of the properties mapped to their names
+     * @return the properties of the element with the given names and types
+     */
+    private static List<Property> getProperties(PsiElement element, Map<String, Set<String>> groupProperties) {
+        List<Property> properties = new ArrayList<>();
+        List<? extends Property> elementProperties = Index.getInstance(element).getProperties(element);
+        if (elementProperties == null) return properties;
+
+        for (Property property : elementProperties) {
+            Set<String> types = groupProperties.get(property.getName());
+            if (types != null && types.equals(property.getTypes())) properties.add(property);
+        }
+        return properties;
+    }
+
+    /**
+     * Creates the name of the extracted class from the names of the properties.
+     * A number is appended if a class with the same name already exists.
+     *
+     * @param directory     the directory the class is created in
+     * @param propertyNames the names of the extracted properties
+     * @return the name of the class
+     */
+    private static String createClassName(PsiDirectory directory, SortedSet<String> propertyNames) {
+        StringBuilder baseName = new StringBuilder();
+        for (String propertyName : propertyNames.stream().limit(3).toList()) {
+            String name = propertyName.replaceAll("[^a-zA-Z0-9_]", "");
+            if (name.isEmpty()) continue;
+            baseName.append(Character.toUpperCase(name.charAt(0))).append(name.substring(1));
+        }
+        baseName.append("Data");
+
+        Set<String> existingNames = new HashSet<>();
+        Index index = Index.getInstance(directory);
+        ApplicationManager.getApplication().runReadAction(() -> {
+            for (JSClass psiClass : index.getClasses()) {
+                if (psiClass.isValid()) existingNames.add(psiClass.getName());
+            }
+        });
+
+        String className = baseName.toString();
+        int count = 2;
+        while (existingNames.contains(className) || hasFile(directory, className + ".ts")) {
+            className = baseName.toString() + count++;
+        }
+        return className;
+    }
+
+    /**
+     * Checks if the directory contains a file with the given name
+     *
+     * @param directory the directory
+     * @param fileName  the name of the file
+     * @return true if the file exists, false otherwise
+     */
+    private static boolean hasFile(PsiDirectory directory, String fileName) {
+        return Boolean.TRUE.equals(PsiUtil.runReadActionWithResult(() -> directory.findFile(fileName) != null));
+    }
+
+    /**
+     * Returns the value of the field with one of the given names
+     *
+     * @param node  the JSON node
+     * @param names the possible names of the field
+     * @return the value or null if none of the fields exists
+     */
+    private static @Nullable JsonNode getField(JsonNode node, String... names) {
+        for (String name : names) {
+            JsonNode field = node.get(name);
+            if (field != null && !field.isNull()) return field;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the text of the field with one of the given names
+     *
+     * @param node  the JSON node
+     * @param names the possible names of the field
+     * @return the text or null if none of the fields exists
+     */
+    private static @Nullable String getText(JsonNode node, String... names) {
+        JsonNode field = getField(node, names);
+        return field == null ? null : field.asText();
+    }
+}
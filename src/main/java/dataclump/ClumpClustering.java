@@ -0,0 +1,60 @@
+package dataclump;
+
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
+import com.intellij.lang.javascript.psi.ecmal4.JSClass;
+import com.intellij.psi.PsiElement;
+import util.Index;
+import util.Property;
+import util.PsiUtil;
+
+import java.util.*;
+
+/**
+ * Finds the groups of elements in the index that share a property set, so that a data clump can be refactored for
+ * all of its occurrences at once instead of pair by pair.
+ */
+public class ClumpClustering {
+
+    /**
+     * Returns all elements of the index that contain every one of the given properties.
+     * This is the maximal group of elements that form a data clump with these properties.
+     *
+     * @param index      the index to search
+     * @param properties the shared properties
+     * @return the elements containing all properties, ordered by their qualified name
+     */
+    public static List<PsiElement> getCluster(Index index, List<? extends Property> properties) {
+        if (properties.isEmpty()) return new ArrayList<>();
+
+        HashMap<PsiElement, Integer> sharedProperties = index.countSharedProperties(properties);
+
+        List<PsiElement> cluster = new ArrayList<>();
+        for (PsiElement element : sharedProperties.keySet()) {
+            if (sharedProperties.get(element) == properties.size()) cluster.add(element);
+        }
+        cluster.sort(Comparator.comparing(element -> String.valueOf(PsiUtil.getQualifiedName(element))));
+        return cluster;
+    }
+
+    /**
+     * Returns the elements of the cluster of the given properties that can be refactored automatically.
+     * The two elements the data clump was found between come first, since the new class is created next to them.
+     *
+     * @param currentElement the first element that contains the data clump
+     * @param otherElement   the second element that contains the data clump
+     * @param properties     the shared properties
+     * @return the elements to refactor
+     */
+    public static List<PsiElement> getRefactorableCluster(PsiElement currentElement, PsiElement otherElement, List<? extends Property> properties) {
+        List<PsiElement> elements = new ArrayList<>(List.of(currentElement, otherElement));
+
+        for (PsiElement element : getCluster(Index.getInstance(currentElement), properties)) {
+            if (elements.contains(element)) continue;
+            if (!(element instanceof JSClass || element instanceof TypeScriptFunction)) continue;
+            if (Boolean.TRUE.equals(PsiUtil.runReadActionWithResult(() -> element.isValid() && DetectionSnapshot.canRefactor(element)))) {
+                elements.add(element);
+            }
+        }
+        return elements;
+    }
+}
@@ -3,7 +3,9 @@ package dataclump;
 import com.intellij.lang.javascript.psi.ecma6.*;
 import com.intellij.lang.javascript.psi.ecmal4.JSClass;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.psi.PsiElement;
+import dataclump.listener.FileChangeQueue;
 import evoluation.DiagnosticTool;
 import util.*;
 import com.intellij.codeInspection.*;
@@ -15,6 +17,7 @@ import org.jetbrains.annotations.NotNull;
 import Settings.DataClumpSettings;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The Data Clump Detection Inspection.
@@ -24,6 +27,26 @@ import java.util.*;
  */
 public class DataClumpDetection extends LocalInspectionTool {
 
+    /**
+     * The maximum number of index postings that are visited synchronously in one highlighting pass.
+     * Elements that would exceed this budget are detected in a background pass instead.
+     */
+    private static final int MAX_POSTINGS_PER_PASS = 5000;
+
+    /**
+     * The result of a detection pass
+     *
+     * @param element           the inspected element
+     * @param properties        the properties of the inspected element
+     * @param dataClumps        the data clumps mapped to the element they are formed with
+     * @param snapshot          the snapshot of the PSI the data clumps were computed on
+     * @param modificationCount the PSI modification count of the project when the detection was started
+     */
+    public record DetectionResult(PsiElement element, List<? extends Property> properties,
+                                  HashMap<PsiElement, List<Property>> dataClumps, DetectionSnapshot snapshot,
+                                  long modificationCount) {
+    }
+
     /**
      * Build the visitor for the inspection
      *
@@ -33,6 +56,12 @@ public class DataClumpDetection extends LocalInspectionTool {
      */
     @Override
     public @NotNull PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
+
+        // the remaining amount of postings that can be visited in this pass
+        // only on the fly highlighting is limited, since it should not be affected by the size of the index
+        AtomicInteger budget = new AtomicInteger(isOnTheFly ? MAX_POSTINGS_PER_PASS : Integer.MAX_VALUE);
+        Index index = Index.getInstance(holder.getProject());
+
         return new JSElementVisitor() {
 
             /**
@@ -51,15 +80,31 @@ public class DataClumpDetection extends LocalInspectionTool {
                 // Skip constructors
                 if (PsiUtil.runReadActionWithResult(psiFunction::isConstructor)) return;
                 // Update the index
-                Index.updateFunction(psiFunction);
+                List<? extends Property> oldProperties = index.getProperties(psiFunction);
+                index.updateFunction(psiFunction);
+                rememberSignatureChange(psiFunction, oldProperties);
                 // Detect data clumps if the number of parameters is greater than the required minimum
-                List<Parameter> parameters = Index.getFunctionsToParameters().get(psiFunction);
+                List<Parameter> parameters = index.getParameters(psiFunction);
                 if (parameters != null && parameters.size() >= Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties) {
-                    detectDataClump(psiFunction, holder, false);
+                    detectDataClumpWithinBudget(psiFunction, holder, budget);
                 }
                 super.visitJSParameterList(parameterList);
             }
 
+            /**
+             * Passes a change of the signature of the element in the index to the queue of changed files. The queue
+             * only processes the file once it is saved, when the index already holds the new signature, and
+             * highlights the files of the elements that shared properties with the old signature again.
+             *
+             * @param element       the updated element
+             * @param oldProperties the properties of the element in the index before the update
+             */
+            private void rememberSignatureChange(PsiElement element, List<? extends Property> oldProperties) {
+                if (!Index.hasSameSignature(oldProperties, index.getProperties(element))) {
+                    FileChangeQueue.getInstance(holder.getProject()).signatureChanged(element, oldProperties);
+                }
+            }
+
             /**
              * Visit the class and detect data clumps. Also update the index.
              * This function is called automatically whenever a class is visited (edited/open).
@@ -70,11 +115,13 @@ public class DataClumpDetection extends LocalInspectionTool {
             public void visitTypeScriptClass(@NotNull TypeScriptClass TypeScriptClass) {
 
                 // Update the index
-                Index.updateClass(TypeScriptClass);
+                List<? extends Property> oldProperties = index.getProperties(TypeScriptClass);
+                index.updateClass(TypeScriptClass);
+                rememberSignatureChange(TypeScriptClass, oldProperties);
                 // Detect data clumps if the number of properties is greater than the required minimum
-                List<Classfield> classfields = Index.getClassesToClassFields().get(TypeScriptClass);
+                List<Classfield> classfields = index.getClassfields(TypeScriptClass);
                 if (classfields != null && classfields.size() >= Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties) {
-                    detectDataClump(TypeScriptClass, holder, false);
+                    detectDataClumpWithinBudget(TypeScriptClass, holder, budget);
                 }
                 super.visitTypeScriptClass(TypeScriptClass);
             }
@@ -87,17 +134,55 @@ public class DataClumpDetection extends LocalInspectionTool {
              */
             @Override
             public void visitTypeScriptInterface(@NotNull TypeScriptInterface typeScriptInterface) {
-                Index.updateClass(typeScriptInterface);
+                List<? extends Property> oldProperties = index.getProperties(typeScriptInterface);
+                index.updateClass(typeScriptInterface);
+                rememberSignatureChange(typeScriptInterface, oldProperties);
 
-                List<Classfield> classfields = Index.getClassesToClassFields().get(typeScriptInterface);
+                List<Classfield> classfields = index.getClassfields(typeScriptInterface);
                 if (classfields != null && classfields.size() >= Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties) {
-                    detectDataClump(typeScriptInterface, holder, false);
+                    detectDataClumpWithinBudget(typeScriptInterface, holder, budget);
                 }
                 super.visitTypeScriptInterface(typeScriptInterface);
             }
         };
     }
 
+    /**
+     * Detect data clumps in the current element if the estimated work fits into the remaining budget of the pass.
+     * Otherwise, the detection is deferred to a background pass that triggers the highlighting again once it is done.
+     * Up-to-date results of such a background pass are used instead of detecting again.
+     *
+     * @param currentElement the current element
+     * @param holder         the problems holder
+     * @param budget         the remaining amount of postings that can be visited in this pass
+     */
+    private void detectDataClumpWithinBudget(PsiElement currentElement, ProblemsHolder holder, AtomicInteger budget) {
+
+        long start = 0;
+        if (DiagnosticTool.DIAGNOSTIC_MODE) {
+            start = System.nanoTime();
+        }
+
+        DetectionResult deferredResult = DeferredDetection.takeResult(currentElement);
+        if (deferredResult != null) {
+            processPotentialDataClumps(deferredResult, holder, start, false);
+            return;
+        }
+
+        Index index = Index.getInstance(currentElement);
+        List<? extends Property> properties = index.getProperties(currentElement);
+        if (properties == null) return;
+
+        int cost = estimateCost(index, properties);
+        if (cost > budget.get()) {
+            DeferredDetection.schedule(this, currentElement);
+            return;
+        }
+        budget.addAndGet(-cost);
+
+        detectDataClump(currentElement, holder, false);
+    }
+
     /**
      * Detect data clumps in the current element
      *
@@ -112,35 +197,102 @@ public class DataClumpDetection extends LocalInspectionTool {
             start = System.nanoTime();
         }
 
+        DetectionResult result = computeDataClumps(currentElement, 0);
+        if (result == null) return;
+
+        processPotentialDataClumps(result, holder, start, report);
+    }
+
+    /**
+     * Compute the data clumps of the current element.
+     * The candidates are first collected from the index, then everything needed from the PSI is collected in one
+     * read action and the data clumps are computed on that snapshot without holding the read lock.
+     * The computation checks for cancellation, so it can be used in highlighting and background passes.
+     *
+     * @param currentElement    the current element
+     * @param modificationCount the PSI modification count of the project when the detection was started
+     * @return the result of the detection or null if the element is not in the index or no longer valid
+     */
+    DetectionResult computeDataClumps(PsiElement currentElement, long modificationCount) {
+
+        Index index = Index.getInstance(currentElement);
+        List<? extends Property> currentElementsProperties = index.getProperties(currentElement);
+        if (currentElementsProperties == null) return null;
+
+        Set<PsiElement> candidates = collectCandidates(index, currentElement, currentElementsProperties);
+        DetectionSnapshot snapshot = DetectionSnapshot.create(currentElement, currentElementsProperties, candidates);
+
+        // the current element was deleted in the meantime -> nothing to detect
+        if (!snapshot.isValid(currentElement)) return null;
+
+        // remove elements that are no longer valid from the index
+        for (PsiElement candidate : candidates) {
+            if (!snapshot.isValid(candidate)) index.removeElement(candidate);
+        }
+
         HashMap<PsiElement, List<Property>> potentialDataClumps = new HashMap<>();
 
         if (currentElement instanceof JSClass currentClass) {
-            potentialDataClumps = calculatePotentialDataClumpsForClass(currentClass);
+            potentialDataClumps = calculatePotentialDataClumpsForClass(index, currentClass, candidates, snapshot);
         } else if (currentElement instanceof TypeScriptFunction currentFunction) {
-            potentialDataClumps = calculatePotentialDataClumpsForFunction(currentFunction);
+            potentialDataClumps = calculatePotentialDataClumpsForFunction(index, currentFunction, candidates, snapshot);
         }
 
-        processPotentialDataClumps(potentialDataClumps, holder, currentElement, start, report);
+        return new DetectionResult(currentElement, currentElementsProperties, potentialDataClumps, snapshot, modificationCount);
     }
 
     /**
-     * Process the potential data clumps and mark them as data clumps if they meet the required conditions
+     * Estimates the work of a detection by the number of postings that have to be visited
      *
-     * @param potentialDataClumps the potential data clumps
-     * @param holder              the problems holder
-     * @param currentElement      the current element
-     * @param start               the start time of the detection
-     * @param report              if the data clumps should be reported to the full analysis
+     * @param index      the index of the project of the element
+     * @param properties the properties of the element
+     * @return the number of postings of the properties
      */
-    private void processPotentialDataClumps(HashMap<PsiElement, List<Property>> potentialDataClumps, ProblemsHolder holder, PsiElement currentElement, long start, boolean report) {
+    private int estimateCost(Index index, List<? extends Property> properties) {
+        int cost = 0;
+        for (Property property : properties) {
+            cost += index.countPostings(property);
+        }
+        return cost;
+    }
+
+    /**
+     * Collects the elements that share at least the required minimum of properties with the current element.
+     * Only the index is used, so the result is a superset of the elements that form a data clump with the current element.
+     *
+     * @param index                     the index of the project of the current element
+     * @param currentElement            the current element
+     * @param currentElementsProperties the properties of the current element
+     * @return the candidates for a data clump
+     */
+    private Set<PsiElement> collectCandidates(Index index, PsiElement currentElement, List<? extends Property> currentElementsProperties) {
 
-        List<Property> currentElementsProperties = new ArrayList<>();
+        HashMap<PsiElement, Integer> sharedProperties = index.countSharedProperties(currentElementsProperties);
 
-        if (currentElement instanceof JSClass currentClass) {
-            currentElementsProperties = new ArrayList<>(Index.getClassesToClassFields().get(currentClass));
-        } else if (currentElement instanceof TypeScriptFunction currentFunction) {
-            currentElementsProperties = new ArrayList<>(Index.getFunctionsToParameters().get(currentFunction));
+        int minNumberOfProperties = Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties;
+        Set<PsiElement> candidates = new HashSet<>();
+        for (PsiElement otherElement : sharedProperties.keySet()) {
+            if (otherElement != currentElement && sharedProperties.get(otherElement) >= minNumberOfProperties) {
+                candidates.add(otherElement);
+            }
         }
+        return candidates;
+    }
+
+    /**
+     * Process the potential data clumps and mark them as data clumps if they meet the required conditions
+     *
+     * @param result the result of the detection containing the potential data clumps
+     * @param holder the problems holder
+     * @param start  the start time of the detection
+     * @param report if the data clumps should be reported to the full analysis
+     */
+    private void processPotentialDataClumps(DetectionResult result, ProblemsHolder holder, long start, boolean report) {
+
+        HashMap<PsiElement, List<Property>> potentialDataClumps = result.dataClumps();
+        PsiElement currentElement = result.element();
+        List<? extends Property> currentElementsProperties = result.properties();
+        DetectionSnapshot snapshot = result.snapshot();
 
         for (PsiElement otherElement : potentialDataClumps.keySet()) {
             List<Property> matchingProperties = potentialDataClumps.get(otherElement);
@@ -155,26 +307,20 @@ public class DataClumpDetection extends LocalInspectionTool {
                     }
                 }
 
+                String currentElementType = currentElement instanceof JSClass ? "class" : "function";
+                String otherElementType = otherElement instanceof JSClass ? "class" : "function";
+                String description = "Data Clump between " + currentElementType + " " + snapshot.getQualifiedName(currentElement) + " and " + otherElementType + " " + snapshot.getQualifiedName(otherElement) + ". Matching Properties " + matchingProperties + ".";
+                boolean canRefactor = snapshot.canBeRefactored(currentElement) && snapshot.canBeRefactored(otherElement);
+
                 // mark the data clump as a problem
                 for (Property property : currentElementsProperties) {
                     if (matchingProperties.contains(property)) {
 
-                        PsiElement dataClumpElement;
-                        if (currentElement instanceof JSClass currentClass) {
-                            dataClumpElement = PsiUtil.getPsiField(currentClass, (Classfield) property);
-                        } else {
-                            TypeScriptFunction currentFunction = (TypeScriptFunction) currentElement;
-                            dataClumpElement = PsiUtil.getPsiParameter(currentFunction, property);
-                        }
-
+                        PsiElement dataClumpElement = snapshot.getPsiProperty(property);
                         assert dataClumpElement != null;
 
-                        String currentElementType = currentElement instanceof JSClass ? "class" : "function";
-                        String otherElementType = otherElement instanceof JSClass ? "class" : "function";
-
-                        String description = "Data Clump between " + currentElementType + " " + PsiUtil.getQualifiedName(currentElement) + " and " + otherElementType + " " + PsiUtil.getQualifiedName(otherElement) + ". Matching Properties " + matchingProperties + ".";
                         ApplicationManager.getApplication().runReadAction(() -> {
-                            if (canRefactor(currentElement) && canRefactor(otherElement)) {
+                            if (canRefactor) {
                                 holder.registerProblem(dataClumpElement, description, new DataClumpRefactoring(currentElement, otherElement, new ArrayList<>(matchingProperties)));
                             } else {
                                 holder.registerProblem(dataClumpElement, description + " This data clump can not be refactored automatically.");
@@ -187,74 +333,44 @@ public class DataClumpDetection extends LocalInspectionTool {
                 if (DiagnosticTool.DETECTION_ENABLED) {
                     long end = System.nanoTime();
                     long time = end - start;
-                    DiagnosticTool.addMeasurement(new DiagnosticTool.DetectionMeasurement(Index.getProject(), time, ReportFormat.getDataClumpsTypeContext(currentElement, otherElement, matchingProperties)));
+                    DiagnosticTool.addMeasurement(new DiagnosticTool.DetectionMeasurement(holder.getProject(), time, ReportFormat.getDataClumpsTypeContext(currentElement, otherElement, matchingProperties)));
                 }
             }
         }
 
     }
 
-    /**
-     * Check if the element can be refactored automatically. If the element is part of an interface or
-     * if the function is overridden, it can not be refactored.
-     *
-     * @param element the element
-     * @return true if the element can be refactored, false otherwise
-     */
-    private boolean canRefactor(PsiElement element) {
-        // if the element is part of an interface, it can not be refactored
-        // functions that are overridden can not be refactored since the overridden functions would be affected
-        if (element instanceof TypeScriptFunction function) {
-            if (isOverwritten(function)) return false;
-            JSClass containingClass = PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.getParentOfType(element, JSClass.class));
-            return !(containingClass instanceof TypeScriptInterface);
-        } else return !(element instanceof TypeScriptInterface);
-    }
-
-    /**
-     * Check if the function is overridden by another function
-     *
-     * @param function the function
-     * @return true if the function is overridden by another function, false otherwise
-     */
-    private boolean isOverwritten(TypeScriptFunction function) {
-        List<JSClass> classesWithFunction = Index.getFunctionNamesToClasses().get(function.getName());
-        if (classesWithFunction == null) return false;
-        for (JSClass psiClass : classesWithFunction) {
-            if (!psiClass.isValid()) continue; //TODO implement a proper removal option for invalid/ deleted classes
-            TypeScriptFunction otherFunction = PsiUtil.runReadActionWithResult(() -> (TypeScriptFunction) psiClass.findFunctionByName(function.getName()));
-            if (otherFunction != null && isOverriding(function, otherFunction)) return true;
-        }
-        return false;
-    }
-
     /**
      * Calculate the potential data clumps for a class
      *
+     * @param index        the index of the project of the current class
      * @param currentClass the current class
+     * @param candidates   the candidates for a data clump
+     * @param snapshot     the snapshot of the PSI
      * @return the potential data clumps for the class. The key is the other class or function
      * and the value is the matching properties with the current class
      */
-    private HashMap<PsiElement, List<Property>> calculatePotentialDataClumpsForClass(JSClass currentClass) {
+    private HashMap<PsiElement, List<Property>> calculatePotentialDataClumpsForClass(Index index, JSClass currentClass, Set<PsiElement> candidates, DetectionSnapshot snapshot) {
 
         HashMap<PsiElement, List<Property>> potentialDataClumps = new HashMap<>();
 
         // iterate over the class fields of the current class
-        for (Classfield classfield : Index.getClassesToClassFields().get(currentClass)) {
-            if (!checkField(currentClass, classfield)) continue;
+        for (Classfield classfield : Objects.requireNonNullElse(index.getClassfields(currentClass), List.<Classfield>of())) {
+            ProgressManager.checkCanceled();
+            if (!snapshot.isCandidateField(currentClass, classfield)) continue;
 
             // iterate over the classes that have the same class field
-            for (JSClass otherClass : new ArrayList<>(Index.getPropertiesToClasses().get(classfield))) {
+            for (JSClass otherClass : index.getClassesWithProperty(classfield)) {
 
-                if (!check(currentClass, otherClass)) continue;
+                if (!candidates.contains(otherClass) || !check(currentClass, otherClass, snapshot)) continue;
 
-                List<Classfield> classfieldList = Index.getClassesToClassFields().get(otherClass);
-                if (classfieldList.contains(classfield)) {
+                List<Classfield> classfieldList = index.getClassfields(otherClass);
+                if (classfieldList != null && classfieldList.contains(classfield)) {
                     Classfield otherClassfield = classfieldList.get(classfieldList.indexOf(classfield));
 
-                    if (!checkField(otherClass, otherClassfield) // make sure the field is a valid candidate for a data clump
+                    if (!snapshot.isCandidateField(otherClass, otherClassfield) // make sure the field is a valid candidate for a data clump
                             || !classfield.matches(otherClassfield) // make sure the fields match and are not only equal
-                            || inheritedBySameInterface(otherClass, currentClass, classfield))  // make sure the fields are not inherited by the same interface
+                            || snapshot.inheritedBySameInterface(otherClass, currentClass, classfield.getName()))  // make sure the fields are not inherited by the same interface
                         continue;
 
                     if (!potentialDataClumps.containsKey(otherClass)) {
@@ -264,10 +380,9 @@ public class DataClumpDetection extends LocalInspectionTool {
                 }
             }
 
-            if (!Index.getPropertiesToFunctions().containsKey(classfield)) continue;
             // iterate over the functions that have the same class field
-            for (TypeScriptFunction otherFunction : new ArrayList<>(Index.getPropertiesToFunctions().get(classfield))) {
-                if (!check(currentClass, otherFunction)) continue;
+            for (TypeScriptFunction otherFunction : index.getFunctionsWithProperty(classfield)) {
+                if (!candidates.contains(otherFunction) || !check(currentClass, otherFunction, snapshot)) continue;
 
                 if (!potentialDataClumps.containsKey(otherFunction)) {
                     potentialDataClumps.put(otherFunction, new ArrayList<>());
@@ -281,30 +396,32 @@ public class DataClumpDetection extends LocalInspectionTool {
     /**
      * Calculate the potential data clumps for a function
      *
+     * @param index           the index of the project of the current function
      * @param currentFunction the current function
+     * @param candidates      the candidates for a data clump
+     * @param snapshot        the snapshot of the PSI
      * @return the potential data clumps for the function. The key is the other class or function
      * and the value is the matching properties with the current function
      */
-    private HashMap<PsiElement, List<Property>> calculatePotentialDataClumpsForFunction(TypeScriptFunction currentFunction) {
+    private HashMap<PsiElement, List<Property>> calculatePotentialDataClumpsForFunction(Index index, TypeScriptFunction currentFunction, Set<PsiElement> candidates, DetectionSnapshot snapshot) {
 
         HashMap<PsiElement, List<Property>> potentialDataClumps = new HashMap<>();
 
-        for (Parameter parameter : Index.getFunctionsToParameters().get(currentFunction)) {
-            for (TypeScriptFunction otherFunction : new ArrayList<>(Index.getPropertiesToFunctions().get(parameter))) {
-                if (!check(currentFunction, otherFunction)) continue;
+        for (Parameter parameter : Objects.requireNonNullElse(index.getParameters(currentFunction), List.<Parameter>of())) {
+            ProgressManager.checkCanceled();
+            for (TypeScriptFunction otherFunction : index.getFunctionsWithProperty(parameter)) {
+                if (!candidates.contains(otherFunction) || !check(currentFunction, otherFunction, snapshot)) continue;
                 if (!potentialDataClumps.containsKey(otherFunction)) {
                     potentialDataClumps.put(otherFunction, new ArrayList<>());
                 }
                 potentialDataClumps.get(otherFunction).add(parameter);
             }
 
-            if (!Index.getPropertiesToClasses().containsKey(parameter)) continue;
-            for (JSClass otherClass : new ArrayList<>(Index.getPropertiesToClasses().get(parameter))) {
-                if (!check(currentFunction, otherClass)) continue;
+            for (JSClass otherClass : index.getClassesWithProperty(parameter)) {
+                if (!candidates.contains(otherClass) || !check(currentFunction, otherClass, snapshot)) continue;
 
-                Classfield classfield = Index.getMatchingClassFieldForClass(otherClass, parameter);
-                assert classfield != null;
-                if (!checkField(otherClass, classfield)) continue;
+                Classfield classfield = index.getMatchingClassFieldForClass(otherClass, parameter);
+                if (classfield == null || !snapshot.isCandidateField(otherClass, classfield)) continue;
 
                 if (!potentialDataClumps.containsKey(otherClass)) {
                     potentialDataClumps.put(otherClass, new ArrayList<>());
@@ -315,143 +432,26 @@ public class DataClumpDetection extends LocalInspectionTool {
         return potentialDataClumps;
     }
 
-    /**
-     * Check if the field is inherited by the same interface in the two classes
-     *
-     * @param currentClass the first class containing the field
-     * @param otherClass   the second class containing the field
-     * @param classfield   the field
-     * @return true if the field is inherited by the same interface in the two classes, false otherwise
-     */
-    private boolean inheritedBySameInterface(JSClass currentClass, JSClass otherClass, Classfield classfield) {
-        List<JSClass> commonClasses = getCommonClassesInHierarchy(currentClass, otherClass);
-
-        for (JSClass commonClass : commonClasses) {
-            if (commonClass instanceof TypeScriptInterface && PsiUtil.runReadActionWithResult(() -> commonClass.findFieldByName(classfield.getName()) != null)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Check if the field of a class should be compared for data clumps
-     *
-     * @param psiClass   the class
-     * @param classfield the field
-     * @return true if the field should be compared, false otherwise
-     */
-    private boolean checkField(JSClass psiClass, Classfield classfield) {
-        if (PsiUtil.runReadActionWithResult(classfield::isStatic)) return false;
-
-        PsiElement psiField = PsiUtil.getPsiField(psiClass, classfield);
-        if (psiField == null) return false;
-
-        return PsiUtil.runReadActionWithResult(psiField::isValid);
-    }
-
     /**
      * Check if the two elements should be compared for data clumps
      *
      * @param element1 the first element
      * @param element2 the second element
+     * @param snapshot the snapshot of the PSI
      * @return true if the elements should be compared, false otherwise
      */
-    private boolean check(PsiElement element1, PsiElement element2) {
+    private boolean check(PsiElement element1, PsiElement element2, DetectionSnapshot snapshot) {
 
-        if (!PsiUtil.runReadActionWithResult(element1::isValid)) {
-            Index.removeElement(element2);
-            return false;
-        }
-        if (!PsiUtil.runReadActionWithResult(element2::isValid)) {
-            Index.removeElement(element2);
-            return false;
-        }
+        if (!snapshot.isValid(element1) || !snapshot.isValid(element2)) return false;
         if (element1 == element2) return false;
 
         boolean check = true;
 
         if (element1 instanceof TypeScriptFunction function1 && element2 instanceof TypeScriptFunction function2) {
-            check = !isOverriding(function1, function2);
+            check = !snapshot.isOverriding(function1, function2);
         }
 
         return check;
     }
 
-    /**
-     * Check if the two functions are overriding each other or the same function in the hierarchy
-     *
-     * @param function1 the first function
-     * @param function2 the second function
-     * @return true if the functions are overriding each other, false otherwise
-     */
-    private boolean isOverriding(TypeScriptFunction function1, TypeScriptFunction function2) {
-
-        if (!Objects.equals(PsiUtil.getName(function1), PsiUtil.getName(function2))) return false;
-        JSClass containingClass1 = PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.getParentOfType(function1, JSClass.class));
-        if (containingClass1 == null) return false;
-        JSClass containingClass2 = PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.getParentOfType(function2, JSClass.class));
-        if (containingClass2 == null) return false;
-        if (containingClass1 == containingClass2) return false;
-
-        List<JSClass> commonClasses = new ArrayList<>(getCommonClassesInHierarchy(containingClass1, containingClass2));
-        for (JSClass commonClass : commonClasses) {
-            if (PsiUtil.runReadActionWithResult(() -> commonClass.findFunctionByName(function1.getName()) != null)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Get the common classes in the hierarchy of the two classes
-     *
-     * @param class1 the first class
-     * @param class2 the second class
-     * @return the common classes in the hierarchy of the two classes
-     */
-    private List<JSClass> getCommonClassesInHierarchy(JSClass class1, JSClass class2) {
-        if (class1 == null || class2 == null) return new ArrayList<>();
-
-        List<JSClass> superClasses1 = resolveHierarchy(class1);
-        List<JSClass> superClasses2 = resolveHierarchy(class2);
-
-        superClasses1.retainAll(superClasses2);
-
-        return superClasses1;
-    }
-
-    /**
-     * Resolve the hierarchy of a class
-     *
-     * @param tsClass the class
-     * @return the hierarchy of the class
-     */
-    private List<JSClass> resolveHierarchy(JSClass tsClass) {
-
-        List<JSClass> superClasses = new ArrayList<>();
-
-        superClasses.add(tsClass);
-        List<JSClass> extendedClasses = new ArrayList<>();
-        List<JSClass> implementedInterfaces = new ArrayList<>();
-
-        ApplicationManager.getApplication().runReadAction(() -> {
-            extendedClasses.addAll(Arrays.asList(tsClass.getSuperClasses()));
-
-            implementedInterfaces.addAll(Arrays.asList(tsClass.getImplementedInterfaces()));
-        });
-
-        for (JSClass psiClass : extendedClasses) {
-            superClasses.addAll(resolveHierarchy(psiClass));
-        }
-
-        for (JSClass psiClass : implementedInterfaces) {
-            superClasses.addAll(resolveHierarchy(psiClass));
-        }
-
-        ArrayList<JSClass> copyResult = new ArrayList<>(superClasses);
-        copyResult.removeIf(Objects::isNull);
-        return copyResult;
-    }
-
-}
\ No newline at end of file
+}
@@ -1,26 +1,33 @@
 package dataclump;
 
 import com.intellij.ide.HelpTooltip;
-import com.intellij.lang.ecmascript6.psi.ES6ImportDeclaration;
 import com.intellij.lang.javascript.psi.ecma6.TypeScriptClass;
 import com.intellij.lang.javascript.psi.ecmal4.JSClass;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.fileChooser.FileChooserDescriptor;
 import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.*;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.IconLoader;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDirectory;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
-import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.ui.components.JBLabel;
+import com.intellij.util.Alarm;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.JBUI;
 import org.jetbrains.annotations.Nullable;
 import util.CodeSmellLogger;
 import util.Index;
+import util.NameTable;
 import util.Property;
 import util.PsiUtil;
 
@@ -69,6 +76,43 @@ public class DataClumpDialog extends DialogWrapper {
     private final HashMap<Property, JCheckBox> propertySelections = new HashMap<>();
     private TextFieldWithBrowseButton directoryBrowseButton;
     private JPanel checkBoxPanel;
+    private JCheckBox clusterCheckBox;
+    private JCheckBox previewCheckBox;
+
+    /**
+     * The properties the size of the cluster is computed for, used to ignore the result of an outdated computation
+     */
+    private List<Property> clusterProperties;
+
+    /**
+     * The progress indicator of the background search for usable classes, used to cancel an outdated search.
+     */
+    private ProgressIndicator classSearchIndicator;
+
+    /**
+     * The delay in milliseconds to wait for further input before the class name is checked
+     */
+    private static final int NAME_CHECK_DELAY = 300;
+
+    /**
+     * Debounces the checks of the class name, created on first validation
+     */
+    private Alarm nameCheckAlarm;
+
+    /**
+     * The class name and directory of the last completed name check
+     */
+    private String checkedName;
+
+    /**
+     * The conflict found by the last completed name check, null if the name is free
+     */
+    private String nameConflict;
+
+    /**
+     * The class name and directory of the name check that is scheduled or running
+     */
+    private String pendingName;
 
     /**
      * Creates a new dataclump.DataClumpDialog.
@@ -108,6 +152,8 @@ public class DataClumpDialog extends DialogWrapper {
         addNewClassInput(dialogPanel, gbc);
         addDirectoryBrowser(dialogPanel, gbc);
         addCheckBoxPanel(dialogPanel, gbc);
+        addClusterCheckBox(dialogPanel, gbc);
+        addPreviewCheckBox(dialogPanel, gbc);
         addExistingClassSelector();
 
         configureRadioButtonActions(dialogPanel, gbc);
@@ -225,8 +271,8 @@ public class DataClumpDialog extends DialogWrapper {
             JCheckBox checkBox = new JCheckBox(property.getName() + ":" + property.getTypes());
             checkBox.setSelected(true);
             checkBox.addActionListener(e -> {
-                setClassSelection(refactoring.getUsableClasses(getProperties()));
-                existingClassButton.setEnabled(existingComboBox.getItemCount() != 0);
+                searchUsableClasses();
+                updateClusterCheckBox();
             });
             checkBoxPanel.add(checkBox);
             this.propertySelections.put(property, checkBox);
@@ -243,6 +289,64 @@ public class DataClumpDialog extends DialogWrapper {
         panel.add(checkBoxPanel, gbc);
     }
 
+    /**
+     * Adds the checkbox to refactor all elements that contain the selected properties, not only the two elements
+     * the data clump was found between.
+     *
+     * @param panel the dialog panel
+     * @param gbc   the grid bag constraints
+     */
+    private void addClusterCheckBox(JPanel panel, GridBagConstraints gbc) {
+        this.clusterCheckBox = new JCheckBox();
+        updateClusterCheckBox();
+
+        gbc.gridx = 0;
+        gbc.gridy = 5;
+        gbc.gridwidth = 3;
+        gbc.anchor = GridBagConstraints.WEST;
+        panel.add(clusterCheckBox, gbc);
+    }
+
+    /**
+     * Adds the checkbox to preview the planned edits before the refactoring is applied.
+     *
+     * @param panel the dialog panel
+     * @param gbc   the grid bag constraints
+     */
+    private void addPreviewCheckBox(JPanel panel, GridBagConstraints gbc) {
+        this.previewCheckBox = new JCheckBox("Preview changes before refactoring");
+
+        gbc.gridx = 0;
+        gbc.gridy = 6;
+        gbc.gridwidth = 3;
+        gbc.anchor = GridBagConstraints.WEST;
+        panel.add(previewCheckBox, gbc);
+    }
+
+    /**
+     * Updates the checkbox to refactor all elements with the number of elements that contain the selected properties.
+     * The cluster is computed in a cancellable read action in the background, the checkbox is disabled until the
+     * result arrives. The checkbox is only enabled if there are more elements than the two elements of the data clump.
+     */
+    private void updateClusterCheckBox() {
+        List<Property> properties = getProperties();
+        clusterProperties = properties;
+        clusterCheckBox.setText("Counting elements with the selected properties...");
+        clusterCheckBox.setEnabled(false);
+
+        ReadAction.nonBlocking(() -> ClumpClustering.getRefactorableCluster(current, other, properties).size())
+                .expireWith(getDisposable())
+                .coalesceBy(this, clusterCheckBox)
+                .finishOnUiThread(ModalityState.any(), clusterSize -> {
+                    // the selection changed in the meantime
+                    if (properties != clusterProperties) return;
+                    clusterCheckBox.setText("Refactor all " + clusterSize + " elements with the selected properties");
+                    clusterCheckBox.setEnabled(clusterSize > 2);
+                    if (clusterSize <= 2) clusterCheckBox.setSelected(false);
+                })
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
     /**
      * Creates the existing class selector. The user can choose an existing class to which the selected parameters or
      * fields should be extracted.
@@ -252,10 +356,7 @@ public class DataClumpDialog extends DialogWrapper {
         this.existingClassLabel = new JLabel("Existing class:");
         this.existingComboBox = existingComboBox;
 
-        setClassSelection(refactoring.getUsableClasses(getProperties()));
-        if (existingComboBox.getItemCount() == 0) {
-            existingClassButton.setEnabled(false);
-        }
+        searchUsableClasses();
     }
 
     /**
@@ -299,19 +400,45 @@ public class DataClumpDialog extends DialogWrapper {
     }
 
     /**
-     * Sets the class selection in the existing class selector.
-     *
-     * @param classes the classes that can be selected
+     * Searches the classes that can be used for the selected properties in the background, so that the dialog does
+     * not wait for the search. The candidates are taken from the index, each one is confirmed in a cancellable read
+     * action and added to the existing class selector as soon as it is confirmed.
+     * A running search is cancelled when the selection changes or the dialog is closed.
      */
-    private void setClassSelection(Set<TypeScriptClass> classes) {
-        existingComboBox.removeAllItems();
+    private void searchUsableClasses() {
+        if (classSearchIndicator != null) classSearchIndicator.cancel();
 
-        for (TypeScriptClass tsClass : classes) {
-            existingComboBox.addItem(tsClass.getQualifiedName());
-        }
-
-        existingComboBox.revalidate();
-        existingComboBox.repaint();
+        existingComboBox.removeAllItems();
+        existingClassButton.setEnabled(false);
+
+        List<Property> properties = getProperties();
+        if (properties.isEmpty()) return;
+
+        ProgressIndicator indicator = new EmptyProgressIndicator();
+        classSearchIndicator = indicator;
+        Disposer.register(getDisposable(), indicator::cancel);
+
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            try {
+                for (TypeScriptClass candidate : refactoring.getCandidateClasses(properties)) {
+                    indicator.checkCanceled();
+
+                    boolean usable = ReadAction.nonBlocking(() -> refactoring.isUsableClass(candidate, properties))
+                            .wrapProgress(indicator)
+                            .executeSynchronously();
+                    if (!usable) continue;
+
+                    String qualifiedName = PsiUtil.getQualifiedName(candidate);
+                    ApplicationManager.getApplication().invokeLater(() -> {
+                        if (indicator.isCanceled()) return;
+                        existingComboBox.addItem(qualifiedName);
+                        existingClassButton.setEnabled(true);
+                    }, ModalityState.any());
+                }
+            } catch (ProcessCanceledException e) {
+                // the selection changed or the dialog was closed
+            }
+        });
     }
 
     /**
@@ -351,24 +478,15 @@ public class DataClumpDialog extends DialogWrapper {
             if (!className.matches("[a-zA-Z0-9_]*")) {
                 return new ValidationInfo("Classname contains invalid characters", this.newClassNameField);
             }
-            // make sure no class with same name already in dir
-            for (PsiFile file : directory.getFiles()) {
-                if (file.getName().endsWith(".ts")) {
-                    List<JSClass> classes = PsiTreeUtil.getChildrenOfTypeAsList(file, JSClass.class);
-                    for (JSClass psiClass : classes) {
-                        if (Objects.equals(psiClass.getName(), className)) {
-                            return new ValidationInfo("Class " + className + " already exists in directory " + directory.getName(), newClassNameField);
-                        }
-                    }
-                }
+            // make sure no class with same name already in dir and the name is not imported yet
+            // the check is done in the background, the OK button is disabled until it is completed
+            String nameKey = className + "@" + directory.getVirtualFile().getPath();
+            if (!nameKey.equals(checkedName)) {
+                scheduleNameCheck(nameKey, className, directory);
+                return new ValidationInfo("Checking class name...", newClassNameField).asWarning();
             }
-
-            if (isImported(className, current.getContainingFile())) {
-                return new ValidationInfo("Class " + className + " is already imported ", newClassNameField);
-            }
-
-            if (isImported(className, other.getContainingFile())) {
-                return new ValidationInfo("Class " + className + " is already imported ", newClassNameField);
+            if (nameConflict != null) {
+                return new ValidationInfo(nameConflict, newClassNameField);
             }
 
             // TODO make sure also no variable with same name exists?
@@ -388,20 +506,49 @@ public class DataClumpDialog extends DialogWrapper {
     }
 
     /**
-     * Checks if the class name is already imported in the file.
+     * Schedules the check of the class name after no further input arrived for a short delay.
+     * The check runs in a cancellable read action in the background, the result is picked up by the next validation.
      *
+     * @param nameKey   the class name and the path of the directory
      * @param className the class name
-     * @param file      the file
-     * @return true if the class name is already imported in the file, false otherwise
+     * @param directory the directory of the new class
      */
-    private boolean isImported(String className, PsiFile file) {
+    private void scheduleNameCheck(String nameKey, String className, PsiDirectory directory) {
+        if (nameKey.equals(pendingName)) return;
+        pendingName = nameKey;
+
+        if (nameCheckAlarm == null) nameCheckAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, getDisposable());
+        nameCheckAlarm.cancelAllRequests();
+        nameCheckAlarm.addRequest(() -> ReadAction.nonBlocking(() -> getNameConflict(className, directory))
+                .expireWith(getDisposable())
+                .coalesceBy(this)
+                .finishOnUiThread(ModalityState.any(), conflict -> {
+                    // the input changed in the meantime
+                    if (!nameKey.equals(pendingName)) return;
+                    checkedName = nameKey;
+                    nameConflict = conflict;
+                })
+                .submit(AppExecutorUtil.getAppExecutorService()), NAME_CHECK_DELAY);
+    }
 
-        for (ES6ImportDeclaration importStatement : PsiTreeUtil.findChildrenOfType(file, ES6ImportDeclaration.class)) {
-            if (importStatement.getNamedImports() != null && importStatement.getNamedImports().getText().contains(className)) {
-                return true;
-            }
+    /**
+     * Checks if a class with the given name already exists in the directory or the name is already imported in the
+     * files of the data clump. Must be called inside a read action.
+     *
+     * @param className the class name
+     * @param directory the directory of the new class
+     * @return the description of the conflict or null if the name can be used
+     */
+    private @Nullable String getNameConflict(String className, PsiDirectory directory) {
+        if (!directory.isValid()) return "Invalid directory Selected";
+
+        if (NameTable.getClassNames(directory).contains(className)) {
+            return "Class " + className + " already exists in directory " + directory.getName();
+        }
+        if (NameTable.getImportedNames(current.getContainingFile()).contains(className) || NameTable.getImportedNames(other.getContainingFile()).contains(className)) {
+            return "Class " + className + " is already imported ";
         }
-        return false;
+        return null;
     }
 
     /**
@@ -455,7 +602,7 @@ public class DataClumpDialog extends DialogWrapper {
     public TypeScriptClass getSelectedClass() {
         if (this.existingComboBox.getComponents() == null) return null;
         String qualifiedName = (String) this.existingComboBox.getSelectedItem();
-        JSClass jsClass = Index.getQualifiedNamesToClasses().get(qualifiedName);
+        JSClass jsClass = Index.getInstance(project).getClassByQualifiedName(qualifiedName);
         if (jsClass instanceof TypeScriptClass) {
             return (TypeScriptClass) jsClass;
         } else {
@@ -464,6 +611,24 @@ public class DataClumpDialog extends DialogWrapper {
         }
     }
 
+    /**
+     * Returns if the user wants to refactor all elements that contain the selected properties.
+     *
+     * @return true if all elements should be refactored, false if only the two elements of the data clump
+     */
+    public boolean shouldRefactorCluster() {
+        return this.clusterCheckBox.isSelected();
+    }
+
+    /**
+     * Returns if the user wants to preview the planned edits before the refactoring is applied.
+     *
+     * @return true if the preview should be shown, false otherwise
+     */
+    public boolean shouldPreview() {
+        return this.previewCheckBox.isSelected();
+    }
+
     /**
      * Returns if the user wants to create a new class.
      *
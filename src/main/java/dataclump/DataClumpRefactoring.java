@@ -15,12 +15,15 @@ import com.intellij.lang.javascript.psi.ecma6.TypeScriptParameter;
 import com.intellij.lang.javascript.psi.ecmal4.JSClass;
 import com.intellij.lang.javascript.psi.impl.JSPsiElementFactory;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.ThrowableComputable;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
-import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.psi.search.LocalSearchScope;
 import com.intellij.psi.search.searches.ReferencesSearch;
 import com.intellij.psi.util.PsiTreeUtil;
 import evoluation.DiagnosticTool;
@@ -31,6 +34,7 @@ import util.*;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
 
 
 /**
@@ -54,30 +58,35 @@ public class DataClumpRefactoring implements LocalQuickFix {
     private SmartPsiElementPointer<PsiElement> otherElement;
 
     /**
-     * Maps the classfields to the parameters that define them in the constructor for the first element
-     */
-    private final HashMap<Classfield, Parameter> currentDefinedClassFields = new HashMap<>();
-    /**
-     * Maps the parameters to the classfields that they define in the constructor for the second element
+     * The information about the constructor and the default values of an element that contains the data clump.
+     * It is collected before anything is modified.
+     *
+     * @param definedClassfields the classfields mapped to the parameters that define them in the constructor
+     * @param defaultValues      the classfields mapped to their default values
      */
-    private final HashMap<Classfield, Parameter> otherDefinedClassFields = new HashMap<>();
+    private record ElementInformation(HashMap<Classfield, Parameter> definedClassfields,
+                                      HashMap<Classfield, String> defaultValues) {
+    }
 
     /**
-     * Maps the constructor parameters to the classfields that they define in the constructor for the first element
+     * The transaction that groups all modifications of the refactoring into one command
      */
-    private final HashMap<Parameter, Classfield> currentDefiningParameters = new HashMap<>();
+    private RefactoringTransaction transaction;
+
     /**
-     * Maps the constructor parameters to the classfields that they define in the constructor for the second element
+     * The usages of the elements that are rewritten by the refactoring, shared by all steps
      */
-    private final HashMap<Parameter, Classfield> otherDefiningParameters = new HashMap<>();
+    private UsageCollector usageCollector;
+
     /**
-     * Maps the classfields to their default values for the first element
+     * The changes of the index caused by the refactoring, applied once the elements are rewritten
      */
-    private final HashMap<Classfield, String> currentDefaultValues = new HashMap<>();
+    private IndexDelta indexDelta;
+
     /**
-     * Maps the classfields to their default values for the second element
+     * Whether the refactoring runs as part of the batch refactoring, which shows the progress of the whole batch
      */
-    private final HashMap<Classfield, String> otherDefaultValues = new HashMap<>();
+    private boolean inBatch;
 
     /**
      * Creates a new dataclump.DataClumpRefactoring.
@@ -151,48 +160,128 @@ public class DataClumpRefactoring implements LocalQuickFix {
 
         CodeSmellLogger.info("Refactoring DataClump between " + PsiUtil.getQualifiedName(currentElement) + " and " + PsiUtil.getQualifiedName(otherElement));
 
+        // a new refactoring cannot start while the journal of an interrupted refactoring exists
+        if (!Boolean.TRUE.equals(PsiUtil.executeInEDTAndWait(() -> RefactoringRecovery.recover(project, "An interrupted refactoring must be recovered before a new refactoring starts.")))) {
+            return;
+        }
+
         List<Property> selectedProperties = PsiUtil.executeInEDTAndWait(dialog::getProperties);
         assert selectedProperties != null;
 
-        // in case that the to be refactored element is a class,
-        // the information about the constructor and the default values of the classfields are extracted
-        if (currentElement instanceof TypeScriptClass currentClass) {
-            TypeScriptFunction constructor = (TypeScriptFunction) PsiUtil.runReadActionWithResult(currentClass::getConstructor);
-            if (constructor != null) {
-                getClassfieldDefiningParameter(constructor, currentDefiningParameters, currentDefinedClassFields);
+        // if the user selects an existing class -> check that it can be used before anything is modified
+        boolean createNewClass = Boolean.TRUE.equals(PsiUtil.executeInEDTAndWait(dialog::shouldCreateNewClass));
+        TypeScriptClass selectedClass = null;
+        if (!createNewClass) {
+            selectedClass = PsiUtil.executeInEDTAndWait(dialog::getSelectedClass);
+            assert selectedClass != null;
+            if (hasConflictingSetterOrGetter(selectedClass, selectedProperties)) {
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    Messages.showMessageDialog("The selected class contains a getter or setter with the same name as one of the properties to be extracted. Please select another class.", "Error", Messages.getErrorIcon());
+                });
+                applyFix(project, problemDescriptor);
+                return;
             }
-            getDefaultValues(currentClass, selectedProperties, currentDefaultValues);
         }
-        if (otherElement instanceof TypeScriptClass otherClass) {
-            TypeScriptFunction constructor = (TypeScriptFunction) PsiUtil.runReadActionWithResult(otherClass::getConstructor);
-            if (constructor != null) {
-                getClassfieldDefiningParameter(constructor, otherDefiningParameters, otherDefinedClassFields);
+
+        String className = createNewClass ? PsiUtil.executeInEDTAndWait(dialog::getClassName) : null;
+        PsiDirectory targetDirectory = createNewClass ? PsiUtil.executeInEDTAndWait(dialog::getDirectory) : null;
+
+        // if the user selects to refactor the whole cluster, all elements containing the properties are refactored
+        List<PsiElement> elements = List.of(currentElement, otherElement);
+        if (Boolean.TRUE.equals(PsiUtil.executeInEDTAndWait(dialog::shouldRefactorCluster))) {
+            elements = ClumpClustering.getRefactorableCluster(currentElement, otherElement, selectedProperties);
+            CodeSmellLogger.info("Refactoring all " + elements.size() + " elements containing the data clump");
+        }
+
+        // if the user selects to preview the refactoring -> compute the edits without modifying anything and ask to continue
+        EditPlan plan = null;
+        if (Boolean.TRUE.equals(PsiUtil.executeInEDTAndWait(dialog::shouldPreview))) {
+            plan = EditPlan.create(elements, selectedProperties, className, targetDirectory, selectedClass);
+            CodeSmellLogger.info("Planned " + plan.getEdits().size() + " edits in " + plan.getFileCount() + " files.");
+
+            EditPlan finalPlan = plan;
+            if (!Objects.equals(PsiUtil.executeInEDTAndWait(() -> Messages.showOkCancelDialog(project, finalPlan.getSummary(), "Refactoring Preview", "Refactor", "Cancel", null)), Messages.OK)) {
+                return;
             }
-            getDefaultValues(otherClass, selectedProperties, otherDefaultValues);
         }
 
+        // all modifications are grouped into one command, so that the refactoring can be undone in one step
+        TypeScriptClass finalSelectedClass = selectedClass;
+        List<PsiElement> finalElements = elements;
+        long refactoringStartTime = System.nanoTime();
+        transaction = new RefactoringTransaction(project, "Refactor Data Clump");
+        transaction.run(() -> refactor(finalElements, selectedProperties, className, targetDirectory, finalSelectedClass));
+
+        CodeSmellLogger.info("Refactoring done.");
+        if (plan != null) plan.recordDuration(System.nanoTime() - refactoringStartTime);
+
+        if (DiagnosticTool.REFACTORING_ENABLED) {
+            long endTime = System.nanoTime();
+            long duration = (endTime - startTime);
+            if (plan != null) {
+                DiagnosticTool.addMeasurement(new DiagnosticTool.RefactoringMeasurement(project, duration, dataClumpTypeContext, plan));
+            } else {
+                DiagnosticTool.addMeasurement(new DiagnosticTool.RefactoringMeasurement(project, duration, dataClumpTypeContext));
+            }
+        }
+
+    }
+
+    /**
+     * Refactors the given elements without asking the user. The properties are extracted into a new class that is
+     * used by all elements. Used by the batch refactoring, which refactors each group of data clumps in its own
+     * transaction and shows the progress of the whole batch.
+     *
+     * @param transaction     the transaction to add the modifications to
+     * @param elements        the elements that contain the data clump
+     * @param properties      the properties that should be extracted
+     * @param className       the name of the new class
+     * @param targetDirectory the directory to create the new class in
+     * @return the extracted class
+     */
+    TypeScriptClass refactorWithoutDialog(RefactoringTransaction transaction, List<PsiElement> elements, List<Property> properties, String className, PsiDirectory targetDirectory) {
+        this.transaction = transaction;
+        this.inBatch = true;
+        return refactor(elements, properties, className, targetDirectory, null);
+    }
+
+    /**
+     * Extracts the selected properties into the new or selected class and refactors all elements to use it.
+     *
+     * @param elements           the elements that contain the data clump
+     * @param selectedProperties the properties that should be extracted
+     * @param className          the name of the new class, only used if no existing class is selected
+     * @param targetDirectory    the directory of the new class, only used if no existing class is selected
+     * @param selectedClass      the existing class to extract the properties to, null if a new class should be created
+     * @return the extracted class
+     */
+    private TypeScriptClass refactor(List<PsiElement> elements, List<Property> selectedProperties, @Nullable String className, @Nullable PsiDirectory targetDirectory, @Nullable TypeScriptClass selectedClass) {
+
+        // in case that the to be refactored element is a class,
+        // the information about the constructor and the default values of the classfields are extracted
+        // also search the usages of the elements before anything is modified
+        HashMap<PsiElement, ElementInformation> elementInformation = new HashMap<>();
+        usageCollector = new UsageCollector(PsiUtil.runReadActionWithResult(elements.get(0)::getProject));
+        List<PsiElement> usageTargets = new ArrayList<>();
+        for (PsiElement element : elements) {
+            elementInformation.put(element, getElementInformation(element, selectedProperties));
+            usageTargets.addAll(getUsageTargets(element, selectedProperties));
+        }
+        usageCollector.collect(usageTargets);
+        indexDelta = new IndexDelta(currentElement.getProject());
+
         // create or use existing class
         TypeScriptClass extractedClass;
         // if the user selects to create a new class -> create the class
-        if (Boolean.TRUE.equals(PsiUtil.executeInEDTAndWait(dialog::shouldCreateNewClass))) {
+        if (selectedClass == null) {
 
-            String className = PsiUtil.executeInEDTAndWait(dialog::getClassName);
-            PsiDirectory targetDirectory = PsiUtil.executeInEDTAndWait(dialog::getDirectory);
             CodeSmellLogger.info("Creating new class with name " + className + " in " + targetDirectory);
             extractedClass = extractClass(targetDirectory, className, selectedProperties);
             assert extractedClass != null;
-            Index.addClass(extractedClass);
+            indexDelta.update(extractedClass);
 
         } else { // if the user selects an existing class -> use the existing class
-            extractedClass = PsiUtil.executeInEDTAndWait(dialog::getSelectedClass);
-            assert extractedClass != null;
-            if (hasConflictingSetterOrGetter(extractedClass, selectedProperties)) {
-                ApplicationManager.getApplication().invokeLater(() -> {
-                    Messages.showMessageDialog("The selected class contains a getter or setter with the same name as one of the properties to be extracted. Please select another class.", "Error", Messages.getErrorIcon());
-                });
-                applyFix(project, problemDescriptor);
-                return;
-            }
+            extractedClass = selectedClass;
             CodeSmellLogger.info("Using existing class " + PsiUtil.getQualifiedName(extractedClass));
 
             // save the original parameters -> needed for refactoring the function calls
@@ -204,10 +293,10 @@ public class DataClumpRefactoring implements LocalQuickFix {
 
             extractedClass = PsiUtil.makeClassExported(extractedClass);
             assert extractedClass != null;
-            Index.updateClass(extractedClass); // since the class was replaced the index must be updated
 
             adjustConstructor(extractedClass, selectedProperties);
             addGetterAndSetter(extractedClass, selectedProperties);
+            indexDelta.update(extractedClass); // since the class was replaced and adjusted the index must be updated
 
             // refactor the function calls of the extracted class since the constructor was adjusted
             extractedConstructor = (TypeScriptFunction) PsiUtil.runReadActionWithResult(extractedClass::getConstructor);
@@ -218,11 +307,7 @@ public class DataClumpRefactoring implements LocalQuickFix {
             refactorConstructorCalls(extractedConstructor, originalParameters, defaultValues);
         }
 
-        TypeScriptClass finalExtractedClass = extractedClass;
-        WriteCommandAction.runWriteCommandAction(project, () -> {
-            PsiDocumentManager.getInstance(project).commitAllDocuments();
-            CodeStyleManager.getInstance(project).reformat(finalExtractedClass);
-        });
+        transaction.touch(extractedClass);
 
         List<Classfield> dataClump = new ArrayList<>();
         for (Property property : selectedProperties) {
@@ -230,24 +315,67 @@ public class DataClumpRefactoring implements LocalQuickFix {
         }
 
         // refactor the elements that contain the data clump
-        refactorElement(currentElement, extractedClass, dataClump, currentDefinedClassFields, currentDefaultValues);
-        refactorElement(otherElement, extractedClass, dataClump, otherDefinedClassFields, otherDefaultValues);
-
-        WriteCommandAction.runWriteCommandAction(project, () -> {
-            PsiDocumentManager.getInstance(project).commitAllDocuments();
-            CodeStyleManager.getInstance(project).reformat(currentElement);
-            CodeStyleManager.getInstance(project).reformat(otherElement);
-            PsiDocumentManager.getInstance(project).commitAllDocuments();
-        });
+        for (PsiElement element : elements) {
+            ElementInformation information = elementInformation.get(element);
+            refactorElement(element, extractedClass, dataClump, information.definedClassfields(), information.defaultValues());
+            transaction.touch(element);
+        }
 
-        CodeSmellLogger.info("Refactoring done.");
+        // the index is updated for all elements at once
+        CodeSmellLogger.info("Updating index for " + indexDelta.size() + " elements...");
+        indexDelta.apply();
 
-        if (DiagnosticTool.REFACTORING_ENABLED) {
-            long endTime = System.nanoTime();
-            long duration = (endTime - startTime);
-            DiagnosticTool.addMeasurement(new DiagnosticTool.RefactoringMeasurement(project, duration, dataClumpTypeContext));
+        return extractedClass;
+    }
+
+    /**
+     * Collects the information about the constructor and the default values of the given element
+     *
+     * @param element    the element that contains the data clump
+     * @param properties the properties that are extracted
+     * @return the information about the element, empty if the element is not a class
+     */
+    private ElementInformation getElementInformation(PsiElement element, List<Property> properties) {
+        HashMap<Classfield, Parameter> definedClassfields = new HashMap<>();
+        HashMap<Classfield, String> defaultValues = new HashMap<>();
+
+        if (element instanceof TypeScriptClass psiClass) {
+            TypeScriptFunction constructor = (TypeScriptFunction) PsiUtil.runReadActionWithResult(psiClass::getConstructor);
+            if (constructor != null) {
+                getClassfieldDefiningParameter(constructor, new HashMap<>(), definedClassfields);
+            }
+            getDefaultValues(psiClass, properties, defaultValues);
+        }
+        return new ElementInformation(definedClassfields, defaultValues);
+    }
+
+    /**
+     * Returns the elements of the given element whose usages are rewritten by the refactoring.
+     * These are the function or constructor, their parameters and the fields that are extracted.
+     *
+     * @param element    the element that contains the data clump
+     * @param properties the properties that are extracted
+     * @return the elements whose usages are rewritten
+     */
+    private List<PsiElement> getUsageTargets(PsiElement element, List<Property> properties) {
+        List<PsiElement> targets = new ArrayList<>();
+
+        TypeScriptFunction function = null;
+        if (element instanceof TypeScriptFunction psiFunction) {
+            function = psiFunction;
+        } else if (element instanceof TypeScriptClass psiClass) {
+            function = (TypeScriptFunction) PsiUtil.runReadActionWithResult(psiClass::getConstructor);
+            for (Property property : properties) {
+                PsiElement psiField = PsiUtil.getPsiField(psiClass, property.getName());
+                if (psiField != null) targets.add(psiField);
+            }
         }
 
+        if (function != null) {
+            targets.add(function);
+            targets.addAll(List.of(PsiUtil.runReadActionWithResult(function::getParameters)));
+        }
+        return targets;
     }
 
     /**
@@ -320,6 +448,7 @@ public class DataClumpRefactoring implements LocalQuickFix {
         assert virtualFile != null;
         PsiFile file = PsiUtil.runReadActionWithResult(() -> PsiManager.getInstance(dir.getProject()).findFile(virtualFile));
         TypeScriptClass extractedClass = PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.findChildOfType(file, TypeScriptClass.class));
+        transaction.created(file);
 
         CodeSmellLogger.info("Class extracted.");
         return extractedClass;
@@ -439,7 +568,8 @@ public class DataClumpRefactoring implements LocalQuickFix {
 
         defaultValues.clear();
 
-        List<Classfield> classfields = Index.getClassesToClassFields().get(psiClass);
+        // the fields are read from the class itself, since the index is only updated once the refactoring is done
+        List<Classfield> classfields = PsiUtil.getClassfields(psiClass);
 
         for (Classfield classfield : classfields) {
             if (properties.contains(classfield)) {
@@ -549,11 +679,11 @@ public class DataClumpRefactoring implements LocalQuickFix {
         if (element instanceof TypeScriptClass psiClass && !Objects.equals(PsiUtil.getQualifiedName(psiClass), PsiUtil.getQualifiedName(extractedClass))) {
             addImport(element, extractedClass);
             refactorClass(psiClass, extractedClass, dataClump, definedClassfields, defaultValues);
-            Index.updateClass(psiClass);
+            indexDelta.update(psiClass);
         } else if (element instanceof TypeScriptFunction function) {
             addImport(element, extractedClass);
             refactorFunction(function, extractedClass, dataClump);
-            Index.updateFunction(function);
+            indexDelta.update(function);
         }
     }
 
@@ -632,7 +762,7 @@ public class DataClumpRefactoring implements LocalQuickFix {
      */
     private void updateFieldReferences(TypeScriptClass psiClass, List<Classfield> dataClump, String fieldName) {
 
-        List<Classfield> classfields = Index.getClassesToClassFields().get(psiClass);
+        List<Classfield> classfields = Objects.requireNonNullElse(Index.getInstance(psiClass).getClassfields(psiClass), List.of());
 
         // iterate over all classfields of the class
         for (Classfield classfield : classfields) {
@@ -644,7 +774,7 @@ public class DataClumpRefactoring implements LocalQuickFix {
 
                 ApplicationManager.getApplication().runReadAction(() -> {
                     // iterate over all references to the field
-                    for (PsiReference reference : ReferencesSearch.search(psiField)) {
+                    for (PsiReference reference : usageCollector.getReferences(psiField)) {
                         // resolve references also finds references that have the same name but do not reference the field
                         // so we need to check if the reference actually resolves to the field
                         if (reference.resolve() != psiField) continue;
@@ -661,13 +791,13 @@ public class DataClumpRefactoring implements LocalQuickFix {
                 // remove the classfield from the class if it is a field
                 // if it is a constructor parameter it will be removed later
                 if (psiField instanceof TypeScriptField) {
-                    WriteCommandAction.runWriteCommandAction(psiClass.getProject(), () -> {
-                        psiField.delete();
-                        PsiDocumentManager.getInstance(psiClass.getProject()).commitAllDocuments();
-                    });
+                    transaction.delete(psiField);
                 }
             }
         }
+
+        // apply the replacements of all references at once
+        transaction.applyPendingEdits();
     }
 
     /**
@@ -736,11 +866,9 @@ public class DataClumpRefactoring implements LocalQuickFix {
         });
 
         for (JSAssignmentExpression assignment : markedForRemoval) {
-            WriteCommandAction.runWriteCommandAction(psiClass.getProject(), () -> {
-                assignment.getParent().delete();
-                PsiDocumentManager.getInstance(psiClass.getProject()).commitAllDocuments();
-            });
+            transaction.delete(PsiUtil.runReadActionWithResult(assignment::getParent));
         }
+        transaction.applyPendingEdits();
     }
 
     /**
@@ -755,8 +883,9 @@ public class DataClumpRefactoring implements LocalQuickFix {
      */
     private void refactorConstructorParameter(TypeScriptFunction constructor, List<Classfield> dataClump, HashMap<Classfield, Parameter> definedClassfields, String newParameterName) {
 
-        // iterate over all properties that are defined in the constructor
+        TypeScriptClass psiClass = PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.getParentOfType(constructor, TypeScriptClass.class));
 
+        // iterate over all properties that are defined in the constructor
         for (Classfield property : definedClassfields.keySet()) {
             if (!dataClump.contains(property)) continue; // only refactor the extracted properties
 
@@ -764,16 +893,16 @@ public class DataClumpRefactoring implements LocalQuickFix {
             assert parameter != null;
 
             // replace all references to the parameter with getter calls on the extracted class
-            for (PsiReference reference : PsiUtil.runReadActionWithResult(() -> ReferencesSearch.search(parameter))) {
-                replaceReferenceWithGetter(PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.getParentOfType(constructor, TypeScriptClass.class)), reference, newParameterName, property.getName(), false);
+            for (PsiReference reference : usageCollector.getReferences(parameter)) {
+                replaceReferenceWithGetter(psiClass, reference, newParameterName, property.getName(), false);
             }
 
             // remove the parameter from the constructor
-            WriteCommandAction.runWriteCommandAction(constructor.getProject(), () -> {
-                parameter.delete();
-                PsiDocumentManager.getInstance(constructor.getProject()).commitAllDocuments();
-            });
+            transaction.delete(parameter);
         }
+
+        // apply the replacements and deletions at once
+        transaction.applyPendingEdits();
     }
 
     /**
@@ -791,6 +920,241 @@ public class DataClumpRefactoring implements LocalQuickFix {
     }
 
 
+    /**
+     * Describes how the new argument list of a call is built from the original arguments. The template is the same for
+     * all calls of a function, so it is computed once and applied to the argument texts of each call.
+     *
+     * @param parts                  the parts of the new argument list, either a text or the index of an original argument
+     * @param originalParameterCount the number of parameters of the function before the refactoring
+     */
+    record ArgumentTemplate(List<Object> parts, int originalParameterCount) {
+
+        /**
+         * Builds the new argument list from the texts of the original arguments
+         *
+         * @param arguments the texts of the original arguments
+         * @return the new argument list including the parentheses, null if the arguments of the call cannot be mapped
+         * to the parameters, e.g. because of a spread argument or more arguments than parameters
+         */
+        @Nullable String apply(String[] arguments) {
+            if (arguments.length > originalParameterCount) return null;
+            for (String argument : arguments) {
+                if (argument.startsWith("...")) return null;
+            }
+
+            StringBuilder updatedArguments = new StringBuilder();
+            for (Object part : parts) {
+                if (part instanceof Integer index) {
+                    // a missing optional argument is passed as undefined
+                    updatedArguments.append(index < arguments.length ? arguments[index] : DefaultValues.UNDEFINED);
+                } else {
+                    updatedArguments.append((String) part);
+                }
+            }
+            return updatedArguments.toString();
+        }
+    }
+
+    /**
+     * Collects the parts of an argument template, separating the arguments with commas
+     */
+    static class ArgumentTemplateBuilder {
+
+        /**
+         * The parts of the template
+         */
+        private final List<Object> parts = new ArrayList<>();
+
+        /**
+         * The number of parameters of the function before the refactoring
+         */
+        private final int originalParameterCount;
+
+        /**
+         * Whether the next argument is the first one of the current argument list
+         */
+        private boolean first = true;
+
+        /**
+         * Creates a builder for the calls of a function
+         *
+         * @param originalParameterCount the number of parameters of the function before the refactoring
+         */
+        ArgumentTemplateBuilder(int originalParameterCount) {
+            this.originalParameterCount = originalParameterCount;
+        }
+
+        /**
+         * Opens a new argument list
+         *
+         * @param prefix the text before the parenthesis, e.g. the constructor call of the extracted class
+         * @return this builder
+         */
+        ArgumentTemplateBuilder open(String prefix) {
+            separate();
+            parts.add(prefix + "(");
+            first = true;
+            return this;
+        }
+
+        /**
+         * Closes the current argument list
+         *
+         * @return this builder
+         */
+        ArgumentTemplateBuilder close() {
+            parts.add(")");
+            first = false;
+            return this;
+        }
+
+        /**
+         * Adds an original argument
+         *
+         * @param index the index of the original argument
+         * @return this builder
+         */
+        ArgumentTemplateBuilder argument(int index) {
+            separate();
+            parts.add(index);
+            return this;
+        }
+
+        /**
+         * Adds a fixed text as argument, e.g. a default value
+         *
+         * @param text the text of the argument
+         * @return this builder
+         */
+        ArgumentTemplateBuilder text(String text) {
+            separate();
+            parts.add(text);
+            return this;
+        }
+
+        /**
+         * Adds the separator before the next argument unless it is the first one of the argument list
+         */
+        private void separate() {
+            if (!first) parts.add(", ");
+            first = false;
+        }
+
+        /**
+         * Creates the template
+         *
+         * @return the template
+         */
+        ArgumentTemplate build() {
+            return new ArgumentTemplate(parts, originalParameterCount);
+        }
+    }
+
+    /**
+     * Maps the given parameters to their position. If a parameter occurs twice, the first position is used.
+     *
+     * @param parameters the parameters in the order they appear in the function
+     * @return the parameters mapped to their position
+     */
+    private HashMap<Property, Integer> getParameterIndices(List<Property> parameters) {
+        HashMap<Property, Integer> indices = new HashMap<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            indices.putIfAbsent(parameters.get(i), i);
+        }
+        return indices;
+    }
+
+    /**
+     * Rewrites the argument lists of the given calls with the given template. The new texts of all calls are computed
+     * in one read action on a background thread, and the replacements are applied together in one write action.
+     * Calls whose arguments cannot be mapped to the parameters are skipped and logged, the other calls are rewritten.
+     * If the text of a call changed before it is replaced, e.g. because it contains another rewritten call,
+     * its new argument list is built again from the current text.
+     *
+     * @param argumentLists the argument lists of the calls
+     * @param template      the template of the new argument lists
+     * @param factory       creates the new argument list from its text
+     */
+    private void rewriteCallSites(List<JSArgumentList> argumentLists, ArgumentTemplate template, BiFunction<String, PsiElement, PsiElement> factory) {
+        if (argumentLists.isEmpty()) return;
+
+        // the original text of each call and its new argument list
+        HashMap<JSArgumentList, String[]> rewrites = computeRewrites(argumentLists, template);
+        CodeSmellLogger.info("Rewriting " + rewrites.size() + " of " + argumentLists.size() + " calls...");
+
+        for (JSArgumentList argumentList : argumentLists) {
+            String[] rewrite = rewrites.get(argumentList);
+            if (rewrite == null) {
+                String call = PsiUtil.runReadActionWithResult(() -> argumentList.isValid() ? argumentList.getParent().getText() : null);
+                if (call != null) CodeSmellLogger.warn("Skipping call " + call + ", its arguments do not match the parameters.");
+                continue;
+            }
+
+            transaction.replace(argumentList, EditPlan.Kind.CALL_SITE, target -> {
+                String updatedArguments = target.getText().equals(rewrite[0]) ? rewrite[1] : template.apply(getArgumentTexts((JSArgumentList) target));
+                if (updatedArguments == null) {
+                    throw new IllegalStateException("The arguments of the call do not match the parameters.");
+                }
+                return factory.apply(updatedArguments, target);
+            });
+        }
+
+        // Update all calls with the new argument lists at once
+        transaction.applyPendingEdits();
+    }
+
+    /**
+     * Computes the new argument lists of the given calls in one cancellable read action. If called from the EDT,
+     * the read action runs on a background thread while a modal progress is shown, unless the refactoring is part of
+     * the batch refactoring, which already shows its own progress and computes the calls of each group directly.
+     *
+     * @param argumentLists the argument lists of the calls
+     * @param template      the template of the new argument lists
+     * @return the calls that can be rewritten mapped to their original text and their new argument list
+     */
+    private HashMap<JSArgumentList, String[]> computeRewrites(List<JSArgumentList> argumentLists, ArgumentTemplate template) {
+        boolean inDispatchThread = ApplicationManager.getApplication().isDispatchThread();
+        if (inDispatchThread && inBatch) return PsiUtil.runReadActionWithResult(() -> collectRewrites(argumentLists, template));
+
+        ThrowableComputable<HashMap<JSArgumentList, String[]>, RuntimeException> computation = () -> ReadAction.nonBlocking(() -> collectRewrites(argumentLists, template)).executeSynchronously();
+        if (!inDispatchThread) return computation.compute();
+        return ProgressManager.getInstance().runProcessWithProgressSynchronously(computation, "Rewriting Call Sites", false, currentElement.getProject());
+    }
+
+    /**
+     * Computes the new argument lists of the given calls that are still valid. Must be called inside a read action.
+     *
+     * @param argumentLists the argument lists of the calls
+     * @param template      the template of the new argument lists
+     * @return the calls that can be rewritten mapped to their original text and their new argument list
+     */
+    private static HashMap<JSArgumentList, String[]> collectRewrites(List<JSArgumentList> argumentLists, ArgumentTemplate template) {
+        HashMap<JSArgumentList, String[]> rewrites = new HashMap<>();
+        for (JSArgumentList argumentList : argumentLists) {
+            ProgressManager.checkCanceled();
+            if (!argumentList.isValid()) continue;
+
+            String updatedArguments = template.apply(getArgumentTexts(argumentList));
+            if (updatedArguments != null) rewrites.put(argumentList, new String[]{argumentList.getText(), updatedArguments});
+        }
+        return rewrites;
+    }
+
+    /**
+     * Returns the texts of the arguments of the given call. Must be called inside a read action.
+     *
+     * @param argumentList the argument list of the call
+     * @return the texts of the arguments
+     */
+    private static String[] getArgumentTexts(JSArgumentList argumentList) {
+        JSExpression[] arguments = argumentList.getArguments();
+        String[] texts = new String[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            texts[i] = arguments[i].getText();
+        }
+        return texts;
+    }
+
     /**
      * Refactors all calls of the given constructor to match the new function signature after new arguments where added.
      *
@@ -803,50 +1167,41 @@ public class DataClumpRefactoring implements LocalQuickFix {
 
         HashMap<Parameter, Classfield> definingParameter = new HashMap<>();
         getClassfieldDefiningParameter(constructor, definingParameter, new HashMap<>());
+        HashMap<Property, Integer> originalIndices = getParameterIndices(originalParameters);
 
-        for (PsiReference functionCall : PsiUtil.runReadActionWithResult(() -> ReferencesSearch.search(constructor))) {
-            CodeSmellLogger.info("Refactoring constructor call... " + PsiUtil.runReadActionWithResult(() -> functionCall.getElement().getText()));
-            JSArgumentList argumentList = PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.getNextSiblingOfType(functionCall.getElement(), JSArgumentList.class));
-            assert argumentList != null;
-            JSExpression[] originalArguments = PsiUtil.runReadActionWithResult(argumentList::getArguments);
-
-            // create the new argument list
-            StringBuilder updatedArguments = new StringBuilder("(");
-
-            for (JSParameterListElement currentPsiParameter : PsiUtil.runReadActionWithResult(constructor::getParameters)) {
-                Parameter currentParameter = new Parameter((TypeScriptParameter) currentPsiParameter);
+        // the parameters of the adjusted constructor are the same for all calls -> build the new argument list once
+        ArgumentTemplateBuilder template = new ArgumentTemplateBuilder(originalParameters.size()).open("");
+        for (JSParameterListElement currentPsiParameter : PsiUtil.runReadActionWithResult(constructor::getParameters)) {
+            Parameter currentParameter = new Parameter((TypeScriptParameter) currentPsiParameter);
 
-                String currentValue;
-                // first try original Parameter
-                int index = originalParameters.indexOf(currentParameter);
-                if (index != -1) {
-                    currentValue = PsiUtil.runReadActionWithResult(originalArguments[index]::getText);
+            // first try original Parameter
+            Integer index = originalIndices.get(currentParameter);
+            if (index != null) {
+                template.argument(index);
+            } else {
+                Classfield definedClassfield = definingParameter.get(currentParameter);
+                if (definedClassfield != null && defaultValues.get(definedClassfield) != null) {
+                    template.text(defaultValues.get(definedClassfield));
                 } else {
-                    Classfield definedClassfield = definingParameter.get(currentParameter);
-                    if (definedClassfield != null && defaultValues.get(definedClassfield) != null) {
-                        currentValue = defaultValues.get(definedClassfield);
-                    } else {
-                        currentValue = DefaultValues.getDefaultValue(currentParameter);
-                    }
+                    template.text(DefaultValues.getDefaultValue(currentParameter));
                 }
-                updatedArguments.append(currentValue).append(", ");
             }
-
-            // Remove trailing comma and close the argument list
-            if (updatedArguments.charAt(updatedArguments.length() - 2) == ',') {
-                updatedArguments.setLength(updatedArguments.length() - 2);
-            }
-            updatedArguments.append(")");
-
-            // Update the function call with the new argument list
-            WriteCommandAction.runWriteCommandAction(constructor.getProject(), () -> {
-                JSArgumentList newArguments = PsiUtil.createJSArgumentListFromText(argumentList, updatedArguments.toString());
-                argumentList.replace(newArguments);
-                PsiDocumentManager.getInstance(constructor.getProject()).commitAllDocuments();
-            });
-
         }
+        template.close();
+
+        // collect the argument lists of all calls in one read action
+        List<JSArgumentList> argumentLists = PsiUtil.runReadActionWithResult(() -> {
+            List<JSArgumentList> result = new ArrayList<>();
+            for (PsiReference functionCall : usageCollector.getReferences(constructor)) {
+                JSArgumentList argumentList = PsiTreeUtil.getNextSiblingOfType(functionCall.getElement(), JSArgumentList.class);
+                assert argumentList != null;
+                result.add(argumentList);
+            }
+            return result;
+        });
 
+        CodeSmellLogger.info("Refactoring " + argumentLists.size() + " constructor calls of " + PsiUtil.getQualifiedName(constructor) + "...");
+        rewriteCallSites(argumentLists, template.build(), (text, target) -> PsiUtil.createJSArgumentListFromText(target, text));
     }
 
 
@@ -871,111 +1226,79 @@ public class DataClumpRefactoring implements LocalQuickFix {
         HashMap<Parameter, Classfield> extractedDefiningParameters = new HashMap<>();
         getClassfieldDefiningParameter((TypeScriptFunction) PsiUtil.runReadActionWithResult(extractedClass::getConstructor), extractedDefiningParameters, extractedDefinedClassfields);
 
-        for (PsiReference functionCall : PsiUtil.runReadActionWithResult(() -> ReferencesSearch.search(function))) {
-            try {
-
-                CodeSmellLogger.info("Refactoring function call... " + PsiUtil.runReadActionWithResult(() -> functionCall.getElement().getText()));
-                JSArgumentList argumentList = PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.getNextSiblingOfType(functionCall.getElement(), JSArgumentList.class));
-                if (argumentList == null) continue;
-                JSExpression[] originalArguments = PsiUtil.runReadActionWithResult(argumentList::getArguments);
-
-                // create the new argument list
-                StringBuilder updatedArguments = new StringBuilder("(");
-
-                for (JSParameterListElement currentFunctionsPsiParameter : PsiUtil.runReadActionWithResult(function::getParameters)) {
-
-                    // if the next parameter expects the extracted class
-                    // -> replace the argument with a constructor call for the extracted class
-                    if (Objects.equals(PsiUtil.runReadActionWithResult(currentFunctionsPsiParameter::getJSType), PsiUtil.runReadActionWithResult(extractedClass::getJSType))) {
-
-                        updatedArguments.append("new ").append(PsiUtil.getName(extractedClass)).append("(");
-                        for (Property extractedClassProperty : extractedParameters) {
-
-                            if (!dataClump.contains(extractedClassProperty)) {
-                                updatedArguments.append(DefaultValues.getDefaultValue(extractedClassProperty)).append(", ");
-                                continue;
-                            }
-
-                            if (!PsiUtil.runReadActionWithResult(function::isConstructor)) {
-
-                                if (extractedClassProperty instanceof Classfield) {
-                                    int index = originalParameters.indexOf(extractedClassProperty);
-                                    if (index == -1) {
-                                        CodeSmellLogger.error("Property " + extractedClassProperty.getName() + " not found in original parameters", new IndexOutOfBoundsException());
-                                        continue;
-                                    }
-                                    updatedArguments.append(PsiUtil.runReadActionWithResult(originalArguments[index]::getText)).append(", ");
-                                } else if (extractedClassProperty instanceof Parameter) {
-                                    Classfield definedClassfield = extractedDefiningParameters.get(extractedClassProperty);
-                                    int index = originalParameters.indexOf(definedClassfield);
-                                    if (index == -1) {
-                                        CodeSmellLogger.error("Property " + extractedClassProperty.getName() + " not found in original parameters", new IndexOutOfBoundsException());
-                                        continue;
-                                    }
-                                    updatedArguments.append(PsiUtil.runReadActionWithResult(originalArguments[index]::getText)).append(", ");
-                                }
-
-                            } else {
-                                // if the function is a constructor -> use the defined classfields and default values
-                                assert originalDefinedClassfields != null;
-                                assert defaultValues != null;
-
-                                if (extractedClassProperty instanceof Classfield) {
-
-                                    if (originalDefinedClassfields.containsKey(extractedClassProperty)) { // if the property is defined in the constructor -> use the corresponding parameter
-                                        int index = originalParameters.indexOf(originalDefinedClassfields.get(extractedClassProperty));
-                                        updatedArguments.append(PsiUtil.runReadActionWithResult(originalArguments[index]::getText)).append(", ");
-                                    } else if (defaultValues.containsKey(extractedClassProperty)) { // if the property has a default value -> use the default value
-                                        updatedArguments.append(defaultValues.get(extractedClassProperty)).append(", ");
-                                    } else { // if the property is not defined in the constructor and has no default value -> use undefined
-                                        updatedArguments.append(DefaultValues.getDefaultValue(extractedClassProperty)).append(", ");
-                                    }
-
-                                } else if (extractedClassProperty instanceof Parameter) {
-                                    Classfield definedClassfield = extractedDefiningParameters.get(extractedClassProperty);
-
-                                    if (originalDefinedClassfields.containsKey(definedClassfield)) { // if the property is defined in the constructor -> use the corresponding parameter
-                                        int index = originalParameters.indexOf(originalDefinedClassfields.get(definedClassfield));
-                                        updatedArguments.append(PsiUtil.runReadActionWithResult(originalArguments[index]::getText)).append(", ");
-                                    } else if (defaultValues.containsKey(definedClassfield)) { // if the property has a default value -> use the default value
-                                        updatedArguments.append(defaultValues.get(definedClassfield)).append(", ");
-                                    } else { // if the property is not defined in the constructor and has no default value -> use undefined
-                                        updatedArguments.append(DefaultValues.getDefaultValue(extractedClassProperty)).append(", ");
-                                    }
-                                }
-
-
-                            }
-                        }
-                        // Remove trailing comma
-                        if (updatedArguments.charAt(updatedArguments.length() - 2) == ',') {
-                            updatedArguments.setLength(updatedArguments.length() - 2);
-                        }
-                        updatedArguments.append(")");
-                    } else {
-                        // Append original arguments
-                        updatedArguments.append(PsiUtil.runReadActionWithResult(originalArguments[originalParameters.indexOf(new Parameter((TypeScriptParameter) currentFunctionsPsiParameter))]::getText));
-                    }
-                    updatedArguments.append(", ");
+        boolean isConstructor = PsiUtil.runReadActionWithResult(function::isConstructor);
+        String extractedClassName = PsiUtil.getName(extractedClass);
+        HashMap<Property, Integer> originalIndices = getParameterIndices(originalParameters);
+
+        // the parameters of the adjusted function are the same for all calls -> build the new argument list once
+        ArgumentTemplateBuilder template = new ArgumentTemplateBuilder(originalParameters.size()).open("");
+        for (JSParameterListElement currentFunctionsPsiParameter : PsiUtil.runReadActionWithResult(function::getParameters)) {
+
+            // if the next parameter expects the extracted class
+            // -> replace the argument with a constructor call for the extracted class
+            if (!Objects.equals(PsiUtil.runReadActionWithResult(currentFunctionsPsiParameter::getJSType), PsiUtil.runReadActionWithResult(extractedClass::getJSType))) {
+                // Append original arguments
+                Parameter currentParameter = new Parameter((TypeScriptParameter) currentFunctionsPsiParameter);
+                Integer index = originalIndices.get(currentParameter);
+                if (index == null) {
+                    CodeSmellLogger.error("Parameter " + currentParameter.getName() + " not found in original parameters, the calls of " + PsiUtil.getQualifiedName(function) + " are not rewritten.", new IllegalStateException());
+                    return;
                 }
+                template.argument(index);
+                continue;
+            }
+
+            template.open("new " + extractedClassName);
+            for (Property extractedClassProperty : extractedParameters) {
 
-                // Remove trailing comma and close the argument list
-                if (updatedArguments.charAt(updatedArguments.length() - 2) == ',') {
-                    updatedArguments.setLength(updatedArguments.length() - 2);
+                if (!dataClump.contains(extractedClassProperty)) {
+                    template.text(DefaultValues.getDefaultValue(extractedClassProperty));
+                    continue;
                 }
-                updatedArguments.append(")");
 
-                // Update the function call with the new argument list
-                WriteCommandAction.runWriteCommandAction(function.getProject(), () -> {
-                    JSExpression newArguments = JSPsiElementFactory.createJSExpression(updatedArguments.toString(), argumentList);
-                    argumentList.replace(newArguments);
-                    PsiDocumentManager.getInstance(function.getProject()).commitAllDocuments();
-                });
-            } catch (Exception e) {
-                CodeSmellLogger.warn("Function call + " + PsiUtil.runReadActionWithResult(() -> functionCall.getElement().getText()) + " could not be refactored. \n" + e.getMessage() + "\n Continuing...");
+                if (!isConstructor) {
+
+                    Property originalProperty = extractedClassProperty instanceof Parameter ? extractedDefiningParameters.get(extractedClassProperty) : extractedClassProperty;
+                    Integer index = originalIndices.get(originalProperty);
+                    if (index == null) {
+                        CodeSmellLogger.error("Property " + extractedClassProperty.getName() + " not found in original parameters", new IndexOutOfBoundsException());
+                        continue;
+                    }
+                    template.argument(index);
+
+                } else {
+                    // if the function is a constructor -> use the defined classfields and default values
+                    assert originalDefinedClassfields != null;
+                    assert defaultValues != null;
+
+                    Classfield definedClassfield = extractedClassProperty instanceof Parameter ? extractedDefiningParameters.get(extractedClassProperty) : (Classfield) extractedClassProperty;
+
+                    Integer index = originalIndices.get(originalDefinedClassfields.get(definedClassfield));
+                    if (index != null) { // if the property is defined in the constructor -> use the corresponding parameter
+                        template.argument(index);
+                    } else if (defaultValues.containsKey(definedClassfield)) { // if the property has a default value -> use the default value
+                        template.text(defaultValues.get(definedClassfield));
+                    } else { // if the property is not defined in the constructor and has no default value -> use undefined
+                        template.text(DefaultValues.getDefaultValue(extractedClassProperty));
+                    }
+                }
             }
+            template.close();
         }
+        template.close();
+
+        // collect the argument lists of all calls in one read action
+        List<JSArgumentList> argumentLists = PsiUtil.runReadActionWithResult(() -> {
+            List<JSArgumentList> result = new ArrayList<>();
+            for (PsiReference functionCall : usageCollector.getReferences(function)) {
+                JSArgumentList argumentList = PsiTreeUtil.getNextSiblingOfType(functionCall.getElement(), JSArgumentList.class);
+                if (argumentList != null) result.add(argumentList);
+            }
+            return result;
+        });
 
+        CodeSmellLogger.info("Refactoring " + argumentLists.size() + " calls of " + PsiUtil.getQualifiedName(function) + "...");
+        rewriteCallSites(argumentLists, template.build(), (text, target) -> JSPsiElementFactory.createJSExpression(text, target));
     }
 
     /**
@@ -1043,20 +1366,17 @@ public class DataClumpRefactoring implements LocalQuickFix {
             if (dataClump.contains(currentParameter)) { // only refactor the extracted properties
 
                 // replace all references to the parameter with getter calls on the extracted class
-                for (PsiReference reference : PsiUtil.runReadActionWithResult(() -> ReferencesSearch.search(parameter))) {
-                    JSExpression newExpression = JSPsiElementFactory.createJSExpression(newParameterName + "." + currentParameter.getName(), reference.getElement());
-                    WriteCommandAction.runWriteCommandAction(reference.getElement().getProject(), () -> {
-                        reference.getElement().replace(newExpression);
-                        PsiDocumentManager.getInstance(reference.getElement().getProject()).commitAllDocuments();
-                    });
+                for (PsiReference reference : usageCollector.getReferences(parameter)) {
+                    PsiElement element = PsiUtil.runReadActionWithResult(reference::getElement);
+                    transaction.replace(element, EditPlan.Kind.PARAMETER_REFERENCE, target -> JSPsiElementFactory.createJSExpression(newParameterName + "." + currentParameter.getName(), target));
                 }
                 // Remove the parameter from the function's signature
-                WriteCommandAction.runWriteCommandAction(function.getProject(), () -> {
-                    parameter.delete();
-                    PsiDocumentManager.getInstance(function.getProject()).commitAllDocuments();
-                });
+                transaction.delete(parameter);
             }
         }
+
+        // apply the replacements and deletions at once
+        transaction.applyPendingEdits();
     }
 
     /**
@@ -1069,17 +1389,16 @@ public class DataClumpRefactoring implements LocalQuickFix {
      */
     private void replaceAssignmentWithSetter(TypeScriptClass psiClass, JSAssignmentExpression assignment, String fieldName, String propertyName) {
 
-        String expressionText;
-        if (PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.getParentOfType(assignment, TypeScriptClass.class)) == psiClass) {
-            expressionText = "this." + fieldName + "." + propertyName + " = " + Objects.requireNonNull(PsiUtil.runReadActionWithResult(() -> assignment.getROperand()).getText());
-        } else {
-            expressionText = Objects.requireNonNull(PsiUtil.runReadActionWithResult(() -> Objects.requireNonNull(assignment.getLOperand()).getFirstChild().getFirstChild().getText() + "." + fieldName + "." + propertyName + " = " + Objects.requireNonNull(assignment.getROperand()).getText()));
-        }
-
-        JSExpression newExpression = JSPsiElementFactory.createJSExpression(expressionText, assignment);
-        WriteCommandAction.runWriteCommandAction(assignment.getProject(), () -> {
-            assignment.replace(newExpression);
-            PsiDocumentManager.getInstance(assignment.getProject()).commitAllDocuments();
+        // the text is created when the edit is applied, since the right operand might contain references that are replaced before
+        transaction.replace(assignment, EditPlan.Kind.FIELD_REFERENCE, target -> {
+            JSAssignmentExpression currentAssignment = (JSAssignmentExpression) target;
+            String expressionText;
+            if (PsiTreeUtil.getParentOfType(currentAssignment, TypeScriptClass.class) == psiClass) {
+                expressionText = "this." + fieldName + "." + propertyName + " = " + Objects.requireNonNull(currentAssignment.getROperand()).getText();
+            } else {
+                expressionText = Objects.requireNonNull(currentAssignment.getLOperand()).getFirstChild().getFirstChild().getText() + "." + fieldName + "." + propertyName + " = " + Objects.requireNonNull(currentAssignment.getROperand()).getText();
+            }
+            return JSPsiElementFactory.createJSExpression(expressionText, currentAssignment);
         });
     }
 
@@ -1093,115 +1412,97 @@ public class DataClumpRefactoring implements LocalQuickFix {
      * @param isFieldReference if the reference is a field reference
      */
     private void replaceReferenceWithGetter(TypeScriptClass psiClass, PsiReference reference, String fieldName, String propertyName, boolean isFieldReference) {
+        PsiElement element = PsiUtil.runReadActionWithResult(reference::getElement);
+
         String expressionText;
-        if (PsiTreeUtil.getParentOfType(PsiUtil.runReadActionWithResult(reference::getElement), TypeScriptClass.class) == psiClass && isFieldReference) {
+        if (PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.getParentOfType(element, TypeScriptClass.class)) == psiClass && isFieldReference) {
             expressionText = "this." + fieldName + "." + propertyName;
         } else {
             expressionText = fieldName + "." + propertyName;
         }
 
-        WriteCommandAction.runWriteCommandAction(reference.getElement().getProject(), () -> {
-            JSExpression newExpression = JSPsiElementFactory.createJSExpression(expressionText, PsiUtil.runReadActionWithResult(reference::getElement));
-            reference.getElement().replace(newExpression);
-            PsiDocumentManager.getInstance(reference.getElement().getProject()).commitAllDocuments();
-        });
+        transaction.replace(element, isFieldReference ? EditPlan.Kind.FIELD_REFERENCE : EditPlan.Kind.PARAMETER_REFERENCE, target -> JSPsiElementFactory.createJSExpression(expressionText, target));
     }
 
     /**
-     * Gets the classes that can be used for the data clump refactoring.
+     * Gets the classes that contain all properties according to the index. These classes still have to be confirmed
+     * by {@link #isUsableClass(TypeScriptClass, List)}.
      *
      * @param properties the properties that are part of the data clump
-     * @return the classes that can be used for the data clump refactoring
+     * @return the classes that contain all properties
      */
-    public Set<TypeScriptClass> getUsableClasses(List<Property> properties) {
-        Set<TypeScriptClass> matchingClasses = new HashSet<>();
+    public List<TypeScriptClass> getCandidateClasses(List<Property> properties) {
+        List<TypeScriptClass> candidates = new ArrayList<>();
 
         // validate properties
-        if (properties.isEmpty())
+        if (properties.isEmpty()) {
             CodeSmellLogger.error("No properties specified for dataclump.DataClumpRefactoring", new IllegalArgumentException());
-
-        Property firstProperty = properties.get(0);
-
-        if (!Index.getPropertiesToClasses().containsKey(firstProperty)) return matchingClasses;
+            return candidates;
+        }
 
         // find all classes that contain all properties
-        List<JSClass> potentialClasses = Index.getPropertiesToClasses().get(firstProperty);
-        for (JSClass psiClass : potentialClasses) {
+        for (JSClass psiClass : Index.getInstance(currentElement.getProject()).getClassesContainingAll(properties)) {
             // filter all invalid, anonymous classes and interfaces since they cannot be used for the refactoring
-
-            if (!PsiUtil.runReadActionWithResult(psiClass::isValid) || PsiUtil.runReadActionWithResult(psiClass::getName) == null || !(psiClass instanceof TypeScriptClass))
+            if (!(psiClass instanceof TypeScriptClass) || !PsiUtil.runReadActionWithResult(psiClass::isValid) || PsiUtil.runReadActionWithResult(psiClass::getName) == null)
                 continue;
 
-            if (PsiUtil.hasAll((TypeScriptClass) psiClass, properties)) matchingClasses.add((TypeScriptClass) psiClass);
+            if (PsiUtil.hasAll((TypeScriptClass) psiClass, properties)) candidates.add((TypeScriptClass) psiClass);
         }
+        candidates.sort(Comparator.comparing(psiClass -> String.valueOf(PsiUtil.getQualifiedName(psiClass))));
+        return candidates;
+    }
 
-        // filter classes that have the properties assigned in the constructor
-        // also filter classes where the properties are readonly
-        Set<TypeScriptClass> filteredClasses = new HashSet<>(matchingClasses);
-
-        for (TypeScriptClass psiClass : matchingClasses) {
-            for (Property property : properties) {
-
-                PsiElement psiField = PsiUtil.getPsiField(psiClass, property.getName());
-                assert psiField != null;
+    /**
+     * Checks if the given class can be used for the data clump refactoring. The properties must not be readonly and
+     * if they are assigned in the constructor, they must be assigned from the parameters defining them.
+     * Must be called inside a read action.
+     *
+     * @param psiClass   the class that contains all properties
+     * @param properties the properties that are part of the data clump
+     * @return true if the class can be used, false otherwise
+     */
+    public boolean isUsableClass(TypeScriptClass psiClass, List<Property> properties) {
+        if (!psiClass.isValid()) return false;
 
-                // check if the property is readonly -> cannot be refactored
-                if (psiField instanceof TypeScriptField field) {
-                    if (PsiUtil.getModifiers(field).contains("readonly")) {
-                        filteredClasses.remove(psiClass);
-                        break;
-                    }
-                } else if (psiField instanceof TypeScriptParameter parameter) {
-                    if (PsiUtil.getModifiers(parameter).contains("readonly")) {
-                        filteredClasses.remove(psiClass);
-                        break;
-                    }
-                }
-                TypeScriptFunction constructor = (TypeScriptFunction) PsiUtil.runReadActionWithResult(psiClass::getConstructor);
-                if (constructor == null) break;
+        TypeScriptFunction constructor = (TypeScriptFunction) psiClass.getConstructor();
+        HashMap<Parameter, Classfield> definingParameter = new HashMap<>();
+        if (constructor != null) getClassfieldDefiningParameter(constructor, definingParameter, new HashMap<>());
 
-                // check if the property is assigned in the constructor
-                ApplicationManager.getApplication().runReadAction(() -> {
-                    for (PsiReference reference : ReferencesSearch.search(psiField)) {
+        for (Property property : properties) {
+            ProgressManager.checkCanceled();
 
-                        // check if the reference is in the constructor
-                        if (PsiTreeUtil.getParentOfType(reference.getElement(), TypeScriptFunction.class) != constructor)
-                            break;
+            PsiElement psiField = PsiUtil.getPsiField(psiClass, property.getName());
+            if (psiField == null) return false;
 
-                        // check if the reference is an assignment
-                        JSAssignmentExpression assignment = PsiTreeUtil.getParentOfType(reference.getElement(), JSAssignmentExpression.class);
-                        if (assignment == null || Objects.requireNonNull(assignment.getLOperand()).getFirstChild() != reference)
-                            break;
+            // check if the property is readonly -> cannot be refactored
+            if (psiField instanceof TypeScriptField field) {
+                if (PsiUtil.getModifiers(field).contains("readonly")) return false;
+            } else if (psiField instanceof TypeScriptParameter parameter) {
+                if (PsiUtil.getModifiers(parameter).contains("readonly")) return false;
+            }
+            if (constructor == null) continue;
 
+            // check if the property is assigned in the constructor, only the references in the constructor are relevant
+            for (PsiReference reference : ReferencesSearch.search(psiField, new LocalSearchScope(constructor))) {
 
-                        // check if the right operand is a reference expression
-                        if (!(assignment.getROperand() instanceof JSReferenceExpression)) {
-                            filteredClasses.remove(psiClass);
-                            break;
-                        }
+                // check if the reference is an assignment
+                JSAssignmentExpression assignment = PsiTreeUtil.getParentOfType(reference.getElement(), JSAssignmentExpression.class);
+                if (assignment == null || Objects.requireNonNull(assignment.getLOperand()).getFirstChild() != reference)
+                    continue;
 
-                        // check if the right operand is a property
-                        Property assignedProperty = PsiUtil.resolveProperty((JSReferenceExpression) assignment.getROperand());
-                        if (assignedProperty == null) {
-                            filteredClasses.remove(psiClass);
-                            break;
-                        }
+                // check if the right operand is a reference expression
+                if (!(assignment.getROperand() instanceof JSReferenceExpression)) return false;
 
-                        // check if the assigned property is the same as the property
-                        HashMap<Parameter, Classfield> definingParameter = new HashMap<>();
-                        getClassfieldDefiningParameter(constructor, definingParameter, new HashMap<>());
+                // check if the right operand is a property
+                Property assignedProperty = PsiUtil.resolveProperty((JSReferenceExpression) assignment.getROperand());
+                if (assignedProperty == null) return false;
 
-                        Classfield definingField = definingParameter.get(assignedProperty);
-                        if (definingField == null || !definingField.equals(property)) {
-                            filteredClasses.remove(psiClass);
-                            break;
-                        }
-                    }
-                });
+                // check if the assigned property is the same as the property
+                Classfield definingField = definingParameter.get(assignedProperty);
+                if (definingField == null || !definingField.equals(property)) return false;
             }
         }
-
-        return filteredClasses;
+        return true;
     }
 
     /**
@@ -1299,7 +1600,7 @@ public class DataClumpRefactoring implements LocalQuickFix {
     /**
      * This class contains the default values for the different types of properties.
      */
-    private static class DefaultValues {
+    static class DefaultValues {
         /**
          * The default value for an undefined property.
          */
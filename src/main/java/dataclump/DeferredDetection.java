@@ -0,0 +1,80 @@
+package dataclump;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs the detection of elements that are too expensive for a highlighting pass in the background.
+ * The result is stored on the inspected element and the highlighting of its file is restarted, so that the inspection
+ * can register the data clumps without detecting them again. The result is only used if no PSI of the project was
+ * modified since the detection started, since an edit of a partner element can add or remove data clumps.
+ * It is removed once the inspection took it, so that the snapshot does not keep the PSI of other files alive.
+ */
+public class DeferredDetection {
+
+    /**
+     * The key of the result of a background pass in the user data of the inspected element
+     */
+    private static final Key<DataClumpDetection.DetectionResult> RESULT = Key.create("dataclump.deferred.result");
+
+    /**
+     * Takes the result of a background pass for the given element. The result is removed from the element, it is
+     * returned only if the PSI of the project was not modified since the detection started.
+     * Must be called inside a read action.
+     *
+     * @param element the inspected element
+     * @return the result or null if there is no up-to-date result
+     */
+    public static @Nullable DataClumpDetection.DetectionResult takeResult(PsiElement element) {
+        DataClumpDetection.DetectionResult result = element.getUserData(RESULT);
+        if (result == null) return null;
+
+        element.putUserData(RESULT, null);
+        if (result.modificationCount() != getModificationCount(element)) return null;
+        return result;
+    }
+
+    /**
+     * Schedules the detection of the given element in the background.
+     * Multiple requests for the same element are coalesced and the pass is cancelled by any write action,
+     * in which case it is scheduled again by the next highlighting pass.
+     *
+     * @param detection the inspection to run the detection with
+     * @param element   the element to detect data clumps in
+     */
+    public static void schedule(DataClumpDetection detection, PsiElement element) {
+        Project project = element.getProject();
+
+        ReadAction.nonBlocking(() -> detection.computeDataClumps(element, getModificationCount(element)))
+                .expireWith(project)
+                .coalesceBy(DeferredDetection.class, element)
+                .finishOnUiThread(ModalityState.defaultModalityState(), result -> {
+                    if (result == null || !element.isValid()) return;
+                    element.putUserData(RESULT, result);
+
+                    // highlight the file again so that the inspection picks up the result
+                    PsiFile file = element.getContainingFile();
+                    if (file != null) DaemonCodeAnalyzer.getInstance(project).restart(file);
+                })
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
+    /**
+     * Returns the PSI modification count of the project of the given element. It changes with every edit in the
+     * project, including edits of the elements the data clumps are formed with. Must be called inside a read action.
+     *
+     * @param element the element
+     * @return the modification count of the project
+     */
+    private static long getModificationCount(PsiElement element) {
+        return PsiModificationTracker.getInstance(element.getProject()).getModificationCount();
+    }
+}
@@ -0,0 +1,393 @@
+package dataclump;
+
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptInterface;
+import com.intellij.lang.javascript.psi.ecmal4.JSClass;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.PsiTreeUtil;
+import util.*;
+
+import java.util.*;
+
+/**
+ * Immutable snapshot of everything the data clump detection needs to know about the PSI of an element and the
+ * elements it might form a data clump with. The snapshot is collected in a single read action, so that the data
+ * clumps can afterwards be computed on the snapshot without holding the read lock.
+ */
+public class DetectionSnapshot {
+
+    /**
+     * The elements that were valid when the snapshot was taken
+     */
+    private final Set<PsiElement> validElements = new HashSet<>();
+    /**
+     * Maps an element to its name
+     */
+    private final HashMap<PsiElement, String> names = new HashMap<>();
+    /**
+     * Maps an element to its qualified name
+     */
+    private final HashMap<PsiElement, String> qualifiedNames = new HashMap<>();
+    /**
+     * Maps a function to the class containing it
+     */
+    private final HashMap<PsiElement, JSClass> containingClasses = new HashMap<>();
+    /**
+     * Maps a class to the classes and interfaces in its hierarchy (including the class itself)
+     */
+    private final HashMap<JSClass, List<JSClass>> hierarchies = new HashMap<>();
+    /**
+     * Maps an interface in a hierarchy to the names of the queried fields it declares
+     */
+    private final HashMap<JSClass, Set<String>> declaredFields = new HashMap<>();
+    /**
+     * Maps a class in a hierarchy to the names of the queried functions it declares
+     */
+    private final HashMap<JSClass, Set<String>> declaredFunctions = new HashMap<>();
+    /**
+     * Maps a class to its fields that are valid candidates for a data clump and the PsiElements defining them
+     */
+    private final HashMap<JSClass, HashMap<Classfield, PsiElement>> candidateFields = new HashMap<>();
+    /**
+     * Maps the properties of the inspected element to the PsiElements defining them
+     */
+    private final HashMap<Property, PsiElement> psiProperties = new HashMap<>();
+    /**
+     * The elements that can be refactored automatically
+     */
+    private final Set<PsiElement> refactorableElements = new HashSet<>();
+
+    /**
+     * Creates an empty snapshot. Use {@link #create(PsiElement, List, Collection)} to collect a snapshot.
+     */
+    private DetectionSnapshot() {
+    }
+
+    /**
+     * Collects the snapshot for the given element and its candidates in a single cancellable read action.
+     * If the caller already holds the read lock (e.g. the inspection), the snapshot is collected directly.
+     *
+     * @param currentElement    the element that is inspected
+     * @param currentProperties the properties of the inspected element
+     * @param candidates        the elements that might form a data clump with the inspected element
+     * @return the snapshot
+     */
+    public static DetectionSnapshot create(PsiElement currentElement, List<? extends Property> currentProperties, Collection<PsiElement> candidates) {
+        if (ApplicationManager.getApplication().isReadAccessAllowed()) {
+            return collect(currentElement, currentProperties, candidates);
+        }
+        return ReadAction.nonBlocking(() -> collect(currentElement, currentProperties, candidates)).executeSynchronously();
+    }
+
+    /**
+     * Collects the snapshot. Must be called inside a read action.
+     *
+     * @param currentElement    the element that is inspected
+     * @param currentProperties the properties of the inspected element
+     * @param candidates        the elements that might form a data clump with the inspected element
+     * @return the snapshot
+     */
+    private static DetectionSnapshot collect(PsiElement currentElement, List<? extends Property> currentProperties, Collection<PsiElement> candidates) {
+
+        DetectionSnapshot snapshot = new DetectionSnapshot();
+
+        // the names that are queried in the hierarchy of the elements
+        Set<String> fieldNames = new HashSet<>();
+        for (Property property : currentProperties) {
+            fieldNames.add(property.getName());
+        }
+        String functionName = currentElement instanceof TypeScriptFunction ? PsiUtil.getName(currentElement) : null;
+
+        List<PsiElement> elements = new ArrayList<>();
+        elements.add(currentElement);
+        elements.addAll(candidates);
+
+        for (PsiElement element : elements) {
+            ProgressManager.checkCanceled();
+
+            if (!element.isValid()) continue;
+            snapshot.validElements.add(element);
+            snapshot.names.put(element, PsiUtil.getName(element));
+            snapshot.qualifiedNames.put(element, PsiUtil.getQualifiedName(element));
+
+            JSClass hierarchyRoot;
+            if (element instanceof JSClass psiClass) {
+                hierarchyRoot = psiClass;
+                snapshot.collectCandidateFields(psiClass);
+            } else {
+                hierarchyRoot = PsiTreeUtil.getParentOfType(element, JSClass.class);
+                if (hierarchyRoot != null) snapshot.containingClasses.put(element, hierarchyRoot);
+            }
+
+            // the hierarchy is only compared between two classes or between two functions
+            boolean sameKind = (element instanceof JSClass) == (currentElement instanceof JSClass);
+            if (hierarchyRoot != null && sameKind) {
+                snapshot.collectHierarchy(hierarchyRoot, fieldNames, functionName);
+            }
+
+            if (canRefactor(element)) snapshot.refactorableElements.add(element);
+        }
+
+        // the PsiElements of the inspected element the problems are registered on
+        if (currentElement instanceof JSClass currentClass) {
+            HashMap<Classfield, PsiElement> fields = snapshot.candidateFields.get(currentClass);
+            if (fields != null) snapshot.psiProperties.putAll(fields);
+        } else if (currentElement instanceof TypeScriptFunction currentFunction && currentElement.isValid()) {
+            for (Property property : currentProperties) {
+                PsiElement psiParameter = PsiUtil.getPsiParameter(currentFunction, property);
+                if (psiParameter != null) snapshot.psiProperties.put(property, psiParameter);
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Collects the fields of the class that are valid candidates for a data clump.
+     * A field is a candidate if it is not static and its definition is valid.
+     *
+     * @param psiClass the class
+     */
+    private void collectCandidateFields(JSClass psiClass) {
+        HashMap<Classfield, PsiElement> fields = new HashMap<>();
+
+        List<Classfield> classfields = Index.getInstance(psiClass).getClassfields(psiClass);
+        if (classfields != null) {
+            for (Classfield classfield : classfields) {
+                if (classfield.isStatic()) continue;
+
+                PsiElement psiField = PsiUtil.getPsiField(psiClass, classfield);
+                if (psiField == null || !psiField.isValid()) continue;
+
+                fields.put(classfield, psiField);
+            }
+        }
+        candidateFields.put(psiClass, fields);
+    }
+
+    /**
+     * Collects the hierarchy of the class and which of the queried fields and functions are declared in it.
+     *
+     * @param psiClass     the class
+     * @param fieldNames   the names of the fields that are queried in interfaces of the hierarchy
+     * @param functionName the name of the function that is queried in the hierarchy or null
+     */
+    private void collectHierarchy(JSClass psiClass, Set<String> fieldNames, String functionName) {
+        if (hierarchies.containsKey(psiClass)) return;
+
+        List<JSClass> hierarchy = resolveHierarchy(psiClass);
+        hierarchies.put(psiClass, hierarchy);
+
+        for (JSClass superClass : hierarchy) {
+            if (declaredFunctions.containsKey(superClass)) continue;
+
+            Set<String> functions = new HashSet<>();
+            if (functionName != null && superClass.findFunctionByName(functionName) != null) {
+                functions.add(functionName);
+            }
+            declaredFunctions.put(superClass, functions);
+
+            if (superClass instanceof TypeScriptInterface) {
+                Set<String> fields = new HashSet<>();
+                for (String fieldName : fieldNames) {
+                    if (superClass.findFieldByName(fieldName) != null) fields.add(fieldName);
+                }
+                declaredFields.put(superClass, fields);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the element was valid when the snapshot was taken.
+     *
+     * @param element the element
+     * @return true if the element was valid, false otherwise
+     */
+    public boolean isValid(PsiElement element) {
+        return validElements.contains(element);
+    }
+
+    /**
+     * Returns whether the field of the class is a valid candidate for a data clump.
+     *
+     * @param psiClass   the class
+     * @param classfield the field
+     * @return true if the field should be compared, false otherwise
+     */
+    public boolean isCandidateField(JSClass psiClass, Classfield classfield) {
+        HashMap<Classfield, PsiElement> fields = candidateFields.get(psiClass);
+        return fields != null && fields.containsKey(classfield);
+    }
+
+    /**
+     * Returns the PsiElement defining the given property of the inspected element.
+     *
+     * @param property the property
+     * @return the PsiElement defining the property or null if it was not found
+     */
+    public PsiElement getPsiProperty(Property property) {
+        return psiProperties.get(property);
+    }
+
+    /**
+     * Returns the qualified name of the element.
+     *
+     * @param element the element
+     * @return the qualified name of the element
+     */
+    public String getQualifiedName(PsiElement element) {
+        return qualifiedNames.get(element);
+    }
+
+    /**
+     * Returns whether the element can be refactored automatically.
+     *
+     * @param element the element
+     * @return true if the element can be refactored, false otherwise
+     */
+    public boolean canBeRefactored(PsiElement element) {
+        return refactorableElements.contains(element);
+    }
+
+    /**
+     * Check if the field is inherited by the same interface in the two classes
+     *
+     * @param currentClass the first class containing the field
+     * @param otherClass   the second class containing the field
+     * @param fieldName    the name of the field
+     * @return true if the field is inherited by the same interface in the two classes, false otherwise
+     */
+    public boolean inheritedBySameInterface(JSClass currentClass, JSClass otherClass, String fieldName) {
+        for (JSClass commonClass : getCommonClassesInHierarchy(currentClass, otherClass)) {
+            Set<String> fields = declaredFields.get(commonClass);
+            if (fields != null && fields.contains(fieldName)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if the two functions are overriding each other or the same function in the hierarchy
+     *
+     * @param function1 the first function
+     * @param function2 the second function
+     * @return true if the functions are overriding each other, false otherwise
+     */
+    public boolean isOverriding(TypeScriptFunction function1, TypeScriptFunction function2) {
+
+        String name = names.get(function1);
+        if (!Objects.equals(name, names.get(function2))) return false;
+        JSClass containingClass1 = containingClasses.get(function1);
+        if (containingClass1 == null) return false;
+        JSClass containingClass2 = containingClasses.get(function2);
+        if (containingClass2 == null) return false;
+        if (containingClass1 == containingClass2) return false;
+
+        for (JSClass commonClass : getCommonClassesInHierarchy(containingClass1, containingClass2)) {
+            Set<String> functions = declaredFunctions.get(commonClass);
+            if (functions != null && functions.contains(name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the common classes in the snapshotted hierarchy of the two classes
+     *
+     * @param class1 the first class
+     * @param class2 the second class
+     * @return the common classes in the hierarchy of the two classes
+     */
+    private List<JSClass> getCommonClassesInHierarchy(JSClass class1, JSClass class2) {
+        List<JSClass> hierarchy1 = hierarchies.get(class1);
+        List<JSClass> hierarchy2 = hierarchies.get(class2);
+        if (hierarchy1 == null || hierarchy2 == null) return new ArrayList<>();
+
+        List<JSClass> commonClasses = new ArrayList<>(hierarchy1);
+        commonClasses.retainAll(hierarchy2);
+        return commonClasses;
+    }
+
+    /**
+     * Check if the element can be refactored automatically. If the element is part of an interface or
+     * if the function is overridden, it can not be refactored. Must be called inside a read action.
+     *
+     * @param element the element
+     * @return true if the element can be refactored, false otherwise
+     */
+    static boolean canRefactor(PsiElement element) {
+        // if the element is part of an interface, it can not be refactored
+        // functions that are overridden can not be refactored since the overridden functions would be affected
+        if (element instanceof TypeScriptFunction function) {
+            if (isOverwritten(function)) return false;
+            JSClass containingClass = PsiTreeUtil.getParentOfType(element, JSClass.class);
+            return !(containingClass instanceof TypeScriptInterface);
+        } else return !(element instanceof TypeScriptInterface);
+    }
+
+    /**
+     * Check if the function is overridden by another function. Must be called inside a read action.
+     *
+     * @param function the function
+     * @return true if the function is overridden by another function, false otherwise
+     */
+    private static boolean isOverwritten(TypeScriptFunction function) {
+        for (JSClass psiClass : Index.getInstance(function.getProject()).getClassesWithFunctionName(function.getName())) {
+            ProgressManager.checkCanceled();
+            if (!psiClass.isValid()) continue; // deleted classes are skipped, the detection removes invalid elements from the index
+            TypeScriptFunction otherFunction = (TypeScriptFunction) psiClass.findFunctionByName(function.getName());
+            if (otherFunction != null && isOverridingInPsi(function, otherFunction)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if the two functions are overriding each other or the same function in the hierarchy.
+     * Must be called inside a read action.
+     *
+     * @param function1 the first function
+     * @param function2 the second function
+     * @return true if the functions are overriding each other, false otherwise
+     */
+    private static boolean isOverridingInPsi(TypeScriptFunction function1, TypeScriptFunction function2) {
+
+        if (!Objects.equals(function1.getName(), function2.getName())) return false;
+        JSClass containingClass1 = PsiTreeUtil.getParentOfType(function1, JSClass.class);
+        if (containingClass1 == null) return false;
+        JSClass containingClass2 = PsiTreeUtil.getParentOfType(function2, JSClass.class);
+        if (containingClass2 == null) return false;
+        if (containingClass1 == containingClass2) return false;
+
+        List<JSClass> commonClasses = resolveHierarchy(containingClass1);
+        commonClasses.retainAll(resolveHierarchy(containingClass2));
+        for (JSClass commonClass : commonClasses) {
+            if (commonClass.findFunctionByName(function1.getName()) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolve the hierarchy of a class. Must be called inside a read action.
+     *
+     * @param tsClass the class
+     * @return the hierarchy of the class
+     */
+    public static List<JSClass> resolveHierarchy(JSClass tsClass) {
+
+        List<JSClass> superClasses = new ArrayList<>();
+        superClasses.add(tsClass);
+
+        for (JSClass psiClass : tsClass.getSuperClasses()) {
+            if (psiClass != null) superClasses.addAll(resolveHierarchy(psiClass));
+        }
+
+        for (JSClass psiClass : tsClass.getImplementedInterfaces()) {
+            if (psiClass != null) superClasses.addAll(resolveHierarchy(psiClass));
+        }
+
+        return superClasses;
+    }
+}
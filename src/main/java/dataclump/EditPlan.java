@@ -0,0 +1,437 @@
+package dataclump;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.ecmascript6.psi.ES6ImportDeclaration;
+import com.intellij.lang.javascript.JSTokenTypes;
+import com.intellij.lang.javascript.psi.*;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptClass;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptField;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptParameter;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.Nullable;
+import util.Classfield;
+import util.Parameter;
+import util.Property;
+import util.PsiUtil;
+
+import java.util.*;
+
+/**
+ * The places a data clump refactoring will edit, collected in a read action without modifying anything.
+ * The usages are found with the same {@link UsageCollector} search the refactoring uses, so the plan counts the same
+ * declarations, references and call sites. The plan does not compute the new code, which only the refactoring creates
+ * when it applies the edits, so the preview can not show code that differs from what is applied.
+ * The plan is used to preview the size of the refactoring and to record it together with the time it took, so that
+ * the duration of large refactorings can be estimated before they are applied.
+ */
+public class EditPlan {
+
+    /**
+     * The kind of edit
+     */
+    public enum Kind {
+        NEW_CLASS, DECLARATION, FIELD_REFERENCE, PARAMETER_REFERENCE, CALL_SITE
+    }
+
+    /**
+     * Represents a planned edit
+     *
+     * @param filePath the path of the file that is edited
+     * @param range    the range of the text that is changed in the current code
+     * @param kind     the kind of edit
+     */
+    public record Edit(String filePath, TextRange range, Kind kind) {
+    }
+
+    /**
+     * The number of files listed in the preview
+     */
+    private static final int PREVIEW_LIMIT = 20;
+
+    /**
+     * The average time in nanoseconds an edit took in the refactorings applied so far, 0 if none was applied yet
+     */
+    private static double averageNanosPerEdit = 0;
+
+    /**
+     * The number of edits the average is based on
+     */
+    private static long measuredEdits = 0;
+
+    /**
+     * The planned edits
+     */
+    private final List<Edit> edits = new ArrayList<>();
+
+    /**
+     * The time in nanoseconds it took to compute the plan
+     */
+    private long planningDuration;
+
+    /**
+     * Collects the edits of the refactoring of the given elements
+     *
+     * @param elements        the elements that contain the data clump
+     * @param properties      the properties that are extracted
+     * @param className       the name of the new class, only used if no existing class is selected
+     * @param targetDirectory the directory of the new class, only used if no existing class is selected
+     * @param selectedClass   the existing class to extract the properties to, null if a new class is created
+     * @return the plan
+     */
+    public static EditPlan create(List<PsiElement> elements, List<Property> properties, @Nullable String className, @Nullable PsiDirectory targetDirectory, @Nullable TypeScriptClass selectedClass) {
+        long startTime = System.nanoTime();
+
+        EditPlan plan = new EditPlan();
+        Project project = PsiUtil.runReadActionWithResult(elements.get(0)::getProject);
+        UsageCollector usageCollector = new UsageCollector(project);
+
+        ApplicationManager.getApplication().runReadAction(() -> {
+            String extractedClassName = selectedClass != null ? selectedClass.getName() : className;
+
+            if (selectedClass != null) {
+                plan.addSelectedClassEdits(selectedClass, properties, usageCollector);
+            } else if (targetDirectory != null) {
+                String path = targetDirectory.getVirtualFile().getPath() + "/" + className + ".ts";
+                plan.edits.add(new Edit(path, TextRange.EMPTY_RANGE, Kind.NEW_CLASS));
+            }
+
+            for (PsiElement element : elements) {
+                if (!element.isValid() || element == selectedClass) continue;
+
+                if (element instanceof TypeScriptClass psiClass) {
+                    plan.addImportEdit(psiClass, Objects.requireNonNull(extractedClassName), selectedClass);
+                    plan.addClassEdits(psiClass, properties, usageCollector);
+                } else if (element instanceof TypeScriptFunction function) {
+                    plan.addImportEdit(function, Objects.requireNonNull(extractedClassName), selectedClass);
+                    plan.addFunctionEdits(function, properties, usageCollector);
+                }
+            }
+        });
+
+        plan.planningDuration = System.nanoTime() - startTime;
+        return plan;
+    }
+
+    /**
+     * Adds the edits of an existing class the properties are extracted to: the adjusted constructor, the missing
+     * getters and setters and the calls of the constructor, which receive the values of the added properties.
+     * Must be called inside a read action.
+     *
+     * @param selectedClass  the class the properties are extracted to
+     * @param properties     the properties that are extracted
+     * @param usageCollector the collector used to search the references
+     */
+    private void addSelectedClassEdits(TypeScriptClass selectedClass, List<Property> properties, UsageCollector usageCollector) {
+        TypeScriptFunction constructor = (TypeScriptFunction) selectedClass.getConstructor();
+        boolean constructorChanged = false;
+        for (Property property : properties) {
+            Classfield classfield = PsiUtil.getClassfield(selectedClass, property.getName());
+            if (classfield == null) continue;
+            if (constructor == null || !definesField(constructor, classfield)) constructorChanged = true;
+            if (!PsiUtil.hasGetter(selectedClass, classfield)) add(selectedClass, getBodyStart(selectedClass), Kind.DECLARATION);
+            if (!PsiUtil.hasSetter(selectedClass, classfield)) add(selectedClass, getBodyStart(selectedClass), Kind.DECLARATION);
+        }
+        if (!constructorChanged) return;
+
+        add(selectedClass, constructor != null ? constructor.getTextRange() : getBodyStart(selectedClass), Kind.DECLARATION);
+        if (constructor != null) addCallSiteEdits(constructor, usageCollector);
+    }
+
+    /**
+     * Adds the import of the extracted class to the file of the given element, unless the file already imports it or
+     * contains the class. Must be called inside a read action.
+     *
+     * @param element            the element that is refactored
+     * @param extractedClassName the name of the extracted class
+     * @param selectedClass      the existing class the properties are extracted to, null if a new class is created
+     */
+    private void addImportEdit(PsiElement element, String extractedClassName, @Nullable TypeScriptClass selectedClass) {
+        PsiFile file = element.getContainingFile();
+        if (file == null || selectedClass != null && file.equals(selectedClass.getContainingFile())) return;
+
+        for (ES6ImportDeclaration importStatement : PsiTreeUtil.findChildrenOfType(file, ES6ImportDeclaration.class)) {
+            if (importStatement.getNamedImports() != null && importStatement.getNamedImports().getText().contains(extractedClassName)) {
+                return;
+            }
+        }
+        add(element, TextRange.EMPTY_RANGE, Kind.DECLARATION);
+    }
+
+    /**
+     * Adds the edits of the given class: the new field for the extracted class, the removal of the extracted fields,
+     * the rewrite of their references and the edits of the constructor. Must be called inside a read action.
+     *
+     * @param psiClass       the class that contains the data clump
+     * @param properties     the properties that are extracted
+     * @param usageCollector the collector used to search the references
+     */
+    private void addClassEdits(TypeScriptClass psiClass, List<Property> properties, UsageCollector usageCollector) {
+        add(psiClass, getBodyStart(psiClass), Kind.DECLARATION);
+
+        for (Property property : properties) {
+            PsiElement psiField = PsiUtil.getPsiField(psiClass, property.getName());
+            if (psiField == null) continue;
+
+            // parameter fields are removed with the constructor parameters
+            if (psiField instanceof TypeScriptField) {
+                PsiElement statement = psiField.getParent() instanceof JSVarStatement ? psiField.getParent() : psiField;
+                add(psiField, statement.getTextRange(), Kind.DECLARATION);
+            }
+
+            for (PsiReference reference : usageCollector.getReferences(psiField)) {
+                if (reference.resolve() != psiField) continue;
+                PsiElement usage = reference.getElement();
+                add(usage, usage.getTextRange(), Kind.FIELD_REFERENCE);
+            }
+        }
+
+        TypeScriptFunction constructor = (TypeScriptFunction) psiClass.getConstructor();
+        if (constructor == null) return;
+
+        // the parameters that define an extracted field are removed, their values are passed to the extracted class
+        for (JSParameterListElement element : constructor.getParameters()) {
+            if (!(element instanceof TypeScriptParameter parameter)) continue;
+            Classfield definedField = getDefinedField(parameter);
+            if (definedField == null || !properties.contains(definedField)) continue;
+
+            add(parameter, parameter.getTextRange(), Kind.DECLARATION);
+            addReferenceEdits(parameter, usageCollector);
+        }
+        addParameterEdit(constructor);
+
+        JSBlockStatement block = constructor.getBlock();
+        if (block != null) add(block, getBodyStart(block), Kind.DECLARATION);
+
+        addCallSiteEdits(constructor, usageCollector);
+    }
+
+    /**
+     * Adds the edits of the given function: the removal of the extracted parameters, the rewrite of their references
+     * and the rewrite of the call sites. Must be called inside a read action.
+     *
+     * @param function       the function that contains the data clump
+     * @param properties     the properties that are extracted
+     * @param usageCollector the collector used to search the references
+     */
+    private void addFunctionEdits(TypeScriptFunction function, List<Property> properties, UsageCollector usageCollector) {
+        boolean extracted = false;
+        for (JSParameterListElement element : function.getParameters()) {
+            if (!(element instanceof TypeScriptParameter parameter)) continue;
+            if (!properties.contains(new Parameter(parameter))) continue;
+
+            extracted = true;
+            add(parameter, parameter.getTextRange(), Kind.DECLARATION);
+            addReferenceEdits(parameter, usageCollector);
+        }
+        if (!extracted) return;
+
+        addParameterEdit(function);
+        addCallSiteEdits(function, usageCollector);
+    }
+
+    /**
+     * Adds the rewrite of the references of the given extracted parameter. Must be called inside a read action.
+     *
+     * @param parameter      the parameter
+     * @param usageCollector the collector used to search the references
+     */
+    private void addReferenceEdits(TypeScriptParameter parameter, UsageCollector usageCollector) {
+        for (PsiReference reference : usageCollector.getReferences(parameter)) {
+            PsiElement usage = reference.getElement();
+            add(usage, usage.getTextRange(), Kind.PARAMETER_REFERENCE);
+        }
+    }
+
+    /**
+     * Adds the new parameter of the extracted class at the end of the parameter list of the given function.
+     * Must be called inside a read action.
+     *
+     * @param function the function
+     */
+    private void addParameterEdit(TypeScriptFunction function) {
+        JSParameterList parameterList = function.getParameterList();
+        if (parameterList == null) return;
+
+        int end = parameterList.getTextRange().getEndOffset() - 1;
+        add(parameterList, new TextRange(end, end), Kind.DECLARATION);
+    }
+
+    /**
+     * Adds the rewrite of the calls of the given function, whose arguments are adjusted to the extracted class.
+     * Must be called inside a read action.
+     *
+     * @param function       the function whose calls are rewritten
+     * @param usageCollector the collector used to search the references
+     */
+    private void addCallSiteEdits(TypeScriptFunction function, UsageCollector usageCollector) {
+        for (PsiReference reference : usageCollector.getReferences(function)) {
+            JSArgumentList argumentList = PsiTreeUtil.getNextSiblingOfType(reference.getElement(), JSArgumentList.class);
+            if (argumentList != null) add(argumentList, argumentList.getTextRange(), Kind.CALL_SITE);
+        }
+    }
+
+    /**
+     * Returns the field the given constructor parameter defines, either as a parameter field or by an assignment.
+     * Must be called inside a read action.
+     *
+     * @param parameter the parameter of the constructor
+     * @return the defined field, null if the parameter does not define a field
+     */
+    private static @Nullable Classfield getDefinedField(TypeScriptParameter parameter) {
+        if (PsiUtil.isParameterField(parameter)) return new Classfield(parameter);
+        List<Classfield> fields = PsiUtil.getAssignedToField(parameter);
+        return fields.isEmpty() ? null : fields.get(0);
+    }
+
+    /**
+     * Checks if the given constructor defines the given field. Must be called inside a read action.
+     *
+     * @param constructor the constructor
+     * @param classfield  the field
+     * @return true if a parameter of the constructor defines the field, false otherwise
+     */
+    private static boolean definesField(TypeScriptFunction constructor, Classfield classfield) {
+        for (JSParameterListElement parameter : constructor.getParameters()) {
+            if (parameter instanceof TypeScriptParameter typeScriptParameter && classfield.equals(getDefinedField(typeScriptParameter))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the empty range right after the opening brace of the given class or block, where new members and
+     * statements are inserted. Must be called inside a read action.
+     *
+     * @param element the class or block
+     * @return the insertion point
+     */
+    private static TextRange getBodyStart(PsiElement element) {
+        ASTNode leftBrace = element.getNode().findChildByType(JSTokenTypes.LBRACE);
+        int offset = leftBrace != null ? leftBrace.getTextRange().getEndOffset() : element.getTextRange().getStartOffset();
+        return new TextRange(offset, offset);
+    }
+
+    /**
+     * Adds an edit in the file of the given element. Must be called inside a read action.
+     *
+     * @param element an element of the edited file
+     * @param range   the range of the edited text
+     * @param kind    the kind of edit
+     */
+    private void add(PsiElement element, TextRange range, Kind kind) {
+        PsiFile file = element.getContainingFile();
+        VirtualFile virtualFile = file != null ? file.getVirtualFile() : null;
+        String path = virtualFile != null ? virtualFile.getPath() : String.valueOf(file);
+        edits.add(new Edit(path, range, kind));
+    }
+
+    /**
+     * Returns the planned edits
+     *
+     * @return the edits
+     */
+    public List<Edit> getEdits() {
+        return edits;
+    }
+
+    /**
+     * Returns the number of files the refactoring edits or creates
+     *
+     * @return the number of files
+     */
+    public int getFileCount() {
+        Set<String> files = new HashSet<>();
+        for (Edit edit : edits) files.add(edit.filePath());
+        return files.size();
+    }
+
+    /**
+     * Returns the number of planned edits of the given kinds
+     *
+     * @param kinds the kinds of edits to count
+     * @return the number of edits
+     */
+    public int count(Kind... kinds) {
+        List<Kind> kindList = List.of(kinds);
+        return (int) edits.stream().filter(edit -> kindList.contains(edit.kind())).count();
+    }
+
+    /**
+     * Returns the time it took to compute the plan
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getPlanningDuration() {
+        return planningDuration;
+    }
+
+    /**
+     * Returns the estimated duration of the refactoring based on the refactorings applied so far
+     *
+     * @return the estimated duration in nanoseconds, -1 if no refactoring was measured yet
+     */
+    public long getEstimatedDuration() {
+        synchronized (EditPlan.class) {
+            if (measuredEdits == 0) return -1;
+            return (long) (averageNanosPerEdit * edits.size());
+        }
+    }
+
+    /**
+     * Records the time the refactoring of this plan took, so that the duration of later refactorings can be estimated
+     *
+     * @param durationNanoSeconds the duration of the refactoring
+     */
+    public void recordDuration(long durationNanoSeconds) {
+        if (edits.isEmpty()) return;
+        synchronized (EditPlan.class) {
+            averageNanosPerEdit = (averageNanosPerEdit * measuredEdits + durationNanoSeconds) / (measuredEdits + edits.size());
+            measuredEdits += edits.size();
+        }
+    }
+
+    /**
+     * Returns a summary of the plan that is shown in the preview
+     *
+     * @return the summary
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append("The refactoring will change ").append(getFileCount()).append(" files:\n");
+        summary.append(count(Kind.CALL_SITE)).append(" call sites, ");
+        summary.append(count(Kind.FIELD_REFERENCE)).append(" field references, ");
+        summary.append(count(Kind.PARAMETER_REFERENCE)).append(" parameter references, ");
+        summary.append(count(Kind.DECLARATION, Kind.NEW_CLASS)).append(" declarations.\n");
+
+        long estimatedDuration = getEstimatedDuration();
+        if (estimatedDuration >= 0) {
+            summary.append("Estimated duration: ").append(estimatedDuration / 1000000).append(" ms\n");
+        }
+        summary.append("\n");
+
+        // the files with the most edits first
+        Map<String, Integer> editsPerFile = new HashMap<>();
+        for (Edit edit : edits) editsPerFile.merge(edit.filePath(), 1, Integer::sum);
+        List<Map.Entry<String, Integer>> files = new ArrayList<>(editsPerFile.entrySet());
+        files.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+
+        for (Map.Entry<String, Integer> file : files.subList(0, Math.min(PREVIEW_LIMIT, files.size()))) {
+            String fileName = file.getKey().substring(file.getKey().lastIndexOf('/') + 1);
+            summary.append(fileName).append(": ").append(file.getValue()).append(file.getValue() == 1 ? " edit\n" : " edits\n");
+        }
+        if (files.size() > PREVIEW_LIMIT) {
+            summary.append("... and ").append(files.size() - PREVIEW_LIMIT).append(" more files");
+        }
+        return summary.toString();
+    }
+}
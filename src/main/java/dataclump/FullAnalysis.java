@@ -47,13 +47,6 @@ import static evoluation.DiagnosticTool.getCurrentDateTime;
 public class FullAnalysis extends AnAction {
 
     private static HashMap<String, ReportFormat.DataClumpTypeContext> dataClumps = new HashMap<>();
-    private static int amountDataClumps = 0;
-    private static int fieldsToFieldsDataClump = 0;
-    private static int parametersToFieldsDataClump = 0;
-    private static int parametersToParametersDataClump = 0;
-    private static Set<PsiFile> filesWithDataClumps = new HashSet<>();
-    private static Set<PsiElement> classesOrInterfacesWithDataClumps = new HashSet<>();
-    private static Set<PsiElement> methodsWithDataClumps = new HashSet<>();
 
 
     /**
@@ -78,8 +71,9 @@ public class FullAnalysis extends AnAction {
         }
 
         // ensure that the Index is built before running the analysis
-        String resultPath = dir.getPath() + "/full_analysis_" + Objects.requireNonNull(event.getProject()).getName() + ".json";
-        Index.addIndexBuildListener(() -> run(resultPath));
+        Project project = Objects.requireNonNull(event.getProject());
+        String resultPath = dir.getPath() + "/full_analysis_" + project.getName() + ".json";
+        Index.getInstance(project).whenBuilt().thenAccept(index -> run(project, resultPath));
 
     }
 
@@ -89,180 +83,384 @@ public class FullAnalysis extends AnAction {
      * on all functions, classes, and interfaces in the project.
      * Depending on the Index to be built before running the analysis.
      *
+     * @param project    the project to analyze
      * @param resultPath the path to save the results to
      */
-    public static void run(String resultPath) {
+    public static void run(Project project, String resultPath) {
 
         // check if the index is built before running the analysis
-        if (!Index.isIndexBuilt()) {
+        if (!Index.getInstance(project).isIndexBuilt()) {
             CodeSmellLogger.error("Index not built", new IllegalStateException());
             return;
         }
 
-        Project project = Index.getProject();
-
         DumbService.getInstance(project).runWhenSmart(() -> {
             // run the analysis in a background task, so the UI is not blocked
             ProgressManager.getInstance().run(new Task.Backgroundable(project, "Analyzing") {
 
                 @Override
                 public void run(@NotNull ProgressIndicator progressIndicator) {
+                    analyze(project, resultPath);
+                }
+            });
 
-                    long startTime = 0;
-                    if (DiagnosticTool.DIAGNOSTIC_MODE) {
-                        startTime = System.nanoTime();
-                    }
-                    ApplicationManager.getApplication().invokeAndWait(() -> {
-                        PsiManager.getInstance(project).dropPsiCaches();
-                    });
-
-
-                    CodeSmellLogger.info("Running full analysis");
-
-                    PsiManager manager = PsiManager.getInstance(project);
-
-                    // Run the read action to collect TypeScript files
-                    Collection<VirtualFile> typescriptFiles = new ArrayList<>();
-                    ApplicationManager.getApplication().runReadAction(() -> {
-                        typescriptFiles.addAll(FileTypeIndex.getFiles(TypeScriptFileType.INSTANCE, GlobalSearchScope.projectScope(project)));
-                    });
-
-                    CodeSmellLogger.info("Found " + typescriptFiles.size() + " TypeScript files");
-
-                    // initialize variables to store the counting information for the report
-                    dataClumps = new HashMap<>();
-                    amountDataClumps = 0;
-                    fieldsToFieldsDataClump = 0;
-                    parametersToFieldsDataClump = 0;
-                    parametersToParametersDataClump = 0;
-                    int numberOfClassesOrInterfaces = 0;
-                    int numberOfMethods = 0;
-                    int numberOfDataFields = 0;
-                    int numberOfMethodParameters = 0;
-
-                    // initialize the count for the file iteration (so the progress can be logged)
-                    int count = 1;
-
-                    DataClumpDetection inspection = new DataClumpDetection();
-
-                    // iterate all TypeScript files in the project
-                    for (VirtualFile virtualFile : typescriptFiles) {
-                        CodeSmellLogger.info("Analyzing file: " + virtualFile.getName() + "(" + count + "/" + typescriptFiles.size() + ")");
-
-                        long startTimeFile = 0;
-                        if (DiagnosticTool.DIAGNOSTIC_MODE) {
-                            startTimeFile = System.nanoTime();
-                        }
-
-                        // read the psiFile in a read action
-                        final PsiFile[] psiFileWrap = new PsiFile[1]; // Using an array to make it effectively final
-                        ApplicationManager.getApplication().runReadAction(() -> {
-                            psiFileWrap[0] = manager.findFile(virtualFile);
-                        });
-                        PsiFile psiFile = psiFileWrap[0];
-
-                        // collect all functions in the file in a read action
-                        Collection<TypeScriptFunction> functions = new ArrayList<>();
-                        ApplicationManager.getApplication().runReadAction(() -> {
-                            functions.addAll(PsiTreeUtil.findChildrenOfType(psiFile, TypeScriptFunction.class));
-                        });
-
-
-                        // iterate all functions in the file and collect the data clump problems
-                        for (TypeScriptFunction psiElement : functions) {
-                            numberOfMethods++;
-                            if (!PsiUtil.runReadActionWithResult(psiElement::isValid))
-                                CodeSmellLogger.error("Invalid Function: " + psiElement, new Exception());
-                            // Skip constructors
-                            if (PsiUtil.runReadActionWithResult(psiElement::isConstructor)) continue;
-
-                            // Detect data clumps if the number of parameters is greater than the required minimum
-                            List<Parameter> parameters = Index.getFunctionsToParameters().get(psiElement);
-                            numberOfMethodParameters += parameters != null ? parameters.size() : 0;
-                            if (parameters != null && parameters.size() >= Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties) {
-                                inspection.detectDataClump(psiElement, new ProblemsHolder(InspectionManager.getInstance(project), psiFile, false), true);
-                            }
-                        }
-
-                        // collect all classes in the file in a read action
-                        Collection<PsiElement> allClasses = new ArrayList<>();
-                        ApplicationManager.getApplication().runReadAction(() -> {
-                            allClasses.addAll(List.of(PsiTreeUtil.collectElements(psiFile, element -> element instanceof TypeScriptClass)));
-                        });
-
-                        // iterate all classes in the file and collect the data clump problems
-                        for (PsiElement psiElement : allClasses) {
-                            numberOfClassesOrInterfaces++;
-                            List<Classfield> classfields = Index.getClassesToClassFields().get((JSClass) psiElement);
-                            numberOfDataFields += classfields != null ? classfields.size() : 0;
-                            if (classfields != null && classfields.size() >= Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties) {
-                                inspection.detectDataClump(psiElement, new ProblemsHolder(InspectionManager.getInstance(project), psiFile, false), true);
-                            }
-
-                        }
-
-                        // collect all interfaces in the file in a read action
-                        Collection<PsiElement> allInterfaces = new ArrayList<>();
-                        ApplicationManager.getApplication().runReadAction(() -> {
-                            allInterfaces.addAll(List.of(PsiTreeUtil.collectElements(psiFile, element -> element instanceof TypeScriptInterface)));
-                        });
-
-                        // iterate all interfaces in the file and collect the data clump problems
-                        for (PsiElement psiElement : allInterfaces) {
-                            numberOfClassesOrInterfaces++;
-                            List<Classfield> classfields = Index.getClassesToClassFields().get((JSClass) psiElement);
-                            numberOfDataFields += classfields != null ? classfields.size() : 0;
-                            if (classfields != null && classfields.size() >= Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties) {
-                                inspection.detectDataClump(psiElement, new ProblemsHolder(InspectionManager.getInstance(project), psiFile, false), true);
-                            }
-                        }
-
-                        count++;
-
-                        if (DiagnosticTool.DIAGNOSTIC_MODE) {
-                            long endTimeFile = System.nanoTime();
-                            long durationFile = (endTimeFile - startTimeFile);
-                            DiagnosticTool.addMeasurement(new DiagnosticTool.FullAnalysisFileMeasurement(virtualFile.getName(), durationFile));
-                        }
-                    }
+        });
 
-                    // information about the settings
-                    HashMap<String, String> options = new HashMap<>();
-                    options.put("DIAGNOSTIC_MODE", String.valueOf(DiagnosticTool.DIAGNOSTIC_MODE));
-                    options.put("MIN_NUMBER_OF_PROPERTIES", String.valueOf(Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties));
-                    options.put("INCLUDE_MODIFIERS_IN_DETECTION", String.valueOf(Objects.requireNonNull(DataClumpSettings.getInstance().getState()).includeModifiersInDetection));
+    }
 
-                    // information about the detector (this Plugin)
-                    ReportFormat.DataClumpsDetectorContext detector = new ReportFormat.DataClumpsDetectorContext("Data Clump Helper", null, Objects.requireNonNull(PluginManagerCore.getPlugin(PluginId.getId("de.marlena.data.clump.helper"))).getVersion(), options);
+    /**
+     * Runs the full analysis in the calling thread and saves the results in a JSON file.
+     * Must not be called on the EDT, the index of the project must be built and the project must be in smart mode.
+     * If the last analysis of the project wrote its report to the same path with the same options, only the files
+     * that changed since then and the files of their partners are analyzed again, the data clumps of all other files
+     * are taken from the last report.
+     *
+     * @param project    the project to analyze
+     * @param resultPath the path to save the results to
+     * @return true if the report was written, false otherwise
+     */
+    public static boolean analyze(Project project, String resultPath) {
 
-                    // summary information for the report (amount of data clumps, files, classes, methods, and fields etc)
-                    ReportFormat.ReportSummary summary = new ReportFormat.ReportSummary(amountDataClumps, filesWithDataClumps.size(), classesOrInterfacesWithDataClumps.size(), methodsWithDataClumps.size(), fieldsToFieldsDataClump, parametersToFieldsDataClump, parametersToParametersDataClump, "");
+        long startTime = 0;
+        if (DiagnosticTool.DIAGNOSTIC_MODE) {
+            startTime = System.nanoTime();
+        }
+        ApplicationManager.getApplication().invokeAndWait(() -> {
+            PsiManager.getInstance(project).dropPsiCaches();
+        });
 
-                    // information about the project
-                    ReportFormat.ProjectInfo projectInfo = new ReportFormat.ProjectInfo(null, project.getName(), null, null, null, null, typescriptFiles.size(), numberOfClassesOrInterfaces, numberOfMethods, numberOfDataFields, numberOfMethodParameters, "");
 
-                    // create the context for the report
-                    ReportFormat.DataClumpsTypeContext context = new ReportFormat.DataClumpsTypeContext("1.0", detector, dataClumps, getCurrentDateTime(), "TypeScript", summary, projectInfo);
+        CodeSmellLogger.info("Running full analysis");
 
-                    // write the context to the file
-                    writeToFile(context, resultPath);
-                    CodeSmellLogger.info("Full analysis completed");
+        PsiManager manager = PsiManager.getInstance(project);
 
-                    if (DiagnosticTool.DIAGNOSTIC_MODE) {
-                        long endTime = System.nanoTime();
-                        long duration = (endTime - startTime);
-                        DiagnosticTool.addMeasurement(new DiagnosticTool.FullAnalysisMeasurement(project, duration));
-                    }
+        // Run the read action to collect TypeScript files
+        Collection<VirtualFile> typescriptFiles = new ArrayList<>();
+        ApplicationManager.getApplication().runReadAction(() -> {
+            typescriptFiles.addAll(FileTypeIndex.getFiles(TypeScriptFileType.INSTANCE, GlobalSearchScope.projectScope(project)));
+        });
+
+        CodeSmellLogger.info("Found " + typescriptFiles.size() + " TypeScript files");
+
+        // initialize variables to store the counting information for the report
+        reset();
+        int numberOfClassesOrInterfaces = 0;
+        int numberOfMethods = 0;
+        int numberOfDataFields = 0;
+        int numberOfMethodParameters = 0;
+
+        // initialize the count for the file iteration (so the progress can be logged)
+        int count = 1;
+
+        DataClumpDetection inspection = new DataClumpDetection();
+        Index index = Index.getInstance(project);
+
+        // information about the detector (this Plugin)
+        ReportFormat.DataClumpsDetectorContext detector = createDetectorContext();
+
+        // the results of the last analysis, if it wrote the same report with the same options
+        AnalysisState previousState = AnalysisState.load(project, resultPath, detector.options());
+        ReportFormat.DataClumpsTypeContext previousReport = previousState != null ? readFromFile(resultPath) : null;
+        Set<String> pathsToAnalyze = previousReport != null ? getPathsToAnalyze(project, index, typescriptFiles, previousState, previousReport) : null;
+        AnalysisState state = new AnalysisState(resultPath, detector.options());
+
+        // iterate all TypeScript files in the project
+        for (VirtualFile virtualFile : typescriptFiles) {
+
+            // files that are not analyzed again keep their result of the last analysis
+            AnalysisState.FileResult result = previousState != null ? previousState.getUpToDate(virtualFile) : null;
+            if (result == null || pathsToAnalyze == null || pathsToAnalyze.contains(virtualFile.getPath())) {
+                CodeSmellLogger.info("Analyzing file: " + virtualFile.getName() + "(" + count + "/" + typescriptFiles.size() + ")");
+
+                long startTimeFile = 0;
+                if (DiagnosticTool.DIAGNOSTIC_MODE) {
+                    startTimeFile = System.nanoTime();
                 }
-            });
 
+                result = analyzeFile(project, manager, inspection, index, virtualFile);
+
+                if (DiagnosticTool.DIAGNOSTIC_MODE) {
+                    long endTimeFile = System.nanoTime();
+                    long durationFile = (endTimeFile - startTimeFile);
+                    DiagnosticTool.addMeasurement(new DiagnosticTool.FullAnalysisFileMeasurement(virtualFile.getName(), durationFile));
+                }
+            }
+
+            state.put(virtualFile, result);
+            numberOfClassesOrInterfaces += result.numberOfClassesOrInterfaces();
+            numberOfMethods += result.numberOfMethods();
+            numberOfDataFields += result.numberOfDataFields();
+            numberOfMethodParameters += result.numberOfMethodParameters();
+            count++;
+        }
+
+        // take the data clumps between files that were not analyzed again from the last report
+        if (previousReport != null) {
+            Set<String> existingPaths = new HashSet<>();
+            for (VirtualFile virtualFile : typescriptFiles) {
+                existingPaths.add(virtualFile.getPath());
+            }
+            for (ReportFormat.DataClumpTypeContext dataClump : previousReport.dataClumps().values()) {
+                if (!pathsToAnalyze.contains(dataClump.fromFilePath()) && existingPaths.contains(dataClump.fromFilePath()) && existingPaths.contains(dataClump.toFilePath())) {
+                    dataClumps.putIfAbsent(dataClump.key(), dataClump);
+                }
+            }
+        }
+
+        // summary information for the report (amount of data clumps, files, classes, methods, and fields etc)
+        ReportFormat.ReportSummary summary = summarize(dataClumps);
+
+        // information about the project
+        ReportFormat.ProjectInfo projectInfo = new ReportFormat.ProjectInfo(null, project.getName(), null, null, null, null, typescriptFiles.size(), numberOfClassesOrInterfaces, numberOfMethods, numberOfDataFields, numberOfMethodParameters, "");
+
+        // create the context for the report
+        ReportFormat.DataClumpsTypeContext context = new ReportFormat.DataClumpsTypeContext("1.0", detector, dataClumps, getCurrentDateTime(), "TypeScript", summary, projectInfo);
+
+        // write the context to the file, the state is only stored if it describes the written report
+        boolean written = writeToFile(context, resultPath);
+        if (written) {
+            state.save(project);
+        }
+        CodeSmellLogger.info("Full analysis completed");
+
+        if (DiagnosticTool.DIAGNOSTIC_MODE) {
+            long endTime = System.nanoTime();
+            long duration = (endTime - startTime);
+            DiagnosticTool.addMeasurement(new DiagnosticTool.FullAnalysisMeasurement(project, duration));
+        }
+        return written;
+    }
+
+    /**
+     * Detects the data clumps of all functions, classes and interfaces in a file and counts its elements
+     *
+     * @param project     the project of the file
+     * @param manager     the PsiManager of the project
+     * @param inspection  the inspection that reports the data clumps
+     * @param index       the index of the project
+     * @param virtualFile the file to analyze
+     * @return the result of the analysis of the file
+     */
+    private static AnalysisState.FileResult analyzeFile(Project project, PsiManager manager, DataClumpDetection inspection, Index index, VirtualFile virtualFile) {
+        int numberOfClassesOrInterfaces = 0;
+        int numberOfMethods = 0;
+        int numberOfDataFields = 0;
+        int numberOfMethodParameters = 0;
+
+        // the stamp is taken before the file is read, so a change during the analysis is detected by the next run
+        FileStamp stamp = new FileStamp(virtualFile.getTimeStamp(), virtualFile.getLength());
+
+        // read the psiFile in a read action
+        PsiFile psiFile = PsiUtil.runReadActionWithResult(() -> manager.findFile(virtualFile));
+
+        // collect all functions in the file in a read action
+        Collection<TypeScriptFunction> functions = new ArrayList<>();
+        ApplicationManager.getApplication().runReadAction(() -> {
+            functions.addAll(PsiTreeUtil.findChildrenOfType(psiFile, TypeScriptFunction.class));
+        });
+
+
+        // iterate all functions in the file and collect the data clump problems
+        for (TypeScriptFunction psiElement : functions) {
+            numberOfMethods++;
+            if (!PsiUtil.runReadActionWithResult(psiElement::isValid))
+                CodeSmellLogger.error("Invalid Function: " + psiElement, new Exception());
+            // Skip constructors
+            if (PsiUtil.runReadActionWithResult(psiElement::isConstructor)) continue;
+
+            // Detect data clumps if the number of parameters is greater than the required minimum
+            List<Parameter> parameters = index.getParameters(psiElement);
+            numberOfMethodParameters += parameters != null ? parameters.size() : 0;
+            if (parameters != null && parameters.size() >= Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties) {
+                inspection.detectDataClump(psiElement, new ProblemsHolder(InspectionManager.getInstance(project), psiFile, false), true);
+            }
+        }
+
+        // collect all classes and interfaces in the file in a read action
+        Collection<PsiElement> allClasses = new ArrayList<>();
+        ApplicationManager.getApplication().runReadAction(() -> {
+            allClasses.addAll(List.of(PsiTreeUtil.collectElements(psiFile, element -> element instanceof TypeScriptClass)));
+            allClasses.addAll(List.of(PsiTreeUtil.collectElements(psiFile, element -> element instanceof TypeScriptInterface)));
         });
 
+        // iterate all classes and interfaces in the file and collect the data clump problems
+        for (PsiElement psiElement : allClasses) {
+            numberOfClassesOrInterfaces++;
+            List<Classfield> classfields = index.getClassfields((JSClass) psiElement);
+            numberOfDataFields += classfields != null ? classfields.size() : 0;
+            if (classfields != null && classfields.size() >= Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties) {
+                inspection.detectDataClump(psiElement, new ProblemsHolder(InspectionManager.getInstance(project), psiFile, false), true);
+            }
+        }
+
+        return new AnalysisState.FileResult(stamp, numberOfClassesOrInterfaces, numberOfMethods, numberOfDataFields, numberOfMethodParameters);
+    }
+
+    /**
+     * Determines the files that must be analyzed again since the last analysis. These are the files that changed,
+     * the files that had a data clump with a changed or deleted file in the last report and the files with elements
+     * that share enough properties with an element of a changed file to form a new data clump with it.
+     *
+     * @param project         the project
+     * @param index           the index of the project
+     * @param typescriptFiles all TypeScript files of the project
+     * @param previousState   the state of the last analysis
+     * @param previousReport  the report of the last analysis
+     * @return the paths of the files to analyze again
+     */
+    private static Set<String> getPathsToAnalyze(Project project, Index index, Collection<VirtualFile> typescriptFiles, AnalysisState previousState, ReportFormat.DataClumpsTypeContext previousReport) {
+        // the files of the last analysis that no longer exist or changed
+        Set<String> changedPaths = new HashSet<>(previousState.getPaths());
+        List<VirtualFile> changedFiles = new ArrayList<>();
+        for (VirtualFile file : typescriptFiles) {
+            changedPaths.remove(file.getPath());
+            if (previousState.getUpToDate(file) == null) {
+                changedFiles.add(file);
+            }
+        }
+        int deletedFiles = changedPaths.size();
+        for (VirtualFile file : changedFiles) {
+            changedPaths.add(file.getPath());
+        }
+        Set<String> pathsToAnalyze = new HashSet<>(changedPaths);
+
+        // the data clumps of the last report that lead to a changed file may no longer exist
+        for (ReportFormat.DataClumpTypeContext dataClump : previousReport.dataClumps().values()) {
+            if (changedPaths.contains(dataClump.toFilePath())) {
+                pathsToAnalyze.add(dataClump.fromFilePath());
+            }
+        }
+
+        // the elements that share enough properties with an element of a changed file may have a new data clump with it
+        for (VirtualFile partnerFile : getPartnerFiles(project, index, changedFiles)) {
+            pathsToAnalyze.add(partnerFile.getPath());
+        }
+
+        CodeSmellLogger.info("Incremental analysis: " + changedFiles.size() + " changed and " + deletedFiles + " deleted files since the last report, analyzing " + pathsToAnalyze.size() + " files.");
+        return pathsToAnalyze;
+    }
+
+    /**
+     * Returns the files with elements that share enough properties with an element of the given files to have a
+     * data clump with it. The files themselves are only included if they contain such a partner.
+     *
+     * @param project the project
+     * @param index   the index of the project
+     * @param files   the files to find the partners for
+     * @return the files of the partners
+     */
+    public static Set<VirtualFile> getPartnerFiles(Project project, Index index, Collection<VirtualFile> files) {
+        int minNumberOfProperties = Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties;
+        PsiManager manager = PsiManager.getInstance(project);
+        Set<VirtualFile> partnerFiles = new HashSet<>();
+
+        for (VirtualFile file : files) {
+            Collection<PsiElement> elements = PsiUtil.runReadActionWithResult(() -> {
+                PsiFile psiFile = file.isValid() ? manager.findFile(file) : null;
+                return psiFile == null ? List.<PsiElement>of() : PsiTreeUtil.<PsiElement>findChildrenOfAnyType(psiFile, TypeScriptFunction.class, TypeScriptClass.class, TypeScriptInterface.class);
+            });
+            for (PsiElement element : elements) {
+                List<? extends Property> properties = index.getProperties(element);
+                if (properties == null || properties.size() < minNumberOfProperties) continue;
+
+                for (Map.Entry<PsiElement, Integer> partner : index.countSharedProperties(properties).entrySet()) {
+                    if (partner.getValue() < minNumberOfProperties || partner.getKey() == element) continue;
+                    VirtualFile partnerFile = PsiUtil.runReadActionWithResult(() -> partner.getKey().isValid() ? partner.getKey().getContainingFile().getVirtualFile() : null);
+                    if (partnerFile != null) {
+                        partnerFiles.add(partnerFile);
+                    }
+                }
+            }
+        }
+        return partnerFiles;
+    }
+
+    /**
+     * Detects the data clumps that originate from the given files without writing a report. The data clumps of the
+     * last full analysis are replaced. Must not be called on the EDT, the index of the project must be built and the
+     * project must be in smart mode.
+     *
+     * @param project the project of the files
+     * @param files   the files to detect the data clumps of
+     * @return the detected data clumps mapped to their key
+     */
+    public static HashMap<String, ReportFormat.DataClumpTypeContext> detect(Project project, Collection<VirtualFile> files) {
+        reset();
+        PsiManager manager = PsiManager.getInstance(project);
+        DataClumpDetection inspection = new DataClumpDetection();
+        Index index = Index.getInstance(project);
+        for (VirtualFile file : files) {
+            analyzeFile(project, manager, inspection, index, file);
+        }
+        return dataClumps;
+    }
+
+    /**
+     * Creates the information about the detector and its settings for the report
+     *
+     * @return the detector context
+     */
+    private static ReportFormat.DataClumpsDetectorContext createDetectorContext() {
+        // information about the settings
+        HashMap<String, String> options = new HashMap<>();
+        options.put("DIAGNOSTIC_MODE", String.valueOf(DiagnosticTool.DIAGNOSTIC_MODE));
+        options.put("MIN_NUMBER_OF_PROPERTIES", String.valueOf(Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties));
+        options.put("INCLUDE_MODIFIERS_IN_DETECTION", String.valueOf(Objects.requireNonNull(DataClumpSettings.getInstance().getState()).includeModifiersInDetection));
+
+        return new ReportFormat.DataClumpsDetectorContext("Data Clump Helper", null, Objects.requireNonNull(PluginManagerCore.getPlugin(PluginId.getId("de.marlena.data.clump.helper"))).getVersion(), options);
+    }
+
+    /**
+     * Detects the data clumps in the merged partial indexes of a sharded analysis and saves the results in a JSON file.
+     * The report has the same format as the report of the full analysis, the project does not need to be open.
+     *
+     * @param index       the merged partial indexes of all shards
+     * @param projectName the name of the analyzed project
+     * @param resultPath  the path to save the results to
+     * @return true if the report was written, false otherwise
+     */
+    public static boolean analyzeMerged(PartialIndex index, String projectName, String resultPath) {
+        CodeSmellLogger.info("Detecting data clumps in " + index.getElements().size() + " elements...");
+        HashMap<String, ReportFormat.DataClumpTypeContext> mergedDataClumps = index.detectDataClumps();
+
+        ReportFormat.ReportSummary summary = summarize(mergedDataClumps);
+        ReportFormat.ProjectInfo projectInfo = new ReportFormat.ProjectInfo(null, projectName, null, null, null, null, index.getNumberOfFiles(), index.getNumberOfClassesOrInterfaces(), index.getNumberOfMethods(), index.getNumberOfDataFields(), index.getNumberOfMethodParameters(), "");
+        ReportFormat.DataClumpsTypeContext context = new ReportFormat.DataClumpsTypeContext("1.0", createDetectorContext(), mergedDataClumps, getCurrentDateTime(), "TypeScript", summary, projectInfo);
+
+        boolean written = writeToFile(context, resultPath);
+        CodeSmellLogger.info("Merged analysis completed, " + mergedDataClumps.size() + " data clumps.");
+        return written;
+    }
+
+    /**
+     * Computes the summary of a report from its data clumps. The summary is computed from the reported data clumps
+     * and not from PSI elements, since the data clumps may come from partial indexes or the last report.
+     *
+     * @param dataClumps the data clumps of the report mapped to their key
+     * @return the summary of the report
+     */
+    private static ReportFormat.ReportSummary summarize(Map<String, ReportFormat.DataClumpTypeContext> dataClumps) {
+        Set<String> files = new HashSet<>();
+        Set<String> classesOrInterfaces = new HashSet<>();
+        Set<String> methods = new HashSet<>();
+        int fieldsToFields = 0, parametersToFields = 0, parametersToParameters = 0;
+        for (ReportFormat.DataClumpTypeContext context : dataClumps.values()) {
+            files.add(context.fromFilePath());
+            files.add(context.toFilePath());
+            if (context.fromClassOrInterfaceKey() != null) classesOrInterfaces.add(context.fromClassOrInterfaceKey());
+            if (context.fromMethodKey() != null) methods.add(context.fromMethodKey());
+            switch (context.dataClumpType()) {
+                case "parameters_to_parameters" -> parametersToParameters++;
+                case "parameters_to_fields" -> parametersToFields++;
+                default -> fieldsToFields++;
+            }
+        }
+        return new ReportFormat.ReportSummary(dataClumps.size(), files.size(), classesOrInterfaces.size(), methods.size(), fieldsToFields, parametersToFields, parametersToParameters, "");
     }
 
     /**
      * Reports a data clump between two elements and the variables that are clumped. The data clump is stored in the
-     * dataClumps map and the elements are stored in the corresponding sets. This method is called by the inspection if it
+     * dataClumps map, the summary of the report is computed from this map. This method is called by the inspection if it
      * is invoked by the full analysis.
      *
      * @param fromElement the element from where the data clump is detected
@@ -270,28 +468,24 @@ public class FullAnalysis extends AnAction {
      * @param variables   the variables that are clumped (fields or parameters)
      */
     public static void report(PsiElement fromElement, PsiElement toElement, List<Property> variables) {
-        amountDataClumps++;
-
-        if (fromElement instanceof JSClass) {
-            classesOrInterfacesWithDataClumps.add(fromElement);
-        } else {
-            methodsWithDataClumps.add(fromElement);
-        }
-
-        filesWithDataClumps.add(PsiUtil.runReadActionWithResult(fromElement::getContainingFile));
-        filesWithDataClumps.add(PsiUtil.runReadActionWithResult(toElement::getContainingFile));
-
         ReportFormat.DataClumpTypeContext dataClumpTypeContext = ReportFormat.getDataClumpsTypeContext(fromElement, toElement, variables);
+        FullAnalysis.dataClumps.put(dataClumpTypeContext.key(), dataClumpTypeContext);
+    }
 
-        if (dataClumpTypeContext.dataClumpType().equals("parameters_to_parameters")) {
-            parametersToParametersDataClump++;
-        } else if (dataClumpTypeContext.dataClumpType().equals("parameters_to_fields")) {
-            parametersToFieldsDataClump++;
-        } else {
-            fieldsToFieldsDataClump++;
-        }
+    /**
+     * Removes the data clumps of the last full analysis
+     */
+    public static void reset() {
+        dataClumps = new HashMap<>();
+    }
 
-        FullAnalysis.dataClumps.put(dataClumpTypeContext.key(), dataClumpTypeContext);
+    /**
+     * Returns the data clumps found by the last full analysis
+     *
+     * @return the data clumps mapped to their key
+     */
+    public static HashMap<String, ReportFormat.DataClumpTypeContext> getDataClumps() {
+        return dataClumps;
     }
 
     /**
@@ -299,13 +493,35 @@ public class FullAnalysis extends AnAction {
      *
      * @param context    the context to write to the file
      * @param resultPath the path to write the file to
+     * @return true if the file was written, false otherwise
      */
-    private static void writeToFile(ReportFormat.DataClumpsTypeContext context, String resultPath) {
+    private static boolean writeToFile(ReportFormat.DataClumpsTypeContext context, String resultPath) {
         ObjectMapper mapper = new ObjectMapper();
         try {
             mapper.writeValue(new File(resultPath), context);
+            return true;
         } catch (IOException e) {
             CodeSmellLogger.error("Error writing to file", e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the report of the last full analysis from a JSON file.
+     *
+     * @param resultPath the path of the report
+     * @return the report or null if it does not exist or could not be read
+     */
+    private static ReportFormat.DataClumpsTypeContext readFromFile(String resultPath) {
+        File file = new File(resultPath);
+        if (!file.exists()) return null;
+
+        ObjectMapper mapper = new ObjectMapper();
+        try {
+            return mapper.readValue(file, ReportFormat.DataClumpsTypeContext.class);
+        } catch (IOException e) {
+            CodeSmellLogger.error("Error reading the last report, analyzing all files", e);
+            return null;
         }
     }
 }
@@ -0,0 +1,792 @@
+package dataclump;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.Nullable;
+import util.CodeSmellLogger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Records the progress of a refactoring in a file, so that an interrupted refactoring can be resumed or rolled back
+ * without reverting the whole project. The journal is written line by line while the refactoring runs:
+ * the original content of every changed file, every planned edit and whether it was applied or failed, together with
+ * the modification stamps of the documents. A journal that was not committed belongs to an interrupted refactoring.
+ * The edits are recorded in batches. The offsets of the edits of a batch refer to the files on disk when the batch
+ * started, and the document changes of each applied edit are recorded once they were saved, so that the remaining
+ * edits of an interrupted batch can be located after a crash.
+ * The steps of a refactoring are only recorded when they are made, so only a refactoring that was interrupted after
+ * all its steps were recorded can be resumed. Any other interrupted refactoring can only be rolled back.
+ */
+public class RefactoringJournal {
+
+    /**
+     * The types of the entries in the journal
+     */
+    enum Type {BEGIN, FILE, CREATED_FILE, BATCH, EDIT, APPLIED, FAILED, END, COMMIT}
+
+    /**
+     * Represents one line of the journal. Only the fields of the respective type are set.
+     */
+    static class Entry {
+
+        /**
+         * The type of the entry
+         */
+        Type type;
+
+        /**
+         * The id of the edit, used by EDIT, APPLIED and FAILED
+         */
+        int id;
+
+        /**
+         * The path of the file, or the name of the refactoring for BEGIN
+         */
+        String path;
+
+        /**
+         * The start offset of the edited range in the document
+         */
+        int start;
+
+        /**
+         * The end offset of the edited range in the document
+         */
+        int end;
+
+        /**
+         * The text of the file before the refactoring, or the text of the edited range before the edit
+         */
+        String originalText;
+
+        /**
+         * The kind of the edit, see {@link EditPlan.Kind}
+         */
+        String kind;
+
+        /**
+         * The text that replaces the edited range, empty if the range is deleted, null if it is not known before the
+         * edit is applied
+         */
+        String replacementText;
+
+        /**
+         * The modification stamp of the document when the entry was written
+         */
+        long stamp;
+
+        /**
+         * The reason why an edit failed
+         */
+        String message;
+
+        /**
+         * The document changes made by an applied or failed edit, in the order they were made
+         */
+        List<Change> changes;
+    }
+
+    /**
+     * Represents a change of a document made by an edit
+     */
+    static class Change {
+
+        /**
+         * The offset of the change in the document at the time of the change
+         */
+        int offset;
+
+        /**
+         * The length of the replaced text
+         */
+        int oldLength;
+
+        /**
+         * The text that replaced it
+         */
+        String newText;
+
+        /**
+         * Creates a new change
+         *
+         * @param offset    the offset of the change
+         * @param oldLength the length of the replaced text
+         * @param newText   the new text
+         */
+        Change(int offset, int oldLength, String newText) {
+            this.offset = offset;
+            this.oldLength = oldLength;
+            this.newText = newText;
+        }
+    }
+
+    /**
+     * The Gson instance used to write and read the entries
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The project the refactoring is applied in
+     */
+    private final Project project;
+
+    /**
+     * The writer of the journal file, null if the journal is closed
+     */
+    @Nullable
+    private BufferedWriter writer;
+
+    /**
+     * The paths of the files whose original content is already recorded
+     */
+    private final Set<String> recordedFiles = new HashSet<>();
+
+    /**
+     * The id of the next edit
+     */
+    private int nextId = 0;
+
+    /**
+     * Creates a new journal that writes to the given writer
+     *
+     * @param project the project the refactoring is applied in
+     * @param writer  the writer of the journal file
+     */
+    private RefactoringJournal(Project project, @Nullable BufferedWriter writer) {
+        this.project = project;
+        this.writer = writer;
+    }
+
+    /**
+     * Starts a new journal for the given refactoring. A new refactoring cannot start while the journal of an
+     * interrupted refactoring exists, since it would replace the journal that is needed to recover the interrupted one.
+     * If the journal file cannot be written, the refactoring runs without journal.
+     *
+     * @param project the project the refactoring is applied in
+     * @param name    the name of the refactoring
+     * @return the new journal
+     * @throws IllegalStateException if there is an interrupted refactoring that was not resumed, rolled back or discarded
+     */
+    public static RefactoringJournal begin(Project project, String name) {
+        Path path = getJournalPath(project);
+        if (Files.exists(path)) {
+            throw new IllegalStateException("An interrupted refactoring must be resumed, rolled back or discarded before " + name + " can start.");
+        }
+
+        BufferedWriter writer = null;
+        try {
+            Files.createDirectories(path.getParent());
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            CodeSmellLogger.error("Could not create refactoring journal: " + path, e);
+        }
+
+        RefactoringJournal journal = new RefactoringJournal(project, writer);
+        Entry entry = new Entry();
+        entry.type = Type.BEGIN;
+        entry.path = name;
+        journal.write(entry);
+        return journal;
+    }
+
+    /**
+     * Records the original content of the given document before it is changed for the first time.
+     * Later changes of the same document and documents outside the project are ignored.
+     *
+     * @param document the document that is about to change
+     */
+    public void recordFile(Document document) {
+        VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+        if (file == null || !ProjectFileIndex.getInstance(project).isInContent(file)) return;
+        if (!recordedFiles.add(file.getPath())) return;
+
+        Entry entry = new Entry();
+        entry.type = Type.FILE;
+        entry.path = file.getPath();
+        entry.originalText = document.getText();
+        entry.stamp = document.getModificationStamp();
+        write(entry);
+    }
+
+    /**
+     * Records that the given file was created by the refactoring, so that it is deleted on rollback
+     *
+     * @param file the created file
+     */
+    public void recordCreatedFile(PsiFile file) {
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null || !recordedFiles.add(virtualFile.getPath())) return;
+
+        Entry entry = new Entry();
+        entry.type = Type.CREATED_FILE;
+        entry.path = virtualFile.getPath();
+        write(entry);
+    }
+
+    /**
+     * Starts a new batch of edits. The offsets of the following edits refer to the saved files at this point.
+     */
+    public void beginBatch() {
+        Entry entry = new Entry();
+        entry.type = Type.BATCH;
+        write(entry);
+    }
+
+    /**
+     * Creates the entry of a planned edit of the given element, which is written with {@link #recordEdits(List)}.
+     * Must be called inside a read action before the edit is applied.
+     *
+     * @param target          the element that is replaced or deleted
+     * @param kind            the kind of the edit
+     * @param replacementText the text of the new element, empty if the element is deleted, null if the new element
+     *                        is created when the edit is applied or could not be created
+     * @return the entry of the edit, its id is used to record the status of the edit
+     */
+    Entry createEdit(PsiElement target, String kind, @Nullable String replacementText) {
+        Entry entry = new Entry();
+        entry.type = Type.EDIT;
+        entry.id = nextId++;
+        PsiFile file = target.getContainingFile();
+        if (file == null || file.getVirtualFile() == null) return entry;
+
+        TextRange range = target.getTextRange();
+        entry.path = file.getVirtualFile().getPath();
+        entry.start = range.getStartOffset();
+        entry.end = range.getEndOffset();
+        entry.originalText = target.getText();
+        entry.kind = kind;
+        entry.replacementText = replacementText;
+        entry.stamp = getStamp(file);
+        return entry;
+    }
+
+    /**
+     * Records the given planned edits of the current batch. Edits of elements outside a file are left out, since they
+     * cannot be located anymore.
+     *
+     * @param edits the entries created by {@link #createEdit(PsiElement, String, String)}
+     */
+    void recordEdits(List<Entry> edits) {
+        for (Entry edit : edits) {
+            if (edit.path != null) write(edit);
+        }
+    }
+
+    /**
+     * Records that the given edit was applied. The edited file must be saved before, so that the journal never marks
+     * an edit as applied that is not on disk.
+     *
+     * @param id      the id of the edit
+     * @param file    the edited file
+     * @param changes the document changes made by the edit
+     */
+    public void markApplied(int id, PsiFile file, List<Change> changes) {
+        Entry entry = new Entry();
+        entry.type = Type.APPLIED;
+        entry.id = id;
+        entry.path = file.getVirtualFile() == null ? null : file.getVirtualFile().getPath();
+        entry.stamp = getStamp(file);
+        entry.changes = changes;
+        write(entry);
+    }
+
+    /**
+     * Records that the given edit failed
+     *
+     * @param id      the id of the edit
+     * @param file    the edited file, null if the element no longer exists
+     * @param message the reason why the edit failed
+     * @param changes the document changes the edit made before it failed
+     */
+    public void markFailed(int id, @Nullable PsiFile file, String message, List<Change> changes) {
+        Entry entry = new Entry();
+        entry.type = Type.FAILED;
+        entry.id = id;
+        entry.path = file == null || file.getVirtualFile() == null ? null : file.getVirtualFile().getPath();
+        entry.message = message;
+        entry.changes = changes;
+        write(entry);
+    }
+
+    /**
+     * Records that the refactoring made all its steps, so that only the recorded edits are left. Must be called
+     * before the last batch of edits is recorded.
+     */
+    public void endSteps() {
+        Entry entry = new Entry();
+        entry.type = Type.END;
+        write(entry);
+    }
+
+    /**
+     * Marks the refactoring as finished and deletes the journal, since there is nothing left to recover.
+     * If some edits failed, the journal is kept so that the refactoring can be rolled back.
+     *
+     * @param failedEdits the number of edits that failed
+     */
+    public void commit(int failedEdits) {
+        if (failedEdits > 0) {
+            CodeSmellLogger.warn(failedEdits + " edits failed, the refactoring can be rolled back with the refactoring recovery.");
+            close();
+            return;
+        }
+
+        Entry entry = new Entry();
+        entry.type = Type.COMMIT;
+        write(entry);
+        close();
+        try {
+            Files.deleteIfExists(getJournalPath(project));
+        } catch (IOException e) {
+            CodeSmellLogger.error("Could not delete refactoring journal.", e);
+        }
+    }
+
+    /**
+     * Closes the journal without committing it, e.g. because the refactoring was interrupted
+     */
+    public void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            CodeSmellLogger.error("Could not close refactoring journal.", e);
+        }
+        writer = null;
+    }
+
+    /**
+     * Writes the given entry as one line and flushes it, so that it survives a crash of the IDE
+     *
+     * @param entry the entry to write
+     */
+    private void write(Entry entry) {
+        if (writer == null) return;
+        try {
+            writer.write(GSON.toJson(entry));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            CodeSmellLogger.error("Could not write refactoring journal, continuing without journal.", e);
+            close();
+        }
+    }
+
+    /**
+     * Returns the modification stamp of the document of the given file
+     *
+     * @param file the file
+     * @return the modification stamp, or the stamp of the file if it has no document
+     */
+    private long getStamp(PsiFile file) {
+        Document document = PsiDocumentManager.getInstance(project).getDocument(file);
+        return document != null ? document.getModificationStamp() : file.getModificationStamp();
+    }
+
+    /**
+     * Returns the path of the journal file of the given project
+     *
+     * @param project the project
+     * @return the path of the journal file
+     */
+    private static Path getJournalPath(Project project) {
+        return Path.of(PathManager.getSystemPath(), "dataclump", "journal", project.getLocationHash() + ".jsonl");
+    }
+
+    /**
+     * Loads the journal of an interrupted refactoring of the given project
+     *
+     * @param project the project
+     * @return the interrupted refactoring, null if there is none
+     */
+    public static @Nullable Recovery loadInterrupted(Project project) {
+        Path path = getJournalPath(project);
+        if (!Files.exists(path)) return null;
+
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                try {
+                    entries.add(GSON.fromJson(line, Entry.class));
+                } catch (JsonSyntaxException e) {
+                    // the last line may be incomplete if the IDE crashed while writing it
+                    CodeSmellLogger.warn("Skipping incomplete journal entry.");
+                }
+            }
+        } catch (IOException e) {
+            CodeSmellLogger.error("Could not read refactoring journal: " + path, e);
+            return null;
+        }
+
+        // the refactoring finished but the journal was not deleted, e.g. because the IDE crashed right after the commit
+        if (entries.stream().anyMatch(entry -> entry.type == Type.COMMIT)) {
+            new Recovery(project, path, entries).discard();
+            return null;
+        }
+        return new Recovery(project, path, entries);
+    }
+
+    /**
+     * Returns whether the given project has an interrupted refactoring
+     *
+     * @param project the project
+     * @return true if there is a journal of an interrupted refactoring, false otherwise
+     */
+    public static boolean hasInterrupted(Project project) {
+        return Files.exists(getJournalPath(project));
+    }
+
+    /**
+     * An interrupted refactoring read from its journal
+     */
+    public static class Recovery {
+
+        /**
+         * The project the refactoring was applied in
+         */
+        private final Project project;
+
+        /**
+         * The path of the journal file
+         */
+        private final Path path;
+
+        /**
+         * The name of the refactoring
+         */
+        private final String name;
+
+        /**
+         * The original content of the changed files, in the order they were changed
+         */
+        private final LinkedHashMap<String, Entry> files = new LinkedHashMap<>();
+
+        /**
+         * The edits of the interrupted batch that were planned but not applied, in the order they were planned
+         */
+        private final List<Entry> incompleteEdits = new ArrayList<>();
+
+        /**
+         * The edits that failed or whose batch is over, they cannot be located anymore
+         */
+        private final List<Entry> unresolvableEdits = new ArrayList<>();
+
+        /**
+         * The document changes of the interrupted batch mapped to the path of their file, in the order they were made
+         */
+        private final HashMap<String, List<Change>> batchChanges = new HashMap<>();
+
+        /**
+         * The last recorded modification stamp of each edited file
+         */
+        private final HashMap<String, Long> lastStamps = new HashMap<>();
+
+        /**
+         * Whether the refactoring made all its steps before it was interrupted
+         */
+        private boolean allStepsRecorded = false;
+
+        /**
+         * Creates the recovery from the entries of the journal
+         *
+         * @param project the project the refactoring was applied in
+         * @param path    the path of the journal file
+         * @param entries the entries of the journal
+         */
+        Recovery(Project project, Path path, List<Entry> entries) {
+            this.project = project;
+            this.path = path;
+
+            String name = "Data Clump Refactoring";
+            LinkedHashMap<Integer, Entry> edits = new LinkedHashMap<>();
+            for (Entry entry : entries) {
+                switch (entry.type) {
+                    case BEGIN -> name = entry.path;
+                    case FILE, CREATED_FILE -> files.putIfAbsent(entry.path, entry);
+                    case BATCH -> {
+                        unresolvableEdits.addAll(edits.values());
+                        edits.clear();
+                        batchChanges.clear();
+                    }
+                    case EDIT -> edits.put(entry.id, entry);
+                    case APPLIED -> {
+                        edits.remove(entry.id);
+                        addChanges(entry);
+                        if (entry.path != null) lastStamps.put(entry.path, entry.stamp);
+                    }
+                    case FAILED -> {
+                        Entry edit = edits.remove(entry.id);
+                        if (edit != null) unresolvableEdits.add(edit);
+                        addChanges(entry);
+                    }
+                    case END -> allStepsRecorded = true;
+                    default -> {
+                        // the commit is handled when the journal is loaded
+                    }
+                }
+            }
+            this.name = name;
+            incompleteEdits.addAll(edits.values());
+        }
+
+        /**
+         * Adds the document changes of the given applied or failed edit to the changes of the interrupted batch
+         *
+         * @param entry the entry of the applied or failed edit
+         */
+        private void addChanges(Entry entry) {
+            if (entry.path == null || entry.changes == null) return;
+            batchChanges.computeIfAbsent(entry.path, path -> new ArrayList<>()).addAll(entry.changes);
+        }
+
+        /**
+         * Returns the name of the interrupted refactoring
+         *
+         * @return the name of the refactoring
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of files changed or created by the interrupted refactoring
+         *
+         * @return the number of files
+         */
+        public int getFileCount() {
+            return files.size();
+        }
+
+        /**
+         * Returns the number of edits that were planned but not applied
+         *
+         * @return the number of incomplete edits
+         */
+        public int getIncompleteEditCount() {
+            return incompleteEdits.size() + unresolvableEdits.size();
+        }
+
+        /**
+         * Returns the number of files that were changed after the refactoring was interrupted. The modification stamps
+         * are only comparable within the same IDE session, after a restart the changes cannot be detected.
+         *
+         * @return the number of changed files
+         */
+        public int getChangedFileCount() {
+            int changed = 0;
+            for (String path : lastStamps.keySet()) {
+                Document document = getDocument(path);
+                if (document != null && document.getModificationStamp() != lastStamps.get(path)) changed++;
+            }
+            return changed;
+        }
+
+        /**
+         * Checks if the interrupted refactoring can be finished by resuming it. This requires that all its steps were
+         * recorded before the interruption and that none of its edits failed.
+         *
+         * @return true if the incomplete edits are all that is left of the refactoring, false otherwise
+         */
+        public boolean canResume() {
+            return allStepsRecorded && unresolvableEdits.isEmpty();
+        }
+
+        /**
+         * Applies the incomplete edits of the interrupted batch and saves the changed files, which finishes the
+         * refactoring. The recorded offsets are mapped through the changes of the edits that were applied before the
+         * interruption, and an edit is only located if its mapped range still contains its original text. The edits
+         * of a file are applied in descending offset order, so that they do not shift each other. Edits whose
+         * replacement depends on other edits cannot be located.
+         * The edits are only applied if the refactoring can be resumed and all of them are located. Otherwise nothing
+         * is changed and the journal is kept, so that the refactoring can still be rolled back.
+         *
+         * @return the number of edits that could not be resumed, 0 if the refactoring was finished
+         */
+        public int resume() {
+            if (!canResume()) return getIncompleteEditCount();
+
+            LinkedHashMap<String, List<Entry>> editsByFile = new LinkedHashMap<>();
+            for (Entry edit : incompleteEdits) {
+                editsByFile.computeIfAbsent(edit.path, path -> new ArrayList<>()).add(edit);
+            }
+
+            List<Entry> unresolved = new ArrayList<>();
+            LinkedHashMap<Document, LinkedHashMap<Entry, TextRange>> locatedEdits = new LinkedHashMap<>();
+            for (String path : editsByFile.keySet()) {
+                List<Entry> fileEdits = editsByFile.get(path);
+                Document document = getDocument(path);
+                LinkedHashMap<Entry, TextRange> located = document == null ? null : locate(document.getText(), fileEdits, batchChanges.getOrDefault(path, List.of()), unresolved);
+                if (located == null) {
+                    CodeSmellLogger.warn("The applied edits of " + path + " are no longer in the file.");
+                    unresolved.addAll(fileEdits);
+                    continue;
+                }
+                locatedEdits.put(document, located);
+            }
+
+            if (!unresolved.isEmpty()) {
+                for (Entry edit : unresolved) {
+                    CodeSmellLogger.warn("Could not resume the edit of " + edit.path + ": " + edit.originalText);
+                }
+                CodeSmellLogger.warn("Could not resume " + unresolved.size() + " of " + incompleteEdits.size() + " edits, nothing was changed.");
+                return unresolved.size();
+            }
+
+            WriteCommandAction.runWriteCommandAction(project, "Resume " + name, null, () -> {
+                for (Map.Entry<Document, LinkedHashMap<Entry, TextRange>> file : locatedEdits.entrySet()) {
+                    Document document = file.getKey();
+                    for (Map.Entry<Entry, TextRange> edit : file.getValue().entrySet()) {
+                        document.replaceString(edit.getValue().getStartOffset(), edit.getValue().getEndOffset(), edit.getKey().replacementText);
+                    }
+                    FileDocumentManager.getInstance().saveDocument(document);
+                }
+                PsiDocumentManager.getInstance(project).commitAllDocuments();
+            });
+
+            CodeSmellLogger.info("Resumed " + incompleteEdits.size() + " edits.");
+            discard();
+            return 0;
+        }
+
+        /**
+         * Restores the original content of all files changed by the interrupted refactoring and deletes the files
+         * it created. Files outside the journal are not touched.
+         */
+        public void rollBack() {
+            WriteCommandAction.runWriteCommandAction(project, "Roll Back " + name, null, () -> {
+                List<Entry> reversed = new ArrayList<>(files.values());
+                Collections.reverse(reversed);
+                for (Entry file : reversed) {
+                    VirtualFile virtualFile = LocalFileSystem.getInstance().refreshAndFindFileByPath(file.path);
+                    if (virtualFile == null) continue;
+
+                    if (file.type == Type.CREATED_FILE) {
+                        try {
+                            virtualFile.delete(this);
+                        } catch (IOException e) {
+                            CodeSmellLogger.error("Could not delete created file " + file.path, e);
+                        }
+                        continue;
+                    }
+
+                    Document document = FileDocumentManager.getInstance().getDocument(virtualFile);
+                    if (document != null) {
+                        document.setText(file.originalText);
+                        FileDocumentManager.getInstance().saveDocument(document);
+                    }
+                }
+                PsiDocumentManager.getInstance(project).commitAllDocuments();
+            });
+
+            CodeSmellLogger.info("Rolled back " + files.size() + " files.");
+            discard();
+        }
+
+        /**
+         * Deletes the journal without changing any file
+         */
+        public void discard() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                CodeSmellLogger.error("Could not delete refactoring journal.", e);
+            }
+        }
+
+        /**
+         * Finds the current ranges of the incomplete edits of one file. The recorded ranges refer to the text at the
+         * start of the batch, they are mapped through the changes the applied edits of the batch made.
+         *
+         * @param text       the current text of the file
+         * @param edits      the incomplete edits of the file
+         * @param changes    the changes of the applied edits of the batch in the file, in the order they were made
+         * @param unresolved collects the edits that cannot be located
+         * @return the located edits mapped to their current range in descending offset order, null if the text does
+         * not contain the applied changes
+         */
+        static @Nullable LinkedHashMap<Entry, TextRange> locate(String text, List<Entry> edits, List<Change> changes, List<Entry> unresolved) {
+
+            // the text of each applied change must still be there, unless a later change replaced it
+            for (int i = 0; i < changes.size(); i++) {
+                Change change = changes.get(i);
+                TextRange range = mapRange(change.offset, change.offset + change.newText.length(), changes.subList(i + 1, changes.size()));
+                if (range == null) continue;
+                if (range.getEndOffset() > text.length() || !range.substring(text).equals(change.newText)) return null;
+            }
+
+            List<Map.Entry<Entry, TextRange>> located = new ArrayList<>();
+            for (Entry edit : edits) {
+                // the replacement of an edit containing other edits is only known when it is applied
+                TextRange range = edit.replacementText == null ? null : mapRange(edit.start, edit.end, changes);
+                if (range == null || range.getEndOffset() > text.length() || !range.substring(text).equals(edit.originalText)) {
+                    unresolved.add(edit);
+                    continue;
+                }
+                located.add(Map.entry(edit, range));
+            }
+            located.sort(Comparator.comparingInt((Map.Entry<Entry, TextRange> edit) -> edit.getValue().getStartOffset()).reversed());
+
+            LinkedHashMap<Entry, TextRange> result = new LinkedHashMap<>();
+            int lowestStart = Integer.MAX_VALUE;
+            for (Map.Entry<Entry, TextRange> edit : located) {
+                if (edit.getValue().getEndOffset() > lowestStart) {
+                    unresolved.add(edit.getKey());
+                    continue;
+                }
+                result.put(edit.getKey(), edit.getValue());
+                lowestStart = edit.getValue().getStartOffset();
+            }
+            return result;
+        }
+
+        /**
+         * Maps a range of the text before the given changes to the text after them
+         *
+         * @param start   the start offset of the range
+         * @param end     the end offset of the range
+         * @param changes the changes in the order they were made
+         * @return the mapped range, null if a change overlaps the range
+         */
+        static @Nullable TextRange mapRange(int start, int end, List<Change> changes) {
+            for (Change change : changes) {
+                if (end <= change.offset) continue;
+                if (start < change.offset + change.oldLength) return null;
+
+                int shift = change.newText.length() - change.oldLength;
+                start += shift;
+                end += shift;
+            }
+            return new TextRange(start, end);
+        }
+
+        /**
+         * Returns the document of the file at the given path
+         *
+         * @param path the path of the file
+         * @return the document, null if the file does not exist
+         */
+        private static @Nullable Document getDocument(String path) {
+            VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+            return file == null ? null : FileDocumentManager.getInstance().getDocument(file);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package dataclump;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * This class is an action that recovers a refactoring that was interrupted, e.g. by a crash or a cancellation.
+ * The user can roll back the files it changed instead of reverting the whole project. A refactoring that was
+ * interrupted after all its steps were recorded can also be finished by resuming its incomplete edits.
+ */
+public class RefactoringRecovery extends AnAction {
+
+    /**
+     * The choices of the recovery dialog, in the order they are shown
+     */
+    private static final String[] OPTIONS = {"Resume", "Roll Back", "Discard", "Cancel"};
+
+    /**
+     * The choices of the recovery dialog if the refactoring cannot be resumed
+     */
+    private static final String[] OPTIONS_WITHOUT_RESUME = {"Roll Back", "Discard", "Cancel"};
+
+    /**
+     * Called when the action is performed. It reads the journal of the interrupted refactoring and lets the user
+     * choose whether to resume, roll back or discard it.
+     *
+     * @param event the action event
+     */
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        Project project = event.getProject();
+        if (project == null) return;
+
+        if (!RefactoringJournal.hasInterrupted(project)) {
+            Messages.showInfoMessage(project, "There is no interrupted refactoring.", "Refactoring Recovery");
+            return;
+        }
+        recover(project, null);
+    }
+
+    /**
+     * Lets the user resume, roll back or discard the interrupted refactoring of the given project, if there is one.
+     * A new refactoring calls this before it starts, since it cannot start while the journal of an interrupted
+     * refactoring exists. Must be called on the EDT.
+     *
+     * @param project the project
+     * @param reason  the reason shown above the choices, null if the user opened the recovery
+     * @return true if there is no interrupted refactoring left, false if the user cancelled
+     */
+    public static boolean recover(Project project, @Nullable String reason) {
+        RefactoringJournal.Recovery recovery = RefactoringJournal.loadInterrupted(project);
+        if (recovery == null) return !RefactoringJournal.hasInterrupted(project);
+
+        String message = recovery.getName() + " was interrupted after changing " + recovery.getFileCount() + " files.\n"
+                + recovery.getIncompleteEditCount() + " edits were not applied.";
+        boolean canResume = recovery.canResume();
+        if (!canResume) {
+            message += "\nIt cannot be resumed, since edits failed or it was interrupted before all its steps were recorded.";
+        }
+        int changedFiles = recovery.getChangedFileCount();
+        if (changedFiles > 0) {
+            message += "\n" + changedFiles + " files were changed afterward, rolling back discards these changes.";
+        }
+        if (reason != null) message = reason + "\n\n" + message;
+
+        // closing the dialog cancels, so that the journal is never discarded by accident
+        String[] options = canResume ? OPTIONS : OPTIONS_WITHOUT_RESUME;
+        int choice = Messages.showDialog(project, message, "Refactoring Recovery", options, 0, null);
+        switch (choice < 0 ? "Cancel" : options[choice]) {
+            case "Resume" -> {
+                int unresolved = recovery.resume();
+                if (unresolved == 0) return true;
+
+                // nothing was changed, the journal is kept until the refactoring is rolled back or discarded
+                if (Messages.showYesNoDialog(project, unresolved + " edits could not be located, so nothing was resumed.\nRoll back the refactoring instead?",
+                        "Refactoring Recovery", "Roll Back", "Keep", null) != Messages.YES) {
+                    return false;
+                }
+                recovery.rollBack();
+            }
+            case "Roll Back" -> recovery.rollBack();
+            case "Discard" -> recovery.discard();
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Enables the action only if the project has an interrupted refactoring
+     *
+     * @param event the action event
+     */
+    @Override
+    public void update(@NotNull AnActionEvent event) {
+        Project project = event.getProject();
+        event.getPresentation().setEnabled(project != null && RefactoringJournal.hasInterrupted(project));
+    }
+
+    /**
+     * The update only checks if the journal file exists, so it can run in the background
+     *
+     * @return the thread to run the update on
+     */
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+}
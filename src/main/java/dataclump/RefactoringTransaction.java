@@ -0,0 +1,515 @@
+package dataclump;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.command.CommandProcessor;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.Segment;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import dataclump.listener.FileChangeQueue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.CodeSmellLogger;
+import util.PsiUtil;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Groups all modifications of a data clump refactoring into a single command, so that the refactoring can be undone
+ * in one step. Edits that occur once per usage (references, call sites) are collected per step of the refactoring and
+ * applied together with one write action and one document commit per step, since later steps read the code the
+ * earlier ones produced. The touched code is reformatted once per file when the refactoring is finished.
+ * The progress is recorded in a {@link RefactoringJournal}, so that an interrupted refactoring can be rolled back,
+ * or resumed if it was interrupted after all its steps were made.
+ */
+public class RefactoringTransaction {
+
+    /**
+     * The project the refactoring is applied in
+     */
+    private final Project project;
+
+    /**
+     * The name of the command that is shown in the undo history
+     */
+    private final String name;
+
+    /**
+     * The edits that were collected but not applied yet
+     */
+    private final List<Edit> pendingEdits = new ArrayList<>();
+
+    /**
+     * The elements that were changed by the refactoring mapped to their file, used to reformat only the changed code
+     */
+    private final LinkedHashMap<PsiFile, List<SmartPsiElementPointer<PsiElement>>> touchedElements = new LinkedHashMap<>();
+
+    /**
+     * The journal of the running refactoring, null if the transaction is not running
+     */
+    @Nullable
+    private RefactoringJournal journal;
+
+    /**
+     * The number of edits that failed
+     */
+    private int failedEdits = 0;
+
+    /**
+     * Whether this transaction created the journal, false if another journal already existed
+     */
+    private boolean journalCreated = false;
+
+    /**
+     * The document of the edit that is being applied, null if no edit is being applied
+     */
+    @Nullable
+    private Document editedDocument;
+
+    /**
+     * The changes of the document of the edit that is being applied, recorded in the journal once it was saved
+     */
+    private final List<RefactoringJournal.Change> editChanges = new ArrayList<>();
+
+    /**
+     * Represents a collected edit
+     *
+     * @param target      the element to replace or delete
+     * @param kind        the kind of the edit
+     * @param replacement creates the new element from the current state of the target, null if the target is deleted
+     */
+    private record Edit(SmartPsiElementPointer<PsiElement> target, EditPlan.Kind kind,
+                        @Nullable Function<PsiElement, PsiElement> replacement) {
+    }
+
+    /**
+     * Represents a collected edit that is recorded in the journal and about to be applied
+     *
+     * @param edit       the collected edit
+     * @param id         the id of the edit in the journal, -1 if it is not recorded
+     * @param newElement the new element created when the edit was recorded, null if the target is deleted or the new
+     *                   element depends on other edits inside the target and is created when the edit is applied
+     * @param error      the reason why the new element could not be created, null if there was no error
+     */
+    private record PreparedEdit(Edit edit, int id, @Nullable PsiElement newElement, @Nullable String error) {
+    }
+
+    /**
+     * Represents an edit that was applied or failed, recorded in the journal once its document was saved
+     *
+     * @param id       the id of the edit in the journal
+     * @param file     the edited file, null if the element no longer exists
+     * @param document the edited document, null if the file has no document
+     * @param changes  the document changes made by the edit
+     * @param error    the reason why the edit failed, null if it was applied
+     */
+    private record EditResult(int id, @Nullable PsiFile file, @Nullable Document document,
+                              List<RefactoringJournal.Change> changes, @Nullable String error) {
+    }
+
+    /**
+     * Creates a new transaction
+     *
+     * @param project the project the refactoring is applied in
+     * @param name    the name of the command that is shown in the undo history
+     */
+    public RefactoringTransaction(Project project, String name) {
+        this.project = project;
+        this.name = name;
+    }
+
+    /**
+     * Runs the refactoring as a single command. All write command actions started by the refactoring become part of
+     * this command. Remaining edits are applied and the touched code is reformatted at the end.
+     * Every document changed while the refactoring runs is recorded in the journal before its first change.
+     * If the refactoring is interrupted, the journal is kept for recovery and the edits that were not applied yet
+     * are dropped. If edits failed, the journal is kept as well, so that the caller can roll the refactoring back.
+     *
+     * @param refactoring the refactoring to run
+     * @return the number of edits that failed
+     */
+    public int run(Runnable refactoring) {
+        journal = RefactoringJournal.begin(project, name);
+        journalCreated = true;
+
+        Disposable listenerDisposable = Disposer.newDisposable();
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(new DocumentListener() {
+            @Override
+            public void beforeDocumentChange(@NotNull DocumentEvent event) {
+                if (journal != null) journal.recordFile(event.getDocument());
+            }
+
+            @Override
+            public void documentChanged(@NotNull DocumentEvent event) {
+                if (event.getDocument() == editedDocument) {
+                    editChanges.add(new RefactoringJournal.Change(event.getOffset(), event.getOldLength(), event.getNewFragment().toString()));
+                }
+            }
+        }, listenerDisposable);
+
+        boolean finished = false;
+        try {
+            CommandProcessor.getInstance().executeCommand(project, () -> {
+                refactoring.run();
+                finish();
+            }, name, null);
+            finished = true;
+        } finally {
+            Disposer.dispose(listenerDisposable);
+            if (finished) {
+                journal.commit(failedEdits);
+            } else {
+                CodeSmellLogger.warn("Refactoring interrupted, it can be recovered with the refactoring recovery.");
+                journal.close();
+                pendingEdits.clear();
+                touchedElements.clear();
+            }
+            journal = null;
+        }
+        return failedEdits;
+    }
+
+    /**
+     * Checks if this transaction created the journal. Only then the journal belongs to this transaction and may be
+     * rolled back by it.
+     *
+     * @return true if the journal was created by this transaction, false otherwise
+     */
+    public boolean hasCreatedJournal() {
+        return journalCreated;
+    }
+
+    /**
+     * Collects the replacement of the given element. The new element is created once, when the edits are recorded.
+     * If other edits are applied inside the target, it is created when the edit is applied instead, so that it
+     * reflects these edits.
+     *
+     * @param target      the element to replace
+     * @param kind        the kind of the edit
+     * @param replacement creates the new element from the current state of the target
+     */
+    public void replace(PsiElement target, EditPlan.Kind kind, Function<PsiElement, PsiElement> replacement) {
+        pendingEdits.add(new Edit(createPointer(target), kind, replacement));
+    }
+
+    /**
+     * Collects the deletion of the given declaration or statement
+     *
+     * @param target the element to delete
+     */
+    public void delete(PsiElement target) {
+        pendingEdits.add(new Edit(createPointer(target), EditPlan.Kind.DECLARATION, null));
+    }
+
+    /**
+     * Records that the given file was created by the refactoring, so that it is deleted if the refactoring is rolled back
+     *
+     * @param file the created file
+     */
+    public void created(PsiFile file) {
+        if (journal != null) PsiUtil.runReadActionWithResult(() -> {
+            journal.recordCreatedFile(file);
+            return null;
+        });
+    }
+
+    /**
+     * Marks the given element as changed, so that it is reformatted when the refactoring is finished
+     *
+     * @param element the changed element
+     */
+    public void touch(PsiElement element) {
+        PsiUtil.runReadActionWithResult(() -> {
+            if (element == null || !element.isValid()) return null;
+            PsiFile file = element.getContainingFile();
+            if (file == null) return null;
+            touchedElements.computeIfAbsent(file, f -> new ArrayList<>()).add(createPointer(element));
+            return null;
+        });
+    }
+
+    /**
+     * Applies all collected edits in one write action and commits the documents once afterward.
+     * Inner elements are edited before the elements containing them, so that nested usages are not lost.
+     * All edits are recorded in the journal before the first one is applied, so that an interruption leaves every
+     * remaining edit in the journal. Each edit is marked as applied or failed once it was applied.
+     * The new element of an edit is created only once and the journal records the text of exactly this element.
+     * The edited files are saved before the edits are recorded and again before they are marked as applied, so that
+     * the journal matches the files on disk if the IDE crashes. Saving the files and writing the journal happen
+     * outside the write action.
+     */
+    public void applyPendingEdits() {
+        if (pendingEdits.isEmpty()) return;
+
+        List<Edit> edits = new ArrayList<>(pendingEdits);
+        pendingEdits.clear();
+
+        List<RefactoringJournal.Entry> journalEntries = new ArrayList<>();
+        List<PreparedEdit> preparedEdits = PsiUtil.runReadActionWithResult(() -> prepareEdits(edits, journalEntries));
+
+        if (journal != null) {
+            saveDocuments(edits);
+            journal.beginBatch();
+            journal.recordEdits(journalEntries);
+        }
+
+        List<EditResult> results = new ArrayList<>();
+        try {
+            WriteCommandAction.runWriteCommandAction(project, name, null, () -> {
+                applyEdits(preparedEdits, results);
+                PsiDocumentManager.getInstance(project).commitAllDocuments();
+            });
+        } finally {
+            recordResults(results);
+        }
+    }
+
+    /**
+     * Orders the given edits and creates their new elements and journal entries. Must be called inside a read action.
+     *
+     * @param edits          the collected edits
+     * @param journalEntries collects the journal entries of the edits
+     * @return the prepared edits in the order they are applied
+     */
+    private List<PreparedEdit> prepareEdits(List<Edit> edits, List<RefactoringJournal.Entry> journalEntries) {
+        // sort the edits by the length of their target, an element is always shorter than the elements containing it
+        edits.sort(Comparator.comparingInt(edit -> {
+            Segment range = edit.target().getRange();
+            return range == null ? 0 : range.getEndOffset() - range.getStartOffset();
+        }));
+
+        Set<Edit> outerEdits = findOuterEdits(edits);
+        List<PreparedEdit> preparedEdits = new ArrayList<>();
+        for (Edit edit : edits) {
+            preparedEdits.add(prepareEdit(edit, outerEdits.contains(edit), journalEntries));
+        }
+        return preparedEdits;
+    }
+
+    /**
+     * Returns the edits whose target contains the target of another edit. The new element of such an edit can only
+     * be created once the edits inside it were applied.
+     *
+     * @param edits the edits
+     * @return the edits containing other edits
+     */
+    private static Set<Edit> findOuterEdits(List<Edit> edits) {
+        HashMap<VirtualFile, List<Edit>> editsByFile = new HashMap<>();
+        for (Edit edit : edits) {
+            if (edit.target().getRange() == null) continue;
+            editsByFile.computeIfAbsent(edit.target().getVirtualFile(), file -> new ArrayList<>()).add(edit);
+        }
+
+        Set<Edit> outerEdits = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (List<Edit> fileEdits : editsByFile.values()) {
+            // sorted by start offset, an element comes before the elements it contains
+            List<Segment> ranges = new ArrayList<>();
+            fileEdits.sort(Comparator.comparingInt((Edit edit) -> Objects.requireNonNull(edit.target().getRange()).getStartOffset())
+                    .thenComparing(edit -> -Objects.requireNonNull(edit.target().getRange()).getEndOffset()));
+            for (Edit edit : fileEdits) ranges.add(edit.target().getRange());
+
+            for (int i = 0; i + 1 < fileEdits.size(); i++) {
+                if (ranges.get(i + 1).getStartOffset() < ranges.get(i).getEndOffset()) outerEdits.add(fileEdits.get(i));
+            }
+        }
+        return outerEdits;
+    }
+
+    /**
+     * Creates the journal entry of the given edit. Unless the edit contains other edits, its new element is created
+     * from the current state of the target and recorded with it. The edit is still recorded if the new element cannot
+     * be created. Must be called inside a read action.
+     *
+     * @param edit           the edit to prepare
+     * @param outerEdit      whether the target contains the target of another edit
+     * @param journalEntries collects the journal entry of the edit
+     * @return the prepared edit
+     */
+    private PreparedEdit prepareEdit(Edit edit, boolean outerEdit, List<RefactoringJournal.Entry> journalEntries) {
+        PsiElement target = edit.target().getElement();
+        if (target == null || !target.isValid()) return new PreparedEdit(edit, -1, null, null);
+
+        PsiElement newElement = null;
+        String replacementText = null;
+        String error = null;
+        if (edit.replacement() == null) {
+            replacementText = "";
+        } else if (!outerEdit) {
+            try {
+                newElement = edit.replacement().apply(target);
+                replacementText = newElement.getText();
+            } catch (Exception e) {
+                error = String.valueOf(e.getMessage());
+            }
+        }
+
+        if (journal == null) return new PreparedEdit(edit, -1, newElement, error);
+
+        RefactoringJournal.Entry entry = journal.createEdit(target, edit.kind().name(), replacementText);
+        journalEntries.add(entry);
+        return new PreparedEdit(edit, entry.id, newElement, error);
+    }
+
+    /**
+     * Saves the documents of the files of the given edits, so that the offsets recorded in the journal refer to the
+     * files on disk. This also saves the changes the user made to these files before the refactoring and did not save
+     * yet. They are part of the original content recorded in the journal, so rolling back the refactoring restores
+     * them. Files without edits are not saved. Must not be called inside a write action.
+     *
+     * @param edits the edits
+     */
+    private static void saveDocuments(List<Edit> edits) {
+        FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();
+        Set<VirtualFile> files = new HashSet<>();
+        int savedFiles = 0;
+        for (Edit edit : edits) {
+            VirtualFile file = edit.target().getVirtualFile();
+            if (file == null || !files.add(file)) continue;
+            Document document = fileDocumentManager.getCachedDocument(file);
+            if (document != null && fileDocumentManager.isDocumentUnsaved(document)) {
+                fileDocumentManager.saveDocument(document);
+                savedFiles++;
+            }
+        }
+        if (savedFiles > 0) CodeSmellLogger.info("Saved the unsaved changes of " + savedFiles + " files before editing them.");
+    }
+
+    /**
+     * Applies the given edits in their order. The document changes of each edit are collected, so that the edits can
+     * be marked as applied or failed in the journal once the write action is over, even if the application is
+     * interrupted. Must be called inside a write action.
+     *
+     * @param edits   the edits to apply
+     * @param results collects the applied and failed edits
+     */
+    private void applyEdits(List<PreparedEdit> edits, List<EditResult> results) {
+        PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
+        for (PreparedEdit preparedEdit : edits) {
+            Edit edit = preparedEdit.edit();
+            int id = preparedEdit.id();
+            PsiElement target = edit.target().getElement();
+            if (target == null || !target.isValid()) {
+                CodeSmellLogger.warn("Skipping edit of an element that no longer exists.");
+                results.add(new EditResult(id, null, null, List.of(), "The element no longer exists."));
+                continue;
+            }
+
+            PsiFile file = target.getContainingFile();
+            Document document = file == null ? null : documentManager.getDocument(file);
+            editedDocument = document;
+            editChanges.clear();
+            try {
+                if (preparedEdit.error() != null) {
+                    throw new IllegalStateException(preparedEdit.error());
+                }
+                if (edit.replacement() == null) {
+                    PsiElement parent = target.getParent();
+                    target.delete();
+                    touch(parent);
+                } else {
+                    PsiElement newElement = preparedEdit.newElement() != null ? preparedEdit.newElement() : edit.replacement().apply(target);
+                    touch(target.replace(newElement));
+                }
+                // postponed formatting changes the document as well, it belongs to this edit
+                if (document != null) documentManager.doPostponedOperationsAndUnblockDocument(document);
+                results.add(new EditResult(id, file, document, new ArrayList<>(editChanges), null));
+            } catch (Exception e) {
+                failedEdits++;
+                results.add(new EditResult(id, file, document, new ArrayList<>(editChanges), String.valueOf(e.getMessage())));
+                CodeSmellLogger.warn("Element " + target.getText() + " could not be refactored. \n" + e.getMessage() + "\n Continuing...");
+            } finally {
+                editedDocument = null;
+                editChanges.clear();
+            }
+        }
+    }
+
+    /**
+     * Saves the edited documents and marks the given edits as applied or failed in the journal, so that the journal
+     * never marks an edit as applied that is not on disk. Must not be called inside a write action.
+     *
+     * @param results the applied and failed edits
+     */
+    private void recordResults(List<EditResult> results) {
+        if (journal == null) return;
+
+        FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();
+        Set<Document> documents = new HashSet<>();
+        for (EditResult result : results) {
+            if (result.document() != null && documents.add(result.document())) fileDocumentManager.saveDocument(result.document());
+        }
+
+        for (EditResult result : results) {
+            if (result.id() < 0) continue;
+            if (result.error() == null && result.file() != null) {
+                journal.markApplied(result.id(), result.file(), result.changes());
+            } else {
+                journal.markFailed(result.id(), result.file(), String.valueOf(result.error()), result.changes());
+            }
+        }
+    }
+
+    /**
+     * Applies the remaining edits and reformats the touched code once per file
+     */
+    private void finish() {
+        // all steps were made, an interruption from now on leaves only recorded edits behind
+        if (journal != null) journal.endSteps();
+        applyPendingEdits();
+
+        WriteCommandAction.runWriteCommandAction(project, name, null, () -> {
+            PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
+            documentManager.commitAllDocuments();
+
+            for (PsiFile file : touchedElements.keySet()) {
+                if (!file.isValid()) continue;
+
+                List<TextRange> touchedRanges = new ArrayList<>();
+                for (SmartPsiElementPointer<PsiElement> pointer : touchedElements.get(file)) {
+                    Segment range = pointer.getRange();
+                    if (range != null) touchedRanges.add(TextRange.create(range));
+                }
+                touchedRanges.sort(Comparator.comparingInt(TextRange::getStartOffset));
+
+                // merge overlapping ranges, e.g. an edited call site inside a touched class
+                List<TextRange> ranges = new ArrayList<>();
+                for (TextRange range : touchedRanges) {
+                    int last = ranges.size() - 1;
+                    if (last >= 0 && ranges.get(last).getEndOffset() >= range.getStartOffset()) {
+                        ranges.set(last, ranges.get(last).union(range));
+                    } else {
+                        ranges.add(range);
+                    }
+                }
+                if (!ranges.isEmpty()) {
+                    CodeStyleManager.getInstance(project).reformatText(file, ranges);
+                }
+            }
+            documentManager.commitAllDocuments();
+
+            // the refactoring already updated the index, the change events of these files do not need to be processed
+            FileChangeQueue.getInstance(project).markUpToDate(touchedElements.keySet());
+        });
+        touchedElements.clear();
+    }
+
+    /**
+     * Creates a smart pointer for the given element
+     *
+     * @param element the element
+     * @return the smart pointer
+     */
+    private SmartPsiElementPointer<PsiElement> createPointer(PsiElement element) {
+        return PsiUtil.runReadActionWithResult(() -> SmartPointerManager.getInstance(project).createSmartPsiElementPointer(element));
+    }
+}
@@ -0,0 +1,166 @@
+package dataclump;
+
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
+import com.intellij.lang.javascript.psi.ecmal4.JSClass;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.PsiSearchHelper;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.PsiTreeUtil;
+import util.PsiUtil;
+
+import java.util.*;
+
+/**
+ * Collects the usages of all elements that are rewritten by a data clump refactoring in one pass.
+ * Each search is restricted to the files that contain the name of the element according to the word index,
+ * and the results are shared by all steps of the refactoring.
+ */
+public class UsageCollector {
+
+    /**
+     * The project to search in
+     */
+    private final Project project;
+
+    /**
+     * The usages of the collected elements
+     */
+    private final HashMap<PsiElement, List<SmartPsiElementPointer<PsiElement>>> usages = new HashMap<>();
+
+    /**
+     * Maps the name of an element to the scope of the files that contain this name
+     */
+    private final HashMap<String, GlobalSearchScope> scopes = new HashMap<>();
+
+    /**
+     * Creates a new usage collector
+     *
+     * @param project the project to search in
+     */
+    public UsageCollector(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Searches the usages of all given elements in one read action
+     *
+     * @param targets the elements to search the usages of
+     */
+    public void collect(Collection<? extends PsiElement> targets) {
+        ApplicationManager.getApplication().runReadAction(() -> {
+            SmartPointerManager pointerManager = SmartPointerManager.getInstance(project);
+            for (PsiElement target : targets) {
+                if (target == null || !target.isValid() || usages.containsKey(target)) continue;
+
+                List<SmartPsiElementPointer<PsiElement>> pointers = new ArrayList<>();
+                for (PsiReference reference : search(target)) {
+                    pointers.add(pointerManager.createSmartPsiElementPointer(reference.getElement()));
+                }
+                usages.put(target, pointers);
+            }
+        });
+    }
+
+    /**
+     * Returns the references to the given element.
+     * If the collected usages are no longer up-to-date, because the code containing them was rewritten by an earlier
+     * step, or the element was not collected, the references are searched again in the files containing its name.
+     *
+     * @param target the element to get the references to
+     * @return the references to the element
+     */
+    public Collection<PsiReference> getReferences(PsiElement target) {
+        return PsiUtil.runReadActionWithResult(() -> {
+            List<SmartPsiElementPointer<PsiElement>> pointers = usages.get(target);
+            if (pointers != null) {
+                List<PsiReference> references = new ArrayList<>();
+                for (SmartPsiElementPointer<PsiElement> pointer : pointers) {
+                    PsiReference reference = findReferenceTo(pointer.getElement(), target);
+                    // the usage was rewritten -> the collected usages are outdated
+                    if (reference == null) {
+                        references = null;
+                        break;
+                    }
+                    references.add(reference);
+                }
+                if (references != null) return references;
+            }
+
+            Collection<PsiReference> references = search(target);
+            SmartPointerManager pointerManager = SmartPointerManager.getInstance(project);
+            List<SmartPsiElementPointer<PsiElement>> updatedPointers = new ArrayList<>();
+            for (PsiReference reference : references) {
+                updatedPointers.add(pointerManager.createSmartPsiElementPointer(reference.getElement()));
+            }
+            usages.put(target, updatedPointers);
+            return references;
+        });
+    }
+
+    /**
+     * Returns the reference of the given element to the target
+     *
+     * @param element the element that used the target when the usages were collected
+     * @param target  the target
+     * @return the reference or null if the element does not reference the target anymore
+     */
+    private PsiReference findReferenceTo(PsiElement element, PsiElement target) {
+        if (element == null || !element.isValid()) return null;
+        for (PsiReference reference : element.getReferences()) {
+            if (reference.isReferenceTo(target)) return reference;
+        }
+        return null;
+    }
+
+    /**
+     * Searches the references to the given element in the files that contain its name. Must be called inside a read action.
+     *
+     * @param target the element to search the references to
+     * @return the references to the element
+     */
+    private Collection<PsiReference> search(PsiElement target) {
+        String name = getSearchedName(target);
+        if (name == null) return ReferencesSearch.search(target).findAll();
+
+        GlobalSearchScope scope = scopes.computeIfAbsent(name, this::getFilesWithWord);
+        return ReferencesSearch.search(target, scope).findAll();
+    }
+
+    /**
+     * Returns the name that appears in the usages of the given element.
+     * Constructors are used by the name of their class.
+     *
+     * @param target the element
+     * @return the name or null if the element has no name
+     */
+    private String getSearchedName(PsiElement target) {
+        if (target instanceof TypeScriptFunction function && function.isConstructor()) {
+            JSClass psiClass = PsiTreeUtil.getParentOfType(function, JSClass.class);
+            return psiClass == null ? null : psiClass.getName();
+        }
+        if (target instanceof PsiNamedElement namedElement) {
+            return namedElement.getName();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the scope of the project files that contain the given word according to the word index
+     *
+     * @param word the word
+     * @return the scope of the files containing the word
+     */
+    private GlobalSearchScope getFilesWithWord(String word) {
+        Set<VirtualFile> files = new HashSet<>();
+        PsiSearchHelper.getInstance(project).processAllFilesWithWord(word, GlobalSearchScope.projectScope(project), file -> {
+            VirtualFile virtualFile = file.getVirtualFile();
+            if (virtualFile != null) files.add(virtualFile);
+            return true;
+        }, true);
+        return GlobalSearchScope.filesScope(project, files);
+    }
+}
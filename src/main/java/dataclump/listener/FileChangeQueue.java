@@ -0,0 +1,354 @@
+package dataclump.listener;
+
+import Settings.DataClumpSettings;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptClass;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptInterface;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.Alarm;
+import util.CodeSmellLogger;
+import util.Index;
+import util.Property;
+import util.PsiUtil;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Queue for changed files of a project that are inspected in the background.
+ * Changes are collected until no new change arrived for a short delay, repeated changes of the same file are merged
+ * and the files of a batch are inspected in parallel. A running batch is cancelled when a newer batch supersedes it,
+ * the files it did not process yet are moved to the newer batch.
+ * Each project has its own queue, so that suspending or clearing the queue of one project does not affect the others.
+ */
+public class FileChangeQueue implements Disposable {
+
+    /**
+     * The delay in milliseconds to wait for further changes before a batch is processed
+     */
+    private static final int DEBOUNCE_DELAY = 300;
+
+    /**
+     * The project whose changed files are queued
+     */
+    private final Project project;
+
+    /**
+     * The alarm used to debounce the changes. Requests are executed on a pooled thread.
+     */
+    private final Alarm alarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+
+    /**
+     * The files that changed since the last batch was started
+     */
+    private final Set<VirtualFile> pendingFiles = new LinkedHashSet<>();
+
+    /**
+     * The files of the running batch
+     */
+    private List<VirtualFile> currentBatch = null;
+
+    /**
+     * The files of the running batch that were already processed
+     */
+    private Set<VirtualFile> processedFiles = null;
+
+    /**
+     * The progress indicator of the running batch, used to cancel it
+     */
+    private ProgressIndicator currentIndicator = null;
+
+    /**
+     * The number of operations that suspended the processing of the queue
+     */
+    private int suspensions = 0;
+
+    /**
+     * The files whose changes are already reflected in the index mapped to their PSI modification stamp at that time
+     */
+    private final Map<VirtualFile, Long> upToDateFiles = new ConcurrentHashMap<>();
+
+    /**
+     * The properties the elements had before the inspection changed their signature in the index. The inspection
+     * updates the index on every highlighting pass, so once the saved file is processed here, the index already holds
+     * the new signature. Elements that were not in the index are mapped to no properties.
+     */
+    private final Map<PsiElement, List<? extends Property>> changedSignatures = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the queue of a project
+     *
+     * @param project the project whose changed files are queued
+     */
+    public FileChangeQueue(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Returns the queue of the given project
+     *
+     * @param project the project
+     * @return the queue of the project
+     */
+    public static FileChangeQueue getInstance(Project project) {
+        return project.getService(FileChangeQueue.class);
+    }
+
+    /**
+     * Adds the given files to the queue and restarts the debounce delay. A running batch is cancelled right away,
+     * since the alarm only starts the next batch once the running one returned.
+     *
+     * @param files the changed files
+     */
+    public synchronized void queue(Collection<VirtualFile> files) {
+        if (files.isEmpty()) return;
+
+        pendingFiles.addAll(files);
+        if (suspensions > 0) return;
+
+        cancelCurrentBatch();
+
+        alarm.cancelAllRequests();
+        alarm.addRequest(this::flush, DEBOUNCE_DELAY);
+    }
+
+    /**
+     * Suspends the processing of the queue. Changed files are still collected and processed together once the
+     * last suspension is resumed. Used by operations that change many files in a row, like the batch refactoring.
+     */
+    public synchronized void suspend() {
+        suspensions++;
+        alarm.cancelAllRequests();
+    }
+
+    /**
+     * Resumes the processing of the queue and processes the files that changed while it was suspended
+     */
+    public synchronized void resume() {
+        if (suspensions == 0) return;
+        suspensions--;
+        if (suspensions == 0 && !pendingFiles.isEmpty()) {
+            alarm.addRequest(this::flush, DEBOUNCE_DELAY);
+        }
+    }
+
+    /**
+     * Marks the given files as up-to-date in the index, e.g. because a refactoring already applied its changes to the
+     * index. A later change event of such a file is ignored as long as its PSI was not modified again.
+     * Must be called inside a read action.
+     *
+     * @param files the files that are up-to-date
+     */
+    public void markUpToDate(Collection<PsiFile> files) {
+        for (PsiFile file : files) {
+            if (!file.isValid() || file.getVirtualFile() == null) continue;
+            upToDateFiles.put(file.getVirtualFile(), file.getModificationStamp());
+        }
+    }
+
+    /**
+     * Remembers that the signature of an element was changed in the index before its file was processed, so that the
+     * files of the elements that shared properties with the old signature are highlighted again once the file is
+     * processed. Only the properties before the first unprocessed change are kept.
+     *
+     * @param element       the changed element
+     * @param oldProperties the properties before the change or null if the element was not in the index
+     */
+    public void signatureChanged(PsiElement element, List<? extends Property> oldProperties) {
+        changedSignatures.putIfAbsent(element, oldProperties == null ? List.of() : List.copyOf(oldProperties));
+    }
+
+    /**
+     * Cancels the running batch and removes all queued files, e.g. when the project is closed
+     */
+    public synchronized void clear() {
+        alarm.cancelAllRequests();
+        if (currentIndicator != null) currentIndicator.cancel();
+        pendingFiles.clear();
+        currentBatch = null;
+        processedFiles = null;
+        currentIndicator = null;
+        upToDateFiles.clear();
+        changedSignatures.clear();
+    }
+
+    /**
+     * Cancels the running batch and moves the files it did not process yet back to the pending files, so that the
+     * next batch takes them over. Does nothing if no batch is running.
+     */
+    private synchronized void cancelCurrentBatch() {
+        if (currentIndicator == null) return;
+
+        currentIndicator.cancel();
+        for (VirtualFile file : currentBatch) {
+            if (!processedFiles.contains(file)) pendingFiles.add(file);
+        }
+        currentBatch = null;
+        processedFiles = null;
+        currentIndicator = null;
+    }
+
+    /**
+     * Starts a new batch with all pending files, including the unprocessed files of a superseded batch
+     */
+    private void flush() {
+
+        List<VirtualFile> batch;
+        Set<VirtualFile> processed = ConcurrentHashMap.newKeySet();
+        ProgressIndicator indicator = new EmptyProgressIndicator();
+
+        synchronized (this) {
+            cancelCurrentBatch();
+            if (pendingFiles.isEmpty()) return;
+
+            batch = new ArrayList<>(pendingFiles);
+            pendingFiles.clear();
+
+            currentBatch = batch;
+            processedFiles = processed;
+            currentIndicator = indicator;
+        }
+
+        try {
+            JobLauncher.getInstance().invokeConcurrentlyUnderProgress(batch, indicator, file -> {
+                processFile(file, indicator);
+                processed.add(file);
+                return true;
+            });
+        } catch (ProcessCanceledException e) {
+            CodeSmellLogger.info("Processing of " + batch.size() + " changed files was superseded by a newer batch.");
+        } finally {
+            synchronized (this) {
+                if (currentIndicator == indicator) {
+                    currentBatch = null;
+                    processedFiles = null;
+                    currentIndicator = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the given file in the index of the project. If the index is not built yet, the file is skipped, it is
+     * indexed when the index is built.
+     *
+     * @param file      the file to process
+     * @param indicator the progress indicator of the batch
+     */
+    private void processFile(VirtualFile file, ProgressIndicator indicator) {
+        indicator.checkCanceled();
+        if (project.isDisposed()) return;
+
+        // only proceed if index is built
+        Index index = Index.getInstance(project);
+        if (!index.isIndexBuilt()) return;
+
+        processFile(index, file, indicator);
+    }
+
+    /**
+     * Updates the functions, classes and interfaces of the given file in the index. If the property signature of an
+     * element changed, its file and the files of the elements that shared properties with the old or new signature
+     * are highlighted again, which runs the detection once per file. The signature is compared with the one before
+     * the inspection changed it, if it did.
+     *
+     * @param index     the index of the project
+     * @param file      the file to process
+     * @param indicator the progress indicator of the batch
+     */
+    private void processFile(Index index, VirtualFile file, ProgressIndicator indicator) {
+
+        // the index already reflects the current state of the file
+        Long upToDateStamp = upToDateFiles.remove(file);
+        if (upToDateStamp != null && upToDateStamp.equals(PsiUtil.runReadActionWithResult(() -> {
+            PsiFile psiFile = file.isValid() ? PsiManager.getInstance(project).findFile(file) : null;
+            return psiFile != null ? psiFile.getModificationStamp() : null;
+        }))) {
+            return;
+        }
+
+        // read all functions, classes and interfaces from file
+        List<PsiElement> elements = ReadAction.nonBlocking(() -> {
+            List<PsiElement> result = new ArrayList<>();
+            if (!file.isValid()) return result;
+
+            PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+            if (psiFile == null || !psiFile.isValid()) return result;
+
+            result.addAll(PsiTreeUtil.findChildrenOfType(psiFile, TypeScriptFunction.class));
+            result.addAll(List.of(PsiTreeUtil.collectElements(psiFile, element -> element instanceof TypeScriptClass)));
+            result.addAll(List.of(PsiTreeUtil.collectElements(psiFile, element -> element instanceof TypeScriptInterface)));
+            return result;
+        }).wrapProgress(indicator).executeSynchronously();
+
+        int minNumberOfProperties = Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties;
+        Set<PsiFile> affectedFiles = new HashSet<>();
+
+        for (PsiElement psiElement : elements) {
+            indicator.checkCanceled();
+            // the file may have been changed again in the meantime
+            if (!PsiUtil.runReadActionWithResult(psiElement::isValid)) continue;
+
+            // compare the signature of the element before and after the change
+            List<? extends Property> oldProperties = changedSignatures.get(psiElement);
+            if (oldProperties == null) oldProperties = index.getProperties(psiElement);
+            index.updateElement(psiElement);
+            List<? extends Property> newProperties = index.getProperties(psiElement);
+
+            // the change did not affect the properties (e.g. only the body was edited) -> no detection needed
+            if (Index.hasSameSignature(oldProperties, newProperties)) {
+                changedSignatures.remove(psiElement);
+                continue;
+            }
+
+            // the file of the element is highlighted again once the index reflects the new signature
+            PsiFile ownFile = PsiUtil.runReadActionWithResult(() -> psiElement.isValid() ? psiElement.getContainingFile() : null);
+            if (ownFile != null) affectedFiles.add(ownFile);
+
+            // the elements that shared enough properties with the old or the new signature might have gained or lost a data clump
+            for (List<? extends Property> properties : Arrays.asList(oldProperties, newProperties)) {
+                if (properties == null) continue;
+                HashMap<PsiElement, Integer> sharedProperties = index.countSharedProperties(properties);
+                for (PsiElement otherElement : sharedProperties.keySet()) {
+                    if (otherElement == psiElement || sharedProperties.get(otherElement) < minNumberOfProperties) continue;
+                    PsiFile otherFile = PsiUtil.runReadActionWithResult(() -> otherElement.isValid() ? otherElement.getContainingFile() : null);
+                    if (otherFile != null) affectedFiles.add(otherFile);
+                }
+            }
+            // removed only now, so that a cancelled batch compares the element with the same signature again
+            changedSignatures.remove(psiElement);
+        }
+        // elements that were deleted before their file was processed
+        changedSignatures.keySet().removeIf(element -> !PsiUtil.runReadActionWithResult(element::isValid));
+
+        // highlight the files of the changed and affected elements again
+        if (!affectedFiles.isEmpty()) {
+            ApplicationManager.getApplication().invokeLater(() -> {
+                for (PsiFile affectedFile : affectedFiles) {
+                    if (affectedFile.isValid()) DaemonCodeAnalyzer.getInstance(project).restart(affectedFile);
+                }
+            }, project.getDisposed());
+        }
+    }
+
+    /**
+     * Cancels the running batch and removes all queued files when the project is closed
+     */
+    @Override
+    public void dispose() {
+        clear();
+    }
+}
@@ -0,0 +1,420 @@
+package evoluation;
+
+import com.intellij.ide.impl.OpenProjectTask;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ApplicationStarter;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ex.ProjectManagerEx;
+import dataclump.FullAnalysis;
+import dataclump.listener.FileChangeQueue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.CodeSmellLogger;
+import util.Index;
+import util.PartialIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * This class is a headless command that analyzes projects from the command line without starting the UI:
+ * <pre>
+ * idea dataclumps analyze &lt;project&gt; --out &lt;file&gt;
+ * idea dataclumps batch &lt;manifest&gt; --out &lt;directory&gt;
+ * idea dataclumps shard &lt;project&gt; --shard &lt;i&gt;/&lt;n&gt; --out &lt;file&gt;
+ * idea dataclumps merge &lt;file&gt;... --name &lt;project name&gt; --out &lt;file&gt;
+ * idea dataclumps history &lt;repository&gt; --out &lt;file&gt; [--from &lt;commit&gt;] [--to &lt;commit&gt;]
+ * </pre>
+ * It opens the project, builds the index, runs the full analysis, writes the report and exits with a status code.
+ * The batch command reads one project path per line from the manifest and analyzes all projects in the same process,
+ * so that the start-up of the IDE and the warm-up of the JVM are only paid once.
+ * The shard command writes the partial index of one shard of the project, so that large projects can be indexed by
+ * several processes or machines. The merge command combines the partial indexes and detects the data clumps across
+ * all shards without opening the project.
+ * The history command checks out the commits of a git repository one after another and writes how the number of
+ * data clumps evolved and how long each data clump existed, see {@link HistoryMiner}.
+ */
+public class CommandLineAnalyzer implements ApplicationStarter {
+
+    /**
+     * The exit code if the report was written
+     */
+    public static final int EXIT_OK = 0;
+
+    /**
+     * The exit code if the arguments are invalid
+     */
+    public static final int EXIT_USAGE = 1;
+
+    /**
+     * The exit code if the project could not be opened
+     */
+    public static final int EXIT_PROJECT = 2;
+
+    /**
+     * The exit code if the analysis failed or the report could not be written
+     */
+    public static final int EXIT_ANALYSIS = 3;
+
+    /**
+     * The maximum time to wait for the index to be built
+     */
+    private static final long INDEX_TIMEOUT_MINUTES = 60;
+
+    /**
+     * The interval in which the progress of the index build is logged while waiting for it
+     */
+    private static final long PROGRESS_INTERVAL_SECONDS = 30;
+
+    /**
+     * The usage of the command
+     */
+    private static final String USAGE = "Usage: dataclumps analyze <project> --out <file>\n"
+            + "       dataclumps batch <manifest> --out <directory>\n"
+            + "       dataclumps shard <project> --shard <i>/<n> --out <file>\n"
+            + "       dataclumps merge <file>... --name <project name> --out <file>\n"
+            + "       dataclumps history <repository> --out <file> [--from <commit>] [--to <commit>]";
+
+    /**
+     * True if the process builds the partial index of a shard. The index of the whole project is then not built
+     * when the project is opened, since the shard is indexed from the PSI directly.
+     */
+    private static volatile boolean shardMode;
+
+    /**
+     * The command runs without UI
+     *
+     * @return true
+     */
+    @Override
+    public boolean isHeadless() {
+        return true;
+    }
+
+    /**
+     * The command opens the project and waits for the index, so it must not block the EDT
+     *
+     * @return the modality that runs the command outside the EDT
+     */
+    @Override
+    public int getRequiredModality() {
+        return NOT_IN_EDT;
+    }
+
+    /**
+     * Runs the command and exits the application with its status code
+     *
+     * @param args the arguments of the command, starting with the command name
+     */
+    @Override
+    public void main(@NotNull List<String> args) {
+        int exitCode;
+        try {
+            exitCode = run(args);
+        } catch (Exception e) {
+            CodeSmellLogger.error("Analysis failed.", e);
+            exitCode = EXIT_ANALYSIS;
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Parses the arguments and analyzes the project
+     *
+     * @param args the arguments of the command, starting with the command name
+     * @return the exit code
+     */
+    private static int run(List<String> args) throws InterruptedException, IOException {
+        if (args.size() >= 3 && "batch".equals(args.get(1))) {
+            return runBatch(Path.of(args.get(2)), getOption(args, "--out"));
+        }
+        if (args.size() >= 3 && "shard".equals(args.get(1))) {
+            return runShard(args);
+        }
+        if (args.size() >= 3 && "merge".equals(args.get(1))) {
+            return runMerge(args);
+        }
+        if (args.size() >= 3 && "history".equals(args.get(1))) {
+            return runHistory(args);
+        }
+        if (args.size() < 3 || !"analyze".equals(args.get(1))) {
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        Path projectPath = Path.of(args.get(2)).toAbsolutePath().normalize();
+        String resultPath = getOption(args, "--out");
+        if (resultPath == null) {
+            resultPath = projectPath.resolve("full_analysis_" + projectPath.getFileName() + ".json").toString();
+        }
+        if (!Files.isDirectory(projectPath)) {
+            System.err.println("Not a directory: " + projectPath);
+            return EXIT_USAGE;
+        }
+
+        Project project = openProject(projectPath);
+        if (project == null) return EXIT_PROJECT;
+
+        return analyze(project, resultPath) ? EXIT_OK : EXIT_ANALYSIS;
+    }
+
+    /**
+     * Analyzes all projects of the manifest one after another. Each project is closed and the state of the plugin is
+     * cleared before the next one is opened. A failing project does not stop the batch.
+     *
+     * @param manifestPath the path of the manifest, one project path per line, empty lines and lines starting with # are ignored
+     * @param outputPath   the directory to write the reports to, the directory of the manifest if null
+     * @return the exit code, EXIT_OK only if all reports were written
+     */
+    private static int runBatch(Path manifestPath, @Nullable String outputPath) throws IOException {
+        if (!Files.isRegularFile(manifestPath)) {
+            System.err.println("Manifest not found: " + manifestPath);
+            return EXIT_USAGE;
+        }
+
+        Path outputDirectory = outputPath != null ? Path.of(outputPath) : manifestPath.toAbsolutePath().getParent();
+        Files.createDirectories(outputDirectory);
+
+        List<Path> projectPaths = new ArrayList<>();
+        for (String line : Files.readAllLines(manifestPath)) {
+            if (line.isBlank() || line.strip().startsWith("#")) continue;
+            projectPaths.add(Path.of(line.strip()).toAbsolutePath().normalize());
+        }
+
+        CodeSmellLogger.info("Analyzing " + projectPaths.size() + " projects...");
+        long batchStartTime = System.nanoTime();
+        int failed = 0;
+        Set<String> reportNames = new HashSet<>();
+
+        for (int i = 0; i < projectPaths.size(); i++) {
+            Path projectPath = projectPaths.get(i);
+            CodeSmellLogger.info("Project " + (i + 1) + "/" + projectPaths.size() + ": " + projectPath);
+
+            // projects with the same directory name get distinct reports
+            String reportName = "full_analysis_" + projectPath.getFileName();
+            if (!reportNames.add(reportName)) reportName += "_" + (i + 1);
+            String resultPath = outputDirectory.resolve(reportName + ".json").toString();
+
+            Project project = Files.isDirectory(projectPath) ? openProject(projectPath) : null;
+            if (project == null) {
+                failed++;
+                continue;
+            }
+
+            try {
+                if (!analyze(project, resultPath)) failed++;
+            } catch (Exception e) {
+                CodeSmellLogger.error("Analysis of " + projectPath + " failed.", e);
+                failed++;
+            } finally {
+                closeProject(project);
+            }
+        }
+
+        CodeSmellLogger.info("Analyzed " + (projectPaths.size() - failed) + " of " + projectPaths.size() + " projects in " + (System.nanoTime() - batchStartTime) / 1_000_000 + " ms.");
+        return failed == 0 ? EXIT_OK : EXIT_ANALYSIS;
+    }
+
+    /**
+     * Builds the partial index of one shard of the project and writes it to a file
+     *
+     * @param args the arguments of the command, starting with the command name
+     * @return the exit code
+     */
+    private static int runShard(List<String> args) throws IOException {
+        Path projectPath = Path.of(args.get(2)).toAbsolutePath().normalize();
+        String shardOption = getOption(args, "--shard");
+        String resultPath = getOption(args, "--out");
+        if (shardOption == null || resultPath == null || !shardOption.matches("\\d+/\\d+")) {
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        int shard = Integer.parseInt(shardOption.substring(0, shardOption.indexOf('/')));
+        int shardCount = Integer.parseInt(shardOption.substring(shardOption.indexOf('/') + 1));
+        if (shardCount < 1 || shard >= shardCount) {
+            System.err.println("Invalid shard: " + shardOption);
+            return EXIT_USAGE;
+        }
+
+        // the partial index is built from the PSI directly, the index of the whole project is not needed
+        shardMode = true;
+        Project project = Files.isDirectory(projectPath) ? openProject(projectPath) : null;
+        if (project == null) return EXIT_PROJECT;
+
+        DumbService.getInstance(project).waitForSmartMode();
+        PartialIndex.build(project, shard, shardCount).write(Path.of(resultPath));
+        return EXIT_OK;
+    }
+
+    /**
+     * Merges the partial indexes of the shards, detects the data clumps and writes the report
+     *
+     * @param args the arguments of the command, starting with the command name
+     * @return the exit code
+     */
+    private static int runMerge(List<String> args) throws IOException {
+        String resultPath = getOption(args, "--out");
+        String projectName = getOption(args, "--name");
+        if (resultPath == null) {
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        List<PartialIndex> partialIndexes = new ArrayList<>();
+        for (int i = 2; i < args.size(); i++) {
+            if (args.get(i).startsWith("--")) {
+                i++; // skip the value of the option
+                continue;
+            }
+            partialIndexes.add(PartialIndex.read(Path.of(args.get(i))));
+        }
+        if (partialIndexes.isEmpty()) {
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        PartialIndex index = PartialIndex.merge(partialIndexes);
+        return FullAnalysis.analyzeMerged(index, projectName != null ? projectName : "merged", resultPath) ? EXIT_OK : EXIT_ANALYSIS;
+    }
+
+    /**
+     * Returns whether the process builds the partial index of a shard, in which case the index of the whole project
+     * must not be built on start-up
+     *
+     * @return true if the process builds a shard, false otherwise
+     */
+    public static boolean isShardMode() {
+        return shardMode;
+    }
+
+    /**
+     * Closes the given project and clears the state the plugin keeps for it, so that nothing of it is left when the
+     * next project is analyzed
+     *
+     * @param project the project to close
+     */
+    static void closeProject(Project project) {
+        FileChangeQueue.getInstance(project).clear();
+        // the index of the project is disposed together with the project
+        ApplicationManager.getApplication().invokeAndWait(() -> ProjectManagerEx.getInstanceEx().forceCloseProject(project));
+        FullAnalysis.reset();
+    }
+
+    /**
+     * Opens the project at the given path without showing a frame
+     *
+     * @param projectPath the path of the project
+     * @return the opened project or null if it could not be opened
+     */
+    static @Nullable Project openProject(Path projectPath) {
+        CodeSmellLogger.info("Opening project: " + projectPath);
+        Project project = ProjectManagerEx.getInstanceEx().openProject(projectPath, OpenProjectTask.build());
+        if (project == null) {
+            CodeSmellLogger.error("Could not open project: " + projectPath, new IllegalArgumentException());
+        }
+        return project;
+    }
+
+    /**
+     * Builds the index of the project, runs the full analysis and writes the report.
+     * Must not be called on the EDT.
+     *
+     * @param project    the project to analyze
+     * @param resultPath the path of the report
+     * @return true if the report was written, false otherwise
+     */
+    static boolean analyze(Project project, String resultPath) throws InterruptedException {
+        long startTime = System.nanoTime();
+        DumbService.getInstance(project).waitForSmartMode();
+
+        // the post startup activity may already have started building the index of this project
+        Index index = Index.getInstance(project);
+        if (!index.isBuildStarted()) {
+            index.resetIndex();
+        }
+
+        if (!waitForIndex(index)) return false;
+
+        boolean written = FullAnalysis.analyze(project, resultPath);
+        CodeSmellLogger.info("Analyzed " + project.getName() + " in " + (System.nanoTime() - startTime) / 1_000_000 + " ms, report: " + resultPath);
+        return written;
+    }
+
+    /**
+     * Mines the history of a git repository and writes the evolution of its data clumps
+     *
+     * @param args the arguments of the command, starting with the command name
+     * @return the exit code
+     */
+    private static int runHistory(List<String> args) throws IOException, InterruptedException {
+        Path repositoryPath = Path.of(args.get(2)).toAbsolutePath().normalize();
+        String resultPath = getOption(args, "--out");
+        if (resultPath == null) {
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        if (!Files.exists(repositoryPath.resolve(".git"))) {
+            System.err.println("Not a git repository: " + repositoryPath);
+            return EXIT_USAGE;
+        }
+
+        String to = getOption(args, "--to");
+        List<HistoryMiner.Commit> commits = HistoryMiner.getCommits(repositoryPath, getOption(args, "--from"), to != null ? to : "HEAD");
+        if (commits.isEmpty()) {
+            System.err.println("No commits to mine in " + repositoryPath);
+            return EXIT_USAGE;
+        }
+
+        Project project = openProject(repositoryPath);
+        if (project == null) return EXIT_PROJECT;
+
+        return new HistoryMiner(project, repositoryPath).mine(commits, resultPath) ? EXIT_OK : EXIT_ANALYSIS;
+    }
+
+    /**
+     * Waits for the index of a project to be built and reports the progress of the build in between.
+     * The build of the index must have been started.
+     *
+     * @param index the index of the project
+     * @return true if the index was built, false if it was not built in time or the build failed
+     */
+    static boolean waitForIndex(Index index) throws InterruptedException {
+        CompletableFuture<Index> indexBuilt = index.whenBuilt();
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(INDEX_TIMEOUT_MINUTES);
+        while (!indexBuilt.isDone()) {
+            if (System.nanoTime() > deadline) {
+                CodeSmellLogger.error("Index was not built within " + INDEX_TIMEOUT_MINUTES + " minutes.", new IllegalStateException());
+                return false;
+            }
+            try {
+                indexBuilt.get(PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                CodeSmellLogger.info("Building index: " + Math.round(index.getBuildProgress() * 100) + "%");
+            } catch (ExecutionException | CancellationException e) {
+                CodeSmellLogger.error("Index of " + index.getProject().getName() + " was not built.", e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the value of the given option
+     *
+     * @param args the arguments of the command
+     * @param name the name of the option, e.g. --out
+     * @return the value following the option or null if the option is not given
+     */
+    static @Nullable String getOption(List<String> args, String name) {
+        int index = args.indexOf(name);
+        return index >= 0 && index + 1 < args.size() ? args.get(index + 1) : null;
+    }
+}
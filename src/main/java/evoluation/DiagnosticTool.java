@@ -1,6 +1,7 @@
 package evoluation;
 
 import com.intellij.openapi.project.Project;
+import dataclump.EditPlan;
 import dataclump.FullAnalysis;
 import org.jetbrains.annotations.NotNull;
 import util.*;
@@ -63,7 +64,7 @@ public class DiagnosticTool {
         FILE_PATH_INDEX = resultPath + "\\indexMeasurements_" + project.getName() + "_" + getCurrentDateTime() + ".json";
         FILE_PATH_REFACTORING = resultPath + "\\refactoringMeasurements_" + project.getName() + "_" + getCurrentDateTime() + ".json";
 
-        Index.addIndexBuildListener(() -> FullAnalysis.run(resultPath + "\\fullAnalysis_" + project.getName() + "_" + getCurrentDateTime() + ".json"));
+        Index.getInstance(project).whenBuilt().thenAccept(index -> FullAnalysis.run(project, resultPath + "\\fullAnalysis_" + project.getName() + "_" + getCurrentDateTime() + ".json"));
     }
 
     /**
@@ -246,6 +247,12 @@ public class DiagnosticTool {
         double durationInMilliSeconds;
         ReportFormat.DataClumpTypeContext dataClump;
 
+        int plannedFiles;
+        int plannedEdits;
+        int plannedCallSites;
+        int plannedReferences;
+        double planningDurationInMilliSeconds;
+
         public RefactoringMeasurement(Project project, long durationNanoSeconds, ReportFormat.DataClumpTypeContext dataClump) {
             this.project = project.getName();
             this.timeOfMeasurement = getCurrentDateTime();
@@ -253,5 +260,14 @@ public class DiagnosticTool {
             this.dataClump = dataClump;
         }
 
+        public RefactoringMeasurement(Project project, long durationNanoSeconds, ReportFormat.DataClumpTypeContext dataClump, EditPlan plan) {
+            this(project, durationNanoSeconds, dataClump);
+            this.plannedFiles = plan.getFileCount();
+            this.plannedEdits = plan.getEdits().size();
+            this.plannedCallSites = plan.count(EditPlan.Kind.CALL_SITE);
+            this.plannedReferences = plan.count(EditPlan.Kind.FIELD_REFERENCE, EditPlan.Kind.PARAMETER_REFERENCE);
+            this.planningDurationInMilliSeconds = plan.getPlanningDuration() / 1000000.0;
+        }
+
     }
 }
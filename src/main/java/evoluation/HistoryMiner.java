@@ -0,0 +1,443 @@
+package evoluation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellij.lang.javascript.TypeScriptFileType;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptClass;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptInterface;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import dataclump.FullAnalysis;
+import dataclump.listener.FileChangeQueue;
+import org.jetbrains.annotations.Nullable;
+import util.CodeSmellLogger;
+import util.Index;
+import util.PsiUtil;
+import util.ReportFormat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Mines the history of a git repository for the evolution of its data clumps. The commits are checked out one after
+ * another in the working tree of the opened project. Only the index of the first commit is built completely, for
+ * every following commit the TypeScript files it changed are replaced in the index and only the data clumps of the
+ * changed files and their partners are detected again. The result contains the number of data clumps after every
+ * commit and the lifetime of every data clump.
+ */
+public class HistoryMiner {
+
+    /**
+     * The number of commits after which the progress is logged
+     */
+    private static final int PROGRESS_INTERVAL = 100;
+
+    /**
+     * Represents a commit of the mined history
+     *
+     * @param hash the hash of the commit
+     * @param time the commit time in seconds since the epoch
+     */
+    public record Commit(String hash, long time) {
+    }
+
+    /**
+     * Represents the state of the data clumps after a commit
+     *
+     * @param commit       the hash of the commit
+     * @param time         the commit time in seconds since the epoch
+     * @param changedFiles the number of TypeScript files changed by the commit
+     * @param dataClumps   the number of data clumps after the commit
+     * @param appeared     the number of data clumps that appeared with the commit
+     * @param disappeared  the number of data clumps that disappeared with the commit
+     */
+    public record CommitRecord(String commit, long time, int changedFiles, int dataClumps, int appeared,
+                               int disappeared) {
+    }
+
+    /**
+     * Represents the time span in which a data clump existed. A data clump that disappears and appears again has a
+     * lifetime for each time span.
+     *
+     * @param key                the key of the data clump, as in the report of the full analysis
+     * @param dataClumpType      the type of the data clump
+     * @param fromFilePath       the path of the file the data clump originates from, relative to the repository
+     * @param toFilePath         the path of the file the data clump leads to, relative to the repository
+     * @param appearedCommit     the hash of the commit that introduced the data clump
+     * @param appearedTime       the commit time of the commit that introduced the data clump
+     * @param disappearedCommit  the hash of the commit that removed the data clump, null if it still exists
+     * @param disappearedTime    the commit time of the commit that removed the data clump, null if it still exists
+     * @param commits            the number of commits the data clump existed in
+     */
+    public record ClumpLifetime(String key, String dataClumpType, String fromFilePath, String toFilePath,
+                                String appearedCommit, long appearedTime, String disappearedCommit,
+                                Long disappearedTime, int commits) {
+    }
+
+    /**
+     * The result of the mining
+     *
+     * @param repository the path of the mined repository
+     * @param commits    the state of the data clumps after every commit, oldest first
+     * @param lifetimes  the lifetimes of all data clumps
+     */
+    public record HistoryReport(String repository, List<CommitRecord> commits, List<ClumpLifetime> lifetimes) {
+    }
+
+    /**
+     * Represents the appearance of a data clump that still exists
+     *
+     * @param index  the index of the commit that introduced the data clump
+     * @param commit the commit that introduced the data clump
+     */
+    private record Appearance(int index, Commit commit) {
+    }
+
+    /**
+     * The project opened on the working tree of the repository
+     */
+    private final Project project;
+
+    /**
+     * The path of the repository
+     */
+    private final Path repository;
+
+    /**
+     * The data clumps of the checked out commit mapped to their key
+     */
+    private final HashMap<String, ReportFormat.DataClumpTypeContext> dataClumps = new HashMap<>();
+
+    /**
+     * The appearance of every existing data clump mapped to its key
+     */
+    private final HashMap<String, Appearance> appearances = new HashMap<>();
+
+    /**
+     * The lifetimes of the data clumps that disappeared
+     */
+    private final List<ClumpLifetime> lifetimes = new ArrayList<>();
+
+    /**
+     * The state of the data clumps after every mined commit
+     */
+    private final List<CommitRecord> commitRecords = new ArrayList<>();
+
+    /**
+     * Creates a miner for the repository the given project is opened on
+     *
+     * @param project    the project opened on the working tree of the repository
+     * @param repository the path of the repository
+     */
+    public HistoryMiner(Project project, Path repository) {
+        this.project = project;
+        this.repository = repository;
+    }
+
+    /**
+     * Returns the commits to mine, oldest first. Only the first parent of merge commits is followed, so that the
+     * changes of a merged branch are applied in one step.
+     *
+     * @param repository the path of the repository
+     * @param from       the commit after which the mining starts, the first commit of the history if null
+     * @param to         the last commit to mine
+     * @return the commits to mine
+     */
+    public static List<Commit> getCommits(Path repository, @Nullable String from, String to) throws IOException, InterruptedException {
+        List<Commit> commits = new ArrayList<>();
+        for (String line : git(repository, "log", "--reverse", "--first-parent", "--format=%H %ct", from != null ? from + ".." + to : to)) {
+            int separator = line.indexOf(' ');
+            commits.add(new Commit(line.substring(0, separator), Long.parseLong(line.substring(separator + 1).trim())));
+        }
+        return commits;
+    }
+
+    /**
+     * Checks out the given commits one after another, tracks their data clumps and writes the result to a JSON file.
+     * The working tree must not have uncommitted changes or untracked TypeScript files, the checked out branch is
+     * restored afterward.
+     * Must not be called on the EDT.
+     *
+     * @param commits    the commits to mine, oldest first
+     * @param resultPath the path to write the result to
+     * @return true if the result was written, false otherwise
+     */
+    public boolean mine(List<Commit> commits, String resultPath) throws IOException, InterruptedException {
+        if (!git(repository, "status", "--porcelain", "--untracked-files=no").isEmpty()) {
+            CodeSmellLogger.error("The working tree of " + repository + " has uncommitted changes.", new IllegalStateException());
+            return false;
+        }
+
+        // untracked files stay in the working tree of every commit and would be analyzed as part of it
+        List<String> untrackedFiles = git(repository, "-c", "core.quotePath=false", "ls-files", "--others", "--exclude-standard", "--", "*.ts");
+        if (!untrackedFiles.isEmpty()) {
+            CodeSmellLogger.error("The working tree of " + repository + " has " + untrackedFiles.size() + " untracked TypeScript files, e.g. " + untrackedFiles.get(0) + ".", new IllegalStateException());
+            return false;
+        }
+
+        List<String> branch = git(repository, "rev-parse", "--abbrev-ref", "HEAD");
+        String originalHead = branch.isEmpty() || branch.get(0).equals("HEAD") ? git(repository, "rev-parse", "HEAD").get(0) : branch.get(0);
+
+        CodeSmellLogger.info("Mining " + commits.size() + " commits of " + repository);
+        long startTime = System.nanoTime();
+
+        // the changed files are applied to the index by the miner, the listener must not process them concurrently
+        FileChangeQueue.getInstance(project).suspend();
+        try {
+            for (int i = 0; i < commits.size(); i++) {
+                int changedFiles = i == 0 ? mineFirstCommit(commits.get(0)) : mineCommit(commits.get(i - 1), commits.get(i), i);
+                if (changedFiles < 0) return false;
+
+                if ((i + 1) % PROGRESS_INTERVAL == 0) {
+                    CodeSmellLogger.info("Mined " + (i + 1) + "/" + commits.size() + " commits in " + (System.nanoTime() - startTime) / 1_000_000 + " ms, " + dataClumps.size() + " data clumps.");
+                }
+            }
+        } finally {
+            // the listener is resumed even if the original head cannot be checked out again
+            try {
+                git(repository, "checkout", "-q", originalHead);
+                VirtualFile root = LocalFileSystem.getInstance().refreshAndFindFileByNioFile(repository);
+                if (root != null) VfsUtil.markDirtyAndRefresh(false, true, true, root);
+            } finally {
+                FileChangeQueue.getInstance(project).resume();
+            }
+        }
+
+        // the data clumps that still exist have no end
+        for (Map.Entry<String, Appearance> appearance : appearances.entrySet()) {
+            lifetimes.add(createLifetime(dataClumps.get(appearance.getKey()), appearance.getValue(), null, commits.size()));
+        }
+
+        CodeSmellLogger.info("Mined " + commits.size() + " commits in " + (System.nanoTime() - startTime) / 1_000_000 + " ms, " + lifetimes.size() + " data clump lifetimes.");
+        return writeToFile(new HistoryReport(repository.toString(), commitRecords, lifetimes), resultPath);
+    }
+
+    /**
+     * Checks out the first commit, builds the index and detects the data clumps of all files
+     *
+     * @param commit the first commit
+     * @return the number of TypeScript files of the commit or -1 if the index could not be built
+     */
+    private int mineFirstCommit(Commit commit) throws IOException, InterruptedException {
+        git(repository, "checkout", "-q", "--detach", commit.hash());
+        VirtualFile root = LocalFileSystem.getInstance().refreshAndFindFileByNioFile(repository);
+        if (root != null) VfsUtil.markDirtyAndRefresh(false, true, true, root);
+        DumbService.getInstance(project).waitForSmartMode();
+
+        // a build of the index that was started for another commit is cancelled by the new one
+        Index index = Index.getInstance(project);
+        index.resetIndex();
+        if (!CommandLineAnalyzer.waitForIndex(index)) return -1;
+
+        Collection<VirtualFile> typescriptFiles = PsiUtil.runReadActionWithResult(() ->
+                FileTypeIndex.getFiles(TypeScriptFileType.INSTANCE, GlobalSearchScope.projectScope(project)));
+
+        update(commit, 0, typescriptFiles.size(), new HashMap<>(), FullAnalysis.detect(project, typescriptFiles));
+        return typescriptFiles.size();
+    }
+
+    /**
+     * Checks out a commit and replaces the files it changed in the index. The data clumps are only detected again
+     * for the changed files, the files with elements that share enough properties with their new elements and the
+     * files that had a data clump with a changed file.
+     *
+     * @param previous the previously checked out commit
+     * @param commit   the commit to check out
+     * @param index    the index of the commit in the mined history
+     * @return the number of changed TypeScript files
+     */
+    private int mineCommit(Commit previous, Commit commit, int index) throws IOException, InterruptedException {
+        Set<String> changedPaths = new LinkedHashSet<>();
+        for (String relativePath : git(repository, "-c", "core.quotePath=false", "diff", "--name-only", "--no-renames", previous.hash(), commit.hash(), "--", "*.ts")) {
+            changedPaths.add(FileUtil.toSystemIndependentName(repository.resolve(relativePath).toString()));
+        }
+
+        if (changedPaths.isEmpty()) {
+            git(repository, "checkout", "-q", "--detach", commit.hash());
+            update(commit, index, 0, new HashMap<>(), new HashMap<>());
+            return 0;
+        }
+
+        // remove the old versions of the changed files while their PSI is still valid
+        Index projectIndex = Index.getInstance(project);
+        LocalFileSystem fileSystem = LocalFileSystem.getInstance();
+        List<File> changedFiles = new ArrayList<>();
+        for (String path : changedPaths) {
+            changedFiles.add(new File(path));
+            VirtualFile file = fileSystem.findFileByPath(path);
+            if (file == null) continue;
+            for (PsiElement element : getElements(file)) {
+                projectIndex.removeElement(element);
+            }
+        }
+
+        // check out the commit and add the new versions of the changed files
+        git(repository, "checkout", "-q", "--detach", commit.hash());
+        fileSystem.refreshIoFiles(changedFiles, false, false, null);
+        List<VirtualFile> existingFiles = new ArrayList<>();
+        for (String path : changedPaths) {
+            VirtualFile file = fileSystem.refreshAndFindFileByPath(path);
+            if (file != null && file.isValid()) existingFiles.add(file);
+        }
+        DumbService.getInstance(project).waitForSmartMode();
+
+        GlobalSearchScope scope = GlobalSearchScope.projectScope(project);
+        existingFiles.removeIf(file -> !PsiUtil.runReadActionWithResult(() -> file.getFileType() == TypeScriptFileType.INSTANCE && scope.contains(file)));
+        for (VirtualFile file : existingFiles) {
+            for (PsiElement element : getElements(file)) {
+                projectIndex.updateElement(element);
+            }
+        }
+
+        // the files whose data clumps may have changed
+        Set<VirtualFile> filesToDetect = new LinkedHashSet<>(existingFiles);
+        filesToDetect.addAll(FullAnalysis.getPartnerFiles(project, projectIndex, existingFiles));
+        for (ReportFormat.DataClumpTypeContext dataClump : dataClumps.values()) {
+            if (!changedPaths.contains(dataClump.toFilePath()) || changedPaths.contains(dataClump.fromFilePath())) continue;
+            VirtualFile file = fileSystem.findFileByPath(dataClump.fromFilePath());
+            if (file != null && file.isValid()) filesToDetect.add(file);
+        }
+        Set<String> pathsToDetect = new HashSet<>(changedPaths);
+        for (VirtualFile file : filesToDetect) {
+            pathsToDetect.add(file.getPath());
+        }
+
+        // replace the data clumps of these files
+        HashMap<String, ReportFormat.DataClumpTypeContext> removed = new HashMap<>();
+        Iterator<Map.Entry<String, ReportFormat.DataClumpTypeContext>> iterator = dataClumps.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ReportFormat.DataClumpTypeContext> dataClump = iterator.next();
+            if (pathsToDetect.contains(dataClump.getValue().fromFilePath())) {
+                removed.put(dataClump.getKey(), dataClump.getValue());
+                iterator.remove();
+            }
+        }
+
+        update(commit, index, changedPaths.size(), removed, FullAnalysis.detect(project, filesToDetect));
+        return changedPaths.size();
+    }
+
+    /**
+     * Adds the detected data clumps and records the commit. Removed data clumps that were detected again continue
+     * their lifetime, the others end with the commit.
+     *
+     * @param commit       the checked out commit
+     * @param index        the index of the commit in the mined history
+     * @param changedFiles the number of TypeScript files changed by the commit
+     * @param removed      the data clumps that were removed because their files are detected again
+     * @param detected     the detected data clumps
+     */
+    private void update(Commit commit, int index, int changedFiles, HashMap<String, ReportFormat.DataClumpTypeContext> removed, HashMap<String, ReportFormat.DataClumpTypeContext> detected) {
+        int appeared = 0;
+        for (Map.Entry<String, ReportFormat.DataClumpTypeContext> dataClump : detected.entrySet()) {
+            if (removed.remove(dataClump.getKey()) == null && !dataClumps.containsKey(dataClump.getKey())) {
+                appearances.put(dataClump.getKey(), new Appearance(index, commit));
+                appeared++;
+            }
+            dataClumps.put(dataClump.getKey(), dataClump.getValue());
+        }
+
+        for (ReportFormat.DataClumpTypeContext dataClump : removed.values()) {
+            Appearance appearance = appearances.remove(dataClump.key());
+            if (appearance != null) lifetimes.add(createLifetime(dataClump, appearance, commit, index));
+        }
+
+        commitRecords.add(new CommitRecord(commit.hash(), commit.time(), changedFiles, dataClumps.size(), appeared, removed.size()));
+    }
+
+    /**
+     * Creates the lifetime of a data clump
+     *
+     * @param dataClump   the data clump
+     * @param appearance  the appearance of the data clump
+     * @param disappeared the commit that removed the data clump, null if it still exists
+     * @param index       the index of the commit that removed the data clump or the number of commits if it still exists
+     * @return the lifetime of the data clump
+     */
+    private ClumpLifetime createLifetime(ReportFormat.DataClumpTypeContext dataClump, Appearance appearance, @Nullable Commit disappeared, int index) {
+        return new ClumpLifetime(dataClump.key(), dataClump.dataClumpType(), relativize(dataClump.fromFilePath()), relativize(dataClump.toFilePath()),
+                appearance.commit().hash(), appearance.commit().time(), disappeared != null ? disappeared.hash() : null,
+                disappeared != null ? disappeared.time() : null, index - appearance.index());
+    }
+
+    /**
+     * Returns the path of a file relative to the repository
+     *
+     * @param path the absolute path of the file
+     * @return the relative path
+     */
+    private String relativize(String path) {
+        return FileUtil.toSystemIndependentName(repository.relativize(Path.of(path)).toString());
+    }
+
+    /**
+     * Returns the functions, classes and interfaces of a file
+     *
+     * @param file the file
+     * @return the elements of the file
+     */
+    private Collection<PsiElement> getElements(VirtualFile file) {
+        return PsiUtil.runReadActionWithResult(() -> {
+            PsiFile psiFile = file.isValid() ? PsiManager.getInstance(project).findFile(file) : null;
+            if (psiFile == null) return List.<PsiElement>of();
+            return PsiTreeUtil.<PsiElement>findChildrenOfAnyType(psiFile, TypeScriptFunction.class, TypeScriptClass.class, TypeScriptInterface.class);
+        });
+    }
+
+    /**
+     * Runs a git command in the repository
+     *
+     * @param repository the path of the repository
+     * @param arguments  the arguments of the git command
+     * @return the non-empty lines of the output
+     * @throws IOException if the command could not be run or failed
+     */
+    private static List<String> git(Path repository, String... arguments) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(List.of(arguments));
+
+        Process process = new ProcessBuilder(command).directory(repository.toFile()).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        List<String> lines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            lines = reader.lines().filter(line -> !line.isBlank()).toList();
+        }
+        if (process.waitFor() != 0) {
+            throw new IOException("git " + String.join(" ", arguments) + " failed with exit code " + process.exitValue());
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the result of the mining to a JSON file
+     *
+     * @param report     the result of the mining
+     * @param resultPath the path to write the file to
+     * @return true if the file was written, false otherwise
+     */
+    private static boolean writeToFile(HistoryReport report, String resultPath) {
+        ObjectMapper mapper = new ObjectMapper();
+        try {
+            mapper.writeValue(new File(resultPath), report);
+            return true;
+        } catch (IOException e) {
+            CodeSmellLogger.error("Error writing to file", e);
+            return false;
+        }
+    }
+}
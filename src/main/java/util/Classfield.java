@@ -4,8 +4,10 @@ import Settings.DataClumpSettings;
 import com.intellij.lang.javascript.psi.ecma6.TypeScriptField;
 import com.intellij.lang.javascript.psi.ecma6.TypeScriptParameter;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Represents a field in a class
@@ -44,6 +46,21 @@ public class Classfield extends Property {
     }
 
 
+    /**
+     * Creates a new instance of a class field from stored values
+     *
+     * @param name       The name of the field without leading underscore
+     * @param types      The types of the field
+     * @param visibility The visibility of the field
+     * @param modifier   The modifiers of the field
+     */
+    Classfield(String name, Set<String> types, String visibility, List<String> modifier) {
+        super(name, types);
+        this.visibility = visibility;
+        this.modifier = new ArrayList<>(modifier);
+    }
+
+
     /**
      * Checks if the field is public
      *
@@ -75,6 +92,17 @@ public class Classfield extends Property {
         return this.name;
     }
 
+    /**
+     * Checks if the name, the types, the visibility and the modifiers of the field are the same for another property
+     *
+     * @param property the property to compare to
+     * @return true if the property is a field with the same signature, false otherwise
+     */
+    @Override
+    public boolean hasSameSignature(Property property) {
+        return property instanceof Classfield field && equals(field) && visibility.equals(field.visibility) && modifier.equals(field.modifier);
+    }
+
     /**
      * Checks if the field matches another field
      *
@@ -0,0 +1,125 @@
+package util;
+
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptField;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptParameter;
+import com.intellij.lang.javascript.psi.ecmal4.JSClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Lookup table that maps the names of the fields of a class to the PsiElements (FieldStatements and Parameters)
+ * defining them. The table is built once per class and cached on the class until the PSI is modified.
+ */
+public class FieldTable {
+
+    /**
+     * Maps the name of a field (without leading underscore) to the entries defining a field with this name
+     */
+    private final HashMap<String, Entry[]> entries;
+
+    /**
+     * Represents a field of the class together with the PsiElement defining it
+     *
+     * @param classfield the field
+     * @param psiField   the FieldStatement or Parameter defining the field
+     */
+    private record Entry(Classfield classfield, PsiElement psiField) {
+    }
+
+    /**
+     * Creates a new lookup table for the given entries
+     *
+     * @param entries the entries mapped to the name of their field
+     */
+    private FieldTable(HashMap<String, Entry[]> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Returns the lookup table for the given class. The table is cached and only rebuilt if the PSI was modified.
+     *
+     * @param psiClass the class to get the lookup table for
+     * @return the lookup table for the class
+     */
+    public static FieldTable getInstance(JSClass psiClass) {
+        return PsiUtil.runReadActionWithResult(() -> CachedValuesManager.getCachedValue(psiClass, () ->
+                CachedValueProvider.Result.create(build(psiClass), PsiModificationTracker.getInstance(psiClass.getProject()))));
+    }
+
+    /**
+     * Builds the lookup table for the given class. Must be called inside a read action.
+     *
+     * @param psiClass the class to build the lookup table for
+     * @return the lookup table for the class
+     */
+    private static FieldTable build(JSClass psiClass) {
+
+        HashMap<String, List<Entry>> entriesByName = new HashMap<>();
+
+        for (PsiElement element : PsiUtil.getPsiFields(psiClass)) {
+            Classfield classfield;
+            if (element instanceof TypeScriptField field) {
+                classfield = new Classfield(field);
+            } else if (element instanceof TypeScriptParameter parameter) {
+                classfield = new Classfield(parameter);
+            } else {
+                continue;
+            }
+            entriesByName.computeIfAbsent(classfield.getName(), name -> new ArrayList<>()).add(new Entry(classfield, element));
+        }
+
+        // store the entries as arrays so that a lookup does not need to allocate an iterator
+        HashMap<String, Entry[]> entries = new HashMap<>();
+        for (String name : entriesByName.keySet()) {
+            entries.put(name, entriesByName.get(name).toArray(new Entry[0]));
+        }
+        return new FieldTable(entries);
+    }
+
+    /**
+     * Returns the PsiElement defining a field that matches the given classfield.
+     *
+     * @param classfield the classfield to find
+     * @return the PsiElement defining the field or null if there is no matching field
+     */
+    public @Nullable PsiElement getPsiField(Classfield classfield) {
+        Entry[] candidates = entries.get(classfield.getName());
+        if (candidates == null) return null;
+
+        for (Entry candidate : candidates) {
+            if (classfield.matches(candidate.classfield())) return candidate.psiField();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the PsiElement defining a field with the given name.
+     *
+     * @param name the name of the field (without leading underscore)
+     * @return the PsiElement defining the field or null if there is no field with this name
+     */
+    public @Nullable PsiElement getPsiField(String name) {
+        Entry[] candidates = entries.get(name);
+        if (candidates == null) return null;
+        return candidates[0].psiField();
+    }
+
+    /**
+     * Returns the classfield with the given name.
+     *
+     * @param name the name of the field (without leading underscore)
+     * @return the classfield or null if there is no field with this name
+     */
+    public @Nullable Classfield getClassfield(String name) {
+        Entry[] candidates = entries.get(name);
+        if (candidates == null) return null;
+        return candidates[0].classfield();
+    }
+}
@@ -0,0 +1,91 @@
+package util;
+
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The time stamp and length of a file when it was processed. The index snapshot, the mapped postings and the state of
+ * the full analysis store the stamp of every file to find the files that did not change since. Files with unsaved
+ * changes have no stamp, since the stamp of the file on disk does not describe the content of their document, which
+ * is what the PSI is built from.
+ *
+ * @param timeStamp the time stamp of the file
+ * @param length    the length of the file
+ */
+public record FileStamp(long timeStamp, long length) {
+
+    /**
+     * Returns the current stamp of the given file
+     *
+     * @param file the file
+     * @return the stamp or null if the file has unsaved changes
+     */
+    public static @Nullable FileStamp of(VirtualFile file) {
+        if (FileDocumentManager.getInstance().isFileModified(file)) return null;
+        return new FileStamp(file.getTimeStamp(), file.getLength());
+    }
+
+    /**
+     * Checks if the given file did not change since this stamp was taken
+     *
+     * @param file the file
+     * @return true if the file has the same time stamp and length and no unsaved changes, false otherwise
+     */
+    public boolean isUpToDate(VirtualFile file) {
+        return timeStamp == file.getTimeStamp() && length == file.getLength()
+                && !FileDocumentManager.getInstance().isFileModified(file);
+    }
+
+    /**
+     * Writes the stamp
+     *
+     * @param out the output stream
+     * @throws IOException if the stamp could not be written
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeLong(timeStamp);
+        out.writeLong(length);
+    }
+
+    /**
+     * Reads a stamp written by {@link #write(DataOutputStream)}
+     *
+     * @param in the input stream
+     * @return the stamp
+     * @throws IOException if the stamp could not be read
+     */
+    public static FileStamp read(DataInputStream in) throws IOException {
+        return new FileStamp(in.readLong(), in.readLong());
+    }
+
+    /**
+     * Writes the header of a file that stores stamps, so that files of another format are recognized
+     *
+     * @param out     the output stream
+     * @param magic   the magic number of the format
+     * @param version the version of the format
+     * @throws IOException if the header could not be written
+     */
+    public static void writeHeader(DataOutputStream out, int magic, int version) throws IOException {
+        out.writeInt(magic);
+        out.writeInt(version);
+    }
+
+    /**
+     * Reads the header written by {@link #writeHeader(DataOutputStream, int, int)}
+     *
+     * @param in      the input stream
+     * @param magic   the expected magic number
+     * @param version the expected version
+     * @return true if the file has the expected format and version, false otherwise
+     * @throws IOException if the header could not be read
+     */
+    public static boolean readHeader(DataInputStream in, int magic, int version) throws IOException {
+        return in.readInt() == magic && in.readInt() == version;
+    }
+}
@@ -5,7 +5,12 @@ import com.intellij.lang.javascript.TypeScriptFileType;
 import com.intellij.lang.javascript.psi.ecma6.*;
 import com.intellij.lang.javascript.psi.ecma6.TypeScriptClass;
 import com.intellij.lang.javascript.psi.ecmal4.JSClass;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
@@ -14,86 +19,216 @@ import com.intellij.psi.PsiManager;
 import com.intellij.psi.search.FileTypeIndex;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import evoluation.DiagnosticTool;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
-public class Index {
+/**
+ * The index of the functions, classes and interfaces of a project and their properties.
+ * Each open project has its own index, which is a project service and is disposed together with the project.
+ */
+public class Index implements Disposable {
 
     /**
      * Indicates if the index was built and is ready to use
      */
-    private static boolean indexBuilt = false;
+    private volatile boolean indexBuilt = false;
 
     /**
-     * List of listeners that are notified when the index is built
+     * Indicates if the build of the index was started
      */
-    private static final List<Runnable> listeners = new ArrayList<>();
+    private volatile boolean buildStarted = false;
+
+    /**
+     * The generation of the index, incremented by every rebuild. Only the build of the current generation may
+     * complete the index and the future of its readiness.
+     */
+    private int generation = 0;
+
+    /**
+     * The progress indicator of the running build, used to cancel it when a newer build starts or the project is closed
+     */
+    private ProgressIndicator buildIndicator;
+
+    /**
+     * Completed when the index is built. A rebuild replaces a completed future, a pending future is kept, so that
+     * its dependents wait for the newest generation.
+     */
+    private CompletableFuture<Index> readiness = new CompletableFuture<>();
+
+    /**
+     * The fraction of the files processed by the running build, 1 if the index is built
+     */
+    private volatile double buildProgress = 0;
+
+    /**
+     * Guards all reads and modifications of the maps and their lists, so that elements can be updated and looked up
+     * from multiple threads. The maps are never handed out, readers get copies taken while holding the lock.
+     * The PSI is never accessed while holding this lock to avoid waiting for a read action inside it.
+     */
+    private final Object lock = new Object();
 
     /**
      * The project to build the index for
      */
-    private static Project project;
+    private final Project project;
+
+    /**
+     * The postings of the memory-mapped backend or null if the postings are only kept on the heap.
+     * If set, the maps of the properties to the functions and classes only contain the postings of the files
+     * that were changed since the postings were written.
+     */
+    private MappedPostings mappedPostings;
+
+    /**
+     * The files that were changed while a build writes the postings to a memory-mapped file, null if no such build is
+     * running. While it is set, the heap postings are not filled by the build, and the postings of these files are
+     * moved to the heap once the mapped postings are swapped in, since the mapped file may describe them outdated.
+     */
+    private Set<PsiFile> filesChangedDuringBuild;
 
     /**
      * Maps a Property to a List of TypeScriptFunctions that use this Property as a parameter
      */
-    private static HashMap<Property, List<TypeScriptFunction>> propertiesToFunctions;
+    private HashMap<Property, List<TypeScriptFunction>> propertiesToFunctions = new HashMap<>();
     /**
      * Maps a Property to a List of TypeScriptClasses that use this Property as a field
      */
-    private static HashMap<Property, List<JSClass>> propertiesToClasses;
+    private HashMap<Property, List<JSClass>> propertiesToClasses = new HashMap<>();
     /**
      * Maps a TypeScriptClass to a List of Classfields that are in this class
      */
-    private static HashMap<JSClass, List<Classfield>> classesToClassFields;
+    private HashMap<JSClass, List<Classfield>> classesToClassFields = new HashMap<>();
     /**
      * Maps a TypeScriptFunction to a List of Parameters that are in this function
      */
-    private static HashMap<TypeScriptFunction, List<Parameter>> functionsToParameters;
+    private HashMap<TypeScriptFunction, List<Parameter>> functionsToParameters = new HashMap<>();
     /**
      * Maps a qualified name to a class or interface
      */
-    private static HashMap<String, JSClass> qualifiedNamesToClasses;
+    private HashMap<String, JSClass> qualifiedNamesToClasses = new HashMap<>();
     /**
      * Maps a function name to a list of classes that contain this function
      */
-    private static HashMap<String, List<JSClass>> functionNamesToClasses;
+    private HashMap<String, List<JSClass>> functionNamesToClasses = new HashMap<>();
+
+    /**
+     * Creates the index of a project, it is built by {@link #resetIndex()}
+     *
+     * @param project The project to build the index for
+     */
+    public Index(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Returns the index of the given project
+     *
+     * @param project The project
+     * @return The index of the project
+     */
+    public static Index getInstance(Project project) {
+        return project.getService(Index.class);
+    }
+
+    /**
+     * Returns the index of the project the given element belongs to
+     *
+     * @param element The element
+     * @return The index of the project of the element
+     */
+    public static Index getInstance(PsiElement element) {
+        return getInstance(PsiUtil.runReadActionWithResult(element::getProject));
+    }
 
     /**
      * Indicates if the index was built and is ready to use
      *
      * @return True if the index was built, false otherwise
      */
-    public static boolean isIndexBuilt() {
+    public boolean isIndexBuilt() {
         return indexBuilt;
     }
 
-    public static HashMap<String, List<JSClass>> getFunctionNamesToClasses() {
-        return functionNamesToClasses;
+    /**
+     * Returns the classes that contain a function with the given name
+     *
+     * @param name The name of the function
+     * @return A copy of the classes containing a function with the name
+     */
+    public List<JSClass> getClassesWithFunctionName(String name) {
+        synchronized (lock) {
+            List<JSClass> classes = functionNamesToClasses.get(name);
+            return classes == null ? new ArrayList<>() : new ArrayList<>(classes);
+        }
     }
 
-    public static HashMap<Property, List<TypeScriptFunction>> getPropertiesToFunctions() {
-        return propertiesToFunctions;
+    /**
+     * Returns the fields of a class or interface as stored in the index
+     *
+     * @param psiClass The class or interface
+     * @return A copy of the fields or null if the class is not in the index
+     */
+    public List<Classfield> getClassfields(JSClass psiClass) {
+        synchronized (lock) {
+            List<Classfield> classfields = classesToClassFields.get(psiClass);
+            return classfields == null ? null : new ArrayList<>(classfields);
+        }
     }
 
-    public static HashMap<Property, List<JSClass>> getPropertiesToClasses() {
-        return propertiesToClasses;
+    /**
+     * Returns the parameters of a function as stored in the index
+     *
+     * @param psiFunction The function
+     * @return A copy of the parameters or null if the function is not in the index
+     */
+    public List<Parameter> getParameters(TypeScriptFunction psiFunction) {
+        synchronized (lock) {
+            List<Parameter> parameters = functionsToParameters.get(psiFunction);
+            return parameters == null ? null : new ArrayList<>(parameters);
+        }
     }
 
-    public static HashMap<JSClass, List<Classfield>> getClassesToClassFields() {
-        return classesToClassFields;
+    /**
+     * Returns the class or interface with the given qualified name
+     *
+     * @param qualifiedName The qualified name
+     * @return The class or null if there is no indexed class with the name
+     */
+    public JSClass getClassByQualifiedName(String qualifiedName) {
+        synchronized (lock) {
+            return qualifiedNamesToClasses.get(qualifiedName);
+        }
     }
 
-    public static HashMap<String, JSClass> getQualifiedNamesToClasses() {
-        return qualifiedNamesToClasses;
+    /**
+     * Returns all classes and interfaces that are known by their qualified name
+     *
+     * @return A copy of the classes
+     */
+    public List<JSClass> getClasses() {
+        synchronized (lock) {
+            return new ArrayList<>(qualifiedNamesToClasses.values());
+        }
     }
 
-    public static HashMap<TypeScriptFunction, List<Parameter>> getFunctionsToParameters() {
-        return functionsToParameters;
+    /**
+     * Returns all functions, classes and interfaces in the index
+     *
+     * @return A copy of the indexed elements
+     */
+    public List<PsiElement> getElements() {
+        synchronized (lock) {
+            List<PsiElement> elements = new ArrayList<>(classesToClassFields.keySet());
+            elements.addAll(functionsToParameters.keySet());
+            return elements;
+        }
     }
 
-    public static Project getProject() {
+    public Project getProject() {
         return project;
     }
 
@@ -104,40 +239,206 @@ public class Index {
      * @param property The Property to get the matching ClassField for
      * @return The matching ClassField
      */
-    public static Classfield getMatchingClassFieldForClass(JSClass psiClass, Property property) { //TODO duplicate to getField?
-        List<Classfield> classfields = classesToClassFields.get(psiClass);
-        for (Classfield classField : classfields) {
-            if (classField.equals(property)) return classField;
+    public Classfield getMatchingClassFieldForClass(JSClass psiClass, Property property) { //TODO duplicate to getField?
+        List<Classfield> classfields = getClassfields(psiClass);
+        if (classfields != null) {
+            for (Classfield classField : classfields) {
+                if (classField.equals(property)) return classField;
+            }
         }
         CodeSmellLogger.warn("No matching ClassField found for " + property + " in " + PsiUtil.getQualifiedName(psiClass));
         return null;
     }
 
+    /**
+     * Returns a copy of the properties of an element as stored in the index
+     *
+     * @param element The TypeScriptFunction or JSClass to get the properties for
+     * @return The properties of the element or null if the element is not in the index
+     */
+    public List<? extends Property> getProperties(PsiElement element) {
+        if (element instanceof JSClass psiClass) {
+            return getClassfields(psiClass);
+        } else if (element instanceof TypeScriptFunction psiFunction) {
+            return getParameters(psiFunction);
+        }
+        return null;
+    }
+
+    /**
+     * Checks if two property signatures are the same as the index sees them. The properties are compared as
+     * multisets, since their order does not affect the detection.
+     *
+     * @param properties      The properties of an element or null if the element is not in the index
+     * @param otherProperties The properties to compare to or null if the element is not in the index
+     * @return True if both signatures contain the same properties, false otherwise
+     */
+    public static boolean hasSameSignature(List<? extends Property> properties, List<? extends Property> otherProperties) {
+        if (properties == null || otherProperties == null) return properties == otherProperties;
+        if (properties.size() != otherProperties.size()) return false;
+
+        List<Property> unmatched = new ArrayList<>(otherProperties);
+        for (Property property : properties) {
+            Iterator<Property> iterator = unmatched.iterator();
+            boolean found = false;
+            while (iterator.hasNext() && !found) {
+                if (property.hasSameSignature(iterator.next())) {
+                    iterator.remove();
+                    found = true;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the functions that have the given property as a parameter
+     *
+     * @param property The property to look up
+     * @return A copy of the functions with the property
+     */
+    public List<TypeScriptFunction> getFunctionsWithProperty(Property property) {
+        List<TypeScriptFunction> functions;
+        synchronized (lock) {
+            List<TypeScriptFunction> heapFunctions = propertiesToFunctions.get(property);
+            functions = heapFunctions == null ? new ArrayList<>() : new ArrayList<>(heapFunctions);
+        }
+        MappedPostings mapped = mappedPostings;
+        if (mapped != null) {
+            for (MappedPostings.ElementRef element : mapped.getPostings(property, false)) {
+                if (mapped.resolve(element) instanceof TypeScriptFunction psiFunction) functions.add(psiFunction);
+            }
+        }
+        return functions;
+    }
+
+    /**
+     * Returns the classes and interfaces that have the given property as a field
+     *
+     * @param property The property to look up
+     * @return A copy of the classes with the property
+     */
+    public List<JSClass> getClassesWithProperty(Property property) {
+        List<JSClass> classes;
+        synchronized (lock) {
+            List<JSClass> heapClasses = propertiesToClasses.get(property);
+            classes = heapClasses == null ? new ArrayList<>() : new ArrayList<>(heapClasses);
+        }
+        MappedPostings mapped = mappedPostings;
+        if (mapped != null) {
+            for (MappedPostings.ElementRef element : mapped.getPostings(property, true)) {
+                if (mapped.resolve(element) instanceof JSClass psiClass) classes.add(psiClass);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Returns the number of functions and classes that have the given property without resolving them
+     *
+     * @param property The property to look up
+     * @return The number of elements with the property
+     */
+    public int countPostings(Property property) {
+        int count = 0;
+        synchronized (lock) {
+            List<JSClass> classes = propertiesToClasses.get(property);
+            if (classes != null) count += classes.size();
+            List<TypeScriptFunction> functions = propertiesToFunctions.get(property);
+            if (functions != null) count += functions.size();
+        }
+        MappedPostings mapped = mappedPostings;
+        if (mapped != null) count += mapped.countPostings(property);
+        return count;
+    }
+
+    /**
+     * Counts for every indexed element how many of the given properties it shares
+     *
+     * @param properties The properties to look up
+     * @return The elements that share at least one of the properties mapped to the number of shared properties
+     */
+    public HashMap<PsiElement, Integer> countSharedProperties(List<? extends Property> properties) {
+
+        HashMap<PsiElement, Integer> sharedProperties = new HashMap<>();
+
+        for (Property property : properties) {
+            ProgressManager.checkCanceled();
+            for (JSClass otherClass : getClassesWithProperty(property)) {
+                sharedProperties.merge(otherClass, 1, Integer::sum);
+            }
+            for (TypeScriptFunction otherFunction : getFunctionsWithProperty(property)) {
+                sharedProperties.merge(otherFunction, 1, Integer::sum);
+            }
+        }
+        return sharedProperties;
+    }
+
+    /**
+     * Returns the classes and interfaces that contain all given properties.
+     * The posting lists of the properties are intersected starting with the smallest one.
+     *
+     * @param properties The properties the classes must contain
+     * @return The classes containing all properties
+     */
+    public Set<JSClass> getClassesContainingAll(List<? extends Property> properties) {
+
+        List<List<JSClass>> postings = new ArrayList<>();
+        for (Property property : properties) {
+            List<JSClass> classes = getClassesWithProperty(property);
+            if (classes.isEmpty()) return new HashSet<>();
+            postings.add(classes);
+        }
+        if (postings.isEmpty()) return new HashSet<>();
+
+        postings.sort(Comparator.comparingInt(List::size));
+
+        Set<JSClass> result = new HashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i++) {
+            result.retainAll(new HashSet<>(postings.get(i)));
+        }
+        return result;
+    }
+
     /**
      * Adds a TypeScriptClass to the index
      *
      * @param psiClass The TypeScriptClass to add
      */
-    public static void addClass(JSClass psiClass) {
+    public void addClass(JSClass psiClass) {
+        detachFile(psiClass);
+        addClass(psiClass, PsiUtil.getClassfields(psiClass), PsiUtil.runReadActionWithResult(psiClass::getQualifiedName));
+    }
 
-        List<Classfield> classfields = PsiUtil.getClassfields(psiClass);
+    /**
+     * Adds a TypeScriptClass with the given fields to the index
+     *
+     * @param psiClass      The TypeScriptClass to add
+     * @param classfields   The fields of the class
+     * @param qualifiedName The qualified name of the class or null if it has none
+     */
+    private void addClass(JSClass psiClass, List<Classfield> classfields, String qualifiedName) {
 
         // if the class has less than the minimum number of properties, it does not need to be added to the index (no data clump possible)
         // done to reduce the size of the index and to improve performance
         if (classfields.size() < Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties)
             return;
 
+        synchronized (lock) {
+            // a cancelled build must not write into the maps of the next generation
+            ProgressManager.checkCanceled();
+            if (qualifiedName != null) {
+                qualifiedNamesToClasses.put(qualifiedName, psiClass);
+            }
 
-        String qualifiedName = PsiUtil.runReadActionWithResult(psiClass::getQualifiedName);
-        if (qualifiedName != null) {
-            qualifiedNamesToClasses.put(qualifiedName, psiClass);
-        }
-
-        classesToClassFields.put(psiClass, new ArrayList<>());
+            classesToClassFields.put(psiClass, new ArrayList<>());
 
-        for (Classfield classField : classfields) {
-            classesToClassFields.get(psiClass).add(classField);
-            addClassForClassfield(psiClass, classField);
+            for (Classfield classField : classfields) {
+                classesToClassFields.get(psiClass).add(classField);
+                // the postings of a build with the memory-mapped backend are written to the mapped file
+                if (filesChangedDuringBuild == null) addClassForClassfield(psiClass, classField);
+            }
         }
     }
 
@@ -146,23 +447,39 @@ public class Index {
      *
      * @param psiFunction The TypeScriptFunction to add
      */
-    public static void addFunction(TypeScriptFunction psiFunction) {
+    public void addFunction(TypeScriptFunction psiFunction) {
 
         if (PsiUtil.runReadActionWithResult(psiFunction::isConstructor)) return;
 
+        detachFile(psiFunction);
         addClassToFunctionName(psiFunction);
+        addFunction(psiFunction, PsiUtil.getParameters(psiFunction));
+    }
 
-        List<Parameter> parameters = PsiUtil.getParameters(psiFunction);
+    /**
+     * Adds a TypeScriptFunction with the given parameters to the index. The function must not be a constructor and
+     * its name must already be added to the function names.
+     *
+     * @param psiFunction The TypeScriptFunction to add
+     * @param parameters  The parameters of the function
+     */
+    private void addFunction(TypeScriptFunction psiFunction, List<Parameter> parameters) {
         // if the function has less than the minimum number of properties, it does not need to be added to the index (no data clump possible)
         // done to reduce the size of the index and to improve performance
         if (parameters.size() < Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties)
             return;
-        functionsToParameters.put(psiFunction, new ArrayList<>());
 
-        // iterate all Parameters in function
-        for (Parameter parameter : parameters) {
-            functionsToParameters.get(psiFunction).add(parameter);
-            addFunctionForParameter(psiFunction, parameter);
+        synchronized (lock) {
+            // a cancelled build must not write into the maps of the next generation
+            ProgressManager.checkCanceled();
+            functionsToParameters.put(psiFunction, new ArrayList<>());
+
+            // iterate all Parameters in function
+            for (Parameter parameter : parameters) {
+                functionsToParameters.get(psiFunction).add(parameter);
+                // the postings of a build with the memory-mapped backend are written to the mapped file
+                if (filesChangedDuringBuild == null) addFunctionForParameter(psiFunction, parameter);
+            }
         }
     }
 
@@ -171,16 +488,20 @@ public class Index {
      *
      * @param psiFunction The TypeScriptFunction to add the class to
      */
-    private static void addClassToFunctionName(TypeScriptFunction psiFunction) {
-        if (PsiUtil.runReadActionWithResult(psiFunction::getName) != null) {
+    private void addClassToFunctionName(TypeScriptFunction psiFunction) {
+        String name = PsiUtil.runReadActionWithResult(psiFunction::getName);
+        if (name != null) {
             JSClass containingClass = PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.getParentOfType(psiFunction, JSClass.class));
             if (containingClass != null) {
-                if (functionNamesToClasses.containsKey(psiFunction.getName())) {
-                    functionNamesToClasses.get(psiFunction.getName()).add(containingClass);
-                } else {
-                    List<JSClass> classes = new ArrayList<>();
-                    classes.add(containingClass);
-                    functionNamesToClasses.put(psiFunction.getName(), classes);
+                synchronized (lock) {
+                    ProgressManager.checkCanceled();
+                    if (functionNamesToClasses.containsKey(name)) {
+                        functionNamesToClasses.get(name).add(containingClass);
+                    } else {
+                        List<JSClass> classes = new ArrayList<>();
+                        classes.add(containingClass);
+                        functionNamesToClasses.put(name, classes);
+                    }
                 }
             }
         }
@@ -191,29 +512,43 @@ public class Index {
      *
      * @param psiFunction The TypeScriptFunction to update
      */
-    public static void updateFunction(TypeScriptFunction psiFunction) {
+    public void updateFunction(TypeScriptFunction psiFunction) {
 
         if (PsiUtil.runReadActionWithResult(psiFunction::isConstructor)) return;
+        // the inspection updates every function on each pass, the mapped postings already hold unchanged files
+        if (isUnchangedInMappedPostings(psiFunction)) return;
+        detachFile(psiFunction);
         addClassToFunctionName(psiFunction);
 
 
-        if (!functionsToParameters.containsKey(psiFunction)) {
+        boolean indexed;
+        synchronized (lock) {
+            indexed = functionsToParameters.containsKey(psiFunction);
+        }
+        if (!indexed) {
             addFunction(psiFunction);
             return;
         }
 
         List<Parameter> new_Parameters = PsiUtil.getParameters(psiFunction);
-        List<Parameter> toBeRemoved = new ArrayList<>(functionsToParameters.get(psiFunction));
-        toBeRemoved.removeAll(new_Parameters);
 
-        functionsToParameters.put(psiFunction, new_Parameters);
+        synchronized (lock) {
+            List<Parameter> old_Parameters = functionsToParameters.get(psiFunction);
+            // the function was removed concurrently
+            if (old_Parameters == null) return;
 
-        for (Parameter parameter : toBeRemoved) {
-            propertiesToFunctions.get(parameter).remove(psiFunction);
-        }
+            List<Parameter> toBeRemoved = new ArrayList<>(old_Parameters);
+            toBeRemoved.removeAll(new_Parameters);
+
+            functionsToParameters.put(psiFunction, new_Parameters);
+
+            for (Parameter parameter : toBeRemoved) {
+                removeFunctionForParameter(psiFunction, parameter);
+            }
 
-        for (Parameter parameter : new_Parameters) {
-            addFunctionForParameter(psiFunction, parameter);
+            for (Parameter parameter : new_Parameters) {
+                addFunctionForParameter(psiFunction, parameter);
+            }
         }
     }
 
@@ -222,36 +557,112 @@ public class Index {
      *
      * @param psiClass The TypeScriptClass to update
      */
-    public static void updateClass(JSClass psiClass) {
+    public void updateClass(JSClass psiClass) {
+
+        // the inspection updates every class on each pass, the mapped postings already hold unchanged files
+        if (isUnchangedInMappedPostings(psiClass)) return;
+        detachFile(psiClass);
 
         // wenn die Klasse neu ist -> hinzufügen
-        if (!classesToClassFields.containsKey(psiClass)) {
+        boolean indexed;
+        synchronized (lock) {
+            indexed = classesToClassFields.containsKey(psiClass);
+        }
+        if (!indexed) {
             addClass(psiClass);
             return;
         }
 
         String qualifiedName = PsiUtil.runReadActionWithResult(psiClass::getQualifiedName);
-        if (qualifiedName != null) {
-            qualifiedNamesToClasses.put(qualifiedName, psiClass);
-        }
 
         // alle aktuellen Klassenfelder der Klasse speichern
         List<Classfield> new_Fields = PsiUtil.getClassfields(psiClass);
 
-        // alle alten KlassenFelder
-        List<Classfield> toBeRemoved = new ArrayList<>(classesToClassFields.get(psiClass));
-        // alle alten Klassenfelder ohne die, die auch im neuen sind
-        toBeRemoved.removeAll(new_Fields);
+        synchronized (lock) {
+            // alle alten KlassenFelder
+            List<Classfield> old_Fields = classesToClassFields.get(psiClass);
+            // the class was removed concurrently
+            if (old_Fields == null) return;
 
-        // eintrag in classes to classFields austauschen
-        classesToClassFields.put(psiClass, new_Fields);
+            if (qualifiedName != null) {
+                qualifiedNamesToClasses.put(qualifiedName, psiClass);
+            }
+
+            // alle alten Klassenfelder ohne die, die auch im neuen sind
+            List<Classfield> toBeRemoved = new ArrayList<>(old_Fields);
+            toBeRemoved.removeAll(new_Fields);
+
+            // eintrag in classes to classFields austauschen
+            classesToClassFields.put(psiClass, new_Fields);
+
+            for (Classfield classField : toBeRemoved) {
+                removeClassForClassfield(psiClass, classField);
+            }
 
-        for (Classfield classField : toBeRemoved) {
-            propertiesToClasses.get(classField).remove(psiClass);
+            for (Classfield classField : new_Fields) {
+                addClassForClassfield(psiClass, classField);
+            }
         }
+    }
 
-        for (Classfield classField : new_Fields) {
-            addClassForClassfield(psiClass, classField);
+    /**
+     * Applies the changes of a refactoring to the index. All changes are applied while holding the lock, so that
+     * other threads either see the index before or after the refactoring. Only the postings of the properties that
+     * were removed or added are touched.
+     *
+     * @param delta The changes to apply
+     */
+    void applyDelta(IndexDelta delta) {
+
+        int minNumberOfProperties = Objects.requireNonNull(DataClumpSettings.getInstance().getState()).minNumberOfProperties;
+
+        for (PsiElement element : delta.getEntries().keySet()) {
+            detachFile(element);
+        }
+
+        synchronized (lock) {
+            for (Map.Entry<PsiElement, IndexDelta.Entry> change : delta.getEntries().entrySet()) {
+                List<? extends Property> newProperties = change.getValue().properties();
+                // elements with less than the minimum number of properties are not part of the index
+                boolean indexed = newProperties.size() >= minNumberOfProperties;
+
+                if (change.getKey() instanceof TypeScriptFunction psiFunction) {
+                    List<Parameter> oldParameters = functionsToParameters.remove(psiFunction);
+                    if (oldParameters != null) {
+                        for (Parameter parameter : oldParameters) {
+                            if (!indexed || !newProperties.contains(parameter)) removeFunctionForParameter(psiFunction, parameter);
+                        }
+                    }
+                    if (!indexed) continue;
+
+                    List<Parameter> parameters = new ArrayList<>();
+                    for (Property property : newProperties) {
+                        parameters.add((Parameter) property);
+                        addFunctionForParameter(psiFunction, (Parameter) property);
+                    }
+                    functionsToParameters.put(psiFunction, parameters);
+
+                } else if (change.getKey() instanceof JSClass psiClass) {
+                    List<Classfield> oldClassfields = classesToClassFields.remove(psiClass);
+                    if (oldClassfields != null) {
+                        for (Classfield classField : oldClassfields) {
+                            if (!indexed || !newProperties.contains(classField)) removeClassForClassfield(psiClass, classField);
+                        }
+                    }
+                    if (!indexed) continue;
+
+                    List<Classfield> classfields = new ArrayList<>();
+                    for (Property property : newProperties) {
+                        classfields.add((Classfield) property);
+                        addClassForClassfield(psiClass, (Classfield) property);
+                    }
+                    classesToClassFields.put(psiClass, classfields);
+
+                    if (change.getValue().qualifiedName() != null) {
+                        qualifiedNamesToClasses.put(change.getValue().qualifiedName(), psiClass);
+                    }
+                }
+            }
         }
     }
 
@@ -261,16 +672,17 @@ public class Index {
      * @param function  The TypeScriptFunction to add
      * @param parameter The Parameter to add the function for
      */
-    public static void addFunctionForParameter(TypeScriptFunction function, Parameter parameter) {
-        if (propertiesToFunctions.containsKey(parameter)) {
-            if (propertiesToFunctions.get(parameter).contains(function)) return;
-            propertiesToFunctions.get(parameter).add(function);
-        } else {
-            List<TypeScriptFunction> functions = new ArrayList<>();
-            functions.add(function);
-            propertiesToFunctions.put(parameter, functions);
+    public void addFunctionForParameter(TypeScriptFunction function, Parameter parameter) {
+        synchronized (lock) {
+            if (propertiesToFunctions.containsKey(parameter)) {
+                if (propertiesToFunctions.get(parameter).contains(function)) return;
+                propertiesToFunctions.get(parameter).add(function);
+            } else {
+                List<TypeScriptFunction> functions = new ArrayList<>();
+                functions.add(function);
+                propertiesToFunctions.put(parameter, functions);
+            }
         }
-
     }
 
     /**
@@ -279,14 +691,141 @@ public class Index {
      * @param psiClass   The TypeScriptClass to add
      * @param classField The ClassField to add the class for
      */
-    public static void addClassForClassfield(JSClass psiClass, Classfield classField) {
-        if (propertiesToClasses.containsKey(classField)) {
-            if (propertiesToClasses.get(classField).contains(psiClass)) return;
-            propertiesToClasses.get(classField).add(psiClass);
-        } else {
-            List<JSClass> classList = new ArrayList<>();
-            classList.add(psiClass);
-            propertiesToClasses.put(classField, classList);
+    public void addClassForClassfield(JSClass psiClass, Classfield classField) {
+        synchronized (lock) {
+            if (propertiesToClasses.containsKey(classField)) {
+                if (propertiesToClasses.get(classField).contains(psiClass)) return;
+                propertiesToClasses.get(classField).add(psiClass);
+            } else {
+                List<JSClass> classList = new ArrayList<>();
+                classList.add(psiClass);
+                propertiesToClasses.put(classField, classList);
+            }
+        }
+    }
+
+    /**
+     * Removes a Function from the postings of a Parameter
+     *
+     * @param function  The TypeScriptFunction to remove
+     * @param parameter The Parameter to remove the function for
+     */
+    private void removeFunctionForParameter(TypeScriptFunction function, Parameter parameter) {
+        synchronized (lock) {
+            List<TypeScriptFunction> functions = propertiesToFunctions.get(parameter);
+            if (functions != null) functions.remove(function);
+        }
+    }
+
+    /**
+     * Removes a Class from the postings of a ClassField
+     *
+     * @param psiClass   The TypeScriptClass to remove
+     * @param classField The ClassField to remove the class for
+     */
+    private void removeClassForClassfield(JSClass psiClass, Classfield classField) {
+        synchronized (lock) {
+            List<JSClass> classes = propertiesToClasses.get(classField);
+            if (classes != null) classes.remove(psiClass);
+        }
+    }
+
+    /**
+     * Moves the postings of the file of the given element from the memory-mapped backend to the heap, before the
+     * element is changed. The mapped postings find the elements by their offset, which is no longer valid once the
+     * file was changed. While a build writes the mapped postings, the file is remembered and moved once the postings
+     * are swapped in. Does nothing if the postings are only kept on the heap or the file was already moved.
+     *
+     * @param element The element that is about to be changed
+     */
+    private void detachFile(PsiElement element) {
+        MappedPostings mapped;
+        synchronized (lock) {
+            if (mappedPostings == null && filesChangedDuringBuild == null) return;
+        }
+
+        PsiFile psiFile = PsiUtil.runReadActionWithResult(element::getContainingFile);
+        VirtualFile file = psiFile == null ? null : psiFile.getVirtualFile();
+        if (file == null) return;
+
+        synchronized (lock) {
+            if (filesChangedDuringBuild != null) {
+                filesChangedDuringBuild.add(psiFile);
+                return;
+            }
+            mapped = mappedPostings;
+        }
+        if (mapped == null) return;
+
+        Collection<PsiElement> fileElements = collectElements(psiFile);
+        synchronized (lock) {
+            if (mapped.markStale(file.getPath())) {
+                addPostings(fileElements);
+            }
+        }
+    }
+
+    /**
+     * Checks if the file of the given element did not change since the memory-mapped postings were written. The
+     * mapped postings and the maps filled by the same build still describe the elements of such a file, so they do not
+     * need to be updated or moved to the heap.
+     *
+     * @param element The element to check
+     * @return true if the mapped postings describe the file of the element, false otherwise
+     */
+    private boolean isUnchangedInMappedPostings(PsiElement element) {
+        MappedPostings mapped = mappedPostings;
+        if (mapped == null) return false;
+
+        PsiFile psiFile = PsiUtil.runReadActionWithResult(element::getContainingFile);
+        VirtualFile file = psiFile == null ? null : psiFile.getVirtualFile();
+        return file != null && mapped.isUpToDate(file);
+    }
+
+    /**
+     * Returns the functions, classes and interfaces of a file
+     *
+     * @param psiFile The file
+     * @return The elements of the file
+     */
+    private Collection<PsiElement> collectElements(PsiFile psiFile) {
+        return PsiUtil.runReadActionWithResult(() -> {
+            Collection<PsiElement> elements = new ArrayList<>(PsiTreeUtil.findChildrenOfType(psiFile, TypeScriptFunction.class));
+            elements.addAll(List.of(PsiTreeUtil.collectElements(psiFile, element -> element instanceof TypeScriptClass || element instanceof TypeScriptInterface)));
+            return elements;
+        });
+    }
+
+    /**
+     * Adds the heap postings of the given elements with the properties stored in the index. Elements that are not in
+     * the index are ignored. Must be called while holding the lock.
+     *
+     * @param elements The functions and classes to add the postings for
+     */
+    private void addPostings(Collection<PsiElement> elements) {
+        for (PsiElement element : elements) {
+            if (element instanceof TypeScriptFunction psiFunction && functionsToParameters.containsKey(psiFunction)) {
+                for (Parameter parameter : functionsToParameters.get(psiFunction)) {
+                    addFunctionForParameter(psiFunction, parameter);
+                }
+            } else if (element instanceof JSClass psiClass && classesToClassFields.containsKey(psiClass)) {
+                for (Classfield classField : classesToClassFields.get(psiClass)) {
+                    addClassForClassfield(psiClass, classField);
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates a TypeScriptFunction or JSClass in the index
+     *
+     * @param element The element to update
+     */
+    public void updateElement(PsiElement element) {
+        if (element instanceof TypeScriptFunction psiFunction) {
+            updateFunction(psiFunction);
+        } else if (element instanceof JSClass psiClass) {
+            updateClass(psiClass);
         }
     }
 
@@ -295,37 +834,58 @@ public class Index {
      *
      * @param element The element to remove
      */
-    public static void removeElement(PsiElement element) {
+    public void removeElement(PsiElement element) {
+
+        detachFile(element);
 
         if (element instanceof TypeScriptFunction psiFunction) {
-            for (Parameter parameter : functionsToParameters.get(psiFunction)) {
-                propertiesToFunctions.get(parameter).remove(psiFunction);
-            }
-            functionsToParameters.remove(psiFunction);
-            JSClass psiClass = PsiTreeUtil.getParentOfType(psiFunction, JSClass.class);
-            if (psiClass != null) {
-                functionNamesToClasses.get(psiFunction.getName()).remove(psiClass);
+            String name = PsiUtil.runReadActionWithResult(psiFunction::getName);
+            JSClass psiClass = PsiUtil.runReadActionWithResult(() -> PsiTreeUtil.getParentOfType(psiFunction, JSClass.class));
+
+            synchronized (lock) {
+                List<Parameter> parameters = functionsToParameters.remove(psiFunction);
+                if (parameters != null) {
+                    for (Parameter parameter : parameters) {
+                        removeFunctionForParameter(psiFunction, parameter);
+                    }
+                }
+                if (psiClass != null && functionNamesToClasses.containsKey(name)) {
+                    functionNamesToClasses.get(name).remove(psiClass);
+                }
             }
         }
 
         if (element instanceof JSClass psiClass) {
-
-            for (Classfield classField : classesToClassFields.get(psiClass)) {
-                propertiesToClasses.get(classField).remove(psiClass);
+            String qualifiedName = PsiUtil.runReadActionWithResult(psiClass::getQualifiedName);
+
+            synchronized (lock) {
+                List<Classfield> classfields = classesToClassFields.remove(psiClass);
+                if (classfields != null) {
+                    for (Classfield classField : classfields) {
+                        removeClassForClassfield(psiClass, classField);
+                    }
+                }
+                qualifiedNamesToClasses.remove(qualifiedName);
             }
-            classesToClassFields.remove(psiClass);
-            qualifiedNamesToClasses.remove(psiClass.getQualifiedName());
         }
 
 
     }
 
     /**
-     * Resets the index and rebuilds it
+     * Indicates if the index was built or is being built
      *
-     * @param project The project to reset the index for
+     * @return True if the build of the index was started, false otherwise
+     */
+    public boolean isBuildStarted() {
+        return buildStarted;
+    }
+
+    /**
+     * Resets the index and rebuilds it in the background. A build that is still running is cancelled, so that only
+     * the newest generation fills the maps and completes the readiness.
      */
-    public static void resetIndex(Project project) {
+    public void resetIndex() {
 
         long startTime;
         if (DiagnosticTool.DIAGNOSTIC_MODE) {
@@ -334,91 +894,275 @@ public class Index {
             startTime = 0;
         }
 
-        indexBuilt = false;
-        Index.project = project;
+        ProgressIndicator indicator = new EmptyProgressIndicator();
+        int buildGeneration;
+
+        synchronized (this) {
+            if (buildIndicator != null) buildIndicator.cancel();
+            buildIndicator = indicator;
+            buildGeneration = ++generation;
+            buildProgress = 0;
+            if (readiness.isDone()) readiness = new CompletableFuture<>();
+
+            // the previous build is cancelled before the maps are replaced, see addClass and addFunction
+            synchronized (lock) {
+                indexBuilt = false;
+                buildStarted = true;
+                mappedPostings = null;
+
+                propertiesToFunctions = new HashMap<>();
+                propertiesToClasses = new HashMap<>();
+                classesToClassFields = new HashMap<>();
+                functionsToParameters = new HashMap<>();
+                qualifiedNamesToClasses = new HashMap<>();
+                functionNamesToClasses = new HashMap<>();
+                filesChangedDuringBuild = null;
+            }
+        }
 
-        propertiesToFunctions = new HashMap<>();
-        propertiesToClasses = new HashMap<>();
-        classesToClassFields = new HashMap<>();
-        functionsToParameters = new HashMap<>();
-        qualifiedNamesToClasses = new HashMap<>();
-        functionNamesToClasses = new HashMap<>();
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            try {
+                ProgressManager.getInstance().runProcess(() -> build(buildGeneration, startTime), indicator);
+            } catch (ProcessCanceledException e) {
+                CodeSmellLogger.info("Build of index generation " + buildGeneration + " was cancelled.");
+            }
+        });
 
+    }
 
-        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+    /**
+     * Builds the index. Runs under the progress indicator of its generation and stops as soon as it is cancelled.
+     *
+     * @param buildGeneration The generation of the build
+     * @param startTime       The time the build was requested, used for the diagnostic measurement
+     */
+    private void build(int buildGeneration, long startTime) {
+
+        CodeSmellLogger.info("Building index...");
+        PsiManager manager = PsiManager.getInstance(project);
+
+        // the elements of files that did not change since the last snapshot are restored instead of computed
+        IndexSnapshot previousSnapshot = IndexSnapshot.load(project);
+        IndexSnapshot snapshot = new IndexSnapshot();
+        int restoredFiles = 0;
+
+        // for very large projects the postings are written to a memory-mapped file instead of being kept on the heap
+        DataClumpSettings.State settings = Objects.requireNonNull(DataClumpSettings.getInstance().getState());
+        MappedPostings.Writer postingsWriter = settings.useMappedIndex ? new MappedPostings.Writer() : null;
+        List<PsiFile> unsavedFiles = new ArrayList<>();
+        if (postingsWriter != null) {
+            synchronized (lock) {
+                ProgressManager.checkCanceled();
+                filesChangedDuringBuild = new HashSet<>();
+            }
+        }
+
+        // Alle TypeScriptFiles
+        Collection<VirtualFile> files = PsiUtil.runReadActionWithResult(() -> FileTypeIndex.getFiles(TypeScriptFileType.INSTANCE, GlobalSearchScope.projectScope(project)));
+        int processedFiles = 0;
+        for (VirtualFile virtualFile : files) {
+            // stop if a newer build started or the project was closed
+            ProgressManager.checkCanceled();
+            buildProgress = (double) processedFiles++ / files.size();
+            PsiFile psiFile = PsiUtil.runReadActionWithResult(() -> manager.findFile(virtualFile));
+
+            IndexSnapshot.FileData fileData = previousSnapshot != null ? previousSnapshot.getUpToDate(virtualFile) : null;
+            if (fileData != null && restoreFile(psiFile, fileData)) {
+                snapshot.put(virtualFile, fileData);
+                if (postingsWriter != null && !postingsWriter.addFile(virtualFile, fileData.elements(), settings.minNumberOfProperties)) {
+                    unsavedFiles.add(psiFile);
+                }
+                restoredFiles++;
+                continue;
+            }
 
-            CodeSmellLogger.info("Building index...");
-            PsiManager manager = PsiManager.getInstance(project);
+            Collection<TypeScriptFunction> allFunctions = new ArrayList<>();
+            Collection<PsiElement> allClasses = new ArrayList<>();
 
-            // Alle TypeScriptFiles
-            for (VirtualFile virtualFile : PsiUtil.runReadActionWithResult(() -> FileTypeIndex.getFiles(TypeScriptFileType.INSTANCE, GlobalSearchScope.projectScope(project)))) {
-                PsiFile psiFile = PsiUtil.runReadActionWithResult(() -> manager.findFile(virtualFile));
+            // read all functions, classes and interfaces from file
+            ApplicationManager.getApplication().runReadAction(() -> {
+                allFunctions.addAll(PsiTreeUtil.findChildrenOfType(psiFile, TypeScriptFunction.class));
+                allClasses.addAll(List.of(PsiTreeUtil.collectElements(psiFile, element -> element instanceof TypeScriptClass || element instanceof TypeScriptInterface)));
+            });
 
-                Collection<TypeScriptFunction> allFunctions = new ArrayList<>();
-                Collection<PsiElement> allClasses = new ArrayList<>();
-                Collection<PsiElement> allInterfaces = new ArrayList<>();
+            List<IndexSnapshot.ElementData> elements = new ArrayList<>();
 
-                // read all functions, classes and interfaces from file
-                ApplicationManager.getApplication().runReadAction(() -> {
-                    allFunctions.addAll(PsiTreeUtil.findChildrenOfType(psiFile, TypeScriptFunction.class));
-                    allClasses.addAll(List.of(PsiTreeUtil.collectElements(psiFile, element -> element instanceof TypeScriptClass)));
-                    allInterfaces.addAll(List.of(PsiTreeUtil.collectElements(psiFile, element -> element instanceof TypeScriptInterface)));
-                });
+            // iterate all functions in file
+            for (TypeScriptFunction psiFunction : allFunctions) {
+                if (PsiUtil.runReadActionWithResult(psiFunction::isConstructor)) continue;
+                addClassToFunctionName(psiFunction);
+                List<Parameter> parameters = PsiUtil.getParameters(psiFunction);
+                addFunction(psiFunction, parameters);
+                elements.add(PsiUtil.runReadActionWithResult(() -> new IndexSnapshot.ElementData(false, psiFunction.getTextRange().getStartOffset(), String.valueOf(psiFunction.getName()), parameters)));
+            }
+            //iterate all classes and interfaces in file
+            for (PsiElement psiElement : allClasses) {
+                JSClass psiClass = (JSClass) psiElement;
+                List<Classfield> classfields = PsiUtil.getClassfields(psiClass);
+                String qualifiedName = PsiUtil.runReadActionWithResult(psiClass::getQualifiedName);
+                addClass(psiClass, classfields, qualifiedName);
+                elements.add(PsiUtil.runReadActionWithResult(() -> new IndexSnapshot.ElementData(true, psiClass.getTextRange().getStartOffset(), String.valueOf(qualifiedName), classfields)));
+            }
 
+            snapshot.put(virtualFile, elements);
+            if (postingsWriter != null && !postingsWriter.addFile(virtualFile, elements, settings.minNumberOfProperties)) {
+                unsavedFiles.add(psiFile);
+            }
+        }
 
-                // iterate all functions in file
-                for (TypeScriptFunction psiFunction : allFunctions) {
-                    addFunction(psiFunction);
+        if (postingsWriter != null) {
+            MappedPostings mapped = postingsWriter.write(project);
+            if (mapped != null) {
+                Collection<PsiElement> unsavedElements = new ArrayList<>();
+                for (PsiFile unsavedFile : unsavedFiles) {
+                    unsavedElements.addAll(collectElements(unsavedFile));
                 }
-                //iterate all classes in file
-                for (PsiElement psiElement : allClasses) {
-                    TypeScriptClass psiClass = (TypeScriptClass) psiElement;
-                    addClass(psiClass);
+                Set<PsiFile> changedFiles;
+                synchronized (lock) {
+                    ProgressManager.checkCanceled();
+                    // the heap postings only hold the files that are not in the mapped file or changed since
+                    propertiesToFunctions = new HashMap<>();
+                    propertiesToClasses = new HashMap<>();
+                    addPostings(unsavedElements);
+                    mappedPostings = mapped;
+                    changedFiles = filesChangedDuringBuild;
+                    filesChangedDuringBuild = null;
                 }
-                //iterate all interfaces in file
-                for (PsiElement psiElement : allInterfaces) {
-                    TypeScriptInterface psiInterface = (TypeScriptInterface) psiElement;
-                    addClass(psiInterface);
+                // the files changed during the build are moved like files changed from now on
+                for (PsiFile changedFile : changedFiles) {
+                    // files that were only highlighted during the build are described by the mapped postings
+                    VirtualFile file = changedFile.getVirtualFile();
+                    if (file != null && !mapped.isUpToDate(file)) detachFile(changedFile);
+                }
+                CodeSmellLogger.info("Index postings were mapped, " + unsavedFiles.size() + " unsaved files and " + changedFiles.size() + " changed files kept on the heap.");
+            } else {
+                // if the postings could not be written, they are kept on the heap
+                synchronized (lock) {
+                    ProgressManager.checkCanceled();
+                    filesChangedDuringBuild = null;
+                    addPostings(new ArrayList<>(functionsToParameters.keySet()));
+                    addPostings(new ArrayList<>(classesToClassFields.keySet()));
                 }
-
             }
+        }
 
-
+        // only the current generation completes the index, the dependents of the readiness run on their own executors
+        CompletableFuture<Index> completedReadiness;
+        synchronized (this) {
+            ProgressManager.checkCanceled();
+            if (buildGeneration != generation) return;
+            buildIndicator = null;
             indexBuilt = true;
+            buildProgress = 1;
+            completedReadiness = readiness;
+        }
+        completedReadiness.complete(this);
 
-            if (DiagnosticTool.DIAGNOSTIC_MODE) {
-                long endTime = System.nanoTime();
-                long duration = endTime - startTime;
-                DiagnosticTool.addMeasurement(new DiagnosticTool.IndexMeasurement(project, duration));
-            }
+        if (DiagnosticTool.DIAGNOSTIC_MODE) {
+            long endTime = System.nanoTime();
+            long duration = endTime - startTime;
+            DiagnosticTool.addMeasurement(new DiagnosticTool.IndexMeasurement(project, duration));
+        }
 
-            notifyListeners();
-            CodeSmellLogger.info("Index was build.");
-        });
+        CodeSmellLogger.info("Index generation " + buildGeneration + " was build, " + restoredFiles + " files restored from the snapshot.");
 
+        // the snapshot is written after the index was completed, so that it does not delay the detection
+        snapshot.save(project);
     }
 
     /**
-     * Adds a listener that is notified when the index is built
-     *
-     * @param listener The listener to add
+     * Removes all entries from the index when the project is closed. The readiness of the index is cancelled, so that
+     * nothing waits for an index that is never built.
      */
-    public static synchronized void addIndexBuildListener(Runnable listener) {
-        if (indexBuilt) {
-            listener.run();
-        } else {
-            listeners.add(listener);
+    @Override
+    public synchronized void dispose() {
+        // stop the running build, its result would belong to a closed project
+        if (buildIndicator != null) buildIndicator.cancel();
+        buildIndicator = null;
+        generation++;
+
+        synchronized (lock) {
+            indexBuilt = false;
+            mappedPostings = null;
+            filesChangedDuringBuild = null;
+            propertiesToFunctions = new HashMap<>();
+            propertiesToClasses = new HashMap<>();
+            classesToClassFields = new HashMap<>();
+            functionsToParameters = new HashMap<>();
+            qualifiedNamesToClasses = new HashMap<>();
+            functionNamesToClasses = new HashMap<>();
         }
+        readiness.cancel(false);
     }
 
     /**
-     * Notifies all listeners
+     * Restores the functions and classes of a file from the snapshot. The elements are found again by their offset
+     * and verified by their name. If one of them can not be found, nothing is restored.
+     *
+     * @param psiFile  The file to restore
+     * @param fileData The stored state of the file
+     * @return True if the file was restored, false if it has to be indexed again
      */
-    private static synchronized void notifyListeners() {
-        for (Runnable listener : listeners) {
-            listener.run();
+    @SuppressWarnings("unchecked")
+    private boolean restoreFile(PsiFile psiFile, IndexSnapshot.FileData fileData) {
+        if (psiFile == null) return false;
+
+        List<PsiElement> elements = PsiUtil.runReadActionWithResult(() -> {
+            List<PsiElement> result = new ArrayList<>();
+            for (IndexSnapshot.ElementData data : fileData.elements()) {
+                if (data.isClass()) {
+                    JSClass psiClass = PsiTreeUtil.findElementOfClassAtOffset(psiFile, data.offset(), JSClass.class, true);
+                    if (psiClass == null || !data.name().equals(String.valueOf(psiClass.getQualifiedName()))) return null;
+                    result.add(psiClass);
+                } else {
+                    TypeScriptFunction psiFunction = PsiTreeUtil.findElementOfClassAtOffset(psiFile, data.offset(), TypeScriptFunction.class, true);
+                    if (psiFunction == null || !data.name().equals(String.valueOf(psiFunction.getName()))) return null;
+                    result.add(psiFunction);
+                }
+            }
+            return result;
+        });
+        if (elements == null) return false;
+
+        for (int i = 0; i < elements.size(); i++) {
+            IndexSnapshot.ElementData data = fileData.elements().get(i);
+            if (elements.get(i) instanceof TypeScriptFunction psiFunction) {
+                addClassToFunctionName(psiFunction);
+                addFunction(psiFunction, (List<Parameter>) data.properties());
+            } else {
+                addClass((JSClass) elements.get(i), (List<Classfield>) data.properties(), data.name().equals("null") ? null : data.name());
+            }
         }
-        listeners.clear();
+        return true;
     }
-}
 
+    /**
+     * Returns a future that is completed with this index once it is built. Dependent stages run on a pooled thread,
+     * so that they neither block the build nor each other. The future is cancelled if the project is closed first.
+     *
+     * @return The future of the built index
+     */
+    public CompletableFuture<Index> whenBuilt() {
+        return whenBuilt(AppExecutorUtil.getAppExecutorService());
+    }
+
+    /**
+     * Returns a future that is completed with this index once it is built. Dependent stages run on the given executor.
+     * If the index is rebuilt before it is completed, the future waits for the newest generation.
+     *
+     * @param executor The executor that completes the returned future
+     * @return The future of the built index
+     */
+    public synchronized CompletableFuture<Index> whenBuilt(Executor executor) {
+        return readiness.thenApplyAsync(index -> index, executor);
+    }
+
+    /**
+     * Returns the progress of the running build
+     *
+     * @return The fraction of the files processed by the running build, 1 if the index is built
+     */
+    public double getBuildProgress() {
+        return buildProgress;
+    }
+}
@@ -0,0 +1,87 @@
+package util;
+
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
+import com.intellij.lang.javascript.psi.ecmal4.JSClass;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Collects the changes of the index caused by a refactoring, so that they can be applied in one step.
+ * The properties of a changed element are read when the change is recorded, the index itself is only modified
+ * when the delta is applied, which happens atomically.
+ */
+public class IndexDelta {
+
+    /**
+     * Represents the new state of a changed element
+     *
+     * @param properties    the properties of the element after the change
+     * @param qualifiedName the qualified name of the element, only used for classes
+     */
+    record Entry(List<? extends Property> properties, String qualifiedName) {
+    }
+
+    /**
+     * The project whose index is changed
+     */
+    private final Project project;
+
+    /**
+     * The changed elements mapped to their new state
+     */
+    private final LinkedHashMap<PsiElement, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Creates an empty delta for the index of the given project
+     *
+     * @param project the project whose index is changed
+     */
+    public IndexDelta(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Records the current properties of the given function or class. Constructors are not part of the index and
+     * are ignored, the properties of their class are recorded with the class.
+     *
+     * @param element the changed element
+     */
+    public void update(PsiElement element) {
+        if (element instanceof TypeScriptFunction psiFunction) {
+            if (PsiUtil.runReadActionWithResult(psiFunction::isConstructor)) return;
+            entries.put(psiFunction, new Entry(PsiUtil.getParameters(psiFunction), null));
+        } else if (element instanceof JSClass psiClass) {
+            entries.put(psiClass, new Entry(PsiUtil.getClassfields(psiClass), PsiUtil.runReadActionWithResult(psiClass::getQualifiedName)));
+        }
+    }
+
+    /**
+     * Applies the recorded changes to the index in one step and clears the delta
+     */
+    public void apply() {
+        if (entries.isEmpty()) return;
+        Index.getInstance(project).applyDelta(this);
+        entries.clear();
+    }
+
+    /**
+     * Returns the changed elements mapped to their new state
+     *
+     * @return the entries of the delta
+     */
+    LinkedHashMap<PsiElement, Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the number of changed elements
+     *
+     * @return the number of changed elements
+     */
+    public int size() {
+        return entries.size();
+    }
+}
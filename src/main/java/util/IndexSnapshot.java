@@ -0,0 +1,319 @@
+package util;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A versioned binary snapshot of the index, stored in the system directory of the IDE per project.
+ * For every TypeScript file the snapshot contains the time stamp and length of the file when it was indexed and the
+ * functions and classes of the file with their properties. When the index is rebuilt, the elements of files whose
+ * stamp did not change are restored from the snapshot instead of computing their properties again.
+ */
+public class IndexSnapshot {
+
+    /**
+     * The magic number at the start of a snapshot file
+     */
+    private static final int MAGIC = 0x44434958;
+
+    /**
+     * The version of the format, snapshots of another version are ignored
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Represents a function, class or interface of a file
+     *
+     * @param isClass    true for classes and interfaces, false for functions
+     * @param offset     the start offset of the element in its file, used to find the element again
+     * @param name       the qualified name of a class or the name of a function, used to verify the element
+     * @param properties the fields or parameters of the element
+     */
+    public record ElementData(boolean isClass, int offset, String name, List<? extends Property> properties) {
+    }
+
+    /**
+     * Represents the indexed state of a file
+     *
+     * @param stamp    the stamp of the file when it was indexed
+     * @param elements the functions and classes of the file
+     */
+    public record FileData(FileStamp stamp, List<ElementData> elements) {
+    }
+
+    /**
+     * The indexed files mapped to their path
+     */
+    private final HashMap<String, FileData> files = new HashMap<>();
+
+    /**
+     * Returns the stored state of the given file if the file did not change since it was indexed, see
+     * {@link FileStamp#isUpToDate(VirtualFile)}
+     *
+     * @param file the file
+     * @return the stored state or null if the file is not in the snapshot, changed or has unsaved changes
+     */
+    public @Nullable FileData getUpToDate(VirtualFile file) {
+        FileData data = files.get(file.getPath());
+        return data != null && data.stamp().isUpToDate(file) ? data : null;
+    }
+
+    /**
+     * Stores the indexed state of the given file. Files with unsaved changes have no stamp and are not stored.
+     *
+     * @param file     the file
+     * @param elements the functions and classes of the file
+     */
+    public synchronized void put(VirtualFile file, List<ElementData> elements) {
+        FileStamp stamp = FileStamp.of(file);
+        if (stamp != null) files.put(file.getPath(), new FileData(stamp, elements));
+    }
+
+    /**
+     * Stores the state of a file that was restored from another snapshot
+     *
+     * @param file the file
+     * @param data the restored state
+     */
+    public void put(VirtualFile file, FileData data) {
+        put(file.getPath(), data);
+    }
+
+    /**
+     * Stores the state of the file with the given path
+     *
+     * @param path the path of the file
+     * @param data the state of the file
+     */
+    synchronized void put(String path, FileData data) {
+        files.put(path, data);
+    }
+
+    /**
+     * Returns the stored state of the file with the given path without checking if it is up to date
+     *
+     * @param path the path of the file
+     * @return the stored state or null if the file is not in the snapshot
+     */
+    synchronized @Nullable FileData get(String path) {
+        return files.get(path);
+    }
+
+    /**
+     * Returns the number of files in the snapshot
+     *
+     * @return the number of files
+     */
+    public int size() {
+        return files.size();
+    }
+
+    /**
+     * Returns the path of the snapshot of the given project
+     *
+     * @param project the project
+     * @return the path of the snapshot file
+     */
+    private static Path getSnapshotPath(Project project) {
+        return Path.of(PathManager.getSystemPath(), "dataclump", "index", project.getLocationHash() + ".bin");
+    }
+
+    /**
+     * Loads the snapshot of the given project
+     *
+     * @param project the project
+     * @return the snapshot or null if there is none or it was written with another version
+     */
+    public static @Nullable IndexSnapshot load(Project project) {
+        Path path = getSnapshotPath(project);
+        if (!Files.exists(path)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return read(in);
+        } catch (IOException e) {
+            CodeSmellLogger.error("Could not read index snapshot: " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(DataOutputStream)}
+     *
+     * @param in the input stream
+     * @return the snapshot or null if it was written with another version
+     * @throws IOException if the snapshot could not be read
+     */
+    static @Nullable IndexSnapshot read(DataInputStream in) throws IOException {
+        if (!FileStamp.readHeader(in, MAGIC, VERSION)) {
+            CodeSmellLogger.info("Ignoring index snapshot of another version.");
+            return null;
+        }
+
+        IndexSnapshot snapshot = new IndexSnapshot();
+        int fileCount = in.readInt();
+        for (int i = 0; i < fileCount; i++) {
+            String filePath = readString(in);
+            FileStamp stamp = FileStamp.read(in);
+
+            int elementCount = in.readInt();
+            List<ElementData> elements = new ArrayList<>(elementCount);
+            for (int j = 0; j < elementCount; j++) {
+                elements.add(readElement(in));
+            }
+            snapshot.files.put(filePath, new FileData(stamp, elements));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes the snapshot of the given project. The snapshot is written to a temporary file first, so that a
+     * crash while writing does not leave a broken snapshot.
+     *
+     * @param project the project
+     */
+    public synchronized void save(Project project) {
+        Path path = getSnapshotPath(project);
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+                write(out);
+            }
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            CodeSmellLogger.error("Could not write index snapshot: " + path, e);
+        }
+    }
+
+    /**
+     * Writes the snapshot with its version to the given stream
+     *
+     * @param out the output stream
+     * @throws IOException if the snapshot could not be written
+     */
+    synchronized void write(DataOutputStream out) throws IOException {
+        FileStamp.writeHeader(out, MAGIC, VERSION);
+        out.writeInt(files.size());
+        for (Map.Entry<String, FileData> file : files.entrySet()) {
+            writeString(out, file.getKey());
+            file.getValue().stamp().write(out);
+            out.writeInt(file.getValue().elements().size());
+            for (ElementData element : file.getValue().elements()) {
+                writeElement(out, element);
+            }
+        }
+    }
+
+    /**
+     * Writes an element and its properties
+     *
+     * @param out     the output stream
+     * @param element the element
+     * @throws IOException if the element could not be written
+     */
+    private static void writeElement(DataOutputStream out, ElementData element) throws IOException {
+        out.writeBoolean(element.isClass());
+        out.writeInt(element.offset());
+        writeString(out, element.name());
+        out.writeInt(element.properties().size());
+        for (Property property : element.properties()) {
+            writeString(out, property.getName());
+            writeStrings(out, property.getTypes());
+            if (property instanceof Classfield classfield) {
+                writeString(out, classfield.getVisibility());
+                writeStrings(out, classfield.getModifiers());
+            }
+        }
+    }
+
+    /**
+     * Reads an element and its properties. The properties of classes are fields, those of functions are parameters.
+     *
+     * @param in the input stream
+     * @return the element
+     * @throws IOException if the element could not be read
+     */
+    private static ElementData readElement(DataInputStream in) throws IOException {
+        boolean isClass = in.readBoolean();
+        int offset = in.readInt();
+        String name = readString(in);
+
+        int propertyCount = in.readInt();
+        List<Property> properties = new ArrayList<>(propertyCount);
+        for (int i = 0; i < propertyCount; i++) {
+            String propertyName = readString(in);
+            Set<String> types = new HashSet<>(readStrings(in));
+            if (isClass) {
+                properties.add(new Classfield(propertyName, types, readString(in), readStrings(in)));
+            } else {
+                properties.add(new Parameter(propertyName, types));
+            }
+        }
+        return new ElementData(isClass, offset, name, properties);
+    }
+
+    /**
+     * Writes a string of any length
+     *
+     * @param out    the output stream
+     * @param string the string
+     * @throws IOException if the string could not be written
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}
+     *
+     * @param in the input stream
+     * @return the string
+     * @throws IOException if the string could not be read
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a collection of strings
+     *
+     * @param out     the output stream
+     * @param strings the strings
+     * @throws IOException if the strings could not be written
+     */
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    /**
+     * Reads a list of strings written by {@link #writeStrings(DataOutputStream, Collection)}
+     *
+     * @param in the input stream
+     * @return the strings
+     * @throws IOException if the strings could not be read
+     */
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,540 @@
+package util;
+
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
+import com.intellij.lang.javascript.psi.ecmal4.JSClass;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read-only store of the property dictionary and the posting lists of the index in a memory-mapped file.
+ * The postings do not contain PSI elements but the file and start offset of each element, which are resolved to the
+ * PSI when the postings are read. So the size of the heap does not grow with the number of properties, and the
+ * operating system can share the pages of the file between IDE sessions of the same project.
+ * <p>
+ * The file is never changed after it was written. Files that were changed since are marked as stale, their postings
+ * are ignored and kept on the heap by the index instead.
+ * <p>
+ * Layout of the file, all numbers are big endian:
+ * <pre>
+ * header:     magic, version, property count, element count, file count,
+ *             offsets of the keys, postings, elements, files and paths (int each)
+ * dictionary: per property: hash, key offset, first posting, posting count (int each), sorted by hash
+ * keys:       per property: length (int), name and types (UTF-8)
+ * postings:   element ids (int each)
+ * elements:   per element: file id, start offset (int each), is class (byte)
+ * files:      per file: path offset (int), time stamp, length (long each)
+ * paths:      per file: length (int), path (UTF-8)
+ * </pre>
+ */
+public class MappedPostings {
+
+    /**
+     * The magic number at the start of a postings file
+     */
+    private static final int MAGIC = 0x44435053;
+
+    /**
+     * The version of the format, files of another version are written again
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the header in bytes
+     */
+    private static final int HEADER_SIZE = 10 * Integer.BYTES;
+
+    /**
+     * The size of an entry of the dictionary in bytes
+     */
+    private static final int DICTIONARY_ENTRY_SIZE = 4 * Integer.BYTES;
+
+    /**
+     * The size of an element in bytes
+     */
+    private static final int ELEMENT_SIZE = 2 * Integer.BYTES + 1;
+
+    /**
+     * The size of a file entry in bytes
+     */
+    private static final int FILE_ENTRY_SIZE = Integer.BYTES + 2 * Long.BYTES;
+
+    /**
+     * Represents an element of a posting list
+     *
+     * @param fileId  the id of the file of the element
+     * @param offset  the start offset of the element in its file
+     * @param isClass true for classes and interfaces, false for functions
+     */
+    public record ElementRef(int fileId, int offset, boolean isClass) {
+    }
+
+    /**
+     * The project the postings belong to
+     */
+    private final Project project;
+
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The number of properties in the dictionary
+     */
+    private final int propertyCount;
+
+    /**
+     * The offsets of the sections of the file
+     */
+    private final int keysOffset, postingsOffset, elementsOffset, filesOffset;
+
+    /**
+     * The ids of the files mapped to their path
+     */
+    private final HashMap<String, Integer> fileIds = new HashMap<>();
+
+    /**
+     * The resolved files by their id, filled on first use
+     */
+    private final VirtualFile[] files;
+
+    /**
+     * The ids of the files that were changed since the postings were written
+     */
+    private final Set<Integer> staleFiles = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates the postings of a mapped file
+     *
+     * @param project the project the postings belong to
+     * @param buffer  the mapped file
+     */
+    private MappedPostings(Project project, MappedByteBuffer buffer) {
+        this.project = project;
+        this.buffer = buffer;
+        propertyCount = buffer.getInt(2 * Integer.BYTES);
+        int fileCount = buffer.getInt(4 * Integer.BYTES);
+        keysOffset = buffer.getInt(5 * Integer.BYTES);
+        postingsOffset = buffer.getInt(6 * Integer.BYTES);
+        elementsOffset = buffer.getInt(7 * Integer.BYTES);
+        filesOffset = buffer.getInt(8 * Integer.BYTES);
+        int pathsOffset = buffer.getInt(9 * Integer.BYTES);
+
+        files = new VirtualFile[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            fileIds.put(readString(pathsOffset + buffer.getInt(filesOffset + i * FILE_ENTRY_SIZE)), i);
+        }
+    }
+
+    /**
+     * Returns the key of a property in the dictionary. Equal properties have the same key, the order of the types is
+     * not relevant.
+     *
+     * @param property the property
+     * @return the key of the property
+     */
+    private static byte[] getKey(Property property) {
+        List<String> types = new ArrayList<>(property.getTypes());
+        Collections.sort(types);
+        return (property.getName() + '\0' + String.join("|", types)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the elements of the given kind that have the given property. Elements of stale files are left out.
+     *
+     * @param property the property
+     * @param classes  true to return the classes and interfaces, false to return the functions
+     * @return the elements that have the property
+     */
+    public List<ElementRef> getPostings(Property property, boolean classes) {
+        List<ElementRef> postings = new ArrayList<>();
+        int entry = findEntry(property);
+        if (entry < 0) return postings;
+
+        int first = buffer.getInt(entry + 2 * Integer.BYTES);
+        int count = buffer.getInt(entry + 3 * Integer.BYTES);
+        for (int i = first; i < first + count; i++) {
+            int element = elementsOffset + buffer.getInt(postingsOffset + i * Integer.BYTES) * ELEMENT_SIZE;
+            int fileId = buffer.getInt(element);
+            boolean isClass = buffer.get(element + 2 * Integer.BYTES) != 0;
+            if (isClass != classes || staleFiles.contains(fileId)) continue;
+            postings.add(new ElementRef(fileId, buffer.getInt(element + Integer.BYTES), isClass));
+        }
+        return postings;
+    }
+
+    /**
+     * Returns the number of elements that have the given property, including the elements of stale files.
+     * The elements are not resolved, so this is cheap enough to estimate the work of a detection.
+     *
+     * @param property the property
+     * @return the number of elements that have the property
+     */
+    public int countPostings(Property property) {
+        int entry = findEntry(property);
+        return entry < 0 ? 0 : buffer.getInt(entry + 3 * Integer.BYTES);
+    }
+
+    /**
+     * Finds the entry of a property in the dictionary by a binary search over the hashes
+     *
+     * @param property the property
+     * @return the position of the entry in the file or -1 if the property is not in the dictionary
+     */
+    private int findEntry(Property property) {
+        int hash = property.hashCode();
+        int low = 0;
+        int high = propertyCount - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getInt(HEADER_SIZE + middle * DICTIONARY_ENTRY_SIZE) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        // different properties can have the same hash, so all entries with the hash are compared by their key
+        byte[] key = null;
+        for (int i = low; i < propertyCount; i++) {
+            int entry = HEADER_SIZE + i * DICTIONARY_ENTRY_SIZE;
+            if (buffer.getInt(entry) != hash) break;
+            if (key == null) key = getKey(property);
+            int keyPosition = keysOffset + buffer.getInt(entry + Integer.BYTES);
+            if (buffer.getInt(keyPosition) != key.length) continue;
+            byte[] storedKey = new byte[key.length];
+            buffer.get(keyPosition + Integer.BYTES, storedKey);
+            if (Arrays.equals(key, storedKey)) return entry;
+        }
+        return -1;
+    }
+
+    /**
+     * Marks a file as changed, so that its postings are no longer returned
+     *
+     * @param path the path of the file
+     * @return true if the file is in the postings and was not stale before
+     */
+    public boolean markStale(String path) {
+        Integer fileId = fileIds.get(path);
+        return fileId != null && staleFiles.add(fileId);
+    }
+
+    /**
+     * Checks if the postings still describe the given file
+     *
+     * @param file the file
+     * @return true if the file is in the postings, was not marked as stale and did not change since the postings were
+     * written, false otherwise
+     */
+    public boolean isUpToDate(VirtualFile file) {
+        Integer fileId = fileIds.get(file.getPath());
+        return fileId != null && !staleFiles.contains(fileId) && getStamp(fileId).isUpToDate(file);
+    }
+
+    /**
+     * Resolves an element of a posting list to the PSI. The element is found by its start offset, so files that were
+     * changed since the postings were written are not resolved.
+     *
+     * @param element the element
+     * @return the TypeScriptFunction or JSClass or null if the element can not be resolved
+     */
+    public @Nullable PsiElement resolve(ElementRef element) {
+        VirtualFile file = getFile(element.fileId());
+        if (file == null) return null;
+
+        if (!getStamp(element.fileId()).isUpToDate(file)) return null;
+
+        return PsiUtil.runReadActionWithResult(() -> {
+            PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+            if (psiFile == null) return null;
+            Class<? extends PsiElement> type = element.isClass() ? JSClass.class : TypeScriptFunction.class;
+            return PsiTreeUtil.findElementOfClassAtOffset(psiFile, element.offset(), type, true);
+        });
+    }
+
+    /**
+     * Returns the stamp of the file with the given id when the postings were written
+     *
+     * @param fileId the id of the file
+     * @return the stamp of the file
+     */
+    private FileStamp getStamp(int fileId) {
+        int fileEntry = filesOffset + fileId * FILE_ENTRY_SIZE;
+        return new FileStamp(buffer.getLong(fileEntry + Integer.BYTES), buffer.getLong(fileEntry + Integer.BYTES + Long.BYTES));
+    }
+
+    /**
+     * Returns the file with the given id
+     *
+     * @param fileId the id of the file
+     * @return the file or null if it does not exist anymore
+     */
+    private @Nullable VirtualFile getFile(int fileId) {
+        VirtualFile file = files[fileId];
+        if (file == null || !file.isValid()) {
+            int pathsOffset = buffer.getInt(9 * Integer.BYTES);
+            file = LocalFileSystem.getInstance().findFileByPath(readString(pathsOffset + buffer.getInt(filesOffset + fileId * FILE_ENTRY_SIZE)));
+            files[fileId] = file;
+        }
+        return file;
+    }
+
+    /**
+     * Reads a length prefixed string from the file
+     *
+     * @param position the position of the length
+     * @return the string
+     */
+    private String readString(int position) {
+        byte[] bytes = new byte[buffer.getInt(position)];
+        buffer.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the path of the postings file of the given project
+     *
+     * @param project the project
+     * @return the path of the postings file
+     */
+    public static Path getPath(Project project) {
+        return Path.of(PathManager.getSystemPath(), "dataclump", "postings", project.getLocationHash() + ".bin");
+    }
+
+    /**
+     * Maps the postings file at the given path
+     *
+     * @param project the project the postings belong to
+     * @param path    the path of the file
+     * @return the postings or null if the file could not be mapped or has another version
+     */
+    static @Nullable MappedPostings open(Project project, Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION) {
+                return null;
+            }
+            return new MappedPostings(project, buffer);
+        } catch (IOException e) {
+            CodeSmellLogger.error("Could not map index postings: " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Collects the postings while the index is built and writes them to the postings file
+     */
+    public static class Writer {
+
+        /**
+         * The paths of the files by their id
+         */
+        private final List<String> paths = new ArrayList<>();
+
+        /**
+         * The stamps of the files by their id
+         */
+        private final List<FileStamp> stamps = new ArrayList<>();
+
+        /**
+         * The elements, each as file id, start offset and 1 for classes or 0 for functions
+         */
+        private final List<int[]> elements = new ArrayList<>();
+
+        /**
+         * The ids of the elements that have a property, by the key of the property
+         */
+        private final HashMap<String, List<Integer>> postings = new HashMap<>();
+
+        /**
+         * The hashes of the properties, by the key of the property
+         */
+        private final HashMap<String, Integer> hashes = new HashMap<>();
+
+        /**
+         * Adds the indexed elements of a file. Files with unsaved changes are not added, since their stamp does not
+         * describe the indexed content, the index keeps their postings on the heap instead.
+         *
+         * @param file                  the file
+         * @param fileElements          the functions and classes of the file
+         * @param minNumberOfProperties the minimum number of properties of an indexed element
+         * @return true if the file was added, false if it has unsaved changes
+         */
+        public synchronized boolean addFile(VirtualFile file, List<IndexSnapshot.ElementData> fileElements, int minNumberOfProperties) {
+            FileStamp stamp = FileStamp.of(file);
+            if (stamp == null) return false;
+            addFile(file.getPath(), stamp, fileElements, minNumberOfProperties);
+            return true;
+        }
+
+        /**
+         * Adds the indexed elements of the file with the given path and stamp
+         *
+         * @param path                  the path of the file
+         * @param stamp                 the stamp of the file when it was indexed
+         * @param fileElements          the functions and classes of the file
+         * @param minNumberOfProperties the minimum number of properties of an indexed element
+         */
+        synchronized void addFile(String path, FileStamp stamp, List<IndexSnapshot.ElementData> fileElements, int minNumberOfProperties) {
+            int fileId = paths.size();
+            paths.add(path);
+            stamps.add(stamp);
+
+            for (IndexSnapshot.ElementData element : fileElements) {
+                // elements with less than the minimum number of properties are not part of the index
+                if (element.properties().size() < minNumberOfProperties) continue;
+
+                int elementId = elements.size();
+                elements.add(new int[]{fileId, element.offset(), element.isClass() ? 1 : 0});
+                for (Property property : element.properties()) {
+                    String key = new String(getKey(property), StandardCharsets.UTF_8);
+                    hashes.putIfAbsent(key, property.hashCode());
+                    List<Integer> elementIds = postings.computeIfAbsent(key, k -> new ArrayList<>());
+                    // a class can have the same property twice, e.g. a field and an accessor
+                    if (elementIds.isEmpty() || elementIds.get(elementIds.size() - 1) != elementId) {
+                        elementIds.add(elementId);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes the postings file and maps it. If an equal file already exists, e.g. written by another IDE session
+         * of the same project, the existing file is mapped, so that the sessions share its pages.
+         *
+         * @param project the project the postings belong to
+         * @return the mapped postings or null if they could not be written
+         */
+        public synchronized @Nullable MappedPostings write(Project project) {
+            Path path = getPath(project);
+            Path temporaryPath = path.resolveSibling(path.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+            try {
+                Files.createDirectories(path.getParent());
+                writeTo(temporaryPath);
+
+                if (Files.exists(path) && Files.mismatch(path, temporaryPath) == -1) {
+                    Files.delete(temporaryPath);
+                } else {
+                    Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                // e.g. the file is mapped by another session on a system that does not allow to replace it
+                CodeSmellLogger.error("Could not write index postings: " + path, e);
+                try {
+                    Files.deleteIfExists(temporaryPath);
+                } catch (IOException ignored) {
+                }
+                return null;
+            }
+            return open(project, path);
+        }
+
+        /**
+         * Writes the postings in the format described in {@link MappedPostings}
+         *
+         * @param path the path to write to
+         * @throws IOException if the file could not be written
+         */
+        synchronized void writeTo(Path path) throws IOException {
+            List<String> keys = new ArrayList<>(postings.keySet());
+            keys.sort(Comparator.comparingInt(hashes::get));
+
+            List<byte[]> keyBytes = new ArrayList<>(keys.size());
+            int keysSize = 0;
+            int postingCount = 0;
+            for (String key : keys) {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                keyBytes.add(bytes);
+                keysSize += Integer.BYTES + bytes.length;
+                postingCount += postings.get(key).size();
+            }
+
+            List<byte[]> pathBytes = new ArrayList<>(paths.size());
+            for (String filePath : paths) {
+                pathBytes.add(filePath.getBytes(StandardCharsets.UTF_8));
+            }
+
+            long keysOffset = HEADER_SIZE + (long) keys.size() * DICTIONARY_ENTRY_SIZE;
+            long postingsOffset = keysOffset + keysSize;
+            long elementsOffset = postingsOffset + (long) postingCount * Integer.BYTES;
+            long filesOffset = elementsOffset + (long) elements.size() * ELEMENT_SIZE;
+            long pathsOffset = filesOffset + (long) paths.size() * FILE_ENTRY_SIZE;
+            // the offsets are stored as int, so the file is limited to 2 GB
+            if (pathsOffset > Integer.MAX_VALUE) throw new IOException("Index postings exceed 2 GB");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(keys.size());
+                out.writeInt(elements.size());
+                out.writeInt(paths.size());
+                out.writeInt((int) keysOffset);
+                out.writeInt((int) postingsOffset);
+                out.writeInt((int) elementsOffset);
+                out.writeInt((int) filesOffset);
+                out.writeInt((int) pathsOffset);
+
+                int keyOffset = 0;
+                int firstPosting = 0;
+                for (int i = 0; i < keys.size(); i++) {
+                    int count = postings.get(keys.get(i)).size();
+                    out.writeInt(hashes.get(keys.get(i)));
+                    out.writeInt(keyOffset);
+                    out.writeInt(firstPosting);
+                    out.writeInt(count);
+                    keyOffset += Integer.BYTES + keyBytes.get(i).length;
+                    firstPosting += count;
+                }
+
+                for (byte[] bytes : keyBytes) {
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+
+                for (String key : keys) {
+                    for (int elementId : postings.get(key)) {
+                        out.writeInt(elementId);
+                    }
+                }
+
+                for (int[] element : elements) {
+                    out.writeInt(element[0]);
+                    out.writeInt(element[1]);
+                    out.writeByte(element[2]);
+                }
+
+                int pathOffset = 0;
+                for (int i = 0; i < paths.size(); i++) {
+                    out.writeInt(pathOffset);
+                    stamps.get(i).write(out);
+                    pathOffset += Integer.BYTES + pathBytes.get(i).length;
+                }
+
+                for (byte[] bytes : pathBytes) {
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+        }
+    }
+}
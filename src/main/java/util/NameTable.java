@@ -0,0 +1,107 @@
+package util;
+
+import com.intellij.lang.ecmascript6.psi.ES6ImportDeclaration;
+import com.intellij.lang.ecmascript6.psi.ES6ImportSpecifier;
+import com.intellij.lang.ecmascript6.psi.ES6ImportedBinding;
+import com.intellij.lang.javascript.psi.ecmal4.JSClass;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.psi.util.PsiTreeUtil;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lookup table for the names that are already taken in a directory or file. The class names of a directory and the
+ * imported names of a file are collected once and cached on the directory or file until the PSI is modified.
+ */
+public class NameTable {
+
+    /**
+     * The names in the table
+     */
+    private final Set<String> names;
+
+    /**
+     * Creates a new lookup table for the given names
+     *
+     * @param names the names
+     */
+    private NameTable(Set<String> names) {
+        this.names = names;
+    }
+
+    /**
+     * Returns the lookup table of the names of the classes and interfaces defined in the TypeScript files of the
+     * given directory. The table is cached and only rebuilt if the PSI was modified.
+     *
+     * @param directory the directory
+     * @return the lookup table of the class names
+     */
+    public static NameTable getClassNames(PsiDirectory directory) {
+        return PsiUtil.runReadActionWithResult(() -> CachedValuesManager.getCachedValue(directory, () ->
+                CachedValueProvider.Result.create(buildClassNames(directory), PsiModificationTracker.getInstance(directory.getProject()))));
+    }
+
+    /**
+     * Returns the lookup table of the names imported by the given file. The table is cached and only rebuilt if the
+     * PSI was modified.
+     *
+     * @param file the file
+     * @return the lookup table of the imported names
+     */
+    public static NameTable getImportedNames(PsiFile file) {
+        return PsiUtil.runReadActionWithResult(() -> CachedValuesManager.getCachedValue(file, () ->
+                CachedValueProvider.Result.create(buildImportedNames(file), PsiModificationTracker.getInstance(file.getProject()))));
+    }
+
+    /**
+     * Collects the names of the classes and interfaces defined in the TypeScript files of the directory.
+     * Must be called inside a read action.
+     *
+     * @param directory the directory
+     * @return the lookup table of the class names
+     */
+    private static NameTable buildClassNames(PsiDirectory directory) {
+        Set<String> names = new HashSet<>();
+        for (PsiFile file : directory.getFiles()) {
+            if (!file.getName().endsWith(".ts")) continue;
+            for (JSClass psiClass : PsiTreeUtil.getChildrenOfTypeAsList(file, JSClass.class)) {
+                if (psiClass.getName() != null) names.add(psiClass.getName());
+            }
+        }
+        return new NameTable(names);
+    }
+
+    /**
+     * Collects the names imported by the import declarations of the file. Must be called inside a read action.
+     *
+     * @param file the file
+     * @return the lookup table of the imported names
+     */
+    private static NameTable buildImportedNames(PsiFile file) {
+        Set<String> names = new HashSet<>();
+        for (ES6ImportDeclaration importStatement : PsiTreeUtil.findChildrenOfType(file, ES6ImportDeclaration.class)) {
+            for (ES6ImportSpecifier specifier : importStatement.getImportSpecifiers()) {
+                if (specifier.getDeclaredName() != null) names.add(specifier.getDeclaredName());
+            }
+            for (ES6ImportedBinding binding : importStatement.getImportedBindings()) {
+                if (binding.getName() != null) names.add(binding.getName());
+            }
+        }
+        return new NameTable(names);
+    }
+
+    /**
+     * Checks if the table contains the given name
+     *
+     * @param name the name
+     * @return true if the name is taken, false otherwise
+     */
+    public boolean contains(String name) {
+        return names.contains(name);
+    }
+}
@@ -4,6 +4,7 @@ import com.intellij.lang.javascript.psi.JSType;
 import com.intellij.lang.javascript.psi.ecma6.TypeScriptParameter;
 
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Represents a parameter in a method
@@ -19,6 +20,16 @@ public class Parameter extends Property {
         super(Objects.requireNonNull(PsiUtil.runReadActionWithResult(parameter::getName)), PsiUtil.runReadActionWithResult(parameter::getJSType));
     }
 
+    /**
+     * Creates a new instance of a parameter from stored values
+     *
+     * @param name  The name of the parameter without leading underscore
+     * @param types The types of the parameter
+     */
+    Parameter(String name, Set<String> types) {
+        super(name, types);
+    }
+
     @Override
     public String toString() {
         return this.name;
@@ -0,0 +1,596 @@
+package util;
+
+import Settings.DataClumpSettings;
+import com.google.gson.Gson;
+import com.intellij.lang.javascript.TypeScriptFileType;
+import com.intellij.lang.javascript.psi.JSField;
+import com.intellij.lang.javascript.psi.JSParameterListElement;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptClass;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptField;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptInterface;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptParameter;
+import com.intellij.lang.javascript.psi.ecmal4.JSClass;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import dataclump.DetectionSnapshot;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A PSI-free index of a part of a project, so that the index can be built by several processes and merged afterward.
+ * The files of a project are split into shards by the hash of their path relative to the project root, each process
+ * builds the partial index of one shard and writes it to a file. The merged index contains the postings of all shards
+ * and is used to detect data clumps across the shards without opening the project again.
+ */
+public class PartialIndex {
+
+    /**
+     * The version of the serialized format, partial indexes of another version can not be merged
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    /**
+     * Represents a property of an element
+     *
+     * @param name       the name of the property without leading underscore
+     * @param types      the types of the property
+     * @param field      true if the property is a field, false if it is a parameter
+     * @param visibility the visibility of the field, null for parameters
+     * @param modifiers  the modifiers of the field without the visibility, empty for parameters
+     * @param position   the position of the property in its file
+     */
+    public record PropertyEntry(String name, Set<String> types, boolean field, String visibility,
+                                List<String> modifiers, ReportFormat.Position position) {
+
+        /**
+         * Returns the key of the property in the postings. Properties with the same key are equal in the sense of
+         * {@link Property#equals(Object)}.
+         *
+         * @return the name and the sorted types of the property
+         */
+        public String key() {
+            return name + ":" + String.join("|", new TreeSet<>(types));
+        }
+
+        /**
+         * Returns the modifiers of the property as written in the report, including the visibility
+         *
+         * @return the modifiers including the visibility
+         */
+        public String[] reportModifiers() {
+            List<String> result = new ArrayList<>(modifiers);
+            if (visibility != null) result.add(visibility);
+            return result.toArray(new String[0]);
+        }
+
+        /**
+         * Checks if this field matches the given field with respect to the modifier settings of the detection,
+         * like {@link Classfield#matches(Classfield)}
+         *
+         * @param other             the other field
+         * @param includedModifiers the modifiers that have to match
+         * @return true if the fields match, false otherwise
+         */
+        boolean matches(PropertyEntry other, DataClumpSettings.Modifier includedModifiers) {
+            if (includedModifiers == DataClumpSettings.Modifier.ALL) {
+                return Objects.equals(visibility, other.visibility) && modifiers.equals(other.modifiers);
+            } else if (includedModifiers == DataClumpSettings.Modifier.VISIBILITY) {
+                return Objects.equals(visibility, other.visibility);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Represents a class, interface or function of the index
+     *
+     * @param filePath              the path of the file containing the element
+     * @param name                  the name of the element
+     * @param qualifiedName         the qualified name of the element
+     * @param isClass               true for classes and interfaces, false for functions
+     * @param properties            the fields or parameters of the element
+     * @param containingClass       the qualified name of the class containing the function, null for classes and
+     *                              functions outside of classes
+     * @param inheritedDeclarations for functions the qualified names of the classes and interfaces in the hierarchy of
+     *                              the containing class that declare a function with the same name, for classes the
+     *                              keys of the fields declared by interfaces in the hierarchy of the class, see
+     *                              {@link #getInterfaceFieldKey(String, String)}
+     */
+    public record ElementEntry(String filePath, String name, String qualifiedName, boolean isClass,
+                               List<PropertyEntry> properties, String containingClass,
+                               List<String> inheritedDeclarations) {
+
+        /**
+         * Checks if the two functions are overriding each other or the same function in the hierarchy, like
+         * {@link DetectionSnapshot#isOverriding(TypeScriptFunction, TypeScriptFunction)}
+         *
+         * @param other the other function
+         * @return true if the functions are overriding each other, false otherwise
+         */
+        boolean isOverriding(ElementEntry other) {
+            if (isClass || other.isClass || !name.equals(other.name)) return false;
+            if (containingClass == null || other.containingClass == null || containingClass.equals(other.containingClass))
+                return false;
+            return !Collections.disjoint(inheritedDeclarations, other.inheritedDeclarations);
+        }
+
+        /**
+         * Checks if the field is inherited by the same interface in the two classes, like
+         * {@link DetectionSnapshot#inheritedBySameInterface(JSClass, JSClass, String)}
+         *
+         * @param other     the other class
+         * @param fieldName the name of the field
+         * @return true if the field is inherited by the same interface in the two classes, false otherwise
+         */
+        boolean inheritedBySameInterface(ElementEntry other, String fieldName) {
+            if (!isClass || !other.isClass) return false;
+            for (String key : inheritedDeclarations) {
+                if (key.endsWith(INTERFACE_FIELD_SEPARATOR + fieldName) && other.inheritedDeclarations.contains(key))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Separates the name of an interface from the name of its field in the keys of inherited fields
+     */
+    private static final String INTERFACE_FIELD_SEPARATOR = "#";
+
+    /**
+     * The version of the format the index was written with
+     */
+    private int formatVersion = FORMAT_VERSION;
+
+    /**
+     * The shards contained in this index
+     */
+    private final TreeSet<Integer> shards = new TreeSet<>();
+
+    /**
+     * The number of shards the project was split into
+     */
+    private int shardCount;
+
+    /**
+     * The elements of the index
+     */
+    private final List<ElementEntry> elements = new ArrayList<>();
+
+    /**
+     * Maps the key of a property to the positions of the elements in {@link #elements} that contain it
+     */
+    private final HashMap<String, List<Integer>> postings = new HashMap<>();
+
+    /**
+     * The number of TypeScript files, classes and interfaces, methods, fields and method parameters in the index
+     */
+    private int numberOfFiles, numberOfClassesOrInterfaces, numberOfMethods, numberOfDataFields, numberOfMethodParameters;
+
+    /**
+     * Checks if the file with the given path belongs to the given shard. The relative path is used, so that all
+     * processes agree on the shards independent of where the project is checked out.
+     *
+     * @param relativePath the path of the file relative to the project root
+     * @param shard        the shard
+     * @param shardCount   the number of shards
+     * @return true if the file belongs to the shard, false otherwise
+     */
+    public static boolean isInShard(String relativePath, int shard, int shardCount) {
+        return Math.floorMod(relativePath.hashCode(), shardCount) == shard;
+    }
+
+    /**
+     * Creates the partial index of a shard from elements that were already collected
+     *
+     * @param shard      the shard, between 0 and shardCount - 1
+     * @param shardCount the number of shards
+     * @param elements   the elements of the shard
+     * @return the partial index of the shard
+     */
+    static PartialIndex of(int shard, int shardCount, List<ElementEntry> elements) {
+        PartialIndex index = new PartialIndex();
+        index.shards.add(shard);
+        index.shardCount = shardCount;
+        for (ElementEntry element : elements) {
+            index.add(element);
+        }
+        return index;
+    }
+
+    /**
+     * Builds the partial index of the given shard of the project. The project must be in smart mode.
+     *
+     * @param project    the project
+     * @param shard      the shard to build, between 0 and shardCount - 1
+     * @param shardCount the number of shards
+     * @return the partial index of the shard
+     */
+    public static PartialIndex build(Project project, int shard, int shardCount) {
+        PartialIndex index = new PartialIndex();
+        index.shards.add(shard);
+        index.shardCount = shardCount;
+
+        String basePath = project.getBasePath() == null ? "" : project.getBasePath();
+        PsiManager manager = PsiManager.getInstance(project);
+
+        Collection<VirtualFile> typescriptFiles = PsiUtil.runReadActionWithResult(() -> FileTypeIndex.getFiles(TypeScriptFileType.INSTANCE, GlobalSearchScope.projectScope(project)));
+        for (VirtualFile virtualFile : typescriptFiles) {
+            String path = virtualFile.getPath();
+            String relativePath = path.startsWith(basePath) ? path.substring(basePath.length()) : path;
+            if (!isInShard(relativePath, shard, shardCount)) continue;
+
+            index.numberOfFiles++;
+            PsiUtil.runReadActionWithResult(() -> {
+                PsiFile psiFile = manager.findFile(virtualFile);
+                if (psiFile == null) return null;
+                Document document = PsiDocumentManager.getInstance(project).getDocument(psiFile);
+                if (document == null) return null;
+
+                for (TypeScriptFunction function : PsiTreeUtil.findChildrenOfType(psiFile, TypeScriptFunction.class)) {
+                    if (function.isConstructor()) continue;
+                    index.numberOfMethods++;
+                    index.add(createFunctionEntry(path, function, document));
+                }
+                for (PsiElement element : PsiTreeUtil.collectElements(psiFile, element -> element instanceof TypeScriptClass || element instanceof TypeScriptInterface)) {
+                    index.numberOfClassesOrInterfaces++;
+                    index.add(createClassEntry(path, (JSClass) element, document));
+                }
+                return null;
+            });
+        }
+
+        CodeSmellLogger.info("Built shard " + shard + "/" + shardCount + " with " + index.elements.size() + " elements from " + index.numberOfFiles + " files.");
+        return index;
+    }
+
+    /**
+     * Creates the entry of a function. Must be called inside a read action.
+     *
+     * @param path     the path of the file
+     * @param function the function
+     * @param document the document of the file
+     * @return the entry of the function
+     */
+    private static ElementEntry createFunctionEntry(String path, TypeScriptFunction function, Document document) {
+        List<PropertyEntry> properties = new ArrayList<>();
+        for (JSParameterListElement psiParameter : function.getParameters()) {
+            // invalid / incomplete Parameter
+            if (!(psiParameter instanceof TypeScriptParameter) || psiParameter.getName() == null || psiParameter.getJSType() == null)
+                continue;
+            Parameter parameter = new Parameter((TypeScriptParameter) psiParameter);
+            properties.add(new PropertyEntry(parameter.getName(), parameter.getTypes(), false, null, List.of(), getPosition(psiParameter, document)));
+        }
+
+        String containingClass = null;
+        Set<String> inheritedDeclarations = new LinkedHashSet<>();
+        JSClass psiClass = PsiTreeUtil.getParentOfType(function, JSClass.class);
+        if (psiClass != null) {
+            containingClass = PsiUtil.getQualifiedName(psiClass);
+            for (JSClass superClass : DetectionSnapshot.resolveHierarchy(psiClass)) {
+                String superClassName = PsiUtil.getQualifiedName(superClass);
+                if (superClassName != null && superClass.findFunctionByName(function.getName()) != null) {
+                    inheritedDeclarations.add(superClassName);
+                }
+            }
+        }
+        return new ElementEntry(path, PsiUtil.getName(function), PsiUtil.getQualifiedName(function), false, properties,
+                containingClass, new ArrayList<>(inheritedDeclarations));
+    }
+
+    /**
+     * Creates the entry of a class or interface, containing its fields and the constructor parameters that define
+     * fields. Must be called inside a read action.
+     *
+     * @param path     the path of the file
+     * @param psiClass the class or interface
+     * @param document the document of the file
+     * @return the entry of the class
+     */
+    private static ElementEntry createClassEntry(String path, JSClass psiClass, Document document) {
+        List<PropertyEntry> properties = new ArrayList<>();
+        for (JSField psiField : psiClass.getFields()) {
+            if (!(psiField instanceof TypeScriptField) || psiField.getName() == null || psiField.getJSType() == null)
+                continue;
+            Classfield classfield = new Classfield((TypeScriptField) psiField);
+            properties.add(new PropertyEntry(classfield.getName(), classfield.getTypes(), true, classfield.getVisibility(), classfield.getModifiers(), getPosition(psiField, document)));
+        }
+
+        TypeScriptFunction constructor = (TypeScriptFunction) psiClass.getConstructor();
+        if (constructor != null) {
+            for (JSParameterListElement psiParameter : constructor.getParameters()) {
+                if (!(psiParameter instanceof TypeScriptParameter) || psiParameter.getName() == null || psiParameter.getJSType() == null)
+                    continue;
+                if (!PsiUtil.isParameterField((TypeScriptParameter) psiParameter)) continue;
+                Classfield classfield = new Classfield((TypeScriptParameter) psiParameter);
+                properties.add(new PropertyEntry(classfield.getName(), classfield.getTypes(), true, classfield.getVisibility(), classfield.getModifiers(), getPosition(psiParameter, document)));
+            }
+        }
+
+        // the fields declared by interfaces in the hierarchy, also if the class is an interface itself
+        Set<String> inheritedDeclarations = new LinkedHashSet<>();
+        for (JSClass superClass : DetectionSnapshot.resolveHierarchy(psiClass)) {
+            if (!(superClass instanceof TypeScriptInterface)) continue;
+            String interfaceName = PsiUtil.getQualifiedName(superClass);
+            if (interfaceName == null) continue;
+            for (PropertyEntry property : properties) {
+                if (superClass.findFieldByName(property.name()) != null) {
+                    inheritedDeclarations.add(getInterfaceFieldKey(interfaceName, property.name()));
+                }
+            }
+        }
+        return new ElementEntry(path, PsiUtil.getName(psiClass), PsiUtil.getQualifiedName(psiClass), true, properties,
+                null, new ArrayList<>(inheritedDeclarations));
+    }
+
+    /**
+     * Returns the key of a field declared by an interface
+     *
+     * @param interfaceName the qualified name of the interface
+     * @param fieldName     the name of the field
+     * @return the key of the field
+     */
+    static String getInterfaceFieldKey(String interfaceName, String fieldName) {
+        return interfaceName + INTERFACE_FIELD_SEPARATOR + fieldName;
+    }
+
+    /**
+     * Returns the position of the given element as used in the report, with lines starting at 1
+     *
+     * @param element  the element
+     * @param document the document of the file
+     * @return the position of the element
+     */
+    private static ReportFormat.Position getPosition(PsiElement element, Document document) {
+        TextRange range = element.getTextRange();
+        int startLine = document.getLineNumber(range.getStartOffset());
+        int endLine = document.getLineNumber(range.getEndOffset());
+        return new ReportFormat.Position(startLine + 1, range.getStartOffset() - document.getLineStartOffset(startLine),
+                endLine + 1, range.getEndOffset() - document.getLineStartOffset(endLine));
+    }
+
+    /**
+     * Adds the given element and its postings to the index
+     *
+     * @param element the element
+     */
+    private void add(ElementEntry element) {
+        int position = elements.size();
+        elements.add(element);
+        for (PropertyEntry property : element.properties()) {
+            List<Integer> posting = postings.computeIfAbsent(property.key(), key -> new ArrayList<>());
+            // a property occurs only once per element
+            if (posting.isEmpty() || posting.get(posting.size() - 1) != position) posting.add(position);
+            if (element.isClass()) {
+                numberOfDataFields++;
+            } else {
+                numberOfMethodParameters++;
+            }
+        }
+    }
+
+    /**
+     * Merges the given partial indexes into one index. The postings are rebuilt from the elements, so that the
+     * positions refer to the merged list of elements. Missing or duplicate shards are logged.
+     *
+     * @param partialIndexes the partial indexes of the shards
+     * @return the merged index
+     */
+    public static PartialIndex merge(List<PartialIndex> partialIndexes) {
+        PartialIndex merged = new PartialIndex();
+        for (PartialIndex partialIndex : partialIndexes) {
+            if (merged.shardCount != 0 && merged.shardCount != partialIndex.shardCount) {
+                CodeSmellLogger.warn("Merging shards of different splits: " + merged.shardCount + " and " + partialIndex.shardCount);
+            }
+            merged.shardCount = Math.max(merged.shardCount, partialIndex.shardCount);
+
+            for (int shard : partialIndex.shards) {
+                if (!merged.shards.add(shard)) CodeSmellLogger.warn("Shard " + shard + " is merged twice.");
+            }
+            for (ElementEntry element : partialIndex.elements) {
+                merged.add(element);
+            }
+            merged.numberOfFiles += partialIndex.numberOfFiles;
+            merged.numberOfClassesOrInterfaces += partialIndex.numberOfClassesOrInterfaces;
+            merged.numberOfMethods += partialIndex.numberOfMethods;
+        }
+
+        if (merged.shards.size() < merged.shardCount) {
+            CodeSmellLogger.warn("Only " + merged.shards.size() + " of " + merged.shardCount + " shards were merged.");
+        }
+        return merged;
+    }
+
+    /**
+     * Detects the data clumps between all elements of the index, including elements of different shards.
+     * The detection follows the rules of the inspection: the elements must share the required minimum of properties,
+     * static fields are ignored, fields must match with respect to the modifier settings, functions overriding each
+     * other are skipped and fields inherited from the same interface are not compared. The hierarchy needed for the
+     * last two rules is resolved when the shards are built.
+     *
+     * @return the data clumps mapped to their key
+     */
+    public HashMap<String, ReportFormat.DataClumpTypeContext> detectDataClumps() {
+        DataClumpSettings.State settings = Objects.requireNonNull(DataClumpSettings.getInstance().getState());
+        return detectDataClumps(settings.minNumberOfProperties, settings.includeModifiersInDetection);
+    }
+
+    /**
+     * Detects the data clumps between all elements of the index with the given settings
+     *
+     * @param minNumberOfProperties the minimum number of shared properties of a data clump
+     * @param includedModifiers     the modifiers that have to match between fields
+     * @return the data clumps mapped to their key
+     */
+    HashMap<String, ReportFormat.DataClumpTypeContext> detectDataClumps(int minNumberOfProperties, DataClumpSettings.Modifier includedModifiers) {
+        HashMap<String, ReportFormat.DataClumpTypeContext> dataClumps = new HashMap<>();
+
+        for (int current = 0; current < elements.size(); current++) {
+            ElementEntry currentElement = elements.get(current);
+            List<PropertyEntry> currentProperties = getCandidateProperties(currentElement);
+            if (currentProperties.size() < minNumberOfProperties) continue;
+
+            // count the shared properties with all other elements using the postings
+            HashMap<Integer, Integer> sharedProperties = new HashMap<>();
+            for (PropertyEntry property : currentProperties) {
+                for (int other : postings.getOrDefault(property.key(), List.of())) {
+                    if (other != current) sharedProperties.merge(other, 1, Integer::sum);
+                }
+            }
+
+            for (Map.Entry<Integer, Integer> shared : sharedProperties.entrySet()) {
+                if (shared.getValue() < minNumberOfProperties) continue;
+                ElementEntry otherElement = elements.get(shared.getKey());
+                if (currentElement.isOverriding(otherElement)) continue;
+
+                List<PropertyEntry[]> matchingProperties = getMatchingProperties(currentElement, currentProperties, otherElement, includedModifiers);
+                if (matchingProperties.size() < minNumberOfProperties) continue;
+
+                ReportFormat.DataClumpTypeContext context = ReportFormat.getDataClumpsTypeContext(currentElement, otherElement, matchingProperties);
+                dataClumps.put(context.key(), context);
+            }
+        }
+        return dataClumps;
+    }
+
+    /**
+     * Returns the properties of the element that can be part of a data clump
+     *
+     * @param element the element
+     * @return the properties without static fields
+     */
+    private static List<PropertyEntry> getCandidateProperties(ElementEntry element) {
+        List<PropertyEntry> properties = new ArrayList<>();
+        for (PropertyEntry property : element.properties()) {
+            if (!property.modifiers().contains("static")) properties.add(property);
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the pairs of matching properties of the current and the other element
+     *
+     * @param currentElement    the current element
+     * @param currentProperties the candidate properties of the current element
+     * @param otherElement      the other element
+     * @param includedModifiers the modifiers that have to match between fields
+     * @return the matching properties, the property of the current element first
+     */
+    private static List<PropertyEntry[]> getMatchingProperties(ElementEntry currentElement, List<PropertyEntry> currentProperties, ElementEntry otherElement, DataClumpSettings.Modifier includedModifiers) {
+        HashMap<String, PropertyEntry> otherProperties = new HashMap<>();
+        for (PropertyEntry property : getCandidateProperties(otherElement)) {
+            otherProperties.putIfAbsent(property.key(), property);
+        }
+
+        List<PropertyEntry[]> matchingProperties = new ArrayList<>();
+        for (PropertyEntry property : currentProperties) {
+            PropertyEntry otherProperty = otherProperties.get(property.key());
+            if (otherProperty == null) continue;
+            if (property.field() && otherProperty.field() && !property.matches(otherProperty, includedModifiers)) continue;
+            if (currentElement.inheritedBySameInterface(otherElement, property.name())) continue;
+            matchingProperties.add(new PropertyEntry[]{property, otherProperty});
+        }
+        return matchingProperties;
+    }
+
+    /**
+     * Writes the index to the given file
+     *
+     * @param path the path of the file
+     * @throws IOException if the file could not be written
+     */
+    public void write(Path path) throws IOException {
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            new Gson().toJson(this, writer);
+        }
+    }
+
+    /**
+     * Reads an index from the given file
+     *
+     * @param path the path of the file
+     * @return the index
+     * @throws IOException if the file could not be read or was written with another format version
+     */
+    public static PartialIndex read(Path path) throws IOException {
+        PartialIndex index;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            index = new Gson().fromJson(reader, PartialIndex.class);
+        }
+        if (index == null || index.formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported partial index format in " + path);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the elements of the index
+     *
+     * @return the elements
+     */
+    public List<ElementEntry> getElements() {
+        return elements;
+    }
+
+    /**
+     * Returns the number of TypeScript files in the index
+     *
+     * @return the number of files
+     */
+    public int getNumberOfFiles() {
+        return numberOfFiles;
+    }
+
+    /**
+     * Returns the number of classes and interfaces in the index
+     *
+     * @return the number of classes and interfaces
+     */
+    public int getNumberOfClassesOrInterfaces() {
+        return numberOfClassesOrInterfaces;
+    }
+
+    /**
+     * Returns the number of methods in the index, constructors excluded
+     *
+     * @return the number of methods
+     */
+    public int getNumberOfMethods() {
+        return numberOfMethods;
+    }
+
+    /**
+     * Returns the number of fields in the index
+     *
+     * @return the number of fields
+     */
+    public int getNumberOfDataFields() {
+        return numberOfDataFields;
+    }
+
+    /**
+     * Returns the number of method parameters in the index
+     *
+     * @return the number of method parameters
+     */
+    public int getNumberOfMethodParameters() {
+        return numberOfMethodParameters;
+    }
+}
@@ -41,6 +41,17 @@ public abstract class Property {
 
     }
 
+    /**
+     * Creates a new instance of a property from stored values, e.g. when the index is restored from a snapshot
+     *
+     * @param name  The name of the property without leading underscore
+     * @param types The types of the property
+     */
+    protected Property(String name, Set<String> types) {
+        this.name = name;
+        this.types = new HashSet<>(types);
+    }
+
     public String getName() {
         return name;
     }
@@ -58,6 +69,17 @@ public abstract class Property {
         return name.hashCode() + types.hashCode();
     }
 
+    /**
+     * Checks if everything the detection compares for this property is the same for another property.
+     * Unlike {@link #equals(Object)} this can include more than the name and the types.
+     *
+     * @param property the property to compare to
+     * @return true if the properties have the same signature, false otherwise
+     */
+    public boolean hasSameSignature(Property property) {
+        return equals(property);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof Property otherProperty)) return false;
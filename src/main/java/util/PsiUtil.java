@@ -728,12 +728,7 @@ public class PsiUtil {
      * @return The classfield with the given name in the given class. Null if the field is not found.
      */
     public static Classfield getClassfield(TypeScriptClass psiClass, String fieldName) {
-
-        for (Classfield classfield : getClassfields(psiClass)) {
-            if (classfield.getName().equals(fieldName)) return classfield;
-        }
-
-        return null;
+        return FieldTable.getInstance(psiClass).getClassfield(fieldName);
     }
 
     /**
@@ -744,14 +739,9 @@ public class PsiUtil {
      * @return The PsiElement that corresponds to the given classfield. Null if the classfield is not found.
      */
     public static @Nullable PsiElement getPsiField(JSClass psiClass, Classfield classfield) {
-        for (PsiElement element : getPsiFields(psiClass)) {
-            if (element instanceof TypeScriptField field && classfield.matches(new Classfield(field))) {
-                return field;
-            }
-            if (element instanceof TypeScriptParameter parameter && classfield.matches(new Classfield(parameter))) {
-                return parameter;
-            }
-        }
+        PsiElement psiField = FieldTable.getInstance(psiClass).getPsiField(classfield);
+        if (psiField != null) return psiField;
+
         CodeSmellLogger.warn("Field " + classfield.getName() + " not found in class " + runReadActionWithResult(psiClass::getName));
         return null;
     }
@@ -764,18 +754,8 @@ public class PsiUtil {
      * @return The PsiElement that corresponds to the given name. Null if the property is not found.
      */
     public static PsiElement getPsiField(JSClass psiClass, String name) {
-        for (PsiElement element : getPsiFields(psiClass)) {
-            Classfield classfield = null;
-            if (element instanceof TypeScriptField field) {
-                classfield = new Classfield(field);
-            } else if (element instanceof TypeScriptParameter parameter) {
-                classfield = new Classfield(parameter);
-            }
-            assert classfield != null;
-            if (classfield.getName().equals(name)) {
-                return element;
-            }
-        }
+        PsiElement psiField = FieldTable.getInstance(psiClass).getPsiField(name);
+        if (psiField != null) return psiField;
 
         CodeSmellLogger.warn("Field " + name + " not found in class " + runReadActionWithResult(psiClass::getName));
         return null;
@@ -935,7 +915,8 @@ public class PsiUtil {
      */
     public static boolean hasAll(TypeScriptClass psiClass, List<Property> properties) {
 
-        List<Classfield> classProperties = Index.getClassesToClassFields().get(psiClass);
+        List<Classfield> classProperties = Index.getInstance(psiClass).getClassfields(psiClass);
+        if (classProperties == null) return false;
 
         for (Property property : properties) {
             if (!classProperties.contains(property)) return false;
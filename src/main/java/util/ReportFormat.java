@@ -160,6 +160,71 @@ public class ReportFormat {
 
     }
 
+    /**
+     * Creates the context for the data clumps report from the elements of a partial index, without accessing the PSI
+     *
+     * @param fromElement the element from which the data clump originates
+     * @param toElement   the element to which the data clump leads
+     * @param variables   the matching variables, the variable of the from element first
+     * @return the context for the data clumps report
+     */
+    public static DataClumpTypeContext getDataClumpsTypeContext(PartialIndex.ElementEntry fromElement, PartialIndex.ElementEntry toElement, List<PartialIndex.PropertyEntry[]> variables) {
+
+        Map<String, ReportFormat.DataClumpsVariableFromContext> dataClumpsVariables = new HashMap<>();
+        for (PartialIndex.PropertyEntry[] variable : variables) {
+            PartialIndex.PropertyEntry fromVariable = variable[0];
+            PartialIndex.PropertyEntry toVariable = variable[1];
+
+            ReportFormat.DataClumpsVariableToContext toContext = new ReportFormat.DataClumpsVariableToContext(
+                    toElement.qualifiedName() + "." + toVariable.name(),
+                    toVariable.name(),
+                    String.join("|", toVariable.types()),
+                    toVariable.reportModifiers(),
+                    toVariable.position()
+            );
+
+            ReportFormat.DataClumpsVariableFromContext dataClumpVariable = new ReportFormat.DataClumpsVariableFromContext(
+                    fromElement.qualifiedName() + "." + fromVariable.name(),
+                    fromVariable.name(),
+                    String.join("|", fromVariable.types()),
+                    fromVariable.reportModifiers(),
+                    fromVariable.position(),
+                    1,
+                    toContext
+            );
+
+            dataClumpsVariables.put(fromVariable.name(), dataClumpVariable);
+        }
+
+        // determine the type of the data clump
+        String dataClumpType;
+        if (!fromElement.isClass() && !toElement.isClass()) {
+            dataClumpType = "parameters_to_parameters";
+        } else if (!fromElement.isClass() || !toElement.isClass()) {
+            dataClumpType = "parameters_to_fields";
+        } else {
+            dataClumpType = "fields_to_fields";
+        }
+
+        return new DataClumpTypeContext(
+                "data_clump",
+                fromElement.qualifiedName() + "-" + toElement.qualifiedName(),
+                1.0,
+                fromElement.filePath(),
+                fromElement.isClass() ? fromElement.name() : null,
+                fromElement.isClass() ? fromElement.qualifiedName() : null,
+                !fromElement.isClass() ? fromElement.name() : null,
+                !fromElement.isClass() ? fromElement.qualifiedName() : null,
+                toElement.filePath(),
+                toElement.isClass() ? toElement.name() : null,
+                toElement.isClass() ? toElement.qualifiedName() : null,
+                !toElement.isClass() ? toElement.name() : null,
+                !toElement.isClass() ? toElement.qualifiedName() : null,
+                dataClumpType,
+                dataClumpsVariables
+        );
+    }
+
     /**
      * This type encapsulates the context of multiple data clumps. It includes the report's version,
      * the options used during the data clump analysis, and a dictionary mapping keys to data clump contexts.
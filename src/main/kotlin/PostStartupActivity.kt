@@ -3,6 +3,7 @@ import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.project.DumbService
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.startup.ProjectActivity
+import evoluation.CommandLineAnalyzer
 import evoluation.DiagnosticTool
 import groovyjarjarantlr.DiagnosticCodeGenerator
 import util.Index
@@ -14,13 +15,16 @@ class PostStartupActivity : ProjectActivity {
 
     /**
      * This method is called after the project is loaded. It is used to reset the index.
+     * A shard process indexes its files itself, so the index of the whole project is not built there.
      */
     override suspend fun execute(project: Project) {
+        if (CommandLineAnalyzer.isShardMode()) return
+
         val dumbService = DumbService.getInstance(project)
 
         // Ensure that Index.resetIndex is executed after indexing
         dumbService.runWhenSmart {
-            Index.resetIndex(project)
+            Index.getInstance(project).resetIndex()
         }
     }
 }
@@ -0,0 +1,79 @@
+package dataclump;
+
+import org.junit.Test;
+import util.DataStreams;
+import util.FileStamp;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the analysis state is only restored for the same report and detector options. When the result of a file
+ * is up to date is tested by {@link util.FileStampTest}.
+ */
+public class AnalysisStateTest {
+
+    /**
+     * The path of the report the state belongs to
+     */
+    private static final String REPORT_PATH = "/reports/data-clumps.json";
+
+    /**
+     * The detector options the report is created with
+     */
+    private static final Map<String, String> OPTIONS = Map.of("minNumberOfProperties", "3", "includeModifiersInDetection", "ALL");
+
+    /**
+     * Writes the state and reads it again for the given report and options
+     *
+     * @param state      the state
+     * @param reportPath the path of the report that is written next
+     * @param options    the detector options the next report is created with
+     * @return the restored state or null if it does not belong to the report and options
+     * @throws IOException if the state could not be written or read
+     */
+    private static AnalysisState writeAndRead(AnalysisState state, String reportPath, Map<String, String> options) throws IOException {
+        try (DataInputStream in = DataStreams.read(DataStreams.write(state::write))) {
+            return AnalysisState.read(in, reportPath, options);
+        }
+    }
+
+    @Test
+    public void readsWrittenResults() throws IOException {
+        AnalysisState state = new AnalysisState(REPORT_PATH, OPTIONS);
+        AnalysisState.FileResult point = new AnalysisState.FileResult(new FileStamp(1000, 120), 1, 2, 3, 4);
+        AnalysisState.FileResult vector = new AnalysisState.FileResult(new FileStamp(2000, 80), 0, 5, 0, 9);
+        state.put("/src/Point.ts", point);
+        state.put("/src/Vector.ts", vector);
+
+        AnalysisState restored = writeAndRead(state, REPORT_PATH, OPTIONS);
+
+        assertNotNull(restored);
+        assertEquals(Set.of("/src/Point.ts", "/src/Vector.ts"), restored.getPaths());
+        assertEquals(point, restored.get("/src/Point.ts"));
+        assertEquals(vector, restored.get("/src/Vector.ts"));
+    }
+
+    @Test
+    public void ignoresOrderOfOptions() throws IOException {
+        AnalysisState restored = writeAndRead(new AnalysisState(REPORT_PATH, OPTIONS), REPORT_PATH,
+                Map.of("includeModifiersInDetection", "ALL", "minNumberOfProperties", "3"));
+
+        assertNotNull(restored);
+    }
+
+    @Test
+    public void ignoresStateOfAnotherReport() throws IOException {
+        assertNull(writeAndRead(new AnalysisState(REPORT_PATH, OPTIONS), "/reports/other.json", OPTIONS));
+    }
+
+    @Test
+    public void ignoresStateOfOtherOptions() throws IOException {
+        assertNull(writeAndRead(new AnalysisState(REPORT_PATH, OPTIONS), REPORT_PATH,
+                Map.of("minNumberOfProperties", "4", "includeModifiersInDetection", "ALL")));
+    }
+}
@@ -0,0 +1,83 @@
+package dataclump;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the rewriting of argument lists with {@link DataClumpRefactoring.ArgumentTemplate}
+ */
+public class ArgumentTemplateTest {
+
+    /**
+     * Creates the template for calls of f(a, b, c) that become f(new Data(a, b), c)
+     *
+     * @return the template
+     */
+    private static DataClumpRefactoring.ArgumentTemplate extractFirstTwo() {
+        return new DataClumpRefactoring.ArgumentTemplateBuilder(3)
+                .open("")
+                .open("new Data")
+                .argument(0)
+                .argument(1)
+                .close()
+                .argument(2)
+                .close()
+                .build();
+    }
+
+    @Test
+    public void wrapsExtractedArguments() {
+        assertEquals("(new Data(a, b), c)", extractFirstTwo().apply(new String[]{"a", "b", "c"}));
+    }
+
+    @Test
+    public void reordersArguments() {
+        DataClumpRefactoring.ArgumentTemplate template = new DataClumpRefactoring.ArgumentTemplateBuilder(3)
+                .open("")
+                .argument(2)
+                .open("new Data")
+                .argument(1)
+                .argument(0)
+                .close()
+                .close()
+                .build();
+
+        assertEquals("(z, new Data(y, x))", template.apply(new String[]{"x", "y", "z"}));
+    }
+
+    @Test
+    public void insertsFixedText() {
+        DataClumpRefactoring.ArgumentTemplate template = new DataClumpRefactoring.ArgumentTemplateBuilder(1)
+                .open("")
+                .open("new Data")
+                .argument(0)
+                .text("0")
+                .close()
+                .close()
+                .build();
+
+        assertEquals("(new Data(a, 0))", template.apply(new String[]{"a"}));
+    }
+
+    @Test
+    public void passesMissingArgumentsAsUndefined() {
+        assertEquals("(new Data(a, undefined), undefined)", extractFirstTwo().apply(new String[]{"a"}));
+    }
+
+    @Test
+    public void keepsArgumentTexts() {
+        assertEquals("(new Data(x + 1, g(y, z)), \"c, d\")", extractFirstTwo().apply(new String[]{"x + 1", "g(y, z)", "\"c, d\""}));
+    }
+
+    @Test
+    public void rejectsMoreArgumentsThanParameters() {
+        assertNull(extractFirstTwo().apply(new String[]{"a", "b", "c", "d"}));
+    }
+
+    @Test
+    public void rejectsSpreadArguments() {
+        assertNull(extractFirstTwo().apply(new String[]{"a", "...rest"}));
+    }
+}
@@ -0,0 +1,205 @@
+package dataclump;
+
+import com.intellij.openapi.util.TextRange;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests how the incomplete edits of an interrupted refactoring are located in the current text of a file and when
+ * the refactoring can be resumed
+ */
+public class RefactoringJournalTest {
+
+    /**
+     * The text of the file at the start of the batch
+     */
+    private static final String TEXT = "let a = 1; let b = 2; let c = 3;";
+
+    /**
+     * The text after the edit of the value of a was applied
+     */
+    private static final String EDITED_TEXT = "let a = 100; let b = 2; let c = 3;";
+
+    /**
+     * The change the edit of the value of a made
+     */
+    private static final RefactoringJournal.Change CHANGE = new RefactoringJournal.Change(8, 1, "100");
+
+    /**
+     * Creates a recorded edit
+     *
+     * @param id              the id of the edit
+     * @param start           the start offset of the edit at the start of the batch
+     * @param end             the end offset of the edit at the start of the batch
+     * @param replacementText the recorded replacement, null if the edit contains other edits
+     * @return the edit
+     */
+    private static RefactoringJournal.Entry edit(int id, int start, int end, String replacementText) {
+        RefactoringJournal.Entry entry = new RefactoringJournal.Entry();
+        entry.type = RefactoringJournal.Type.EDIT;
+        entry.id = id;
+        entry.start = start;
+        entry.end = end;
+        entry.originalText = TEXT.substring(start, end);
+        entry.replacementText = replacementText;
+        return entry;
+    }
+
+    @Test
+    public void mapsRangeBehindChange() {
+        assertEquals(new TextRange(21, 22), RefactoringJournal.Recovery.mapRange(19, 20, List.of(CHANGE)));
+    }
+
+    @Test
+    public void keepsRangeBeforeChange() {
+        assertEquals(new TextRange(4, 5), RefactoringJournal.Recovery.mapRange(4, 5, List.of(CHANGE)));
+        assertEquals(new TextRange(4, 8), RefactoringJournal.Recovery.mapRange(4, 8, List.of(CHANGE)));
+    }
+
+    @Test
+    public void rejectsRangeOverlappingChange() {
+        assertNull(RefactoringJournal.Recovery.mapRange(6, 9, List.of(CHANGE)));
+        assertNull(RefactoringJournal.Recovery.mapRange(8, 9, List.of(CHANGE)));
+    }
+
+    @Test
+    public void mapsRangeThroughChangesInOrder() {
+        // the second change refers to the text after the first one
+        List<RefactoringJournal.Change> changes = List.of(CHANGE, new RefactoringJournal.Change(0, 3, "const"));
+        assertEquals(new TextRange(23, 24), RefactoringJournal.Recovery.mapRange(19, 20, changes));
+    }
+
+    @Test
+    public void locatesEditsInDescendingOrder() {
+        RefactoringJournal.Entry b = edit(1, 19, 20, "4");
+        RefactoringJournal.Entry c = edit(2, 30, 31, "5");
+        List<RefactoringJournal.Entry> unresolved = new ArrayList<>();
+
+        LinkedHashMap<RefactoringJournal.Entry, TextRange> located = RefactoringJournal.Recovery.locate(EDITED_TEXT, List.of(b, c), List.of(CHANGE), unresolved);
+
+        assertNotNull(located);
+        assertEquals(List.of(c, b), new ArrayList<>(located.keySet()));
+        assertEquals(new TextRange(32, 33), located.get(c));
+        assertEquals(new TextRange(21, 22), located.get(b));
+        assertTrue(unresolved.isEmpty());
+    }
+
+    @Test
+    public void rejectsTextWithoutAppliedChanges() {
+        List<RefactoringJournal.Entry> unresolved = new ArrayList<>();
+        assertNull(RefactoringJournal.Recovery.locate(TEXT, List.of(edit(1, 19, 20, "4")), List.of(CHANGE), unresolved));
+    }
+
+    @Test
+    public void reportsEditsWhoseTextChanged() {
+        RefactoringJournal.Entry b = edit(1, 19, 20, "4");
+        List<RefactoringJournal.Entry> unresolved = new ArrayList<>();
+
+        LinkedHashMap<RefactoringJournal.Entry, TextRange> located = RefactoringJournal.Recovery.locate(EDITED_TEXT.replace("b = 2", "b = 7"), List.of(b), List.of(CHANGE), unresolved);
+
+        assertNotNull(located);
+        assertTrue(located.isEmpty());
+        assertEquals(List.of(b), unresolved);
+    }
+
+    @Test
+    public void reportsEditsOverlappingAppliedChanges() {
+        RefactoringJournal.Entry a = edit(1, 4, 9, "x = 2");
+        List<RefactoringJournal.Entry> unresolved = new ArrayList<>();
+
+        LinkedHashMap<RefactoringJournal.Entry, TextRange> located = RefactoringJournal.Recovery.locate(EDITED_TEXT, List.of(a), List.of(CHANGE), unresolved);
+
+        assertNotNull(located);
+        assertTrue(located.isEmpty());
+        assertEquals(List.of(a), unresolved);
+    }
+
+    /**
+     * Creates an entry without data
+     *
+     * @param type the type of the entry
+     * @return the entry
+     */
+    private static RefactoringJournal.Entry entry(RefactoringJournal.Type type) {
+        RefactoringJournal.Entry entry = new RefactoringJournal.Entry();
+        entry.type = type;
+        return entry;
+    }
+
+    /**
+     * Creates the entry of an applied or failed edit
+     *
+     * @param type the type of the entry
+     * @param id   the id of the edit
+     * @return the entry
+     */
+    private static RefactoringJournal.Entry result(RefactoringJournal.Type type, int id) {
+        RefactoringJournal.Entry entry = entry(type);
+        entry.id = id;
+        return entry;
+    }
+
+    @Test
+    public void resumesRefactoringInterruptedAfterAllSteps() {
+        RefactoringJournal.Recovery recovery = new RefactoringJournal.Recovery(null, null, List.of(
+                entry(RefactoringJournal.Type.BEGIN), entry(RefactoringJournal.Type.END), entry(RefactoringJournal.Type.BATCH),
+                edit(1, 8, 9, "100"), edit(2, 19, 20, "4"), result(RefactoringJournal.Type.APPLIED, 1)));
+
+        assertTrue(recovery.canResume());
+        assertEquals(1, recovery.getIncompleteEditCount());
+    }
+
+    @Test
+    public void doesNotResumeRefactoringWithUnrecordedSteps() {
+        // the steps after the interruption are not in the journal
+        RefactoringJournal.Recovery recovery = new RefactoringJournal.Recovery(null, null, List.of(
+                entry(RefactoringJournal.Type.BEGIN), entry(RefactoringJournal.Type.BATCH),
+                edit(1, 8, 9, "100"), edit(2, 19, 20, "4"), result(RefactoringJournal.Type.APPLIED, 1)));
+
+        assertFalse(recovery.canResume());
+        assertEquals(1, recovery.resume());
+    }
+
+    @Test
+    public void doesNotResumeRefactoringWithFailedEdits() {
+        RefactoringJournal.Recovery recovery = new RefactoringJournal.Recovery(null, null, List.of(
+                entry(RefactoringJournal.Type.BEGIN), entry(RefactoringJournal.Type.BATCH), edit(1, 8, 9, "100"),
+                result(RefactoringJournal.Type.FAILED, 1), entry(RefactoringJournal.Type.END), entry(RefactoringJournal.Type.BATCH),
+                edit(2, 19, 20, "4")));
+
+        assertFalse(recovery.canResume());
+        assertEquals(2, recovery.resume());
+    }
+
+    @Test
+    public void reportsOuterEdits() {
+        // the replacement of an edit containing other edits is not recorded, the inner edit is still applied
+        RefactoringJournal.Entry outer = edit(1, 11, 21, null);
+        RefactoringJournal.Entry inner = edit(2, 19, 20, "4");
+        List<RefactoringJournal.Entry> unresolved = new ArrayList<>();
+
+        LinkedHashMap<RefactoringJournal.Entry, TextRange> located = RefactoringJournal.Recovery.locate(TEXT, List.of(outer, inner), List.of(), unresolved);
+
+        assertNotNull(located);
+        assertEquals(List.of(inner), new ArrayList<>(located.keySet()));
+        assertEquals(List.of(outer), unresolved);
+    }
+
+    @Test
+    public void reportsOverlappingEdits() {
+        RefactoringJournal.Entry first = edit(1, 15, 20, "b = 4");
+        RefactoringJournal.Entry second = edit(2, 19, 21, "4;");
+        List<RefactoringJournal.Entry> unresolved = new ArrayList<>();
+
+        LinkedHashMap<RefactoringJournal.Entry, TextRange> located = RefactoringJournal.Recovery.locate(TEXT, List.of(first, second), List.of(), unresolved);
+
+        assertNotNull(located);
+        assertEquals(List.of(second), new ArrayList<>(located.keySet()));
+        assertEquals(List.of(first), unresolved);
+    }
+}
@@ -0,0 +1,49 @@
+package util;
+
+import java.io.*;
+
+/**
+ * Writes and reads the binary formats of the tests in memory
+ */
+public class DataStreams {
+
+    /**
+     * Writes data to a data stream
+     */
+    @FunctionalInterface
+    public interface DataWriter {
+
+        /**
+         * Writes the data
+         *
+         * @param out the output stream
+         * @throws IOException if the data could not be written
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes the data of the given writer to a byte array
+     *
+     * @param writer the writer
+     * @return the written bytes
+     * @throws IOException if the data could not be written
+     */
+    public static byte[] write(DataWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Opens a data stream on the given bytes
+     *
+     * @param bytes the bytes
+     * @return the input stream
+     */
+    public static DataInputStream read(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,98 @@
+package util;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Tests when a file is up to date with its stamp and the header of the files that store stamps
+ */
+public class FileStampTest extends BasePlatformTestCase {
+
+    /**
+     * The magic number of the tested format
+     */
+    private static final int MAGIC = 0x54455354;
+
+    /**
+     * Adds a TypeScript file to the project
+     *
+     * @return the file
+     */
+    private VirtualFile addFile() {
+        return myFixture.addFileToProject("Point.ts", "class Point { x: number; }").getVirtualFile();
+    }
+
+    /**
+     * Changes the document of the file without saving it
+     *
+     * @param file the file
+     */
+    private void editWithoutSaving(VirtualFile file) {
+        Document document = FileDocumentManager.getInstance().getDocument(file);
+        assertNotNull(document);
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(0, "// "));
+        assertTrue(FileDocumentManager.getInstance().isFileModified(file));
+    }
+
+    public void testFileIsUpToDateUntilItChanges() throws IOException {
+        VirtualFile file = addFile();
+        FileStamp stamp = FileStamp.of(file);
+        assertNotNull(stamp);
+        assertTrue(stamp.isUpToDate(file));
+
+        WriteCommandAction.writeCommandAction(getProject()).run(() -> VfsUtil.saveText(file, "class Point { x: number; y: number; }"));
+
+        assertFalse(stamp.isUpToDate(file));
+    }
+
+    public void testFileWithUnsavedChangesIsNotUpToDate() {
+        VirtualFile file = addFile();
+        FileStamp stamp = FileStamp.of(file);
+        assertNotNull(stamp);
+
+        editWithoutSaving(file);
+
+        // the stamp of the file on disk did not change, but the PSI is built from the document
+        assertEquals(stamp, new FileStamp(file.getTimeStamp(), file.getLength()));
+        assertFalse(stamp.isUpToDate(file));
+    }
+
+    public void testFileWithUnsavedChangesHasNoStamp() {
+        VirtualFile file = addFile();
+        editWithoutSaving(file);
+
+        assertNull(FileStamp.of(file));
+    }
+
+    public void testReadsWrittenStamp() throws IOException {
+        FileStamp stamp = new FileStamp(1_700_000_000_000L, 4096);
+
+        byte[] bytes = DataStreams.write(out -> {
+            FileStamp.writeHeader(out, MAGIC, 3);
+            stamp.write(out);
+        });
+
+        try (DataInputStream in = DataStreams.read(bytes)) {
+            assertTrue(FileStamp.readHeader(in, MAGIC, 3));
+            assertEquals(stamp, FileStamp.read(in));
+        }
+    }
+
+    public void testRecognizesOtherFormats() throws IOException {
+        byte[] bytes = DataStreams.write(out -> FileStamp.writeHeader(out, MAGIC, 3));
+
+        try (DataInputStream in = DataStreams.read(bytes)) {
+            assertFalse(FileStamp.readHeader(in, MAGIC, 4));
+        }
+        try (DataInputStream in = DataStreams.read(bytes)) {
+            assertFalse(FileStamp.readHeader(in, MAGIC + 1, 3));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package util;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the binary format of the index snapshot. When a file of the snapshot is up to date is tested by
+ * {@link FileStampTest}.
+ */
+public class IndexSnapshotTest {
+
+    /**
+     * Creates the elements of a file with a class and a function
+     *
+     * @return the elements
+     */
+    private static List<IndexSnapshot.ElementData> createElements() {
+        return List.of(
+                new IndexSnapshot.ElementData(true, 0, "Point", List.of(
+                        new Classfield("x", Set.of("number"), "public", List.of()),
+                        new Classfield("label", Set.of("string", "undefined"), "private", List.of("readonly")))),
+                new IndexSnapshot.ElementData(false, 42, "draw", List.of(
+                        new Parameter("x", Set.of("number")),
+                        new Parameter("name", Set.of("string"))))
+        );
+    }
+
+    /**
+     * Writes the snapshot and reads it again
+     *
+     * @param snapshot the snapshot
+     * @return the restored snapshot
+     * @throws IOException if the snapshot could not be written or read
+     */
+    private static IndexSnapshot writeAndRead(IndexSnapshot snapshot) throws IOException {
+        try (DataInputStream in = DataStreams.read(DataStreams.write(snapshot::write))) {
+            IndexSnapshot restored = IndexSnapshot.read(in);
+            assertNotNull(restored);
+            return restored;
+        }
+    }
+
+    @Test
+    public void readsWrittenElements() throws IOException {
+        IndexSnapshot snapshot = new IndexSnapshot();
+        snapshot.put("/src/Point.ts", new IndexSnapshot.FileData(new FileStamp(1000, 120), createElements()));
+
+        IndexSnapshot.FileData data = writeAndRead(snapshot).get("/src/Point.ts");
+
+        assertNotNull(data);
+        assertEquals(new FileStamp(1000, 120), data.stamp());
+        List<IndexSnapshot.ElementData> expected = createElements();
+        assertEquals(expected.size(), data.elements().size());
+        for (int i = 0; i < expected.size(); i++) {
+            IndexSnapshot.ElementData element = data.elements().get(i);
+            assertEquals(expected.get(i).isClass(), element.isClass());
+            assertEquals(expected.get(i).offset(), element.offset());
+            assertEquals(expected.get(i).name(), element.name());
+            assertEquals(expected.get(i).properties().size(), element.properties().size());
+            for (int j = 0; j < element.properties().size(); j++) {
+                // the signature includes the visibility and the modifiers of fields
+                assertTrue(expected.get(i).properties().get(j).hasSameSignature(element.properties().get(j)));
+            }
+        }
+    }
+
+    @Test
+    public void readsFilesWithoutElements() throws IOException {
+        IndexSnapshot snapshot = new IndexSnapshot();
+        snapshot.put("/src/empty.ts", new IndexSnapshot.FileData(new FileStamp(1000, 0), List.of()));
+        snapshot.put("/src/Ünïcode.ts", new IndexSnapshot.FileData(new FileStamp(2000, 10), List.of()));
+
+        IndexSnapshot restored = writeAndRead(snapshot);
+
+        assertEquals(2, restored.size());
+        assertEquals(new IndexSnapshot.FileData(new FileStamp(1000, 0), List.of()), restored.get("/src/empty.ts"));
+        assertEquals(new IndexSnapshot.FileData(new FileStamp(2000, 10), List.of()), restored.get("/src/Ünïcode.ts"));
+    }
+}
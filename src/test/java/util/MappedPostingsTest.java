@@ -0,0 +1,217 @@
+package util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the encoding of the posting lists in the mapped file and their lookup
+ */
+public class MappedPostingsTest {
+
+    /**
+     * The minimum number of properties of an indexed element
+     */
+    private static final int MIN_PROPERTIES = 2;
+
+    /**
+     * The postings file written by the test
+     */
+    private Path path;
+
+    @After
+    public void deleteFile() throws IOException {
+        if (path != null) Files.deleteIfExists(path);
+    }
+
+    /**
+     * Creates a class with the given fields
+     *
+     * @param offset the start offset of the class
+     * @param fields the fields
+     * @return the class
+     */
+    private static IndexSnapshot.ElementData type(int offset, Property... fields) {
+        return new IndexSnapshot.ElementData(true, offset, "Type" + offset, List.of(fields));
+    }
+
+    /**
+     * Creates a function with the given parameters
+     *
+     * @param offset     the start offset of the function
+     * @param parameters the parameters
+     * @return the function
+     */
+    private static IndexSnapshot.ElementData function(int offset, Property... parameters) {
+        return new IndexSnapshot.ElementData(false, offset, "function" + offset, List.of(parameters));
+    }
+
+    /**
+     * Creates a public field
+     *
+     * @param name  the name of the field
+     * @param types the types of the field
+     * @return the field
+     */
+    private static Classfield field(String name, String... types) {
+        return new Classfield(name, Set.of(types), "public", List.of());
+    }
+
+    /**
+     * Creates a parameter
+     *
+     * @param name  the name of the parameter
+     * @param types the types of the parameter
+     * @return the parameter
+     */
+    private static Parameter parameter(String name, String... types) {
+        return new Parameter(name, Set.of(types));
+    }
+
+    /**
+     * Writes the postings of the writer and maps them
+     *
+     * @param writer the writer
+     * @return the mapped postings
+     * @throws IOException if the postings could not be written
+     */
+    private MappedPostings write(MappedPostings.Writer writer) throws IOException {
+        path = Files.createTempFile("postings", ".bin");
+        writer.writeTo(path);
+        // the project is only needed to resolve the elements to the PSI
+        MappedPostings postings = MappedPostings.open(null, path);
+        assertNotNull(postings);
+        return postings;
+    }
+
+    @Test
+    public void findsElementsByProperty() throws IOException {
+        MappedPostings.Writer writer = new MappedPostings.Writer();
+        writer.addFile("/src/a.ts", new FileStamp(1, 100), List.of(
+                type(10, field("x", "number"), field("y", "number")),
+                function(50, parameter("x", "number"), parameter("z", "string"))), MIN_PROPERTIES);
+        writer.addFile("/src/b.ts", new FileStamp(2, 200), List.of(
+                type(0, field("x", "number"), field("z", "string"))), MIN_PROPERTIES);
+
+        MappedPostings postings = write(writer);
+
+        assertEquals(List.of(new MappedPostings.ElementRef(0, 10, true), new MappedPostings.ElementRef(1, 0, true)),
+                postings.getPostings(parameter("x", "number"), true));
+        assertEquals(List.of(new MappedPostings.ElementRef(0, 50, false)), postings.getPostings(field("x", "number"), false));
+        assertEquals(List.of(new MappedPostings.ElementRef(0, 10, true)), postings.getPostings(field("y", "number"), true));
+        assertEquals(3, postings.countPostings(field("x", "number")));
+    }
+
+    @Test
+    public void distinguishesTypes() throws IOException {
+        MappedPostings.Writer writer = new MappedPostings.Writer();
+        writer.addFile("/src/a.ts", new FileStamp(1, 100), List.of(
+                type(0, field("id", "number", "string"), field("name", "string"))), MIN_PROPERTIES);
+
+        MappedPostings postings = write(writer);
+
+        // the order of the types is not relevant
+        assertEquals(1, postings.countPostings(field("id", "string", "number")));
+        assertEquals(0, postings.countPostings(field("id", "number")));
+        assertTrue(postings.getPostings(field("id", "number"), true).isEmpty());
+    }
+
+    @Test
+    public void comparesKeysOfPropertiesWithSameHash() throws IOException {
+        // "Aa" and "BB" have the same hash code, so do the properties
+        Parameter first = parameter("Aa", "number");
+        Parameter second = parameter("BB", "number");
+        assertEquals(first.hashCode(), second.hashCode());
+
+        MappedPostings.Writer writer = new MappedPostings.Writer();
+        writer.addFile("/src/a.ts", new FileStamp(1, 100), List.of(
+                function(0, first, parameter("c", "number")),
+                function(20, second, parameter("c", "number")),
+                function(40, second, parameter("d", "number"))), MIN_PROPERTIES);
+
+        MappedPostings postings = write(writer);
+
+        assertEquals(List.of(new MappedPostings.ElementRef(0, 0, false)), postings.getPostings(first, false));
+        assertEquals(List.of(new MappedPostings.ElementRef(0, 20, false), new MappedPostings.ElementRef(0, 40, false)),
+                postings.getPostings(second, false));
+    }
+
+    @Test
+    public void findsNoUnknownProperty() throws IOException {
+        MappedPostings.Writer writer = new MappedPostings.Writer();
+        writer.addFile("/src/a.ts", new FileStamp(1, 100), List.of(type(0, field("x", "number"), field("y", "number"))), MIN_PROPERTIES);
+
+        MappedPostings postings = write(writer);
+
+        assertEquals(0, postings.countPostings(field("w", "number")));
+        assertTrue(postings.getPostings(field("w", "number"), true).isEmpty());
+    }
+
+    @Test
+    public void writesEmptyPostings() throws IOException {
+        MappedPostings postings = write(new MappedPostings.Writer());
+
+        assertEquals(0, postings.countPostings(field("x", "number")));
+        assertFalse(postings.markStale("/src/a.ts"));
+    }
+
+    @Test
+    public void leavesOutElementsWithTooFewProperties() throws IOException {
+        MappedPostings.Writer writer = new MappedPostings.Writer();
+        writer.addFile("/src/a.ts", new FileStamp(1, 100), List.of(
+                type(0, field("x", "number")),
+                type(30, field("x", "number"), field("y", "number"))), MIN_PROPERTIES);
+
+        MappedPostings postings = write(writer);
+
+        assertEquals(List.of(new MappedPostings.ElementRef(0, 30, true)), postings.getPostings(field("x", "number"), true));
+    }
+
+    @Test
+    public void storesPropertyOfElementOnce() throws IOException {
+        MappedPostings.Writer writer = new MappedPostings.Writer();
+        writer.addFile("/src/a.ts", new FileStamp(1, 100), List.of(
+                type(0, field("x", "number"), field("x", "number"), field("y", "number"))), MIN_PROPERTIES);
+
+        MappedPostings postings = write(writer);
+
+        assertEquals(1, postings.countPostings(field("x", "number")));
+    }
+
+    @Test
+    public void leavesOutPostingsOfStaleFiles() throws IOException {
+        MappedPostings.Writer writer = new MappedPostings.Writer();
+        writer.addFile("/src/a.ts", new FileStamp(1, 100), List.of(type(0, field("x", "number"), field("y", "number"))), MIN_PROPERTIES);
+        writer.addFile("/src/b.ts", new FileStamp(2, 200), List.of(type(5, field("x", "number"), field("y", "number"))), MIN_PROPERTIES);
+
+        MappedPostings postings = write(writer);
+
+        assertTrue(postings.markStale("/src/a.ts"));
+        assertFalse(postings.markStale("/src/a.ts"));
+        assertFalse(postings.markStale("/src/c.ts"));
+        assertEquals(List.of(new MappedPostings.ElementRef(1, 5, true)), postings.getPostings(field("x", "number"), true));
+        // the count is an estimate and includes the stale files
+        assertEquals(2, postings.countPostings(field("x", "number")));
+    }
+
+    @Test
+    public void ignoresFileOfAnotherVersion() throws IOException {
+        MappedPostings.Writer writer = new MappedPostings.Writer();
+        writer.addFile("/src/a.ts", new FileStamp(1, 100), List.of(type(0, field("x", "number"), field("y", "number"))), MIN_PROPERTIES);
+        write(writer);
+
+        // the version follows the magic number
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[7]++;
+        Files.write(path, bytes);
+
+        assertNull(MappedPostings.open(null, path));
+    }
+}
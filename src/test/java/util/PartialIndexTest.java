@@ -0,0 +1,227 @@
+package util;
+
+import Settings.DataClumpSettings;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests merging the partial indexes of several shards and detecting data clumps across them
+ */
+public class PartialIndexTest {
+
+    /**
+     * The position of every property, the detection does not depend on it
+     */
+    private static final ReportFormat.Position POSITION = new ReportFormat.Position(1, 0, 1, 1);
+
+    /**
+     * Creates a public field
+     *
+     * @param name the name of the field
+     * @param type the type of the field
+     * @return the field
+     */
+    private static PartialIndex.PropertyEntry field(String name, String type) {
+        return new PartialIndex.PropertyEntry(name, Set.of(type), true, "public", List.of(), POSITION);
+    }
+
+    /**
+     * Creates a parameter
+     *
+     * @param name the name of the parameter
+     * @param type the type of the parameter
+     * @return the parameter
+     */
+    private static PartialIndex.PropertyEntry parameter(String name, String type) {
+        return new PartialIndex.PropertyEntry(name, Set.of(type), false, null, List.of(), POSITION);
+    }
+
+    /**
+     * Creates the fields x, y and z of type number
+     *
+     * @return the fields
+     */
+    private static List<PartialIndex.PropertyEntry> coordinates() {
+        return List.of(field("x", "number"), field("y", "number"), field("z", "number"));
+    }
+
+    /**
+     * Creates a class without inherited fields
+     *
+     * @param name       the name of the class
+     * @param properties the fields of the class
+     * @return the class
+     */
+    private static PartialIndex.ElementEntry type(String name, List<PartialIndex.PropertyEntry> properties) {
+        return new PartialIndex.ElementEntry("/src/" + name + ".ts", name, name, true, properties, null, List.of());
+    }
+
+    /**
+     * Creates a method
+     *
+     * @param containingClass       the class containing the method
+     * @param name                  the name of the method
+     * @param properties            the parameters of the method
+     * @param inheritedDeclarations the classes in the hierarchy that declare a method with the same name
+     * @return the method
+     */
+    private static PartialIndex.ElementEntry method(String containingClass, String name, List<PartialIndex.PropertyEntry> properties, List<String> inheritedDeclarations) {
+        return new PartialIndex.ElementEntry("/src/" + containingClass + ".ts", name, containingClass + "." + name, false, properties, containingClass, inheritedDeclarations);
+    }
+
+    /**
+     * Merges the given elements, each one as its own shard, and detects the data clumps with the default settings
+     *
+     * @param elements the elements
+     * @return the keys of the detected data clumps
+     */
+    private static Set<String> detect(PartialIndex.ElementEntry... elements) {
+        return detect(DataClumpSettings.Modifier.ALL, elements);
+    }
+
+    /**
+     * Merges the given elements, each one as its own shard, and detects the data clumps
+     *
+     * @param includedModifiers the modifiers that have to match between fields
+     * @param elements          the elements
+     * @return the keys of the detected data clumps
+     */
+    private static Set<String> detect(DataClumpSettings.Modifier includedModifiers, PartialIndex.ElementEntry... elements) {
+        PartialIndex[] shards = new PartialIndex[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            shards[i] = PartialIndex.of(i, elements.length, List.of(elements[i]));
+        }
+        return PartialIndex.merge(List.of(shards)).detectDataClumps(3, includedModifiers).keySet();
+    }
+
+    @Test
+    public void assignsEveryFileToOneShard() {
+        for (String path : List.of("/src/a.ts", "/src/b/c.ts", "/test/d.spec.ts")) {
+            int shards = 0;
+            for (int shard = 0; shard < 4; shard++) {
+                if (PartialIndex.isInShard(path, shard, 4)) shards++;
+            }
+            assertEquals(path, 1, shards);
+        }
+    }
+
+    @Test
+    public void mergesElementsOfAllShards() {
+        PartialIndex first = PartialIndex.of(0, 2, List.of(type("A", coordinates())));
+        PartialIndex second = PartialIndex.of(1, 2, List.of(type("B", coordinates()), type("C", List.of(field("x", "number")))));
+
+        PartialIndex merged = PartialIndex.merge(List.of(first, second));
+
+        assertEquals(List.of("A", "B", "C"), merged.getElements().stream().map(PartialIndex.ElementEntry::name).toList());
+        assertEquals(7, merged.getNumberOfDataFields());
+    }
+
+    @Test
+    public void detectsDataClumpsAcrossShards() {
+        HashMap<String, ReportFormat.DataClumpTypeContext> dataClumps = PartialIndex.merge(List.of(
+                PartialIndex.of(0, 2, List.of(type("A", coordinates()))),
+                PartialIndex.of(1, 2, List.of(type("B", coordinates())))
+        )).detectDataClumps(3, DataClumpSettings.Modifier.ALL);
+
+        assertEquals(Set.of("A-B", "B-A"), dataClumps.keySet());
+        ReportFormat.DataClumpTypeContext dataClump = dataClumps.get("A-B");
+        assertEquals("fields_to_fields", dataClump.dataClumpType());
+        assertEquals(Set.of("x", "y", "z"), dataClump.dataClumpData().keySet());
+    }
+
+    @Test
+    public void detectsDataClumpsBetweenFieldsAndParameters() {
+        PartialIndex.ElementEntry function = method("Renderer", "draw",
+                List.of(parameter("x", "number"), parameter("y", "number"), parameter("z", "number")), List.of());
+
+        assertEquals(Set.of("A-Renderer.draw", "Renderer.draw-A"), detect(type("A", coordinates()), function));
+    }
+
+    @Test
+    public void requiresMinimumOfSharedProperties() {
+        assertTrue(detect(type("A", coordinates()), type("B", List.of(field("x", "number"), field("y", "number")))).isEmpty());
+    }
+
+    @Test
+    public void requiresSameTypes() {
+        assertTrue(detect(type("A", coordinates()), type("B", List.of(field("x", "number"), field("y", "number"), field("z", "string")))).isEmpty());
+    }
+
+    @Test
+    public void ignoresStaticFields() {
+        List<PartialIndex.PropertyEntry> fields = List.of(field("x", "number"), field("y", "number"),
+                new PartialIndex.PropertyEntry("z", Set.of("number"), true, "public", List.of("static"), POSITION));
+
+        assertTrue(detect(type("A", coordinates()), type("B", fields)).isEmpty());
+    }
+
+    @Test
+    public void comparesModifiersOfFields() {
+        List<PartialIndex.PropertyEntry> fields = List.of(field("x", "number"), field("y", "number"),
+                new PartialIndex.PropertyEntry("z", Set.of("number"), true, "private", List.of(), POSITION));
+
+        assertTrue(detect(DataClumpSettings.Modifier.ALL, type("A", coordinates()), type("B", fields)).isEmpty());
+        assertTrue(detect(DataClumpSettings.Modifier.VISIBILITY, type("A", coordinates()), type("B", fields)).isEmpty());
+        assertEquals(Set.of("A-B", "B-A"), detect(DataClumpSettings.Modifier.NONE, type("A", coordinates()), type("B", fields)));
+    }
+
+    @Test
+    public void skipsOverridingFunctions() {
+        List<PartialIndex.PropertyEntry> parameters = List.of(parameter("x", "number"), parameter("y", "number"), parameter("z", "number"));
+        PartialIndex.ElementEntry base = method("Shape", "move", parameters, List.of("Shape"));
+        PartialIndex.ElementEntry override = method("Circle", "move", parameters, List.of("Shape"));
+        PartialIndex.ElementEntry other = method("Vector", "move", parameters, List.of("Vector"));
+
+        assertTrue(base.isOverriding(override));
+        assertFalse(base.isOverriding(other));
+        assertEquals(Set.of("Shape.move-Vector.move", "Vector.move-Shape.move", "Circle.move-Vector.move", "Vector.move-Circle.move"),
+                detect(base, override, other));
+    }
+
+    @Test
+    public void skipsFieldsInheritedFromSameInterface() {
+        List<String> inheritedFields = List.of(PartialIndex.getInterfaceFieldKey("Point", "x"), PartialIndex.getInterfaceFieldKey("Point", "y"));
+        PartialIndex.ElementEntry first = new PartialIndex.ElementEntry("/src/A.ts", "A", "A", true, coordinates(), null, inheritedFields);
+        PartialIndex.ElementEntry second = new PartialIndex.ElementEntry("/src/B.ts", "B", "B", true, coordinates(), null, inheritedFields);
+        PartialIndex.ElementEntry third = type("C", coordinates());
+
+        assertTrue(first.inheritedBySameInterface(second, "x"));
+        assertFalse(first.inheritedBySameInterface(second, "z"));
+        assertFalse(first.inheritedBySameInterface(third, "x"));
+        assertEquals(Set.of("A-C", "C-A", "B-C", "C-B"), detect(first, second, third));
+    }
+
+    @Test
+    public void readsWrittenIndex() throws IOException {
+        Path path = Files.createTempFile("partial-index", ".json");
+        try {
+            PartialIndex.of(1, 2, List.of(type("A", coordinates()), type("B", coordinates()))).write(path);
+
+            PartialIndex index = PartialIndex.read(path);
+
+            assertEquals(List.of(type("A", coordinates()), type("B", coordinates())), index.getElements());
+            assertEquals(Set.of("A-B", "B-A"), index.detectDataClumps(3, DataClumpSettings.Modifier.ALL).keySet());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFormatVersion() throws IOException {
+        Path path = Files.createTempFile("partial-index", ".json");
+        try {
+            Files.writeString(path, "{\"formatVersion\": " + (PartialIndex.FORMAT_VERSION + 1) + "}");
+            PartialIndex.read(path);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}